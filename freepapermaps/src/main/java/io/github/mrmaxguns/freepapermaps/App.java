@@ -1,13 +1,18 @@
 package io.github.mrmaxguns.freepapermaps;
 
 import io.github.mrmaxguns.freepapermaps.geometry.BoundingBox;
+import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
 import io.github.mrmaxguns.freepapermaps.osm.OSM;
+import io.github.mrmaxguns.freepapermaps.osm.OSMFilter;
+import io.github.mrmaxguns.freepapermaps.osm.ParallelOSMParser;
 import io.github.mrmaxguns.freepapermaps.projections.ProjectedCoordinate;
 import io.github.mrmaxguns.freepapermaps.projections.Projection;
 import io.github.mrmaxguns.freepapermaps.projections.PseudoMercatorProjection;
 import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
+import io.github.mrmaxguns.freepapermaps.rendering.Atlas;
 import io.github.mrmaxguns.freepapermaps.rendering.MapRenderer;
 import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
+import io.github.mrmaxguns.freepapermaps.server.RenderServer;
 import io.github.mrmaxguns.freepapermaps.styling.MapStyle;
 import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
 import io.github.mrmaxguns.freepapermaps.styling.language.UnitManager;
@@ -20,12 +25,28 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 
 public class App {
     private final static String PROGRAM_VERSION = "0.2-SNAPSHOT";
+    /** How long the style file must be left alone before a change is acted upon in watch mode. */
+    private final static long WATCH_DEBOUNCE_MILLISECONDS = 200;
+    /** How many render requests may wait for each server worker before new requests are turned away. */
+    private final static int SERVER_QUEUE_PER_WORKER = 4;
+    /** How much neighboring atlas pages overlap (in mm) if no overlap is given. */
+    private final static double DEFAULT_ATLAS_OVERLAP = 10;
 
     enum ScaleOption {
         Fixed,
@@ -72,6 +93,12 @@ public class App {
             return 0;
         }
 
+        // In server mode, every remaining argument is a dataset and every style option is a style
+        if (cmd.hasOption("S")) {
+            runServer(cmd.getOptionValue("S"), cmd.getArgs(), cmd.getOptionValues("s"));
+            return 0;
+        }
+
         // Handle the input file argument
         String[] leftOverArgs = cmd.getArgs();
         if (leftOverArgs.length != 1) {
@@ -79,15 +106,9 @@ public class App {
         }
         String inputFileName = leftOverArgs[0];
 
-        OutputStream outputFile;
+        String outputFileName = null;
         if (cmd.hasOption("o")) {
-            try {
-                outputFile = new FileOutputStream(cmd.getOptionValue("o"));
-            } catch (FileNotFoundException e) {
-                throw new UserInputException("Could not write to output file.");
-            }
-        } else {
-            outputFile = System.out;
+            outputFileName = cmd.getOptionValue("o");
         }
 
         String styleFileName = null;
@@ -117,9 +138,47 @@ public class App {
         }
 
         boolean attribution = !cmd.hasOption("n");
+        boolean prefilter = cmd.hasOption("p");
+        boolean watch = cmd.hasOption("w");
+
+        double[] paperSize = null;
+        double overlap = DEFAULT_ATLAS_OVERLAP;
+        if (cmd.hasOption("A")) {
+            paperSize = Atlas.parsePaperSize(cmd.getOptionValue("A"));
+            if (outputFileName == null) {
+                throw new UserInputException("Atlas mode requires an output file to name the pages after.");
+            }
+            if (watch) {
+                throw new UserInputException("Atlas mode cannot be combined with watch mode.");
+            }
+        }
+        if (cmd.hasOption("O")) {
+            if (paperSize == null) {
+                throw new UserInputException("Page overlap can only be set in atlas mode.");
+            }
+            try {
+                overlap = Double.parseDouble(cmd.getOptionValue("O"));
+            } catch (NumberFormatException e) {
+                throw new UserInputException("Page overlap must be a number.");
+            }
+            if (!(overlap >= 0) || overlap >= Math.min(paperSize[0], paperSize[1])) {
+                throw new UserInputException("Page overlap must be non-negative and smaller than the paper.");
+            }
+        }
+
+        if (watch) {
+            if (outputFileName == null || styleFileName == null) {
+                throw new UserInputException("Watch mode requires both an output file and a style file.");
+            }
+            if (prefilter) {
+                // The filter is derived from the style, so a changed style could need data that was never loaded.
+                throw new UserInputException("Watch mode cannot be combined with prefiltering.");
+            }
+        }
 
         // Create the map!
-        createMap(inputFileName, styleFileName, outputFile, scale, scaleOption, attribution);
+        createMap(inputFileName, styleFileName, outputFileName, scale, scaleOption, attribution, prefilter, watch,
+                  paperSize, overlap);
         return 0;
     }
 
@@ -127,21 +186,47 @@ public class App {
         Options options = new Options();
         options.addOption("h", "help", false, "get information about program options");
         options.addOption("v", "version", false, "print the current version");
-        options.addOption("o", "output", true, "write the SVG to a specified output file instead of stdout");
+        options.addOption("o", "output", true,
+                          "write the SVG to a specified output file instead of stdout (written as PDF if the file " +
+                          "name ends in .pdf, or compressed if it ends in .svgz)");
         options.addOption("s", "style", true, "specify an XML style file");
         options.addOption("c", "scale", true, "set the map scale (1:SCALE) (cannot use with -W or -H)");
         options.addOption("W", "width", true, "set the map width with a unit (cannot use with -c or -H)");
         options.addOption("H", "height", true, "set the map height with a unit (cannot use with -c or -W)");
         options.addOption("n", "hide-copyright-notice", false,
                           "omit the OSM copyright notice (be sure to attribute OSM properly)");
+        options.addOption("p", "prefilter", false,
+                          "while loading, drop data that the style cannot render or that lies outside the map bounds");
+        options.addOption("w", "watch", false,
+                          "keep running and re-render the map whenever the style file changes (requires -o and -s)");
+        options.addOption("S", "serve", true,
+                          "load every OSM file given once and serve maps over HTTP on the local PORT (styles are " +
+                          "given with -s, which may be repeated)");
+        options.addOption("A", "atlas", true,
+                          "split the map into pages of the given PAPER size (a name such as a4 or a4-landscape, or " +
+                          "WIDTHxHEIGHT in mm), written to numbered files named after -o, or to one PDF if -o ends " +
+                          "in .pdf");
+        options.addOption("O", "overlap", true, "set how many mm neighboring atlas pages overlap (default " +
+                                                 DEFAULT_ATLAS_OVERLAP + ")");
         return options;
     }
 
-    private static void createMap(String inputFileName, String styleFileName, OutputStream outputFile, double scale,
-                                  ScaleOption scaleOption, boolean attribution)
+    private static void createMap(String inputFileName, String styleFileName, String outputFileName, double scale,
+                                  ScaleOption scaleOption, boolean attribution, boolean prefilter, boolean watch,
+                                  double[] paperSize, double overlap)
             throws ParserConfigurationException, UserInputException, SVGGraphics2DIOException  {
         // Gather necessary resources
-        OSM mapData = OSM.fromXML(openXMLFile(Objects.requireNonNull(inputFileName)), new XMLTools(inputFileName));
+        Document styleDocument = openXMLFile(styleFileName);
+        XMLTools styleXMLTools = new XMLTools(styleFileName);
+
+        // The filter is derived from the style's selectors and layers, so that data the style can never render is not
+        // kept in memory.
+        OSMFilter filter = OSMFilter.ACCEPT_ALL;
+        if (prefilter) {
+            filter = MapStyle.createLoadFilter(styleDocument, styleXMLTools).useDocumentBounds().build();
+        }
+
+        OSM mapData = openOSMFile(Objects.requireNonNull(inputFileName), filter).freeze();
 //
 //        MapStyle mapStyle;
 //        if (styleFileName != null) {
@@ -163,21 +248,224 @@ public class App {
         } else {
             projectedBounds = projection.project(mapData.getNodeBoundingBox());
         }
-        Scaler scaler = null;
-        switch (scaleOption) {
-            case Fixed -> scaler = new Scaler(scale);
-            case Width -> scaler = Scaler.newScalerFromWidth(projectedBounds, scale);
-            case Height -> scaler = Scaler.newScalerFromHeight(projectedBounds, scale);
+        Scaler scaler = switch (scaleOption) {
+            case Fixed -> new Scaler(scale);
+            case Width -> Scaler.newScalerFromWidth(projectedBounds, scale);
+            case Height -> Scaler.newScalerFromHeight(projectedBounds, scale);
+        };
+
+        // Geometry does not depend on the style, so it is built once and kept for every re-render in watch mode.
+        GeometryCollection geometries = GeometryCollection.fromOSM(mapData, projection, scaler);
+
+        if (paperSize != null) {
+            renderAtlas(mapData, geometries, styleDocument, styleXMLTools, projection, scaler, attribution,
+                        outputFileName, paperSize, overlap);
+            return;
         }
 
-        MapStyle mapStyle = MapStyle.fromXML(openXMLFile(styleFileName), new XMLTools(styleFileName),
+        // Render the map!
+        renderMap(mapData, geometries, styleDocument, styleXMLTools, projection, scaler, attribution, outputFileName);
+
+        if (watch) {
+            watchStyle(styleFileName, () -> renderMap(mapData, geometries, openXMLFile(styleFileName),
+                                                      new XMLTools(styleFileName), projection, scaler, attribution,
+                                                      outputFileName));
+        }
+    }
+
+    private static void renderMap(OSM mapData, GeometryCollection geometries, Document styleDocument,
+                                  XMLTools styleXMLTools, Projection projection, Scaler scaler, boolean attribution,
+                                  String outputFileName) throws UserInputException, SVGGraphics2DIOException {
+        MapStyle mapStyle = MapStyle.fromXML(styleDocument, styleXMLTools,
                                              new Interpreter.Context(new HashMap<>(), new HashMap<>(), new HashMap<>(),
                                                                      new HashMap<>(), new UnitManager(scaler)),
                                              projection, scaler);
 
-        // Render the map!
-        MapRenderer renderer = new MapRenderer(mapData, mapStyle, projection, scaler, attribution);
-        renderer.renderToStream(outputFile);
+        MapRenderer renderer = new MapRenderer(mapData, geometries, mapStyle, projection, scaler, attribution);
+
+        if (outputFileName == null) {
+            renderer.renderToStream(System.out);
+            return;
+        }
+
+        try (OutputStream outputFile = new FileOutputStream(outputFileName)) {
+            if (isPDFFileName(outputFileName)) {
+                renderer.renderToPDF(outputFile);
+            } else {
+                renderer.renderToStream(outputFile, isSVGZFileName(outputFileName));
+            }
+        } catch (FileNotFoundException e) {
+            throw new UserInputException("Could not write to output file.");
+        } catch (IOException e) {
+            throw new UserInputException("Could not finish writing to output file.");
+        }
+    }
+
+    private static void renderAtlas(OSM mapData, GeometryCollection geometries, Document styleDocument,
+                                    XMLTools styleXMLTools, Projection projection, Scaler scaler, boolean attribution,
+                                    String outputFileName, double[] paperSize, double overlap) throws
+            UserInputException {
+        MapStyle mapStyle = MapStyle.fromXML(styleDocument, styleXMLTools,
+                                             new Interpreter.Context(new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                                                                     new HashMap<>(), new UnitManager(scaler)),
+                                             projection, scaler);
+        Atlas atlas = Atlas.fromOSM(mapData, projection, scaler, paperSize[0], paperSize[1], overlap);
+
+        // A PDF atlas is one document with a page per sheet
+        if (isPDFFileName(outputFileName)) {
+            try (OutputStream outputFile = new FileOutputStream(outputFileName)) {
+                atlas.renderToPDF(geometries, mapStyle, projection, scaler, attribution,
+                                  Runtime.getRuntime().availableProcessors(), outputFile);
+            } catch (FileNotFoundException e) {
+                throw new UserInputException("Could not write to output file.");
+            } catch (IOException e) {
+                throw new UserInputException("Could not finish writing to output file.");
+            }
+
+            System.err.println("Rendered " + atlas.getRows() + " x " + atlas.getColumns() + " atlas pages.");
+            return;
+        }
+
+        // Otherwise pages are named after the output file, e.g. map.svg becomes map-1-1.svg, map-1-2.svg, ...
+        int extension = outputFileName.lastIndexOf('.');
+        String prefix = extension > 0 ? outputFileName.substring(0, extension) : outputFileName;
+        String suffix = extension > 0 ? outputFileName.substring(extension) : ".svg";
+
+        try {
+            atlas.render(geometries, mapStyle, projection, scaler, attribution,
+                         Runtime.getRuntime().availableProcessors(), isSVGZFileName(outputFileName),
+                         page -> new FileOutputStream(prefix + "-" + (page.row() + 1) + "-" + (page.column() + 1) +
+                                                      suffix));
+        } catch (FileNotFoundException e) {
+            throw new UserInputException("Could not write to output file.");
+        } catch (IOException e) {
+            throw new UserInputException("Could not finish writing to output file.");
+        }
+
+        System.err.println("Rendered " + atlas.getRows() + " x " + atlas.getColumns() + " atlas pages.");
+    }
+
+    private static boolean isPDFFileName(String fileName) {
+        return fileName.toLowerCase().endsWith(".pdf");
+    }
+
+    private static boolean isSVGZFileName(String fileName) {
+        return fileName.toLowerCase().endsWith(".svgz");
+    }
+
+    /**
+     * Blocks forever, calling <code>rerender</code> every time the style file changes. Errors in the style are reported
+     * without stopping, so that they can be fixed and saved again.
+     */
+    private static void watchStyle(String styleFileName, StyleChangeHandler rerender) throws UserInputException {
+        Path stylePath = Paths.get(styleFileName).toAbsolutePath();
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            stylePath.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                           StandardWatchEventKinds.ENTRY_MODIFY);
+            System.err.println("Watching '" + styleFileName + "' for changes. Press Ctrl+C to stop.");
+
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+
+                // Editors often write a file in several steps, so collect events until the directory is quiet.
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (stylePath.getFileName().equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    key = watchService.poll(WATCH_DEBOUNCE_MILLISECONDS, TimeUnit.MILLISECONDS);
+                }
+
+                if (!changed) {
+                    continue;
+                }
+
+                try {
+                    rerender.run();
+                    System.err.println("Re-rendered map.");
+                } catch (UserInputException e) {
+                    System.err.println(e.getMessage());
+                } catch (ParserConfigurationException | SVGGraphics2DIOException e) {
+                    System.err.println("Could not re-render map: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UserInputException("Could not watch style file '" + styleFileName + "' for changes.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface StyleChangeHandler {
+        void run() throws ParserConfigurationException, UserInputException, SVGGraphics2DIOException;
+    }
+
+    private static void runServer(String rawPort, String[] inputFileNames, String[] styleFileNames) throws
+            ParserConfigurationException, UserInputException {
+        int port;
+        try {
+            port = Integer.parseInt(rawPort);
+        } catch (NumberFormatException e) {
+            throw new UserInputException("Server port must be an integer.");
+        }
+
+        if (inputFileNames.length == 0) {
+            throw new UserInputException("Expected at least one (non-flag) argument: the name of an OSM input file.");
+        }
+        if (styleFileNames == null || styleFileNames.length == 0) {
+            throw new UserInputException("Server mode requires at least one style file.");
+        }
+
+        // Datasets and styles are referred to by their file names without an extension
+        Map<String, OSM> datasets = new LinkedHashMap<>();
+        for (String inputFileName : inputFileNames) {
+            datasets.put(getBaseName(inputFileName), openOSMFile(inputFileName, OSMFilter.ACCEPT_ALL).freeze());
+        }
+
+        Map<String, String> styles = new HashMap<>();
+        for (String styleFileName : styleFileNames) {
+            styles.put(getBaseName(styleFileName), styleFileName);
+        }
+
+        int workers = Runtime.getRuntime().availableProcessors();
+        RenderServer server = new RenderServer(datasets, styles, workers, workers * SERVER_QUEUE_PER_WORKER);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            throw new UserInputException("Could not start server on port " + port + ".");
+        }
+
+        System.err.println("Serving " + datasets.size() + " dataset(s) at http://localhost:" + server.getPort() +
+                           "/ with " + workers + " workers. Press Ctrl+C to stop.");
+
+        // Serve until the program is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String getBaseName(String fileName) {
+        String name = new File(fileName).getName();
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+
+    /** Parses an OSM XML file using all available processors. */
+    private static OSM openOSMFile(String fileName, OSMFilter filter) throws UserInputException {
+        ParallelOSMParser parser = new ParallelOSMParser(Runtime.getRuntime().availableProcessors());
+        try {
+            return parser.parse(Path.of(fileName), new XMLTools(fileName), filter);
+        } catch (IOException e) {
+            throw new UserInputException("File '" + fileName + "' could not be opened. Does it exist?");
+        }
     }
 
     private static Document openXMLFile(String fileName) throws ParserConfigurationException, UserInputException {
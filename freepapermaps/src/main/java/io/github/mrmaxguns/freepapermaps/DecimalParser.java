@@ -0,0 +1,78 @@
+package io.github.mrmaxguns.freepapermaps;
+
+/**
+ * Parses plain decimal numbers, such as the coordinates in OSM files, without allocating.
+ * <p>
+ * Numbers made only of an optional sign, digits, and an optional decimal point followed by digits are parsed directly
+ * from the characters. If the digits form an integer of at most 2<sup>53</sup> and there are at most 22 digits after
+ * the decimal point, both the integer and the power of ten are exact doubles, so a single division gives the correctly
+ * rounded result, exactly as <code>Double.parseDouble</code> would. OSM coordinates, with their 7 decimal places,
+ * always take this path. Every other form, such as exponents, hexadecimal numbers, or surrounding whitespace, is
+ * handed to <code>Double.parseDouble</code>.
+ */
+public class DecimalParser {
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+            1e19, 1e20, 1e21, 1e22
+    };
+
+    private DecimalParser() {}
+
+    /**
+     * Parses a decimal number like <code>Double.parseDouble</code>.
+     *
+     * @throws NumberFormatException if <code>text</code> is not a number
+     */
+    public static double parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses the characters from <code>start</code> up to <code>end</code> as a decimal number, like
+     * <code>Double.parseDouble</code>.
+     *
+     * @throws NumberFormatException if the characters are not a number
+     */
+    public static double parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; ++i) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                ++digits;
+                if (fractionDigits >= 0) {
+                    ++fractionDigits;
+                }
+                if (mantissa > MAX_EXACT_MANTISSA) {
+                    return parseSlowly(text, start, end);
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return parseSlowly(text, start, end);
+            }
+        }
+
+        // Forms like "", "-", "." and "1." are rare enough to be left to the JDK.
+        if (digits == 0 || fractionDigits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return parseSlowly(text, start, end);
+        }
+
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static double parseSlowly(CharSequence text, int start, int end) {
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+}
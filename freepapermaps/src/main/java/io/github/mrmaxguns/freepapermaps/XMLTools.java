@@ -1,5 +1,6 @@
 package io.github.mrmaxguns.freepapermaps;
 
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -57,14 +58,14 @@ public class XMLTools {
     }
 
     public String getAttributeValue(Element el, String attributeName, boolean required) throws UserInputException {
-        Node attribute = el.getAttributes().getNamedItem(attributeName);
+        Attr attribute = el.getAttributeNode(attributeName);
         if (attribute == null) {
             if (required) {
                 throw error("Found tag that does not have required attribute '" + attributeName + "'.");
             }
             return null;
         }
-        return attribute.getNodeValue();
+        return attribute.getValue();
     }
 
     public double getAttributeValueDouble(Element el, String attributeName) throws UserInputException {
@@ -81,7 +82,8 @@ public class XMLTools {
 
         double value;
         try {
-             value = Double.parseDouble(rawValue);
+            // Most attributes are plain decimals, which can be parsed without the overhead of Double.parseDouble
+            value = DecimalParser.parse(rawValue);
         } catch (NumberFormatException e) {
             throw error("Found attribute '" + attributeName + "' of tag '" + el.getTagName() + "' that has value '"
                     + rawValue + "', that could not be parsed as a decimal number.");
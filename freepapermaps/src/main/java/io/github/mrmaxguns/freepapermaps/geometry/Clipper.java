@@ -0,0 +1,232 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Cuts lines and rings down to an axis-aligned rectangle, so that geometry far outside the sheet is never drawn.
+ * <p>
+ * Lines are clipped segment by segment with the Liang-Barsky algorithm, and can fall apart into several pieces. Rings
+ * are clipped with the Sutherland-Hodgman algorithm and stay a single ring. Where a clipped ring leaves the rectangle,
+ * the result runs along the rectangle's edge, so a ring should only be clipped to a rectangle somewhat larger than
+ * what is visible when its outline is drawn as well.
+ * <p>
+ * Points are given as interleaved coordinates: <code>{x0, y0, x1, y1, ...}</code>.
+ */
+public class Clipper {
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    /** Constructs a clipper for the rectangle with the given corners. */
+    public Clipper(double minX, double minY, double maxX, double maxY) {
+        if (!(minX <= maxX) || !(minY <= maxY)) {
+            throw new IllegalArgumentException("The minimum corner must not be greater than the maximum corner.");
+        }
+
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /** Returns true if all points are inside the rectangle, in which case clipping would not change them. */
+    public boolean containsAll(double[] points) {
+        for (int i = 0; i < points.length; i += 2) {
+            if (points[i] < minX || points[i] > maxX || points[i + 1] < minY || points[i + 1] > maxY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if the bounding box of the points lies entirely outside the rectangle. */
+    public boolean isOutside(double[] points) {
+        boolean left = true, right = true, above = true, below = true;
+        for (int i = 0; i < points.length; i += 2) {
+            left &= points[i] < minX;
+            right &= points[i] > maxX;
+            above &= points[i + 1] < minY;
+            below &= points[i + 1] > maxY;
+        }
+        return left || right || above || below;
+    }
+
+    /** Returns the pieces of a line that lie inside the rectangle, in order along the line. */
+    public List<double[]> clipLine(double[] points) {
+        List<double[]> pieces = new ArrayList<>();
+        if (points.length < 4 || isOutside(points)) {
+            return pieces;
+        }
+        if (containsAll(points)) {
+            pieces.add(points);
+            return pieces;
+        }
+
+        double[] piece = new double[points.length];
+        int length = 0;
+        double[] segment = new double[4];
+        for (int i = 0; i + 3 < points.length; i += 2) {
+            if (!clipSegment(points[i], points[i + 1], points[i + 2], points[i + 3], segment)) {
+                length = finishPiece(pieces, piece, length);
+                continue;
+            }
+
+            // Continue the current piece if the segment starts where it ended, and start a new one otherwise
+            boolean continues = length >= 2 && piece[length - 2] == segment[0] && piece[length - 1] == segment[1];
+            if (!continues) {
+                length = finishPiece(pieces, piece, length);
+                piece = ensureCapacity(piece, length + 2);
+                piece[length++] = segment[0];
+                piece[length++] = segment[1];
+            }
+            piece = ensureCapacity(piece, length + 2);
+            piece[length++] = segment[2];
+            piece[length++] = segment[3];
+
+            // A segment that leaves the rectangle ends the piece
+            if (segment[2] != points[i + 2] || segment[3] != points[i + 3]) {
+                length = finishPiece(pieces, piece, length);
+            }
+        }
+        finishPiece(pieces, piece, length);
+        return pieces;
+    }
+
+    /**
+     * Clips one segment with the Liang-Barsky algorithm. Returns false if no part of it is inside the rectangle, and
+     * otherwise writes the clipped segment to <code>result</code>.
+     */
+    private boolean clipSegment(double x0, double y0, double x1, double y1, double[] result) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double[] enter = { 0 };
+        double[] exit = { 1 };
+
+        if (!clipEdge(-dx, x0 - minX, enter, exit) || !clipEdge(dx, maxX - x0, enter, exit) ||
+            !clipEdge(-dy, y0 - minY, enter, exit) || !clipEdge(dy, maxY - y0, enter, exit)) {
+            return false;
+        }
+
+        // Unclipped ends are copied exactly, so that consecutive segments still meet.
+        result[0] = enter[0] == 0 ? x0 : x0 + enter[0] * dx;
+        result[1] = enter[0] == 0 ? y0 : y0 + enter[0] * dy;
+        result[2] = exit[0] == 1 ? x1 : x0 + exit[0] * dx;
+        result[3] = exit[0] == 1 ? y1 : y0 + exit[0] * dy;
+        return true;
+    }
+
+    /** Narrows the parameter range of a segment to one side of an edge. Returns false if nothing is left. */
+    private static boolean clipEdge(double p, double q, double[] enter, double[] exit) {
+        if (p == 0) {
+            return q >= 0;
+        }
+
+        double t = q / p;
+        if (p < 0) {
+            if (t > exit[0]) return false;
+            if (t > enter[0]) enter[0] = t;
+        } else {
+            if (t < enter[0]) return false;
+            if (t < exit[0]) exit[0] = t;
+        }
+        return true;
+    }
+
+    private static int finishPiece(List<double[]> pieces, double[] piece, int length) {
+        if (length >= 4) {
+            pieces.add(Arrays.copyOf(piece, length));
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the part of a ring inside the rectangle, as a ring whose last point connects back to its first. The
+     * ring may be given with or without its first point repeated at the end. Returns an empty array if the ring lies
+     * completely outside.
+     */
+    public double[] clipRing(double[] points) {
+        if (points.length < 6 || isOutside(points)) {
+            return new double[0];
+        }
+        if (containsAll(points)) {
+            return points;
+        }
+
+        int length = points.length;
+        if (points[0] == points[length - 2] && points[1] == points[length - 1]) {
+            length -= 2;
+        }
+
+        // Sutherland-Hodgman: clip the ring against each edge of the rectangle in turn
+        double[] ring = resize(Arrays.copyOf(points, length), length);
+        length = clipRingEdge(ring, length, 0, minX);
+        length = clipRingEdge(ring = resize(ring, length), length, 1, maxX);
+        length = clipRingEdge(ring = resize(ring, length), length, 2, minY);
+        length = clipRingEdge(ring = resize(ring, length), length, 3, maxY);
+        return Arrays.copyOf(ring, length);
+    }
+
+    /**
+     * Clips a ring to one side of an edge in place. Sides 0 to 3 keep points right of <code>x = value</code>, left
+     * of it, below <code>y = value</code>, and above it, respectively. Returns the new number of coordinates.
+     */
+    private static int clipRingEdge(double[] ring, int length, int side, double value) {
+        if (length == 0) {
+            return 0;
+        }
+
+        double[] input = Arrays.copyOf(ring, length);
+        int output = 0;
+
+        double previousX = input[length - 2];
+        double previousY = input[length - 1];
+        boolean previousInside = isInside(previousX, previousY, side, value);
+        for (int i = 0; i < length; i += 2) {
+            double x = input[i];
+            double y = input[i + 1];
+            boolean inside = isInside(x, y, side, value);
+
+            if (inside != previousInside) {
+                // The edge is crossed between the previous point and this one
+                double t = side < 2 ? (value - previousX) / (x - previousX) : (value - previousY) / (y - previousY);
+                ring[output++] = side < 2 ? value : previousX + t * (x - previousX);
+                ring[output++] = side < 2 ? previousY + t * (y - previousY) : value;
+            }
+            if (inside) {
+                ring[output++] = x;
+                ring[output++] = y;
+            }
+
+            previousX = x;
+            previousY = y;
+            previousInside = inside;
+        }
+        return output;
+    }
+
+    private static boolean isInside(double x, double y, int side, double value) {
+        return switch (side) {
+            case 0 -> x >= value;
+            case 1 -> x <= value;
+            case 2 -> y >= value;
+            default -> y <= value;
+        };
+    }
+
+    /**
+     * Returns an array that can hold a ring after it is clipped against one edge. Every crossing of the edge adds a
+     * point, but every point outside is dropped, so the ring grows by at most half of its points.
+     */
+    private static double[] resize(double[] ring, int length) {
+        int capacity = length + length / 2 + 2;
+        return ring.length >= capacity ? ring : Arrays.copyOf(ring, capacity);
+    }
+
+    private static double[] ensureCapacity(double[] array, int capacity) {
+        return array.length >= capacity ? array : Arrays.copyOf(array, Math.max(capacity, 2 * array.length));
+    }
+}
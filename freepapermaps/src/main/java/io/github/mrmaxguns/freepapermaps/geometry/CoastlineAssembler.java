@@ -0,0 +1,502 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import io.github.mrmaxguns.freepapermaps.osm.TagList;
+import io.github.mrmaxguns.freepapermaps.rendering.ScaledCoordinate;
+
+import java.util.*;
+
+
+/**
+ * Builds land and water areas from OSM coastlines.
+ * <p>
+ * Coastlines are ways tagged <code>natural=coastline</code> that run with the land on their left and the water on
+ * their right. OSM splits each coastline into many ways, and a map extract only holds parts of them, so they cannot
+ * be filled like ordinary closed ways. The assembler chains ways that continue each other through a hash of their
+ * endpoints, cuts the chains to a rectangle, and closes each cut chain by walking along the rectangle's edge in the
+ * direction that keeps the land on its left. Chains that close by themselves inside the rectangle, such as small
+ * islands, become polygons of their own or holes in a polygon around them. Water is built the same way from the
+ * chains run backwards.
+ * <p>
+ * Coordinates are expected with y growing southward, as in scaled coordinates. Chains that end inside the rectangle,
+ * which only happens with incomplete data, cannot be closed and are left out. Whether a rectangle that no coastline
+ * crosses is land or water is decided by the closed coastlines around or inside it, and a rectangle without any
+ * coastline produces no areas at all.
+ */
+public class CoastlineAssembler {
+    public static final String COASTLINE_KEY = "natural";
+    public static final String COASTLINE_VALUE = "coastline";
+    /** The tags of assembled land areas. */
+    public static final TagList LAND_TAGS = createTags("land");
+    /** The tags of assembled water areas. */
+    public static final TagList WATER_TAGS = createTags("sea");
+
+    private final Clipper clipper;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    /** Positions of the corners along the edge, in the direction that keeps land on the left. */
+    private final double[] cornerPositions;
+    private final double perimeter;
+
+    /** Constructs an assembler that closes coastlines along the rectangle with the given corners. */
+    public CoastlineAssembler(double minX, double minY, double maxX, double maxY) {
+        if (!(minX < maxX) || !(minY < maxY)) {
+            throw new IllegalArgumentException("The rectangle must have a positive width and height.");
+        }
+
+        clipper = new Clipper(minX, minY, maxX, maxY);
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+
+        // Land lies to the left when walking down the west edge, east along the south edge, up the east edge, and west
+        // along the north edge.
+        double width = maxX - minX;
+        double height = maxY - minY;
+        cornerPositions = new double[] { 0, height, height + width, 2 * height + width };
+        perimeter = 2 * (width + height);
+    }
+
+    private static TagList createTags(String value) {
+        TagList tags = new TagList(1);
+        tags.put(COASTLINE_KEY, value);
+        return tags.toImmutable();
+    }
+
+    /** Returns true if <code>geometry</code> is tagged as a coastline. */
+    public static boolean isCoastline(Geometry geometry) {
+        return COASTLINE_VALUE.equals(geometry.getTags().get(COASTLINE_KEY));
+    }
+
+    /**
+     * Returns a new <code>GeometryCollection</code> with the land and water areas built from the coastlines in
+     * <code>geometries</code> added to its polygons. The new polygons are stored under ids counting up from
+     * <code>Long.MIN_VALUE</code>, which no OSM element uses. If there are no coastlines, or if
+     * <code>geometries</code> already holds areas built by an assembler (for example along a larger rectangle around
+     * this one), <code>geometries</code> is returned as-is.
+     */
+    public GeometryCollection assemble(GeometryCollection geometries) {
+        for (PolygonGeometry polygon : geometries.getPolygonsById().values()) {
+            if (polygon.getTags() == LAND_TAGS || polygon.getTags() == WATER_TAGS) {
+                return geometries;
+            }
+        }
+
+        List<WayGeometry> coastlines = new ArrayList<>();
+        for (WayGeometry way : geometries.getWaysById().values()) {
+            if (isCoastline(way)) {
+                coastlines.add(way);
+            }
+        }
+
+        if (coastlines.isEmpty()) {
+            return geometries;
+        }
+
+        Map<Long, PolygonGeometry> polygonsById = new HashMap<>(geometries.getPolygonsById());
+        long id = Long.MIN_VALUE;
+        for (PolygonGeometry land : assembleLand(coastlines)) {
+            polygonsById.put(id++, land);
+        }
+        for (PolygonGeometry water : assembleWater(coastlines)) {
+            polygonsById.put(id++, water);
+        }
+
+        return new GeometryCollection(geometries.getNodesById(), geometries.getWaysById(), polygonsById,
+                                      geometries.getRelationsById());
+    }
+
+    /** Returns the land areas inside the rectangle, tagged with <code>LAND_TAGS</code>. */
+    public List<PolygonGeometry> assembleLand(Collection<WayGeometry> coastlines) {
+        return assemble(chain(coastlines), LAND_TAGS);
+    }
+
+    /** Returns the water areas inside the rectangle, tagged with <code>WATER_TAGS</code>. */
+    public List<PolygonGeometry> assembleWater(Collection<WayGeometry> coastlines) {
+        List<double[]> chains = chain(coastlines);
+        chains.replaceAll(CoastlineAssembler::reverse);
+        return assemble(chains, WATER_TAGS);
+    }
+
+    /**
+     * Builds the areas to the left of the chains. Rings that keep the area on their left run counterclockwise on the
+     * map, which gives them a negative signed area since y grows downward.
+     */
+    private List<PolygonGeometry> assemble(List<double[]> chains, TagList tags) {
+        List<double[]> pieces = new ArrayList<>();
+        List<double[]> rings = new ArrayList<>();
+        List<double[]> surroundingRings = new ArrayList<>();
+
+        for (double[] chain : chains) {
+            if (isClosed(chain)) {
+                if (clipper.containsAll(chain)) {
+                    rings.add(chain);
+                } else if (!clipper.isOutside(chain)) {
+                    // Start outside, so that every piece begins and ends on the edge
+                    List<double[]> ringPieces = clipper.clipLine(startOutside(chain));
+                    if (ringPieces.isEmpty()) {
+                        surroundingRings.add(chain);
+                    }
+                    pieces.addAll(ringPieces);
+                }
+                continue;
+            }
+
+            List<double[]> chainPieces = clipper.clipLine(chain);
+            for (int i = 0; i < chainPieces.size(); ++i) {
+                boolean dangling = (i == 0 && isInside(chain[0], chain[1])) ||
+                                   (i == chainPieces.size() - 1 &&
+                                    isInside(chain[chain.length - 2], chain[chain.length - 1]));
+                if (!dangling) {
+                    pieces.add(chainPieces.get(i));
+                }
+            }
+        }
+
+        List<double[]> outerRings = new ArrayList<>(closeAlongEdge(pieces));
+        List<double[]> innerRings = new ArrayList<>();
+        for (double[] ring : rings) {
+            (signedArea(ring) < 0 ? outerRings : innerRings).add(ring);
+        }
+
+        if (pieces.isEmpty()) {
+            List<double[]> closedRings = new ArrayList<>(rings);
+            closedRings.addAll(surroundingRings);
+            if (isCornerCovered(closedRings)) {
+                outerRings.add(new double[] { minX, minY, minX, maxY, maxX, maxY, maxX, minY, minX, minY });
+            }
+        }
+
+        return group(outerRings, innerRings, tags);
+    }
+
+    /** Returns true if the north-west corner of the rectangle lies to the left of the innermost ring around it. */
+    private boolean isCornerCovered(List<double[]> closedRings) {
+        NodeGeometry corner = new NodeGeometry(new ScaledCoordinate(minX, minY));
+        double[] innermost = null;
+        double[] outermost = null;
+        for (double[] ring : closedRings) {
+            double area = Math.abs(signedArea(ring));
+            if ((innermost == null || area < Math.abs(signedArea(innermost))) && toWayGeometry(ring).contains(corner)) {
+                innermost = ring;
+            }
+            if (outermost == null || area > Math.abs(signedArea(outermost))) {
+                outermost = ring;
+            }
+        }
+
+        if (innermost != null) {
+            return signedArea(innermost) < 0;
+        }
+
+        // Outside of every ring, the corner is on the other side of the outermost one.
+        return outermost != null && signedArea(outermost) > 0;
+    }
+
+    /** Puts every inner ring into the smallest outer ring that contains it. */
+    private static List<PolygonGeometry> group(List<double[]> outerRings, List<double[]> innerRings, TagList tags) {
+        List<PreparedRing> preparedRings = new ArrayList<>(outerRings.size());
+        double[] areas = new double[outerRings.size()];
+        List<List<WayGeometry>> holes = new ArrayList<>(outerRings.size());
+        for (int i = 0; i < outerRings.size(); ++i) {
+            preparedRings.add(new PreparedRing(toWayGeometry(outerRings.get(i))));
+            areas[i] = Math.abs(signedArea(outerRings.get(i)));
+            holes.add(new ArrayList<>());
+        }
+
+        for (double[] innerRing : innerRings) {
+            WayGeometry hole = toWayGeometry(innerRing);
+            int best = -1;
+            for (int i = 0; i < preparedRings.size(); ++i) {
+                if ((best == -1 || areas[i] < areas[best]) && preparedRings.get(i).contains(hole.getFirstNode())) {
+                    best = i;
+                }
+            }
+
+            if (best != -1) {
+                holes.get(best).add(hole);
+            }
+        }
+
+        List<PolygonGeometry> result = new ArrayList<>(outerRings.size());
+        for (int i = 0; i < preparedRings.size(); ++i) {
+            PolygonGeometry polygon = new PolygonGeometry(preparedRings.get(i).getRing(), holes.get(i));
+            polygon.setTags(tags);
+            result.add(polygon);
+        }
+        return result;
+    }
+
+    /**
+     * Closes pieces that begin and end on the edge of the rectangle into rings. From the end of each piece, the ring
+     * follows the edge, turning at the corners, until it reaches the start of the next piece.
+     */
+    private List<double[]> closeAlongEdge(List<double[]> pieces) {
+        double[] entries = new double[pieces.size()];
+        double[] exits = new double[pieces.size()];
+        for (int i = 0; i < pieces.size(); ++i) {
+            double[] piece = pieces.get(i);
+            entries[i] = getEdgePosition(piece[0], piece[1]);
+            exits[i] = getEdgePosition(piece[piece.length - 2], piece[piece.length - 1]);
+        }
+
+        List<double[]> rings = new ArrayList<>();
+        boolean[] used = new boolean[pieces.size()];
+        for (int start = 0; start < pieces.size(); ++start) {
+            if (used[start]) {
+                continue;
+            }
+            used[start] = true;
+
+            double[] ring = pieces.get(start).clone();
+            int length = ring.length;
+            int current = start;
+            while (true) {
+                // The ring can always be closed by returning to its own start
+                int next = -1;
+                double nextDistance = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < pieces.size(); ++i) {
+                    double distance = getDistanceAlongEdge(exits[current], entries[i]);
+                    if ((i == start || !used[i]) && distance < nextDistance) {
+                        next = i;
+                        nextDistance = distance;
+                    }
+                }
+
+                int edge = getEdge(exits[current]);
+                for (int step = 1; step <= cornerPositions.length; ++step) {
+                    int corner = (edge + step) % cornerPositions.length;
+                    double distance = getDistanceAlongEdge(exits[current], cornerPositions[corner]);
+                    if (distance >= nextDistance) {
+                        break;
+                    }
+                    if (distance > 0) {
+                        ring = append(ring, length, getCorner(corner));
+                        length += 2;
+                    }
+                }
+
+                if (next == start) {
+                    ring = append(ring, length, new double[] { ring[0], ring[1] });
+                    length += 2;
+                    break;
+                }
+
+                used[next] = true;
+                ring = append(ring, length, pieces.get(next));
+                length += pieces.get(next).length;
+                current = next;
+            }
+            rings.add(Arrays.copyOf(ring, length));
+        }
+        return rings;
+    }
+
+    /** Returns how far along the edge a point on it lies, starting from the north-west corner. */
+    private double getEdgePosition(double x, double y) {
+        double west = Math.abs(x - minX);
+        double south = Math.abs(y - maxY);
+        double east = Math.abs(x - maxX);
+        double north = Math.abs(y - minY);
+        double nearest = Math.min(Math.min(west, south), Math.min(east, north));
+
+        if (nearest == west) {
+            return cornerPositions[0] + clamp(y - minY, maxY - minY);
+        } else if (nearest == south) {
+            return cornerPositions[1] + clamp(x - minX, maxX - minX);
+        } else if (nearest == east) {
+            return cornerPositions[2] + clamp(maxY - y, maxY - minY);
+        }
+        return (cornerPositions[3] + clamp(maxX - x, maxX - minX)) % perimeter;
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    /** Returns the index of the side a position lies on, which is also the index of the corner it starts at. */
+    private int getEdge(double position) {
+        int edge = 0;
+        while (edge + 1 < cornerPositions.length && position >= cornerPositions[edge + 1]) {
+            ++edge;
+        }
+        return edge;
+    }
+
+    private double[] getCorner(int corner) {
+        return switch (corner) {
+            case 0 -> new double[] { minX, minY };
+            case 1 -> new double[] { minX, maxY };
+            case 2 -> new double[] { maxX, maxY };
+            default -> new double[] { maxX, minY };
+        };
+    }
+
+    /** Returns how far one has to walk along the edge to get from <code>from</code> to <code>to</code>. */
+    private double getDistanceAlongEdge(double from, double to) {
+        double distance = (to - from) % perimeter;
+        return distance < 0 ? distance + perimeter : distance;
+    }
+
+    private boolean isInside(double x, double y) {
+        return x > minX && x < maxX && y > minY && y < maxY;
+    }
+
+    /** Joins ways in which one begins where the other ends into chains, without changing their direction. */
+    private static List<double[]> chain(Collection<WayGeometry> coastlines) {
+        List<double[]> ways = new ArrayList<>(coastlines.size());
+        for (WayGeometry coastline : coastlines) {
+            if (coastline.getNodes().size() >= 2) {
+                ways.add(toPoints(coastline));
+            }
+        }
+
+        Map<Endpoint, List<Integer>> waysByStart = new HashMap<>();
+        Map<Endpoint, List<Integer>> waysByEnd = new HashMap<>();
+        for (int i = 0; i < ways.size(); ++i) {
+            double[] way = ways.get(i);
+            if (!isClosed(way)) {
+                waysByStart.computeIfAbsent(Endpoint.first(way), k -> new ArrayList<>(1)).add(i);
+                waysByEnd.computeIfAbsent(Endpoint.last(way), k -> new ArrayList<>(1)).add(i);
+            }
+        }
+
+        List<double[]> chains = new ArrayList<>();
+        boolean[] used = new boolean[ways.size()];
+        for (int i = 0; i < ways.size(); ++i) {
+            if (used[i]) {
+                continue;
+            }
+            used[i] = true;
+
+            // Follow the coastline forwards, then backwards to where it begins. A chain that closes stops by itself,
+            // since its first way is already used.
+            Deque<Integer> order = new ArrayDeque<>();
+            order.add(i);
+            int next;
+            while ((next = findUnused(waysByStart, Endpoint.last(ways.get(order.getLast())), used)) != -1) {
+                order.addLast(next);
+            }
+            while ((next = findUnused(waysByEnd, Endpoint.first(ways.get(order.getFirst())), used)) != -1) {
+                order.addFirst(next);
+            }
+
+            chains.add(concatenate(ways, order));
+        }
+        return chains;
+    }
+
+    /** Returns and marks the first unused way at <code>endpoint</code>, or -1 if there is none. */
+    private static int findUnused(Map<Endpoint, List<Integer>> waysByEndpoint, Endpoint endpoint, boolean[] used) {
+        for (int candidate : waysByEndpoint.getOrDefault(endpoint, List.of())) {
+            if (!used[candidate]) {
+                used[candidate] = true;
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private static double[] concatenate(List<double[]> ways, Collection<Integer> order) {
+        if (order.size() == 1) {
+            return ways.get(order.iterator().next());
+        }
+
+        int length = 2;
+        for (int i : order) {
+            length += ways.get(i).length - 2;
+        }
+
+        // Consecutive ways share a point, which is only kept once
+        double[] result = new double[length];
+        int position = 0;
+        for (int i : order) {
+            double[] way = ways.get(i);
+            int skip = position == 0 ? 0 : 2;
+            System.arraycopy(way, skip, result, position, way.length - skip);
+            position += way.length - skip;
+        }
+        return result;
+    }
+
+    /** Returns a copy of a closed chain that starts and ends at a point outside the rectangle. */
+    private double[] startOutside(double[] ring) {
+        int start = 0;
+        while (start < ring.length && isInside(ring[start], ring[start + 1])) {
+            start += 2;
+        }
+
+        // The last point repeats the first, so it is left out when going around.
+        int vertices = ring.length - 2;
+        double[] result = new double[ring.length];
+        for (int i = 0; i < vertices; i += 2) {
+            result[i] = ring[(start + i) % vertices];
+            result[i + 1] = ring[(start + i) % vertices + 1];
+        }
+        result[vertices] = result[0];
+        result[vertices + 1] = result[1];
+        return result;
+    }
+
+    private static double[] append(double[] points, int length, double[] addition) {
+        if (length + addition.length > points.length) {
+            points = Arrays.copyOf(points, Math.max(points.length * 2, length + addition.length));
+        }
+        System.arraycopy(addition, 0, points, length, addition.length);
+        return points;
+    }
+
+    private static double[] reverse(double[] points) {
+        double[] result = new double[points.length];
+        for (int i = 0; i < points.length; i += 2) {
+            result[points.length - 2 - i] = points[i];
+            result[points.length - 1 - i] = points[i + 1];
+        }
+        return result;
+    }
+
+    private static boolean isClosed(double[] points) {
+        return points.length >= 4 && points[0] == points[points.length - 2] && points[1] == points[points.length - 1];
+    }
+
+    /** Returns the shoelace area of a closed ring, which is positive if it runs clockwise on the map. */
+    private static double signedArea(double[] ring) {
+        double area = 0;
+        for (int i = 0; i + 3 < ring.length; i += 2) {
+            area += ring[i] * ring[i + 3] - ring[i + 2] * ring[i + 1];
+        }
+        return area / 2;
+    }
+
+    private static double[] toPoints(WayGeometry way) {
+        List<NodeGeometry> nodes = way.getNodes();
+        double[] points = new double[nodes.size() * 2];
+        for (int i = 0; i < nodes.size(); ++i) {
+            points[2 * i] = nodes.get(i).getPosition().getX();
+            points[2 * i + 1] = nodes.get(i).getPosition().getY();
+        }
+        return points;
+    }
+
+    private static WayGeometry toWayGeometry(double[] ring) {
+        List<NodeGeometry> nodes = new ArrayList<>(ring.length / 2);
+        for (int i = 0; i + 2 < ring.length; i += 2) {
+            nodes.add(new NodeGeometry(new ScaledCoordinate(ring[i], ring[i + 1])));
+        }
+        nodes.add(nodes.get(0));
+        return new WayGeometry(nodes);
+    }
+
+    /** The exact position of a way's end, used to find the way that continues it. */
+    private record Endpoint(double x, double y) {
+        public static Endpoint first(double[] points) {
+            return new Endpoint(points[0], points[1]);
+        }
+
+        public static Endpoint last(double[] points) {
+            return new Endpoint(points[points.length - 2], points[points.length - 1]);
+        }
+    }
+}
@@ -2,16 +2,30 @@ package io.github.mrmaxguns.freepapermaps.geometry;
 
 import io.github.mrmaxguns.freepapermaps.osm.TagList;
 
+import java.util.Objects;
+
 
 /** Represents a geometry loosely based on both the OSM and SimpleFeatures specifications. */
 public abstract class Geometry {
-    /** A list of OSM tags associated with this <code>Geometry</code>. */
-    private final TagList tags = new TagList();
+    /**
+     * A list of OSM tags associated with this <code>Geometry</code>. Geometries are usually given their tags right
+     * away, so a mutable list is only created if the tags are asked for before that.
+     */
+    private TagList tags = null;
 
+    /** Returns this geometry's tags, which are a new mutable list unless tags have been set. */
     public TagList getTags() {
+        if (tags == null) {
+            tags = new TagList();
+        }
         return tags;
     }
 
+    /** Replaces this geometry's tags. Immutable tag lists may be shared between several geometries. */
+    public void setTags(TagList tags) {
+        this.tags = Objects.requireNonNull(tags);
+    }
+
     /** Returns true if the <code>Geometry</code> passes basic validation checks that are essential for proper
      * rendering. */
     public abstract boolean isValid();
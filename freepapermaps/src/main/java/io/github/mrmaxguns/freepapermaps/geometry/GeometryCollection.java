@@ -11,6 +11,7 @@ import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class GeometryCollection {
@@ -20,6 +21,8 @@ public class GeometryCollection {
     private final Map<Long, WayGeometry> waysById;
     private final Map<Long, PolygonGeometry> polygonsById;
     private final Map<Long, RelationGeometry> relationsById;
+    /** Simplified copies of this collection by tolerance, so that re-rendering the same geometry does not redo them. */
+    private final Map<Double, GeometryCollection> simplifiedByTolerance = new ConcurrentHashMap<>();
 
     public GeometryCollection(Map<Long, NodeGeometry> nodesById, Map<Long, WayGeometry> waysById,
                               Map<Long, PolygonGeometry> polygonsById, Map<Long, RelationGeometry> relationsById) {
@@ -38,11 +41,13 @@ public class GeometryCollection {
         Map<Long, WayGeometry> waysById = new HashMap<>();
         Map<Long, PolygonGeometry> polygonsById = new HashMap<>();
         for (Way w : osm.getWays()) {
-            WayGeometry geometry = WayGeometry.fromOSM(osm, w, projection, scaler);
+            // Vertices are shared with the node geometries above, and closed ways share their ring with the polygon,
+            // so each node is only projected once and tags are never copied.
+            WayGeometry geometry = WayGeometry.fromOSM(osm, w, nodesById, projection, scaler);
             waysById.put(w.getId(), geometry);
 
             if (geometry.isClosed()) {
-                polygonsById.put(w.getId(), PolygonGeometry.fromOSM(osm, w, projection, scaler));
+                polygonsById.put(w.getId(), PolygonGeometry.fromWayGeometry(geometry));
             }
         }
 
@@ -76,4 +81,15 @@ public class GeometryCollection {
     public Map<Long, RelationGeometry> getRelationsById() {
         return relationsById;
     }
+
+    /**
+     * Returns this collection simplified with a <code>Simplifier</code> of the given tolerance, or the collection
+     * itself if the tolerance is zero. The result is kept, so asking again for the same tolerance is free.
+     */
+    public GeometryCollection simplify(double tolerance) {
+        if (tolerance == 0) {
+            return this;
+        }
+        return simplifiedByTolerance.computeIfAbsent(tolerance, t -> new Simplifier(t).simplify(this));
+    }
 }
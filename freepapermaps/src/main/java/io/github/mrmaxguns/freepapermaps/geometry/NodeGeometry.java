@@ -2,6 +2,7 @@ package io.github.mrmaxguns.freepapermaps.geometry;
 
 import io.github.mrmaxguns.freepapermaps.osm.Node;
 import io.github.mrmaxguns.freepapermaps.projections.Projection;
+import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
 import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
 
 import java.util.Objects;
@@ -31,16 +32,20 @@ public class NodeGeometry extends Geometry {
      * scaling/projection applied.
      */
     public static NodeGeometry fromOSM(Node node, Projection projection, Scaler scaler) {
-        Coordinate<?> position;
+        NodeGeometry result = fromPosition(node.getPosition(), projection, scaler);
+        result.setTags(node.getTags().toImmutable());
+        return result;
+    }
+
+    /**
+     * Constructs an untagged <code>NodeGeometry</code> from a position, projecting and scaling it like
+     * <a href="#{@link}>{@link #fromOSM(Node, Projection, Scaler)}</a>.
+     */
+    public static NodeGeometry fromPosition(WGS84Coordinate position, Projection projection, Scaler scaler) {
         if (projection != null && scaler != null) {
-            position = scaler.scale(projection.project(node.getPosition()));
-        } else {
-            position = node.getPosition();
+            return new NodeGeometry(scaler.scale(projection.project(position)));
         }
-
-        NodeGeometry result = new NodeGeometry(position);
-        result.getTags().putAll(node.getTags());
-        return result;
+        return new NodeGeometry(position);
     }
 
     public Coordinate<?> getPosition() {
@@ -49,13 +49,21 @@ public class PolygonGeometry extends Geometry {
 
     public static PolygonGeometry fromOSM(OSM osm, Way way, Projection projection, Scaler scaler) throws
             UserInputException {
-        WayGeometry exteriorRing = WayGeometry.fromOSM(osm, way, projection, scaler);
+        return fromWayGeometry(WayGeometry.fromOSM(osm, way, projection, scaler));
+    }
 
-        if (exteriorRing.isClosed()) {
-            return new PolygonGeometry(exteriorRing, new ArrayList<>());
+    /**
+     * Constructs a <code>PolygonGeometry</code> without holes from an already built closed way, sharing its nodes and
+     * tags. Returns <code>null</code> if the way is not closed.
+     */
+    public static PolygonGeometry fromWayGeometry(WayGeometry exteriorRing) {
+        if (!exteriorRing.isClosed()) {
+            return null;
         }
 
-        return null;
+        PolygonGeometry result = new PolygonGeometry(exteriorRing, new ArrayList<>());
+        result.setTags(exteriorRing.getTags());
+        return result;
     }
 
     public static List<PolygonGeometry> fromOSM(OSM osm, Relation relation) throws UserInputException {
@@ -168,12 +176,11 @@ public class PolygonGeometry extends Geometry {
         List<PolygonGeometry> result = new ArrayList<>();
 
         for (int i = 0; i < rings.size(); ++i) {
+            // Each ring is tested against every other ring, so it is worth preparing it once.
+            PreparedRing ring = new PreparedRing(rings.getGeometry(i));
             for (int j = 0; j < rings.size(); ++j) {
-                if (i == j) {
-                    contains[i][j] = false;
-                }
-
-                contains[i][j] = rings.getGeometry(i).contains(rings.getGeometry(j));
+                contains[i][j] = i != j && ring.boundsContain(rings.getGeometry(j)) &&
+                                 ring.contains(rings.getGeometry(j));
             }
         }
 
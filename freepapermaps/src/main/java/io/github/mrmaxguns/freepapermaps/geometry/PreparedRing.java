@@ -0,0 +1,269 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A closed <code>WayGeometry</code> prepared for many containment tests.
+ * <p>
+ * <a href="#{@link}>{@link WayGeometry#contains(NodeGeometry)}</a> looks at every edge of the ring for every point.
+ * A prepared ring sorts its edges into horizontal bands, so that a point only needs to be tested against the few edges
+ * that cross its band, and points outside the ring's bounding box are rejected immediately. The answers are exactly
+ * those of <code>WayGeometry</code>: the same crossing rule is applied to the same edges.
+ * <p>
+ * Preparing a ring takes time linear in its size, so it pays off as soon as a ring is tested against more than a
+ * handful of points. A prepared ring is immutable and can be shared between threads.
+ */
+public class PreparedRing {
+    /** The average number of band entries per edge above which fewer, taller bands are used. */
+    private static final int MAX_ENTRIES_PER_EDGE = 8;
+
+    private final WayGeometry ring;
+    private final double[] xs;
+    private final double[] ys;
+    private final double minX, minY, maxX, maxY;
+
+    private final int bandCount;
+    private final double bandHeight;
+    /** Band <code>b</code> lists its edges from <code>bandStarts[b]</code> up to <code>bandStarts[b + 1]</code>. */
+    private final int[] bandStarts;
+    /** Edge <code>i</code> runs from vertex <code>i</code> to vertex <code>i + 1</code>, wrapping around. */
+    private final int[] bandEdges;
+
+    /**
+     * Prepares a closed ring.
+     *
+     * @throws IllegalArgumentException if <code>ring</code> is not closed
+     */
+    public PreparedRing(WayGeometry ring) {
+        if (!ring.isClosed()) {
+            throw new IllegalArgumentException("Cannot test containment with an unclosed way.");
+        }
+
+        this.ring = ring;
+        List<NodeGeometry> nodes = ring.getNodes();
+        int n = nodes.size();
+        xs = new double[n];
+        ys = new double[n];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; ++i) {
+            xs[i] = nodes.get(i).getPosition().getX();
+            ys[i] = nodes.get(i).getPosition().getY();
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+
+        // Start with about one band per edge, and use fewer bands if long edges would be listed in too many of them
+        int bands = Math.max(1, n);
+        long entries = countEntries(bands);
+        while (bands > 1 && entries > (long) MAX_ENTRIES_PER_EDGE * n) {
+            bands /= 2;
+            entries = countEntries(bands);
+        }
+        bandCount = bands;
+        bandHeight = (maxY - minY) / bandCount;
+
+        bandStarts = new int[bandCount + 1];
+        for (int i = 0; i < n; ++i) {
+            for (int b = getFirstBand(i); b <= getLastBand(i); ++b) {
+                ++bandStarts[b + 1];
+            }
+        }
+        for (int b = 0; b < bandCount; ++b) {
+            bandStarts[b + 1] += bandStarts[b];
+        }
+
+        bandEdges = new int[bandStarts[bandCount]];
+        int[] next = Arrays.copyOf(bandStarts, bandCount);
+        for (int i = 0; i < n; ++i) {
+            for (int b = getFirstBand(i); b <= getLastBand(i); ++b) {
+                bandEdges[next[b]++] = i;
+            }
+        }
+    }
+
+    /** Returns how many band entries there would be with <code>bands</code> bands. */
+    private long countEntries(int bands) {
+        double height = (maxY - minY) / bands;
+        long entries = 0;
+        for (int i = 0; i < xs.length; ++i) {
+            int j = (i + 1) % xs.length;
+            entries += getBand(Math.max(ys[i], ys[j]), bands, height) - getBand(Math.min(ys[i], ys[j]), bands, height)
+                       + 1;
+        }
+        return entries;
+    }
+
+    private int getBand(double y, int bands, double height) {
+        if (!(height > 0)) {
+            return 0;
+        }
+        return Math.max(0, Math.min(bands - 1, (int) ((y - minY) / height)));
+    }
+
+    private int getBand(double y) {
+        return getBand(y, bandCount, bandHeight);
+    }
+
+    private int getFirstBand(int edge) {
+        return getBand(Math.min(ys[edge], ys[(edge + 1) % ys.length]));
+    }
+
+    private int getLastBand(int edge) {
+        return getBand(Math.max(ys[edge], ys[(edge + 1) % ys.length]));
+    }
+
+    public WayGeometry getRing() {
+        return ring;
+    }
+
+    /**
+     * Returns true if the point lies within the ring, like
+     * <a href="#{@link}>{@link WayGeometry#contains(NodeGeometry)}</a>.
+     */
+    public boolean contains(double x, double y) {
+        if (!(x >= minX && x <= maxX && y >= minY && y <= maxY)) {
+            return false;
+        }
+
+        boolean oddNodes = false;
+        int band = getBand(y);
+        for (int k = bandStarts[band]; k < bandStarts[band + 1]; ++k) {
+            int i = bandEdges[k];
+            int j = (i + 1) % xs.length;
+            double polyXI = xs[i], polyYI = ys[i], polyXJ = xs[j], polyYJ = ys[j];
+
+            if ((polyYI < y && polyYJ >= y) || (polyYJ < y && polyYI >= y)) {
+                if (polyXI + (((y - polyYI) / (polyYJ - polyYI)) * (polyXJ - polyXI)) < x) {
+                    oddNodes = !oddNodes;
+                }
+            }
+        }
+
+        return oddNodes;
+    }
+
+    /** Returns true if <code>node</code> lies within the ring. */
+    public boolean contains(NodeGeometry node) {
+        return contains(node.getPosition().getX(), node.getPosition().getY());
+    }
+
+    /**
+     * Returns true if <code>other</code> is completely contained by the ring, like
+     * <a href="#{@link}>{@link WayGeometry#contains(WayGeometry)}</a>.
+     *
+     * @throws IllegalArgumentException if <code>other</code> is unclosed
+     */
+    public boolean contains(WayGeometry other) {
+        if (!other.isClosed()) {
+            throw new IllegalArgumentException("Cannot test containment with an unclosed way.");
+        }
+
+        for (NodeGeometry n : other.getNodes()) {
+            if (!contains(n)) {
+                return false;
+            }
+        }
+
+        // Edges can leave the ring even though every node is inside it.
+        return !intersects(other);
+    }
+
+    /**
+     * Returns true if an edge of <code>other</code> intersects an edge of the ring, like
+     * <a href="#{@link}>{@link WayGeometry#intersects(WayGeometry)}</a>.
+     */
+    public boolean intersects(WayGeometry other) {
+        List<NodeGeometry> otherNodes = other.getNodes();
+        List<NodeGeometry> nodes = ring.getNodes();
+
+        for (int j = 0; j < otherNodes.size(); ++j) {
+            LineSegment s2 = new LineSegment(otherNodes.get(j).getPosition(),
+                                             otherNodes.get((j + 1) % otherNodes.size()).getPosition());
+            if (s2.isDegenerate()) {
+                continue;
+            }
+
+            double segmentMinY = Math.min(s2.edge1().getY(), s2.edge2().getY());
+            double segmentMaxY = Math.max(s2.edge1().getY(), s2.edge2().getY());
+            if (segmentMaxY < minY || segmentMinY > maxY) {
+                continue;
+            }
+
+            int firstBand = getBand(segmentMinY);
+            int lastBand = getBand(segmentMaxY);
+            for (int band = firstBand; band <= lastBand; ++band) {
+                for (int k = bandStarts[band]; k < bandStarts[band + 1]; ++k) {
+                    int i = bandEdges[k];
+
+                    // An edge spanning several bands is only tested in the first band it shares with the segment
+                    if (band != Math.max(firstBand, getFirstBand(i))) {
+                        continue;
+                    }
+
+                    LineSegment s1 = new LineSegment(nodes.get(i).getPosition(),
+                                                     nodes.get((i + 1) % nodes.size()).getPosition());
+                    if (!s1.isDegenerate() && s1.intersects(s2)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if two edges of the ring intersect, like
+     * <a href="#{@link}>{@link WayGeometry#intersects(WayGeometry)}</a> given <code>null</code>. Only edges sharing a
+     * band are compared, so long rings are not tested pair by pair.
+     */
+    public boolean intersectsItself() {
+        List<NodeGeometry> nodes = ring.getNodes();
+
+        for (int band = 0; band < bandCount; ++band) {
+            for (int k = bandStarts[band]; k < bandStarts[band + 1]; ++k) {
+                int i = bandEdges[k];
+                LineSegment s1 = new LineSegment(nodes.get(i).getPosition(),
+                                                 nodes.get((i + 1) % nodes.size()).getPosition());
+                if (s1.isDegenerate()) {
+                    continue;
+                }
+
+                // Edges are listed in order within a band, so each pair is seen once, in the first band they share
+                for (int l = k + 1; l < bandStarts[band + 1]; ++l) {
+                    int j = bandEdges[l];
+                    if (band != Math.max(getFirstBand(i), getFirstBand(j))) {
+                        continue;
+                    }
+
+                    LineSegment s2 = new LineSegment(nodes.get(j).getPosition(),
+                                                     nodes.get((j + 1) % nodes.size()).getPosition());
+                    if (!s2.isDegenerate() && s1.intersects(s2)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns true if the bounding box of <code>other</code> lies within the bounding box of the ring. */
+    public boolean boundsContain(WayGeometry other) {
+        for (NodeGeometry n : other.getNodes()) {
+            double x = n.getPosition().getX();
+            double y = n.getPosition().getY();
+            if (!(x >= minX && x <= maxX && y >= minY && y <= maxY)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
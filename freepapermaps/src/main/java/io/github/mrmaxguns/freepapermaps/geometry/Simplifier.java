@@ -0,0 +1,198 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import java.util.*;
+
+
+/**
+ * Removes vertices from ways and polygons that would not be visible at the map's scale, using the Douglas-Peucker
+ * algorithm.
+ * <p>
+ * The tolerance is given in the units of the geometry's coordinates. Geometry built by <code>GeometryCollection</code>
+ * with a <code>Scaler</code> is in millimeters on paper, so the tolerance is simply the largest distance on paper that
+ * a removed vertex may lie from the simplified line. Since it is a distance on paper, the same tolerance removes more
+ * vertices the smaller the map's scale is.
+ * <p>
+ * Closed ways (rings) are simplified so that they remain valid rings. If simplifying a ring would leave it with fewer
+ * than four nodes or make it intersect itself, the original ring is kept.
+ */
+public class Simplifier {
+    /** The default tolerance in millimeters, which is well below the size of a printer dot. */
+    public static final double DEFAULT_TOLERANCE = 0.05;
+
+    private final double tolerance;
+    private final double toleranceSquared;
+
+    /** Constructs a <code>Simplifier</code> with a tolerance in coordinate units (millimeters for scaled geometry). */
+    public Simplifier(double tolerance) {
+        if (tolerance < 0 || Double.isNaN(tolerance)) {
+            throw new IllegalArgumentException("Simplification tolerance must be a non-negative value.");
+        }
+
+        this.tolerance = tolerance;
+        this.toleranceSquared = tolerance * tolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Returns a new <code>GeometryCollection</code> with all ways and polygons simplified. Nodes and relations are kept
+     * as-is. Vertices are shared with the original collection, and a closed way and the polygon built from it keep
+     * sharing the same simplified ring.
+     */
+    public GeometryCollection simplify(GeometryCollection geometries) {
+        Map<WayGeometry, WayGeometry> simplifiedWays = new IdentityHashMap<>();
+
+        Map<Long, WayGeometry> waysById = new HashMap<>();
+        for (Map.Entry<Long, WayGeometry> entry : geometries.getWaysById().entrySet()) {
+            waysById.put(entry.getKey(), simplifiedWays.computeIfAbsent(entry.getValue(), this::simplify));
+        }
+
+        Map<Long, PolygonGeometry> polygonsById = new HashMap<>();
+        for (Map.Entry<Long, PolygonGeometry> entry : geometries.getPolygonsById().entrySet()) {
+            polygonsById.put(entry.getKey(), simplify(entry.getValue(), simplifiedWays));
+        }
+
+        return new GeometryCollection(geometries.getNodesById(), waysById, polygonsById,
+                                      geometries.getRelationsById());
+    }
+
+    /** Returns a simplified polygon, or <code>polygon</code> itself if none of its rings could be simplified. */
+    public PolygonGeometry simplify(PolygonGeometry polygon) {
+        return simplify(polygon, new IdentityHashMap<>());
+    }
+
+    private PolygonGeometry simplify(PolygonGeometry polygon, Map<WayGeometry, WayGeometry> simplifiedWays) {
+        WayGeometry exteriorRing = simplifiedWays.computeIfAbsent(polygon.getExteriorRing(), this::simplify);
+
+        boolean changed = exteriorRing != polygon.getExteriorRing();
+        List<WayGeometry> interiorRings = new ArrayList<>(polygon.getInteriorRings().size());
+        for (WayGeometry ring : polygon.getInteriorRings()) {
+            WayGeometry simplifiedRing = simplifiedWays.computeIfAbsent(ring, this::simplify);
+            changed |= simplifiedRing != ring;
+            interiorRings.add(simplifiedRing);
+        }
+
+        if (!changed) {
+            return polygon;
+        }
+
+        PolygonGeometry result = new PolygonGeometry(exteriorRing, interiorRings);
+        result.setTags(polygon.getTags());
+        return result;
+    }
+
+    /**
+     * Returns a simplified way, or <code>way</code> itself if no vertices could be removed. Closed ways are treated as
+     * rings.
+     */
+    public WayGeometry simplify(WayGeometry way) {
+        List<NodeGeometry> nodes = way.getNodes();
+        if (tolerance == 0 || nodes.size() <= 2) {
+            return way;
+        }
+
+        boolean[] keep = new boolean[nodes.size()];
+        int last = nodes.size() - 1;
+
+        if (way.isClosed()) {
+            // A ring's endpoints are the same, so the first segment is split at the vertex farthest from its start.
+            int farthest = 1;
+            double farthestDistance = -1;
+            for (int i = 1; i < last; ++i) {
+                double distance = distanceSquared(nodes.get(0).getPosition(), nodes.get(i).getPosition());
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+
+            markKeptVertices(nodes, 0, farthest, keep);
+            markKeptVertices(nodes, farthest, last, keep);
+        } else {
+            markKeptVertices(nodes, 0, last, keep);
+        }
+
+        List<NodeGeometry> simplifiedNodes = new ArrayList<>();
+        for (int i = 0; i < keep.length; ++i) {
+            if (keep[i]) {
+                simplifiedNodes.add(nodes.get(i));
+            }
+        }
+
+        if (simplifiedNodes.size() == nodes.size()) {
+            return way;
+        }
+
+        // A prepared ring finds self-intersections without comparing every pair of edges, which matters for long rings
+        WayGeometry result = new WayGeometry(simplifiedNodes);
+        if (way.isClosed() && (simplifiedNodes.size() < 4 || new PreparedRing(result).intersectsItself())) {
+            return way;
+        }
+
+        result.setTags(way.getTags());
+        return result;
+    }
+
+    /**
+     * Marks the vertices between <code>start</code> and <code>end</code> (inclusive) that must be kept. Uses an explicit
+     * stack so that very long ways cannot overflow the call stack.
+     */
+    private void markKeptVertices(List<NodeGeometry> nodes, int start, int end, boolean[] keep) {
+        keep[start] = true;
+        keep[end] = true;
+
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] { start, end });
+
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int second = range[1];
+
+            Coordinate<?> a = nodes.get(first).getPosition();
+            Coordinate<?> b = nodes.get(second).getPosition();
+
+            int farthest = -1;
+            double farthestDistance = toleranceSquared;
+            for (int i = first + 1; i < second; ++i) {
+                double distance = segmentDistanceSquared(nodes.get(i).getPosition(), a, b);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+
+            if (farthest != -1) {
+                keep[farthest] = true;
+                ranges.push(new int[] { first, farthest });
+                ranges.push(new int[] { farthest, second });
+            }
+        }
+    }
+
+    private static double distanceSquared(Coordinate<?> p, Coordinate<?> q) {
+        double dx = p.getX() - q.getX();
+        double dy = p.getY() - q.getY();
+        return dx * dx + dy * dy;
+    }
+
+    /** Returns the squared distance from <code>p</code> to the segment from <code>a</code> to <code>b</code>. */
+    private static double segmentDistanceSquared(Coordinate<?> p, Coordinate<?> a, Coordinate<?> b) {
+        double dx = b.getX() - a.getX();
+        double dy = b.getY() - a.getY();
+        double lengthSquared = dx * dx + dy * dy;
+
+        if (lengthSquared == 0) {
+            return distanceSquared(p, a);
+        }
+
+        double t = ((p.getX() - a.getX()) * dx + (p.getY() - a.getY()) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+
+        double x = a.getX() + t * dx - p.getX();
+        double y = a.getY() + t * dy - p.getY();
+        return x * x + y * y;
+    }
+}
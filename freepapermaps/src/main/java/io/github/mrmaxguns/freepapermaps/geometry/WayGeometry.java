@@ -1,15 +1,16 @@
 package io.github.mrmaxguns.freepapermaps.geometry;
 
 import io.github.mrmaxguns.freepapermaps.UserInputException;
-import io.github.mrmaxguns.freepapermaps.osm.Node;
 import io.github.mrmaxguns.freepapermaps.osm.OSM;
 import io.github.mrmaxguns.freepapermaps.osm.Way;
 import io.github.mrmaxguns.freepapermaps.projections.Projection;
+import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
 import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 
 /** Represents OSM way geometry similarly to a SimpleFeatures LineString. */
@@ -17,10 +18,13 @@ public class WayGeometry extends Geometry {
     /** An ordered and IMMUTABLE list of nodes. Never <code>null</code>. */
     private final List<NodeGeometry> nodes;
 
-    // Cached computations
-    private transient Boolean cachedIsValid;
-    private transient Boolean cachedIsCompletelyValid;
-    private transient Boolean cachedIsValidRing;
+    // Cached computations. Ways are shared between the threads that parse and render in parallel, so the caches are
+    // volatile. Two threads may still both compute a value, which is harmless since they get the same result.
+    private transient volatile Boolean cachedIsValid;
+    private transient volatile Boolean cachedIsCompletelyValid;
+    private transient volatile Boolean cachedIsValidRing;
+    private transient volatile Double cachedEnvelopeArea;
+    private transient volatile Double cachedArea;
 
     public WayGeometry(List<NodeGeometry> nodes) {
         if (nodes == null) {
@@ -41,11 +45,37 @@ public class WayGeometry extends Geometry {
 
     public static WayGeometry fromOSM(OSM osm, Way way, Projection projection, Scaler scaler) throws
             UserInputException {
-        List<Node> rawNodes = osm.getNodesInWay(way);
-        List<NodeGeometry> nodes = rawNodes.stream().map(n -> NodeGeometry.fromOSM(n, projection, scaler)).toList();
+        return fromOSM(osm, way, Collections.emptyMap(), projection, scaler);
+    }
+
+    /**
+     * Constructs a <code>WayGeometry</code> from a <code>Way</code>, reusing already built <code>NodeGeometry</code>
+     * objects as vertices.
+     * <p>
+     * A node shared between many ways (or rendered on its own as well) is then only projected and allocated once.
+     * Vertices not found in <code>vertices</code> are built from the OSM data, as in
+     * <code>fromOSM(OSM, Way, Projection, Scaler)</code>. The geometries in <code>vertices</code> must have been built
+     * with the same projection and scaler.
+     */
+    public static WayGeometry fromOSM(OSM osm, Way way, Map<Long, NodeGeometry> vertices, Projection projection,
+                                      Scaler scaler) throws UserInputException {
+        List<NodeGeometry> nodes = new ArrayList<>(way.getNodeCount());
+        for (int i = 0; i < way.getNodeCount(); ++i) {
+            NodeGeometry vertex = vertices.get(way.getNodeId(i));
+            if (vertex == null) {
+                if (osm.getNodeById(way.getNodeId(i)) == null && way.hasInlinePosition(i)) {
+                    // Overpass geometry: the vertex is only known from the way itself
+                    vertex = NodeGeometry.fromPosition(new WGS84Coordinate(way.getInlineLon(i), way.getInlineLat(i)),
+                                                       projection, scaler);
+                } else {
+                    vertex = NodeGeometry.fromOSM(osm.getNodeInWay(way, i), projection, scaler);
+                }
+            }
+            nodes.add(vertex);
+        }
 
         WayGeometry result = new WayGeometry(nodes);
-        result.getTags().putAll(way.getTags());
+        result.setTags(way.getTags().toImmutable());
 
         return result;
     }
@@ -69,6 +99,46 @@ public class WayGeometry extends Geometry {
         return getFirstNode().equals(getLastNode());
     }
 
+    /** Returns the area of this way's bounding box, which is never less than the area the way encloses. */
+    public double getEnvelopeArea() {
+        Double cached = cachedEnvelopeArea;
+        if (cached != null) {
+            return cached;
+        }
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (NodeGeometry node : nodes) {
+            minX = Math.min(minX, node.getPosition().getX());
+            minY = Math.min(minY, node.getPosition().getY());
+            maxX = Math.max(maxX, node.getPosition().getX());
+            maxY = Math.max(maxY, node.getPosition().getY());
+        }
+        return cachedEnvelopeArea = (maxX - minX) * (maxY - minY);
+    }
+
+    /**
+     * Returns the area enclosed by this way, computed with the shoelace formula. An unclosed way encloses no area. The
+     * area of a self-intersecting way is not meaningful.
+     */
+    public double getArea() {
+        Double cached = cachedArea;
+        if (cached != null) {
+            return cached;
+        }
+        if (!isClosed()) {
+            return cachedArea = 0.0;
+        }
+
+        double sum = 0;
+        for (int i = 0; i + 1 < nodes.size(); ++i) {
+            Coordinate<?> p = nodes.get(i).getPosition();
+            Coordinate<?> q = nodes.get(i + 1).getPosition();
+            sum += p.getX() * q.getY() - q.getX() * p.getY();
+        }
+        return cachedArea = Math.abs(sum) / 2;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (!(other instanceof WayGeometry)) { return false; }
@@ -0,0 +1,122 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import java.util.*;
+
+
+/**
+ * Joins ways that share endpoints into longer lines.
+ * <p>
+ * OSM splits a road into a new way wherever its tags change or another road meets it. Drawn separately, each piece gets
+ * its own caps, and the map has far more paths than it needs. Merging connected ways that are drawn the same way gives
+ * one continuous line instead.
+ * <p>
+ * Ways are joined under the same conditions as <a href="#{@link}>{@link WayGeometry#combine(WayGeometry)}</a>: they
+ * must be open and share an endpoint. Endpoints are found through a hash of their exact coordinates, so merging takes
+ * linear time. Ways built by <code>GeometryCollection</code> share the vertices of their common nodes, so connected
+ * ways have exactly equal endpoints. Where more than two ways meet, which of them are joined is unspecified.
+ */
+public class WayMerger {
+    private WayMerger() {}
+
+    /**
+     * Returns the ways in <code>ways</code> merged into as few lines as possible. Closed ways are returned unchanged,
+     * and a merged way takes the tags of the first way it was built from.
+     */
+    public static List<WayGeometry> merge(List<WayGeometry> ways) {
+        if (ways.size() < 2) {
+            return ways;
+        }
+
+        // The indices of the open ways that end at each point
+        Map<Endpoint, List<Integer>> waysByEndpoint = new HashMap<>();
+        for (int i = 0; i < ways.size(); ++i) {
+            WayGeometry way = ways.get(i);
+            if (!way.isClosed()) {
+                waysByEndpoint.computeIfAbsent(Endpoint.of(way.getFirstNode()), k -> new ArrayList<>(2)).add(i);
+                waysByEndpoint.computeIfAbsent(Endpoint.of(way.getLastNode()), k -> new ArrayList<>(2)).add(i);
+            }
+        }
+
+        boolean[] used = new boolean[ways.size()];
+        List<WayGeometry> result = new ArrayList<>();
+        for (int i = 0; i < ways.size(); ++i) {
+            if (used[i]) {
+                continue;
+            }
+            used[i] = true;
+
+            WayGeometry way = ways.get(i);
+            if (way.isClosed()) {
+                result.add(way);
+                continue;
+            }
+
+            // Grow the line forwards from its last node, then backwards from its first node.
+            List<NodeGeometry> forward = new ArrayList<>(way.getNodes());
+            extend(forward, ways, waysByEndpoint, used);
+
+            List<NodeGeometry> backward = new ArrayList<>();
+            backward.add(way.getFirstNode());
+            if (!forward.get(forward.size() - 1).equals(way.getFirstNode())) {
+                extend(backward, ways, waysByEndpoint, used);
+            }
+
+            if (backward.size() == 1 && forward.size() == way.getNodes().size()) {
+                result.add(way);
+                continue;
+            }
+
+            List<NodeGeometry> nodes = new ArrayList<>(backward.size() + forward.size() - 1);
+            for (int j = backward.size() - 1; j > 0; --j) {
+                nodes.add(backward.get(j));
+            }
+            nodes.addAll(forward);
+
+            WayGeometry merged = new WayGeometry(nodes);
+            merged.setTags(way.getTags());
+            result.add(merged);
+        }
+
+        return result;
+    }
+
+    /** Appends unused ways to <code>line</code> at its last node until no more ways connect or it closes. */
+    private static void extend(List<NodeGeometry> line, List<WayGeometry> ways,
+                               Map<Endpoint, List<Integer>> waysByEndpoint, boolean[] used) {
+        NodeGeometry start = line.get(0);
+        while (true) {
+            NodeGeometry end = line.get(line.size() - 1);
+            if (line.size() > 1 && end.equals(start)) {
+                return;
+            }
+
+            int next = -1;
+            for (int candidate : waysByEndpoint.getOrDefault(Endpoint.of(end), List.of())) {
+                if (!used[candidate]) {
+                    next = candidate;
+                    break;
+                }
+            }
+            if (next == -1) {
+                return;
+            }
+            used[next] = true;
+
+            List<NodeGeometry> nodes = ways.get(next).getNodes();
+            if (Endpoint.of(nodes.get(0)).equals(Endpoint.of(end))) {
+                line.addAll(nodes.subList(1, nodes.size()));
+            } else {
+                for (int j = nodes.size() - 2; j >= 0; --j) {
+                    line.add(nodes.get(j));
+                }
+            }
+        }
+    }
+
+    /** The exact position of a way's end, used to find the ways that meet there. */
+    private record Endpoint(double x, double y) {
+        public static Endpoint of(NodeGeometry node) {
+            return new Endpoint(node.getPosition().getX(), node.getPosition().getY());
+        }
+    }
+}
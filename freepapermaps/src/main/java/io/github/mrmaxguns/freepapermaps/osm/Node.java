@@ -4,7 +4,6 @@ import io.github.mrmaxguns.freepapermaps.UserInputException;
 import io.github.mrmaxguns.freepapermaps.XMLTools;
 import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import java.util.Objects;
 
@@ -39,8 +38,9 @@ public class Node extends OSMElement {
 
         Node newNode = new Node(id, position, visible);
 
-        NodeList tags = rawNode.getChildNodes();
-        newNode.getTags().insertFromXML(tags, xmlTools);
+        TagList tags = new TagList();
+        tags.insertFromXML(rawNode.getChildNodes(), xmlTools);
+        newNode.setTags(tags.toImmutable());
 
         return newNode;
     }
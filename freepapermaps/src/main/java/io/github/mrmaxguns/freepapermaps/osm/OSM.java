@@ -8,10 +8,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 
 /**
@@ -30,16 +27,31 @@ import java.util.Objects;
  * <p>
  * This class represents a complete region of OpenStreetMap data. It provides utilities for adding and modifying the
  * data. Additionally, it provides utilities for parsing OSM data from an OSM XML file.
+ * <p>
+ * Once loading is done, <a href="#{@link}>{@link #freeze()}</a> creates a read-only snapshot. A snapshot can be shared
+ * by any number of threads without locking: every mutator throws an <code>UnsupportedOperationException</code>, and
+ * <code>getNodes()</code>, <code>getWays()</code>, and <code>getRelations()</code> return the same unmodifiable lists
+ * on every call instead of copying. The elements themselves must not be modified after freezing.
  */
 public class OSM {
     /** A list of nodes, where keys are node ids for fast access. */
-    private final HashMap<Long, Node> nodes = new HashMap<>();
+    private final Map<Long, Node> nodes;
     /** A list of ways, where keys are way ids for fast access. */
-    private final HashMap<Long, Way> ways = new HashMap<>();
+    private final Map<Long, Way> ways;
+
+    private final Map<Long, Relation> relations;
+
+    /** Whether this is a read-only snapshot. */
+    private final boolean frozen;
+    /** Unmodifiable lists of all elements, only present in snapshots. */
+    private final List<Node> nodeList;
+    private final List<Way> wayList;
+    private final List<Relation> relationList;
+
+    // The bounding boxes are volatile so that they are safely published along with the final fields of a snapshot.
 
-    private final HashMap<Long, Relation> relations = new HashMap<>();
     /** A bounding box defining the geographic area to be rendered. Can be null. */
-    private BoundingBox<WGS84Coordinate> boundingBox;
+    private volatile BoundingBox<WGS84Coordinate> boundingBox;
     /**
      * A bounding box defining an area containing all nodes. When exporting a region from OpenStreetMap, the region's
      * size will be given by <code>boundingBox</code>, but in reality, there will be nodes outside that area if any
@@ -48,11 +60,11 @@ public class OSM {
      * Invariant: nodeBoundingBox is always at least large enough to display all data nodes, and is null when there are
      * no nodes.
      */
-    private BoundingBox<WGS84Coordinate> nodeBoundingBox;
+    private volatile BoundingBox<WGS84Coordinate> nodeBoundingBox;
 
     /** Constructs an OSM object with a <code>null</code> <code>boundingBox</code>. */
     public OSM() {
-        this(null);
+        this((BoundingBox<WGS84Coordinate>) null);
     }
 
     /**
@@ -62,10 +74,62 @@ public class OSM {
      *                    maxlat, and maxlon in an OSM XML file). Can be null.
      */
     public OSM(BoundingBox<WGS84Coordinate> boundingBox) {
+        this.nodes = new HashMap<>();
+        this.ways = new HashMap<>();
+        this.relations = new HashMap<>();
+        this.frozen = false;
+        this.nodeList = null;
+        this.wayList = null;
+        this.relationList = null;
         this.boundingBox = boundingBox;
         this.nodeBoundingBox = null;
     }
 
+    /** Constructs a read-only snapshot of <code>source</code>. */
+    private OSM(OSM source) {
+        this.nodes = Collections.unmodifiableMap(new HashMap<>(source.nodes));
+        this.ways = Collections.unmodifiableMap(new HashMap<>(source.ways));
+        this.relations = Collections.unmodifiableMap(new HashMap<>(source.relations));
+        this.frozen = true;
+        this.nodeList = List.copyOf(nodes.values());
+        this.wayList = List.copyOf(ways.values());
+        this.relationList = List.copyOf(relations.values());
+        this.boundingBox = source.boundingBox;
+        this.nodeBoundingBox = source.nodeBoundingBox;
+    }
+
+    /** Constructs an OSM object that takes over the tables of <code>builder</code>. */
+    private OSM(Builder builder, boolean frozen) {
+        this.nodes = frozen ? Collections.unmodifiableMap(builder.nodes) : builder.nodes;
+        this.ways = frozen ? Collections.unmodifiableMap(builder.ways) : builder.ways;
+        this.relations = frozen ? Collections.unmodifiableMap(builder.relations) : builder.relations;
+        this.frozen = frozen;
+        this.nodeList = frozen ? List.copyOf(nodes.values()) : null;
+        this.wayList = frozen ? List.copyOf(ways.values()) : null;
+        this.relationList = frozen ? List.copyOf(relations.values()) : null;
+        this.boundingBox = builder.boundingBox;
+        this.nodeBoundingBox = builder.getNodeBoundingBox();
+    }
+
+    /**
+     * Returns a read-only snapshot of this <code>OSM</code> that is safe to share between threads. Returns
+     * <code>this</code> if it is already a snapshot. Later changes to this object do not affect the snapshot.
+     */
+    public OSM freeze() {
+        return frozen ? this : new OSM(this);
+    }
+
+    /** Returns true if this is a read-only snapshot created by <a href="#{@link}>{@link #freeze()}</a>. */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("This OSM snapshot is read-only.");
+        }
+    }
+
     /** Constructs an OSM object from an OSM XML file. */
     public static OSM fromXML(Document doc) throws UserInputException {
         return fromXML(doc, new XMLTools());
@@ -76,48 +140,193 @@ public class OSM {
      * useful context for user error messages.
      */
     public static OSM fromXML(Document doc, XMLTools xmlTools) throws UserInputException {
-        // Get map bounds
-        Element bounds = xmlTools.getSingleChildElementByTagName(doc, "bounds", false);
-        BoundingBox<WGS84Coordinate> boundingBox;
-
-        if (bounds != null) {
-            double minLat = xmlTools.getAttributeValueDouble(bounds, "minlat");
-            double minLon = xmlTools.getAttributeValueDouble(bounds, "minlon");
-            double maxLat = xmlTools.getAttributeValueDouble(bounds, "maxlat");
-            double maxLon = xmlTools.getAttributeValueDouble(bounds, "maxlon");
-            boundingBox = new BoundingBox<>(new WGS84Coordinate(minLon, maxLat), new WGS84Coordinate(maxLon, minLat));
+        return fromXML(doc, xmlTools, OSMFilter.ACCEPT_ALL);
+    }
+
+    /**
+     * Constructs an OSM object from an OSM XML file, keeping only the elements and tags accepted by
+     * <code>filter</code>. Nodes referenced by a kept <code>Way</code> are always kept.
+     */
+    public static OSM fromXML(Document doc, XMLTools xmlTools, OSMFilter filter) throws UserInputException {
+        BoundingBox<WGS84Coordinate> boundingBox = getBoundsFromXML(doc, xmlTools);
+
+        List<Node> nodes;
+        List<Way> ways;
+        if (filter.acceptsAll()) {
+            // Get all nodes, then all ways
+            nodes = nodesFromXML(doc, new XMLTools());
+            ways = waysFromXML(doc, new XMLTools());
         } else {
-            boundingBox = null;
+            // Ways are parsed first, since they decide which nodes are kept
+            ways = waysFromXML(doc, xmlTools);
+            nodes = nodesFromXML(doc, xmlTools);
         }
 
-        // Create the OSM object
-        OSM newOSM = new OSM(boundingBox);
+        return fromElements(boundingBox, nodes, ways, filter).buildMutable();
+    }
 
-        // Get all nodes
+    /** Returns the map bounds given by the <code>bounds</code> element of an OSM XML file, or null if there is none. */
+    static BoundingBox<WGS84Coordinate> getBoundsFromXML(Document doc, XMLTools xmlTools) throws UserInputException {
+        Element bounds = xmlTools.getSingleChildElementByTagName(doc, "bounds", false);
+        if (bounds == null) {
+            return null;
+        }
+
+        double minLat = xmlTools.getAttributeValueDouble(bounds, "minlat");
+        double minLon = xmlTools.getAttributeValueDouble(bounds, "minlon");
+        double maxLat = xmlTools.getAttributeValueDouble(bounds, "maxlat");
+        double maxLon = xmlTools.getAttributeValueDouble(bounds, "maxlon");
+        return new BoundingBox<>(new WGS84Coordinate(minLon, maxLat), new WGS84Coordinate(maxLon, minLat));
+    }
+
+    /** Parses all nodes of an OSM XML file in document order. */
+    private static List<Node> nodesFromXML(Document doc, XMLTools xmlTools) throws UserInputException {
+        List<Node> nodes = new ArrayList<>();
         NodeList rawNodes = doc.getElementsByTagName("node");
         for (int i = 0; i < rawNodes.getLength(); ++i) {
             if (rawNodes.item(i).getNodeType() == org.w3c.dom.Node.ELEMENT_NODE) {
-                newOSM.addNode(Node.fromXML((Element) rawNodes.item(i)));
+                nodes.add(Node.fromXML((Element) rawNodes.item(i), xmlTools));
             }
         }
+        return nodes;
+    }
 
-        // Get all ways
+    /** Parses all ways of an OSM XML file in document order. */
+    private static List<Way> waysFromXML(Document doc, XMLTools xmlTools) throws UserInputException {
+        List<Way> ways = new ArrayList<>();
         NodeList rawWays = doc.getElementsByTagName("way");
         for (int i = 0; i < rawWays.getLength(); ++i) {
             if (rawWays.item(i).getNodeType() == org.w3c.dom.Node.ELEMENT_NODE) {
-                Way w = Way.fromXML((Element) rawWays.item(i));
-                newOSM.addWay(w);
-
-                // Insert any inline nodes that aren't present already.
-                for (Node n : w.getInlineNodes().values()) {
-                    if (newOSM.getNodeById(n.getId()) == null) {
-                        newOSM.addNode(n);
-                    }
+                ways.add(Way.fromXML((Element) rawWays.item(i), xmlTools));
+            }
+        }
+        return ways;
+    }
+
+    /**
+     * Collects parsed elements, given in the order they appear in the file, into a builder. Elements with the same id
+     * replace earlier ones, exactly as if they had been added one after another with
+     * <a href="#{@link}>{@link #addNode(Node)}</a> and <a href="#{@link}>{@link #addWay(Way)}</a>.
+     */
+    static Builder fromElements(BoundingBox<WGS84Coordinate> boundingBox, List<Node> nodes, List<Way> ways,
+                                OSMFilter filter) {
+        Builder builder = new Builder(nodes.size(), ways.size(), 0).boundingBox(boundingBox);
+
+        if (!filter.acceptsAll()) {
+            insertFiltered(builder, nodes, ways, filter);
+            return builder;
+        }
+
+        for (Node n : nodes) {
+            builder.addNode(n);
+        }
+
+        for (Way w : ways) {
+            builder.addWay(w);
+
+            // Inline positions stay with their way instead of becoming nodes, but are still part of the node bounds.
+            builder.includeInlinePositions(w);
+        }
+
+        return builder;
+    }
+
+    /**
+     * Inserts the elements accepted by <code>filter</code> into <code>builder</code>. Ways are considered first so that
+     * only the nodes they reference (plus any nodes the filter accepts on their own) are kept.
+     */
+    private static void insertFiltered(Builder builder, List<Node> nodes, List<Way> ways, OSMFilter filter) {
+        BoundingBox<WGS84Coordinate> effectiveBounds = filter.getEffectiveBounds(builder.boundingBox);
+
+        // Collect candidate ways and the nodes they reference
+        List<Way> candidateWays = new ArrayList<>();
+        HashSet<Long> referencedNodeIds = new HashSet<>();
+        for (Way w : ways) {
+            if (filter.acceptsWayTags(w.getTags())) {
+                candidateWays.add(w);
+                for (int i = 0; i < w.getNodeCount(); ++i) {
+                    referencedNodeIds.add(w.getNodeId(i));
                 }
             }
         }
 
-        return newOSM;
+        // Collect referenced nodes, as well as nodes that are worth keeping on their own
+        HashMap<Long, Node> referencedNodes = new HashMap<>();
+        List<Node> standaloneNodes = new ArrayList<>();
+        for (Node n : nodes) {
+            if (referencedNodeIds.contains(n.getId())) {
+                referencedNodes.put(n.getId(), n);
+            } else if (filter.acceptsNodeTags(n.getTags()) && OSMFilter.isWithin(effectiveBounds, n.getPosition())) {
+                standaloneNodes.add(n);
+            }
+        }
+
+        // Insert ways that intersect the bounds, along with their nodes
+        for (Way w : candidateWays) {
+            if (!wayIntersects(w, referencedNodes, effectiveBounds)) {
+                continue;
+            }
+
+            w.setTags(filter.filterTags(w.getTags()));
+            builder.addWay(w);
+            builder.includeInlinePositions(w);
+
+            for (int i = 0; i < w.getNodeCount(); ++i) {
+                long nodeId = w.getNodeId(i);
+                Node n = referencedNodes.get(nodeId);
+                if (n != null && builder.getNodeById(nodeId) == null) {
+                    n.setTags(filter.filterTags(n.getTags()));
+                    builder.addNode(n);
+                }
+            }
+        }
+
+        for (Node n : standaloneNodes) {
+            n.setTags(filter.filterTags(n.getTags()));
+            builder.addNode(n);
+        }
+    }
+
+    /**
+     * Returns true if the envelope of a way's nodes intersects <code>effectiveBounds</code>. Nodes in
+     * <code>nodes</code> take precedence over inline positions, as when the way is resolved. Missing nodes are ignored
+     * here so that they are reported once the way's geometry is actually needed.
+     */
+    private static boolean wayIntersects(Way way, Map<Long, Node> nodes, BoundingBox<WGS84Coordinate> effectiveBounds) {
+        if (effectiveBounds == null) {
+            return true;
+        }
+
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        boolean foundNode = false;
+        for (int i = 0; i < way.getNodeCount(); ++i) {
+            Node n = nodes.get(way.getNodeId(i));
+            double lon, lat;
+            if (n != null) {
+                lon = n.getPosition().getLon();
+                lat = n.getPosition().getLat();
+            } else if (way.hasInlinePosition(i)) {
+                lon = way.getInlineLon(i);
+                lat = way.getInlineLat(i);
+            } else {
+                continue;
+            }
+
+            foundNode = true;
+            minLon = Math.min(minLon, lon);
+            maxLon = Math.max(maxLon, lon);
+            minLat = Math.min(minLat, lat);
+            maxLat = Math.max(maxLat, lat);
+        }
+
+        // Keep ways whose position cannot be determined, so that broken references are still reported.
+        if (!foundNode) {
+            return true;
+        }
+
+        return minLon <= effectiveBounds.getMaxLon() && maxLon >= effectiveBounds.getMinLon() &&
+               minLat <= effectiveBounds.getMaxLat() && maxLat >= effectiveBounds.getMinLat();
     }
 
     public BoundingBox<WGS84Coordinate> getBoundingBox() {
@@ -125,12 +334,13 @@ public class OSM {
     }
 
     public void setBoundingBox(BoundingBox<WGS84Coordinate> boundingBox) {
+        checkMutable();
         this.boundingBox = boundingBox;
     }
 
-    /** Returns a non-modifiable list of <code>Node</code>s. */
+    /** Returns a non-modifiable list of <code>Node</code>s. Snapshots return the same list without copying. */
     public List<Node> getNodes() {
-        return List.copyOf(nodes.values());
+        return frozen ? nodeList : List.copyOf(nodes.values());
     }
 
     /** Returns a <code>Node</code> given an id, or <code>null</code> if no such <code>Node</code> exists. */
@@ -143,11 +353,13 @@ public class OSM {
      * <code>null</code>.
      */
     public void addNode(Node newNode) {
+        checkMutable();
+
         // Add the node
         nodes.put(newNode.getId(), Objects.requireNonNull(newNode));
 
         // Adjust bounds accordingly
-        adjustBoundsIfNecessary(newNode);
+        adjustBoundsIfNecessary(newNode.getPosition());
     }
 
     /**
@@ -160,6 +372,7 @@ public class OSM {
      *                     <a href="#{@link}>{@link #adjustNodeBounds()}</a> at the end.
      */
     public void removeNodeById(long id, boolean adjustBounds) {
+        checkMutable();
         nodes.remove(id);
 
         if (adjustBounds) {
@@ -177,13 +390,14 @@ public class OSM {
 
     /** Clears the list of <code>Node</code>s. */
     public void clearNodes() {
+        checkMutable();
         nodes.clear();
         nodeBoundingBox = null;
     }
 
-    /** Returns a non-modifiable list of <code>Way</code>s. */
+    /** Returns a non-modifiable list of <code>Way</code>s. Snapshots return the same list without copying. */
     public List<Way> getWays() {
-        return List.copyOf(ways.values());
+        return frozen ? wayList : List.copyOf(ways.values());
     }
 
     /** Returns a <code>Way</code> given an id, or null if it doesn't exist. */
@@ -196,22 +410,25 @@ public class OSM {
      * <code>null</code>.
      */
     public void addWay(Way newWay) {
+        checkMutable();
         ways.put(newWay.getId(), Objects.requireNonNull(newWay));
     }
 
     /** Removes a <code>Way</code> by id, or does nothing if it doesn't exist. */
     public void removeWayById(long id) {
+        checkMutable();
         ways.remove(id);
     }
 
     /** Clears the list of <code>Way</code>s. */
     public void clearWays() {
+        checkMutable();
         ways.clear();
     }
 
-    /** Returns a non-modifiable list of <code>Relation</code>s. */
+    /** Returns a non-modifiable list of <code>Relation</code>s. Snapshots return the same list without copying. */
     public List<Relation> getRelations() {
-        return List.copyOf(relations.values());
+        return frozen ? relationList : List.copyOf(relations.values());
     }
 
     /** Returns a <code>Relation</code> given an id, or null if it doesn't exist. */
@@ -224,16 +441,19 @@ public class OSM {
      * <code>null</code>.
      */
     public void addRelation(Relation newRelation) {
+        checkMutable();
         relations.put(newRelation.getId(), Objects.requireNonNull(newRelation));
     }
 
     /** Removes a <code>Relation</code> by id, or does nothing if it doesn't exist. */
     public void removeRelationById(long id) {
+        checkMutable();
         relations.remove(id);
     }
 
     /** Clears the list of <code>Relation</code>s. */
     public void clearRelations() {
+        checkMutable();
         relations.clear();
     }
 
@@ -241,11 +461,22 @@ public class OSM {
         return nodeBoundingBox;
     }
 
-    /** Shrinks the <code>nodeBoundingBox</code> as necessary to fully contain all <code>Node</code>s exactly. */
+    /**
+     * Shrinks the <code>nodeBoundingBox</code> as necessary to fully contain all <code>Node</code>s, including the
+     * inline positions of <code>Way</code>s, exactly.
+     */
     public void adjustNodeBounds() {
+        checkMutable();
         nodeBoundingBox = null;
         for (Node n : nodes.values()) {
-            adjustBoundsIfNecessary(n);
+            adjustBoundsIfNecessary(n.getPosition());
+        }
+        for (Way w : ways.values()) {
+            for (int i = 0; i < w.getNodeCount(); ++i) {
+                if (w.hasInlinePosition(i)) {
+                    adjustBoundsIfNecessary(new WGS84Coordinate(w.getInlineLon(i), w.getInlineLat(i)));
+                }
+            }
         }
     }
 
@@ -259,19 +490,66 @@ public class OSM {
             return null;
         }
 
-        ArrayList<Node> nodes = new ArrayList<>(way.getNodeIds().size());
-        for (long nodeId : way.getNodeIds()) {
-            Node n = getNodeById(nodeId);
+        ArrayList<Node> nodes = new ArrayList<>(way.getNodeCount());
+        for (int i = 0; i < way.getNodeCount(); ++i) {
+            nodes.add(getNodeInWay(way, i));
+        }
+
+        return nodes;
+    }
 
-            if (n == null) {
-                throw new UserInputException(
-                        "Way with id " + way.getId() + " references node with id " + nodeId + " that doesn't exist.");
+    /**
+     * Writes the positions of all <code>Node</code>s in a <code>Way</code> to <code>buffer</code> as interleaved
+     * longitudes and latitudes: <code>{lon0, lat0, lon1, lat1, ...}</code>. Unlike
+     * <a href="#{@link}>{@link #getNodesInWay(Way)}</a>, this allocates nothing, so a single buffer can be reused for
+     * every way.
+     *
+     * @return the number of <code>Node</code>s written, which is <code>way.getNodeCount()</code>
+     * @throws IllegalArgumentException if <code>buffer</code> is shorter than twice the number of <code>Node</code>s
+     */
+    public int getNodePositionsInWay(Way way, double[] buffer) throws UserInputException {
+        int count = way.getNodeCount();
+        if (buffer.length < 2 * count) {
+            throw new IllegalArgumentException("Buffer cannot hold the positions of " + count + " nodes.");
+        }
+
+        for (int i = 0; i < count; ++i) {
+            Node n = getNodeById(way.getNodeId(i));
+            if (n != null) {
+                buffer[2 * i] = n.getPosition().getLon();
+                buffer[2 * i + 1] = n.getPosition().getLat();
+            } else if (way.hasInlinePosition(i)) {
+                buffer[2 * i] = way.getInlineLon(i);
+                buffer[2 * i + 1] = way.getInlineLat(i);
+            } else {
+                throw missingNodeError(way, way.getNodeId(i));
             }
+        }
+
+        return count;
+    }
 
-            nodes.add(n);
+    /**
+     * Returns the <code>Node</code> at <code>index</code> in a <code>Way</code>. Loaded nodes take precedence over the
+     * way's inline positions; for a node that is only given inline, a new untagged <code>Node</code> is returned.
+     */
+    public Node getNodeInWay(Way way, int index) throws UserInputException {
+        long nodeId = way.getNodeId(index);
+        Node n = getNodeById(nodeId);
+
+        if (n == null) {
+            if (!way.hasInlinePosition(index)) {
+                throw missingNodeError(way, nodeId);
+            }
+            n = new Node(nodeId, new WGS84Coordinate(way.getInlineLon(index), way.getInlineLat(index)), false);
         }
 
-        return nodes;
+        return n;
+    }
+
+    private static UserInputException missingNodeError(Way way, long nodeId) {
+        return new UserInputException(
+                "Way with id " + way.getId() + " references node with id " + nodeId + " that doesn't exist.");
     }
 
     public List<RelationMember> getRelationMembers(Relation relation) throws UserInputException {
@@ -304,12 +582,11 @@ public class OSM {
     }
 
     /**
-     * If <code>Node</code> <code>n</code> is outside the current <code>nodeBoundingBox</code>, this function expands
-     * the bounding box to contain <code>n</code>.
+     * If <code>position</code> is outside the current <code>nodeBoundingBox</code>, this function expands the bounding
+     * box to contain <code>position</code>.
      */
-    private void adjustBoundsIfNecessary(Node n) {
+    private void adjustBoundsIfNecessary(WGS84Coordinate position) {
         boolean boundsChanged = false;
-        WGS84Coordinate position = n.getPosition();
 
         // Make the bounding box the size of the current node, given that this is the first node we're inserting.
         if (nodeBoundingBox == null) {
@@ -345,4 +622,110 @@ public class OSM {
     }
 
     public record RelationMember(String role, OSMElement element) {}
+
+    /**
+     * Loads elements into a new <code>OSM</code> in bulk.
+     * <p>
+     * Unlike adding elements to an <code>OSM</code> one by one, the builder sizes its tables for the expected number
+     * of elements up front, and tracks the node bounding box as four numbers instead of creating a new box whenever
+     * it grows. Elements with the same id replace earlier ones, and the node bounding box covers every node that was
+     * added, just like with <a href="#{@link}>{@link OSM#addNode(Node)}</a>. The builder must not be used after
+     * building.
+     */
+    public static class Builder {
+        private final Map<Long, Node> nodes;
+        private final Map<Long, Way> ways;
+        private final Map<Long, Relation> relations;
+        private BoundingBox<WGS84Coordinate> boundingBox;
+
+        private boolean hasNodes = false;
+        private double minLon, maxLon, minLat, maxLat;
+
+        /** Constructs a builder for an unknown number of elements. */
+        public Builder() {
+            this(0, 0, 0);
+        }
+
+        /** Constructs a builder whose tables can hold the given numbers of elements without growing. */
+        public Builder(int expectedNodes, int expectedWays, int expectedRelations) {
+            this.nodes = createMap(expectedNodes);
+            this.ways = createMap(expectedWays);
+            this.relations = createMap(expectedRelations);
+        }
+
+        private static <V> Map<Long, V> createMap(int expectedSize) {
+            // HashMap grows once it is three quarters full
+            return new HashMap<>(Math.max(16, (int) Math.ceil(expectedSize / 0.75)));
+        }
+
+        /** Sets the bounding box defining the rendering extent. Can be null. */
+        public Builder boundingBox(BoundingBox<WGS84Coordinate> boundingBox) {
+            this.boundingBox = boundingBox;
+            return this;
+        }
+
+        public Builder addNode(Node node) {
+            nodes.put(node.getId(), Objects.requireNonNull(node));
+            includeInBounds(node.getPosition().getLon(), node.getPosition().getLat());
+            return this;
+        }
+
+        /** Expands the node bounding box to contain the inline positions of <code>way</code>. */
+        public Builder includeInlinePositions(Way way) {
+            for (int i = 0; i < way.getNodeCount(); ++i) {
+                if (way.hasInlinePosition(i)) {
+                    includeInBounds(way.getInlineLon(i), way.getInlineLat(i));
+                }
+            }
+            return this;
+        }
+
+        private void includeInBounds(double lon, double lat) {
+            if (!hasNodes) {
+                hasNodes = true;
+                minLon = maxLon = lon;
+                minLat = maxLat = lat;
+            } else {
+                minLon = Math.min(minLon, lon);
+                maxLon = Math.max(maxLon, lon);
+                minLat = Math.min(minLat, lat);
+                maxLat = Math.max(maxLat, lat);
+            }
+        }
+
+        public Builder addWay(Way way) {
+            ways.put(way.getId(), Objects.requireNonNull(way));
+            return this;
+        }
+
+        public Builder addRelation(Relation relation) {
+            relations.put(relation.getId(), Objects.requireNonNull(relation));
+            return this;
+        }
+
+        /** Returns the <code>Node</code> added with the given id, or <code>null</code> if there is none. */
+        public Node getNodeById(long id) {
+            return nodes.get(id);
+        }
+
+        private BoundingBox<WGS84Coordinate> getNodeBoundingBox() {
+            if (!hasNodes) {
+                return null;
+            }
+            return new BoundingBox<>(new WGS84Coordinate(minLon, maxLat), new WGS84Coordinate(maxLon, minLat));
+        }
+
+        /**
+         * Returns a read-only snapshot (see <a href="#{@link}>{@link OSM#freeze()}</a>) of the added elements. The
+         * builder's tables are used directly instead of being copied.
+         */
+        public OSM build() {
+            return new OSM(this, true);
+        }
+
+        /** Returns a modifiable <code>OSM</code> that uses the builder's tables directly. */
+        OSM buildMutable() {
+            return new OSM(this, false);
+        }
+    }
 }
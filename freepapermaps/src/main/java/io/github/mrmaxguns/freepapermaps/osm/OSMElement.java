@@ -4,9 +4,12 @@ import io.github.mrmaxguns.freepapermaps.UserInputException;
 import io.github.mrmaxguns.freepapermaps.XMLTools;
 import org.w3c.dom.Element;
 
+import java.util.Objects;
+
 
 public abstract class OSMElement {
-    private final TagList tags = new TagList();
+    /** Elements are usually given their tags right away, so a mutable list is only created if it is asked for first. */
+    private TagList tags = null;
     private long id;
     private boolean visible;
 
@@ -43,7 +46,19 @@ public abstract class OSMElement {
         this.visible = visible;
     }
 
+    /** Returns this element's tags, which are a new mutable list unless tags have been set. */
     public TagList getTags() {
+        if (tags == null) {
+            tags = new TagList();
+        }
         return tags;
     }
+
+    /**
+     * Replaces this element's tags. Parsers pass an immutable <code>TagList</code> here so that it can be shared with
+     * the geometries built from this element instead of being copied.
+     */
+    public void setTags(TagList tags) {
+        this.tags = Objects.requireNonNull(tags);
+    }
 }
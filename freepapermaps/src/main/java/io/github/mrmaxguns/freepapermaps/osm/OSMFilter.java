@@ -0,0 +1,174 @@
+package io.github.mrmaxguns.freepapermaps.osm;
+
+import io.github.mrmaxguns.freepapermaps.geometry.BoundingBox;
+import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+
+/**
+ * An <code>OSMFilter</code> decides which elements and tags are worth keeping while OSM data is being loaded.
+ * <p>
+ * A filter consists of:
+ * <ul>
+ *     <li>A predicate deciding which tagged nodes may be kept on their own (nodes referenced by a kept way are always
+ *     kept).</li>
+ *     <li>A predicate deciding which ways may be kept.</li>
+ *     <li>An optional set of tag keys to retain. All other tags are dropped.</li>
+ *     <li>An optional bounding box, expanded by a margin. Elements that lie completely outside it are dropped.</li>
+ * </ul>
+ * Filters are immutable and are created with a <a href="#{@link}>{@link Builder}</a>.
+ */
+public class OSMFilter {
+    /** A filter that keeps everything. */
+    public static final OSMFilter ACCEPT_ALL = new Builder().build();
+
+    /** The default margin, given as a fraction of the bounding box's width and height. */
+    public static final double DEFAULT_MARGIN = 0.05;
+
+    private final Predicate<TagList> nodePredicate;
+    private final Predicate<TagList> wayPredicate;
+    /** The keys of tags that should be kept, or <code>null</code> to keep all tags. */
+    private final Set<String> retainedTagKeys;
+    /** A fixed bounding box to filter by, or <code>null</code>. */
+    private final BoundingBox<WGS84Coordinate> bounds;
+    /** Whether the bounds given by the document being loaded should be used if no fixed bounds are set. */
+    private final boolean useDocumentBounds;
+    /** The margin by which the bounds are expanded, as a fraction of their width and height. */
+    private final double margin;
+
+    private OSMFilter(Builder builder) {
+        this.nodePredicate = builder.nodePredicate;
+        this.wayPredicate = builder.wayPredicate;
+        this.retainedTagKeys = builder.retainedTagKeys == null ? null : Set.copyOf(builder.retainedTagKeys);
+        this.bounds = builder.bounds;
+        this.useDocumentBounds = builder.useDocumentBounds;
+        this.margin = builder.margin;
+    }
+
+    /** Returns true if this filter never drops any elements or tags. */
+    public boolean acceptsAll() {
+        return nodePredicate == null && wayPredicate == null && retainedTagKeys == null && bounds == null &&
+               !useDocumentBounds;
+    }
+
+    /** Returns true if a node with these tags may be kept even when no kept way references it. */
+    public boolean acceptsNodeTags(TagList tags) {
+        return nodePredicate == null || nodePredicate.test(tags);
+    }
+
+    /** Returns true if a way with these tags may be kept. */
+    public boolean acceptsWayTags(TagList tags) {
+        return wayPredicate == null || wayPredicate.test(tags);
+    }
+
+    /** Returns true if a tag with the given key should be kept. */
+    public boolean retainsTag(String key) {
+        return retainedTagKeys == null || retainedTagKeys.contains(key);
+    }
+
+    /**
+     * Returns an immutable <code>TagList</code> containing only the tags from <code>tags</code> that this filter
+     * retains. If all tags are retained, <code>tags</code> is returned as an immutable list without copying.
+     */
+    public TagList filterTags(TagList tags) {
+        if (retainedTagKeys == null) {
+            return tags.toImmutable();
+        }
+
+        TagList filtered = new TagList(Math.min(tags.size(), retainedTagKeys.size()));
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (retainsTag(tag.getKey())) {
+                filtered.put(tag.getKey(), tag.getValue());
+            }
+        }
+        return filtered.toImmutable();
+    }
+
+    /**
+     * Returns the bounding box, expanded by the margin, that elements must intersect to be kept, or <code>null</code>
+     * if elements should not be filtered by position.
+     *
+     * @param documentBounds the bounds given by the document being loaded, or <code>null</code> if there are none
+     */
+    public BoundingBox<WGS84Coordinate> getEffectiveBounds(BoundingBox<WGS84Coordinate> documentBounds) {
+        BoundingBox<WGS84Coordinate> base = bounds;
+        if (base == null && useDocumentBounds) {
+            base = documentBounds;
+        }
+
+        if (base == null) {
+            return null;
+        }
+
+        double marginX = base.getWidth() * margin;
+        double marginY = base.getHeight() * margin;
+        return new BoundingBox<>(new WGS84Coordinate(base.getMinLon() - marginX, base.getMaxLat() + marginY),
+                                 new WGS84Coordinate(base.getMaxLon() + marginX, base.getMinLat() - marginY));
+    }
+
+    /** Returns true if the position lies within <code>effectiveBounds</code>, which may be <code>null</code>. */
+    public static boolean isWithin(BoundingBox<WGS84Coordinate> effectiveBounds, WGS84Coordinate position) {
+        if (effectiveBounds == null) {
+            return true;
+        }
+        return position.getLon() >= effectiveBounds.getMinLon() && position.getLon() <= effectiveBounds.getMaxLon() &&
+               position.getLat() >= effectiveBounds.getMinLat() && position.getLat() <= effectiveBounds.getMaxLat();
+    }
+
+    public static class Builder {
+        private Predicate<TagList> nodePredicate;
+        private Predicate<TagList> wayPredicate;
+        private Set<String> retainedTagKeys;
+        private BoundingBox<WGS84Coordinate> bounds;
+        private boolean useDocumentBounds = false;
+        private double margin = DEFAULT_MARGIN;
+
+        /** Only keeps unreferenced nodes whose tags satisfy <code>predicate</code>. */
+        public Builder nodePredicate(Predicate<TagList> predicate) {
+            this.nodePredicate = predicate;
+            return this;
+        }
+
+        /** Only keeps ways whose tags satisfy <code>predicate</code>. */
+        public Builder wayPredicate(Predicate<TagList> predicate) {
+            this.wayPredicate = predicate;
+            return this;
+        }
+
+        /** Only keeps tags whose keys are in <code>keys</code>. Passing <code>null</code> keeps all tags. */
+        public Builder retainTagKeys(Collection<String> keys) {
+            this.retainedTagKeys = keys == null ? null : new HashSet<>(keys);
+            return this;
+        }
+
+        /** Drops elements that lie completely outside <code>bounds</code> (expanded by the margin). */
+        public Builder bounds(BoundingBox<WGS84Coordinate> bounds) {
+            this.bounds = bounds;
+            return this;
+        }
+
+        /** Drops elements that lie completely outside the bounds given by the loaded document, if it has any. */
+        public Builder useDocumentBounds() {
+            this.useDocumentBounds = true;
+            return this;
+        }
+
+        /** Sets the margin by which bounds are expanded, as a fraction of their width and height. */
+        public Builder margin(double margin) {
+            if (margin < 0 || Double.isNaN(margin)) {
+                throw new IllegalArgumentException("Filter margin must be a non-negative value.");
+            }
+            this.margin = margin;
+            return this;
+        }
+
+        public OSMFilter build() {
+            return new OSMFilter(this);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package io.github.mrmaxguns.freepapermaps.osm;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
+import io.github.mrmaxguns.freepapermaps.geometry.BoundingBox;
+import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+
+/**
+ * Parses an OSM XML file on several threads.
+ * <p>
+ * An OSM XML file is a flat sequence of <code>node</code>, <code>way</code>, and <code>relation</code> elements inside
+ * the root <code>osm</code> element. The file is split into chunks of roughly equal size, each starting at one of these
+ * elements, and every chunk is parsed into a document of its own by a separate thread. Each chunk document consists of
+ * the file's header (everything before the first element, such as the root element's start tag and the
+ * <code>bounds</code>), the chunk itself, and the root element's end tag.
+ * <p>
+ * Elements are parsed with <a href="#{@link}>{@link Node#fromXML(Element, XMLTools)}</a> and
+ * <a href="#{@link}>{@link Way#fromXML(Element, XMLTools)}</a>, and put together in the order they appear in the file,
+ * so the result is the same as that of <a href="#{@link}>{@link OSM#fromXML(Document, XMLTools, OSMFilter)}</a>,
+ * including which of several elements with the same id is kept. Chunks are only split at element start tags, so the
+ * file must not contain comments or CDATA sections holding such tags.
+ */
+public class ParallelOSMParser {
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /** How many bytes are read at a time while searching for a chunk boundary. */
+    private static final int SCAN_WINDOW = 64 * 1024;
+    /** How many bytes at the end of the file are searched for the root element's end tag. */
+    private static final int TRAILER_WINDOW = 4 * 1024;
+
+    private static final byte[][] ELEMENT_START_TAGS = {
+            "<node".getBytes(StandardCharsets.US_ASCII),
+            "<way".getBytes(StandardCharsets.US_ASCII),
+            "<relation".getBytes(StandardCharsets.US_ASCII)
+    };
+    private static final byte[] ROOT_END_TAG = "</osm".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ROOT_END = "</osm>".getBytes(StandardCharsets.US_ASCII);
+
+    private final int threads;
+    private final int chunkSize;
+
+    /** Constructs a parser that uses up to <code>threads</code> threads and the default chunk size. */
+    public ParallelOSMParser(int threads) {
+        this(threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /** Constructs a parser that uses up to <code>threads</code> threads and chunks of about the given size in bytes. */
+    public ParallelOSMParser(int threads, int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive.");
+        }
+
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parses an OSM XML file into a read-only snapshot (see <a href="#{@link}>{@link OSM#freeze()}</a>), keeping only
+     * the elements and tags accepted by <code>filter</code>.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public OSM parse(Path file, XMLTools xmlTools, OSMFilter filter) throws UserInputException, IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            long end = findRootEnd(channel, size);
+            long first = findElementStart(channel, 0, end);
+            if (end < 0 || first < 0) {
+                // Without a flat list of elements there is nothing to split, so the whole file is parsed as usual.
+                return OSM.fromXML(parseDocument(readInputStream(channel, 0, size)), xmlTools, filter).freeze();
+            }
+
+            byte[] header = read(channel, 0, first);
+            BoundingBox<WGS84Coordinate> boundingBox = OSM.getBoundsFromXML(
+                    parseDocument(new SequenceInputStream(new ByteArrayInputStream(header),
+                                                          new ByteArrayInputStream(ROOT_END))), xmlTools);
+
+            List<Long> boundaries = findBoundaries(channel, first, end);
+            List<Chunk> chunks = parseChunks(channel, header, boundaries, xmlTools);
+
+            List<Node> nodes = new ArrayList<>();
+            List<Way> ways = new ArrayList<>();
+            for (Chunk chunk : chunks) {
+                nodes.addAll(chunk.nodes());
+                ways.addAll(chunk.ways());
+            }
+            return OSM.fromElements(boundingBox, nodes, ways, filter).build();
+        }
+    }
+
+    /** Returns the start of every chunk from <code>first</code> on, followed by <code>end</code>. */
+    private List<Long> findBoundaries(FileChannel channel, long first, long end) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(first);
+        long target = first + chunkSize;
+        while (target < end) {
+            long boundary = findElementStart(channel, target, end);
+            if (boundary < 0) {
+                break;
+            }
+            boundaries.add(boundary);
+            target = boundary + chunkSize;
+        }
+        boundaries.add(end);
+        return boundaries;
+    }
+
+    private List<Chunk> parseChunks(FileChannel channel, byte[] header, List<Long> boundaries, XMLTools xmlTools)
+            throws UserInputException, IOException {
+        int chunkCount = boundaries.size() - 1;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunkCount));
+        try {
+            List<Future<Chunk>> results = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; ++i) {
+                long start = boundaries.get(i);
+                long end = boundaries.get(i + 1);
+                results.add(executor.submit(() -> parseChunk(channel, header, start, end, xmlTools)));
+            }
+
+            // Chunks are collected in file order, so the first error in the file is the one reported.
+            List<Chunk> chunks = new ArrayList<>(chunkCount);
+            for (Future<Chunk> result : results) {
+                chunks.add(waitForChunk(result));
+            }
+            return chunks;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Chunk parseChunk(FileChannel channel, byte[] header, long start, long end, XMLTools xmlTools) throws
+            UserInputException, IOException {
+        Document doc = parseDocument(new SequenceInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(header), readInputStream(channel, start, end)),
+                new ByteArrayInputStream(ROOT_END)));
+
+        List<Node> nodes = new ArrayList<>();
+        List<Way> ways = new ArrayList<>();
+        for (org.w3c.dom.Node child = doc.getDocumentElement().getFirstChild(); child != null;
+             child = child.getNextSibling()) {
+            if (child.getNodeType() != org.w3c.dom.Node.ELEMENT_NODE) {
+                continue;
+            }
+
+            Element element = (Element) child;
+            switch (element.getTagName()) {
+                case "node" -> nodes.add(Node.fromXML(element, xmlTools));
+                case "way" -> ways.add(Way.fromXML(element, xmlTools));
+            }
+        }
+        return new Chunk(nodes, ways);
+    }
+
+    private static Chunk waitForChunk(Future<Chunk> result) throws UserInputException, IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing OSM data.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UserInputException userInputException) {
+                throw userInputException;
+            } else if (cause instanceof IOException ioException) {
+                throw ioException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static Document parseDocument(InputStream in) throws UserInputException, IOException {
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        } catch (SAXException e) {
+            throw new UserInputException("Malformed XML detected in input file:\n" + e.getMessage());
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the position of the first node, way, or relation start tag at or after <code>from</code> and before
+     * <code>end</code>, or -1 if there is none.
+     */
+    private static long findElementStart(FileChannel channel, long from, long end) throws IOException {
+        // Windows overlap, so that a tag cut off at the end of one window is found in the next.
+        int overlap = "<relation ".length();
+        for (long position = from; position < end; position += SCAN_WINDOW - overlap) {
+            byte[] window = read(channel, position, Math.min(end, position + SCAN_WINDOW));
+            for (int i = 0; i < window.length; ++i) {
+                if (window[i] == '<' && position + i < end && isElementStart(window, i)) {
+                    return position + i;
+                }
+            }
+            if (position + window.length >= end) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isElementStart(byte[] window, int i) {
+        for (byte[] tag : ELEMENT_START_TAGS) {
+            int next = i + tag.length;
+            if (next < window.length && startsWith(window, i, tag)) {
+                byte b = window[next];
+                if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '>' || b == '/') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the position of the root element's end tag, or -1 if it cannot be found. */
+    private static long findRootEnd(FileChannel channel, long size) throws IOException {
+        long start = Math.max(0, size - TRAILER_WINDOW);
+        byte[] trailer = read(channel, start, size);
+        for (int i = trailer.length - ROOT_END_TAG.length; i >= 0; --i) {
+            if (startsWith(trailer, i, ROOT_END_TAG)) {
+                return start + i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+        if (offset + prefix.length > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static InputStream readInputStream(FileChannel channel, long start, long end) throws IOException {
+        return new ByteArrayInputStream(read(channel, start, end));
+    }
+
+    /** Reads the bytes from <code>start</code> up to <code>end</code>. Positional reads can be made concurrently. */
+    private static byte[] read(FileChannel channel, long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE - 8) {
+            throw new IOException("Cannot read more than 2 GB of OSM data at once.");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+    }
+
+    /** The elements of one chunk, in file order. */
+    private record Chunk(List<Node> nodes, List<Way> ways) {}
+}
@@ -25,7 +25,7 @@ public class Relation extends OSMElement {
         long id = getIdFromXML(rawRelation, xmlTools);
         boolean visible = getVisibleFromXML(rawRelation, xmlTools);
         Relation newRelation = new Relation(id, visible);
-
+        TagList tags = new TagList();
 
         NodeList children = rawRelation.getChildNodes();
         for (int i = 0; i < children.getLength(); ++i) {
@@ -51,10 +51,10 @@ public class Relation extends OSMElement {
                 newRelation.addMember(new Member(type, ref, role));
             } else if (child.getTagName().equals("tag")) {
                 // Parse tags
-                newRelation.getTags()
-                        .put(xmlTools.getAttributeValue(child, "k"), xmlTools.getAttributeValue(child, "v"));
+                tags.put(xmlTools.getAttributeValue(child, "k"), xmlTools.getAttributeValue(child, "v"));
             }
         }
+        newRelation.setTags(tags.toImmutable());
 
         return newRelation;
     }
@@ -0,0 +1,46 @@
+package io.github.mrmaxguns.freepapermaps.osm;
+
+/**
+ * A process-wide pool of canonical strings, used to deduplicate tag keys and values such as <code>highway</code> or
+ * <code>residential</code>, which otherwise appear millions of times in large extracts.
+ * <p>
+ * Only strings up to <code>MAX_POOLED_LENGTH</code> characters are pooled. That still includes many unique values, such
+ * as short names, house numbers and refs, so the pool has a fixed number of slots rather than growing with every file
+ * loaded. Each string has one slot, chosen by its hash, and a string taking a slot replaces the one before it. Frequent
+ * strings therefore keep their slot and are shared, while rare ones are soon replaced, and the pool never holds more
+ * than <code>CAPACITY</code> strings however long the process runs.
+ */
+public final class StringPool {
+    /** The maximum length of a string that is stored in the pool. */
+    public static final int MAX_POOLED_LENGTH = 32;
+    /** The number of slots in the pool. A power of two. */
+    public static final int CAPACITY = 1 << 16;
+
+    /**
+     * Slots are read and written without locking. Strings are immutable, so a thread either sees a complete string or
+     * an older one, and a stale slot only means a string is not shared.
+     */
+    private static final String[] pool = new String[CAPACITY];
+
+    private StringPool() {}
+
+    /**
+     * Returns the canonical instance of <code>s</code>, or <code>s</code> itself if it is not pooled. Returns
+     * <code>null</code> if <code>s</code> is <code>null</code>.
+     */
+    public static String intern(String s) {
+        if (s == null || s.length() > MAX_POOLED_LENGTH) {
+            return s;
+        }
+
+        int h = s.hashCode();
+        int slot = (h ^ (h >>> 16)) & (CAPACITY - 1);
+        String canonical = pool[slot];
+        if (s.equals(canonical)) {
+            return canonical;
+        }
+
+        pool[slot] = s;
+        return s;
+    }
+}
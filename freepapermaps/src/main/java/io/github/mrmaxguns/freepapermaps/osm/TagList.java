@@ -6,31 +6,66 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import java.util.HashMap;
+import java.util.*;
 
 
 /**
  * Represents a collection of tags associated with a Node, Way, or Relation. Permits <code>null</code> keys and
  * values.
+ * <p>
+ * Since elements typically have only a handful of tags, tags are stored compactly as a single array of alternating keys
+ * and values, sorted by key. Keys and values are deduplicated through the <a href="#{@link}>{@link StringPool}</a>.
+ * Lookups are done with a binary search.
+ * <p>
+ * A <code>TagList</code> is either mutable (the default) or immutable. Immutable tag lists are created with
+ * <a href="#{@link}>{@link #toImmutable()}</a> and can be safely shared between elements and geometries. All empty
+ * immutable tag lists are the <code>EMPTY</code> singleton.
  */
-public class TagList extends HashMap<String, String> {
+public class TagList extends AbstractMap<String, String> {
+    /** An immutable, empty <code>TagList</code>. */
+    public static final TagList EMPTY = new TagList(new String[0], 0, true);
+
+    private static final String[] NO_ENTRIES = new String[0];
+
+    /** Alternating keys and values, sorted by key. Only the first <code>2 * size</code> elements are used. */
+    private String[] entries;
+    /** The number of tags. */
+    private int size;
+    private final boolean immutable;
+
     public TagList() {
-        super();
+        this(0);
     }
 
     /** Constructs a <code>TagList</code> with an initial capacity. */
     public TagList(int initialCapacity) {
-        super(initialCapacity);
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Initial capacity cannot be negative.");
+        }
+        this.entries = initialCapacity == 0 ? NO_ENTRIES : new String[initialCapacity * 2];
+        this.size = 0;
+        this.immutable = false;
     }
 
-    /** Constructs a <code>TagList</code> with an initial capacity and load factor. */
+    /**
+     * Constructs a <code>TagList</code> with an initial capacity. The load factor is ignored, since tags are not stored
+     * in a hash table. It is only accepted for compatibility.
+     */
     public TagList(int initialCapacity, int loadFactor) {
-        super(initialCapacity, loadFactor);
+        this(initialCapacity);
     }
 
-    /** Constructs a <code>TagList</code> from a shallow copy of another. */
+    /** Constructs a mutable <code>TagList</code> from a shallow copy of another. */
     public TagList(TagList t) {
-        super(t);
+        this.entries = t.size == 0 ? NO_ENTRIES : Arrays.copyOf(t.entries, t.size * 2);
+        this.size = t.size;
+        this.immutable = false;
+    }
+
+    private TagList(String[] entries, int size, boolean immutable) {
+        this.entries = entries;
+        this.size = size;
+        this.immutable = immutable;
     }
 
     /** Constructs a <code>TagList</code> from an XML NodeList of tags. Non-tag elements are ignored. */
@@ -54,4 +89,221 @@ public class TagList extends HashMap<String, String> {
             }
         }
     }
+
+    /**
+     * Returns an immutable <code>TagList</code> with the same tags whose storage is trimmed to size. Returns
+     * <code>this</code> if this list is already immutable, and <code>EMPTY</code> if there are no tags.
+     */
+    public TagList toImmutable() {
+        if (immutable) {
+            return this;
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        return new TagList(Arrays.copyOf(entries, size * 2), size, true);
+    }
+
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key == null || key instanceof String) && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (key != null && !(key instanceof String)) {
+            return null;
+        }
+        int i = indexOf((String) key);
+        return i >= 0 ? entries[i * 2 + 1] : null;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        checkMutable();
+        key = StringPool.intern(key);
+        value = StringPool.intern(value);
+
+        int i = indexOf(key);
+        if (i >= 0) {
+            String old = entries[i * 2 + 1];
+            entries[i * 2 + 1] = value;
+            return old;
+        }
+
+        // Insert at the position that keeps the keys sorted
+        int insertAt = -(i + 1);
+        if (size * 2 == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(4, entries.length * 2));
+        }
+        System.arraycopy(entries, insertAt * 2, entries, insertAt * 2 + 2, (size - insertAt) * 2);
+        entries[insertAt * 2] = key;
+        entries[insertAt * 2 + 1] = value;
+        ++size;
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        checkMutable();
+        if (key != null && !(key instanceof String)) {
+            return null;
+        }
+
+        int i = indexOf((String) key);
+        if (i < 0) {
+            return null;
+        }
+
+        String old = entries[i * 2 + 1];
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        checkMutable();
+        entries = NO_ENTRIES;
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /** Returns the index of <code>key</code>, or <code>-(insertion point) - 1</code> if it is not present. */
+    private int indexOf(String key) {
+        int low = 0;
+        int high = size - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKeys(entries[mid * 2], key);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /** Compares two keys, ordering <code>null</code> before all other keys. */
+    private static int compareKeys(String a, String b) {
+        if (a == null) { return b == null ? 0 : -1; }
+        if (b == null) { return 1; }
+        return a.compareTo(b);
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(entries, i * 2 + 2, entries, i * 2, (size - i - 1) * 2);
+        --size;
+        entries[size * 2] = null;
+        entries[size * 2 + 1] = null;
+    }
+
+    private void checkMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException("This TagList is immutable.");
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+        private int next = 0;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            checkMutable();
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    /** An entry that reads its value from the list, so that it reflects <code>setValue</code>. */
+    private class Entry implements Map.Entry<String, String> {
+        private final String key;
+        private final int index;
+
+        private Entry(int index) {
+            this.index = index;
+            this.key = entries[index * 2];
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getValue() {
+            return entries[index * 2 + 1];
+        }
+
+        @Override
+        public String setValue(String value) {
+            checkMutable();
+            String old = entries[index * 2 + 1];
+            entries[index * 2 + 1] = StringPool.intern(value);
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e)) { return false; }
+            return Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
 }
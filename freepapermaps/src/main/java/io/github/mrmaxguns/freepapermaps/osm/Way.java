@@ -10,18 +10,34 @@ import org.w3c.dom.NodeList;
 import java.util.*;
 
 
-/** Represents an OSM way, which is an ordered list of node ids. */
+/**
+ * Represents an OSM way, which is an ordered list of node ids.
+ * <p>
+ * Overpass output can give the position of every node inline, on the way's <code>nd</code> elements. Such inline
+ * positions are kept in the way itself, next to the ids, rather than as separate <code>Node</code> objects. A way with
+ * an inline position for every node (see <a href="#{@link}>{@link #hasInlineGeometry()}</a>) does not need any nodes
+ * to be loaded to resolve its shape.
+ */
 public class Way extends OSMElement {
-    /** An ordered list of Node IDs associated with this Way. */
-    private final ArrayList<Long> nodeIds;
-    /** A mapping containing all inlined nodes (nodes whose positions were specified in the way itself). */
-    private final Map<Long, io.github.mrmaxguns.freepapermaps.osm.Node> inlineNodes;
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** An ordered list of Node IDs associated with this Way. Only the first <code>nodeCount</code> are used. */
+    private long[] nodeIds;
+    private int nodeCount;
+    /**
+     * Inline positions as longitude/latitude pairs parallel to <code>nodeIds</code>, with NaN for nodes without one,
+     * or <code>null</code> if no node has an inline position.
+     */
+    private double[] inlinePositions;
+    private int inlinePositionCount;
 
     /** Constructs a Way. */
     public Way(long id, boolean visible) {
         super(id, visible);
-        this.inlineNodes = new HashMap<>();
-        this.nodeIds = new ArrayList<>();
+        this.nodeIds = new long[INITIAL_CAPACITY];
+        this.nodeCount = 0;
+        this.inlinePositions = null;
+        this.inlinePositionCount = 0;
     }
 
     /** Constructs a Way object from an org.w3c.dom XML Node. */
@@ -37,6 +53,7 @@ public class Way extends OSMElement {
         long id = getIdFromXML(rawWay, xmlTools);
         boolean visible = getVisibleFromXML(rawWay, xmlTools);
         Way newWay = new Way(id, visible);
+        TagList tags = new TagList();
 
         // A way's children are usually both node references and tags. To speed up the process, we will collect both
         // nodes and tags in one iteration rather than calling TagList's insertFromXML.
@@ -50,51 +67,146 @@ public class Way extends OSMElement {
             if (child.getTagName().equals("nd")) {
                 // Parse node references
                 long ref = xmlTools.getAttributeValueLong(child, "ref");
-                newWay.addNodeId(ref);
 
                 // Handle inline lon/lat, which is the format returned by Overpass Turbo.
                 OptionalDouble lon = xmlTools.getAttributeValueDouble(child, "lon", false);
                 OptionalDouble lat = xmlTools.getAttributeValueDouble(child, "lat", false);
 
                 if (lon.isPresent() && lat.isPresent()) {
-                    WGS84Coordinate position = new WGS84Coordinate(lon.getAsDouble(), lat.getAsDouble());
-                    newWay.inlineNodes.put(ref, new io.github.mrmaxguns.freepapermaps.osm.Node(ref, position, false));
+                    newWay.addNodeId(ref, lon.getAsDouble(), lat.getAsDouble());
+                } else {
+                    newWay.addNodeId(ref);
                 }
             } else if (child.getTagName().equals("tag")) {
                 // Parse tags
-                newWay.getTags().put(
-                        xmlTools.getAttributeValue(child, "k"),
-                        xmlTools.getAttributeValue(child, "v"));
+                tags.put(xmlTools.getAttributeValue(child, "k"), xmlTools.getAttributeValue(child, "v"));
             }
         }
+        newWay.setTags(tags.toImmutable());
 
         return newWay;
     }
 
-    /** Returns an unmodifiable list of <code>Node</code> ids. */
+    /**
+     * Returns an unmodifiable view of the <code>Node</code> ids. The ids are boxed as they are read, so
+     * <a href="#{@link}>{@link #getNodeCount()}</a> and <a href="#{@link}>{@link #getNodeId(int)}</a> are preferable
+     * in loops.
+     */
     public List<Long> getNodeIds() {
-        return Collections.unmodifiableList(nodeIds);
+        return new AbstractList<>() {
+            @Override
+            public Long get(int index) {
+                return getNodeId(index);
+            }
+
+            @Override
+            public int size() {
+                return nodeCount;
+            }
+        };
+    }
+
+    /** Returns the number of <code>Node</code> ids. */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /** Returns the <code>Node</code> id at <code>index</code>. */
+    public long getNodeId(int index) {
+        Objects.checkIndex(index, nodeCount);
+        return nodeIds[index];
     }
 
     /** Adds a <code>Node</code> id to the end of the list. */
     public void addNodeId(long id) {
-        nodeIds.add(id);
+        if (nodeCount == nodeIds.length) {
+            nodeIds = Arrays.copyOf(nodeIds, 2 * nodeIds.length);
+            if (inlinePositions != null) {
+                growInlinePositions();
+            }
+        }
+        if (inlinePositions != null) {
+            inlinePositions[2 * nodeCount] = Double.NaN;
+            inlinePositions[2 * nodeCount + 1] = Double.NaN;
+        }
+        nodeIds[nodeCount++] = id;
     }
 
-    /** Clears the list of <code>Node</code> ids and list of inline nodes. */
+    /** Adds a <code>Node</code> id to the end of the list, along with the node's inline position. */
+    public void addNodeId(long id, double lon, double lat) {
+        if (inlinePositions == null) {
+            inlinePositions = new double[2 * nodeIds.length];
+            Arrays.fill(inlinePositions, Double.NaN);
+        }
+        addNodeId(id);
+        inlinePositions[2 * nodeCount - 2] = lon;
+        inlinePositions[2 * nodeCount - 1] = lat;
+        ++inlinePositionCount;
+    }
+
+    private void growInlinePositions() {
+        int oldLength = inlinePositions.length;
+        inlinePositions = Arrays.copyOf(inlinePositions, 2 * nodeIds.length);
+        Arrays.fill(inlinePositions, oldLength, inlinePositions.length, Double.NaN);
+    }
+
+    /** Returns true if the <code>Node</code> at <code>index</code> has an inline position. */
+    public boolean hasInlinePosition(int index) {
+        Objects.checkIndex(index, nodeCount);
+        return inlinePositions != null && !Double.isNaN(inlinePositions[2 * index]);
+    }
+
+    /** Returns the inline longitude of the <code>Node</code> at <code>index</code>, or NaN if it has none. */
+    public double getInlineLon(int index) {
+        Objects.checkIndex(index, nodeCount);
+        return inlinePositions == null ? Double.NaN : inlinePositions[2 * index];
+    }
+
+    /** Returns the inline latitude of the <code>Node</code> at <code>index</code>, or NaN if it has none. */
+    public double getInlineLat(int index) {
+        Objects.checkIndex(index, nodeCount);
+        return inlinePositions == null ? Double.NaN : inlinePositions[2 * index + 1];
+    }
+
+    /** Returns true if every <code>Node</code> in this way has an inline position. */
+    public boolean hasInlineGeometry() {
+        return nodeCount > 0 && inlinePositionCount == nodeCount;
+    }
+
+    /** Returns true if the list of <code>Node</code> ids contains <code>id</code>. */
+    public boolean containsNodeId(long id) {
+        for (int i = 0; i < nodeCount; ++i) {
+            if (nodeIds[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Clears the list of <code>Node</code> ids and their inline positions. */
     public void clearNodes() {
-        nodeIds.clear();
-        inlineNodes.clear();
+        nodeCount = 0;
+        inlinePositions = null;
+        inlinePositionCount = 0;
     }
 
+    /**
+     * Returns a new map of the nodes that have inline positions, by id. The nodes are untagged and created on every
+     * call, so this is only meant for code that needs whole <code>Node</code> objects.
+     */
     public Map<Long, io.github.mrmaxguns.freepapermaps.osm.Node> getInlineNodes() {
+        Map<Long, io.github.mrmaxguns.freepapermaps.osm.Node> inlineNodes = new HashMap<>();
+        for (int i = 0; i < nodeCount; ++i) {
+            if (hasInlinePosition(i)) {
+                inlineNodes.putIfAbsent(nodeIds[i], new io.github.mrmaxguns.freepapermaps.osm.Node(
+                        nodeIds[i], new WGS84Coordinate(getInlineLon(i), getInlineLat(i)), false));
+            }
+        }
         return Collections.unmodifiableMap(inlineNodes);
     }
 
+    /** Adds the id of <code>node</code> to the end of the list, using the node's position as its inline position. */
     public void addInlineNode(long id, io.github.mrmaxguns.freepapermaps.osm.Node node) {
-        if (!nodeIds.contains(id)) {
-            nodeIds.add(id);
-        }
-        inlineNodes.put(id, node);
+        addNodeId(id, node.getPosition().getLon(), node.getPosition().getLat());
     }
 }
@@ -0,0 +1,187 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * An output stream that hands what is written to it to a separate writer thread, optionally gzip-compressing it there.
+ * <p>
+ * Writes are collected into chunks, which are passed to the writer thread through a bounded queue. Compressing and
+ * writing the output (which can be slow on network file systems) therefore overlaps with producing it, while the
+ * queue keeps a fast producer from buffering the whole output in memory. If writing fails, the error is thrown by
+ * the next write, flush or close.
+ * <p>
+ * Closing the stream waits until everything has been written and the compressed data is finished, but does not close
+ * the underlying stream. Like other output streams, an <code>AsyncOutputStream</code> must only be written to by one
+ * thread.
+ */
+public class AsyncOutputStream extends OutputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /** Marks the end of the output in the queue. */
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> queue;
+    private final Thread writer;
+    private final int chunkSize;
+
+    private byte[] buffer;
+    private int count = 0;
+    private boolean closed = false;
+    private volatile IOException failure = null;
+
+    /** Constructs a stream that writes to <code>out</code>, compressing the output with gzip if asked to. */
+    public AsyncOutputStream(OutputStream out, boolean compress) {
+        this(out, compress, DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public AsyncOutputStream(OutputStream out, boolean compress, int chunkSize, int queueCapacity) {
+        if (chunkSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Chunk size and queue capacity must be positive.");
+        }
+
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[chunkSize];
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.writer = new Thread(() -> writeChunks(out, compress), "output-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpen();
+        if (count == buffer.length) {
+            sendBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            if (count == buffer.length) {
+                sendBuffer();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Hands what has been written so far to the writer thread, without waiting for it to be written. */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        if (count > 0) {
+            sendBuffer();
+        }
+    }
+
+    /** Waits until everything has been written. The underlying stream is flushed, but not closed. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            if (count > 0) {
+                sendBuffer();
+            }
+        } finally {
+            // The writer thread waits for the end of the output even after a failure, so it must always be sent
+            put(END);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for output to be written.");
+            }
+        }
+        checkFailure();
+    }
+
+    private void sendBuffer() throws IOException {
+        checkFailure();
+        put(count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+        buffer = new byte[chunkSize];
+        count = 0;
+    }
+
+    private void put(byte[] chunk) throws IOException {
+        try {
+            queue.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write output.");
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The stream is closed.");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("Could not write output.", e);
+        }
+    }
+
+    /** Runs on the writer thread until the end of the output is reached. */
+    private void writeChunks(OutputStream out, boolean compress) {
+        OutputStream sink = out;
+        try {
+            if (compress) {
+                sink = new GZIPOutputStream(out, DEFAULT_CHUNK_SIZE);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        try {
+            for (byte[] chunk = queue.take(); chunk != END; chunk = queue.take()) {
+                // After a failure, chunks are still taken, so that the producer is never blocked on a full queue.
+                if (failure == null) {
+                    try {
+                        sink.write(chunk);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+
+            if (failure == null) {
+                if (sink instanceof GZIPOutputStream gzip) {
+                    gzip.finish();
+                }
+                sink.flush();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Interrupted while writing output.");
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.geometry.*;
+import io.github.mrmaxguns.freepapermaps.osm.OSM;
+import io.github.mrmaxguns.freepapermaps.projections.Projection;
+import io.github.mrmaxguns.freepapermaps.rendering.pdf.PDFDocument;
+import io.github.mrmaxguns.freepapermaps.rendering.pdf.PDFPage;
+import io.github.mrmaxguns.freepapermaps.styling.MapStyle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * An Atlas splits a map that is too large for one sheet of paper into a grid of pages at the same scale.
+ * <p>
+ * Neighboring pages overlap by a margin, so that features on the edge of one page can be found again on the next.
+ * Geometry is built once for the whole map and then divided between the pages by its extent, so every page only
+ * traces the geometry that can appear on it. Land and water areas are built from coastlines before the map is divided,
+ * since a page that no coastline crosses could not tell on its own whether it lies on land or at sea. Since a frozen
+ * <code>MapStyle</code> and a <code>GeometryCollection</code> are not modified while rendering, pages are rendered
+ * concurrently, either to one SVG file per page or to a single multi-page PDF.
+ */
+public class Atlas {
+    /** Common paper sizes in millimeters (portrait orientation), by lowercase name. */
+    public static final Map<String, double[]> PAPER_SIZES = Map.of(
+            "a2", new double[] { 420, 594 },
+            "a3", new double[] { 297, 420 },
+            "a4", new double[] { 210, 297 },
+            "a5", new double[] { 148, 210 },
+            "letter", new double[] { 215.9, 279.4 },
+            "legal", new double[] { 215.9, 355.6 },
+            "tabloid", new double[] { 279.4, 431.8 });
+    /**
+     * Geometry within this distance (in mm) of a page is still rendered on it, so that wide strokes of features just
+     * outside the page are not cut off.
+     */
+    public static final double STROKE_MARGIN = 5.0;
+
+    private final BoundingBox<ScaledCoordinate> mapBounds;
+    private final double pageWidth;
+    private final double pageHeight;
+    private final double overlap;
+    private final int rows;
+    private final int columns;
+    private final List<Page> pages;
+
+    /**
+     * Constructs an Atlas that covers <code>mapBounds</code> (in scaled coordinates) with pages of the given size.
+     * Neighboring pages share <code>overlap</code> millimeters of the map.
+     */
+    public Atlas(BoundingBox<ScaledCoordinate> mapBounds, double pageWidth, double pageHeight, double overlap) {
+        if (!(pageWidth > 0) || !(pageHeight > 0) || Double.isInfinite(pageWidth) || Double.isInfinite(pageHeight)) {
+            throw new IllegalArgumentException("Page dimensions must be positive, non-zero values.");
+        }
+        if (overlap < 0 || overlap >= pageWidth || overlap >= pageHeight) {
+            throw new IllegalArgumentException("Page overlap must be non-negative and smaller than the page.");
+        }
+
+        this.mapBounds = Objects.requireNonNull(mapBounds);
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.overlap = overlap;
+
+        columns = countPages(mapBounds.getWidth(), pageWidth, overlap);
+        rows = countPages(mapBounds.getHeight(), pageHeight, overlap);
+
+        List<Page> allPages = new ArrayList<>(rows * columns);
+        for (int row = 0; row < rows; ++row) {
+            for (int column = 0; column < columns; ++column) {
+                double x = mapBounds.getMinX() + column * (pageWidth - overlap);
+                double y = mapBounds.getMinY() + row * (pageHeight - overlap);
+                allPages.add(new Page(row, column, new BoundingBox<>(new ScaledCoordinate(x, y),
+                                                                     new ScaledCoordinate(x + pageWidth,
+                                                                                          y + pageHeight))));
+            }
+        }
+        pages = Collections.unmodifiableList(allPages);
+    }
+
+    /** Constructs an Atlas that covers the bounds of <code>mapData</code> at the scale of <code>scaler</code>. */
+    public static Atlas fromOSM(OSM mapData, Projection projection, Scaler scaler, double pageWidth,
+                                double pageHeight, double overlap) {
+        return new Atlas(scaler.scale(projection.project(MapStyle.getMapBounds(mapData))), pageWidth, pageHeight,
+                         overlap);
+    }
+
+    /**
+     * Parses a paper size, either the name of a common size in <code>PAPER_SIZES</code> or dimensions in millimeters
+     * given as <code>WIDTHxHEIGHT</code>. A named size may be followed by <code>-landscape</code>. Returns the width
+     * and height.
+     */
+    public static double[] parsePaperSize(String rawSize) throws UserInputException {
+        String size = rawSize.strip().toLowerCase();
+
+        boolean landscape = size.endsWith("-landscape");
+        if (landscape) {
+            size = size.substring(0, size.length() - "-landscape".length());
+        }
+
+        double[] named = PAPER_SIZES.get(size);
+        if (named != null) {
+            return landscape ? new double[] { named[1], named[0] } : named.clone();
+        }
+
+        String[] parts = size.split("x");
+        if (landscape || parts.length != 2) {
+            throw new UserInputException("Could not parse paper size '" + rawSize + "'. Must be one of " +
+                                         new TreeSet<>(PAPER_SIZES.keySet()) + " or WIDTHxHEIGHT in mm.");
+        }
+
+        double width, height;
+        try {
+            width = Double.parseDouble(parts[0]);
+            height = Double.parseDouble(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new UserInputException("Paper dimensions must be numbers.");
+        }
+        if (!(width > 0) || !(height > 0) || Double.isInfinite(width) || Double.isInfinite(height)) {
+            throw new UserInputException("Paper dimensions must be positive, non-zero values.");
+        }
+        return new double[] { width, height };
+    }
+
+    private static int countPages(double mapLength, double pageLength, double overlap) {
+        if (mapLength <= pageLength) {
+            return 1;
+        }
+        return (int) Math.ceil((mapLength - overlap) / (pageLength - overlap));
+    }
+
+    /**
+     * Divides <code>geometries</code> between the pages. The result has one collection per page, in the same order as
+     * <code><a href="#{@link}">{@link #getPages()}</a></code>, holding the geometry whose extent comes within
+     * <code>STROKE_MARGIN</code> of that page. Geometry objects are shared, not copied. Relations are kept on every
+     * page. Land and water areas are first built from the coastlines along the edge of all pages together, and
+     * divided like any other polygon.
+     */
+    public List<GeometryCollection> partition(GeometryCollection geometries) {
+        BoundingBox<ScaledCoordinate> lastPage = pages.get(pages.size() - 1).bounds();
+        geometries = new CoastlineAssembler(mapBounds.getMinX() - MapStyle.COASTLINE_MARGIN,
+                                            mapBounds.getMinY() - MapStyle.COASTLINE_MARGIN,
+                                            lastPage.getMaxX() + MapStyle.COASTLINE_MARGIN,
+                                            lastPage.getMaxY() + MapStyle.COASTLINE_MARGIN).assemble(geometries);
+
+        List<Map<Long, NodeGeometry>> nodes = new ArrayList<>(pages.size());
+        List<Map<Long, WayGeometry>> ways = new ArrayList<>(pages.size());
+        List<Map<Long, PolygonGeometry>> polygons = new ArrayList<>(pages.size());
+        for (int i = 0; i < pages.size(); ++i) {
+            nodes.add(new HashMap<>());
+            ways.add(new HashMap<>());
+            polygons.add(new HashMap<>());
+        }
+
+        double[] extent = new double[4];
+        for (Map.Entry<Long, NodeGeometry> entry : geometries.getNodesById().entrySet()) {
+            Coordinate<?> position = entry.getValue().getPosition();
+            extent[0] = extent[2] = position.getX();
+            extent[1] = extent[3] = position.getY();
+            addToPages(entry.getKey(), entry.getValue(), extent, nodes);
+        }
+
+        for (Map.Entry<Long, WayGeometry> entry : geometries.getWaysById().entrySet()) {
+            if (computeExtent(entry.getValue(), extent)) {
+                addToPages(entry.getKey(), entry.getValue(), extent, ways);
+            }
+        }
+
+        for (Map.Entry<Long, PolygonGeometry> entry : geometries.getPolygonsById().entrySet()) {
+            // Interior rings lie inside the exterior ring, so it alone determines the polygon's extent.
+            if (computeExtent(entry.getValue().getExteriorRing(), extent)) {
+                addToPages(entry.getKey(), entry.getValue(), extent, polygons);
+            }
+        }
+
+        List<GeometryCollection> result = new ArrayList<>(pages.size());
+        for (int i = 0; i < pages.size(); ++i) {
+            result.add(new GeometryCollection(nodes.get(i), ways.get(i), polygons.get(i),
+                                              geometries.getRelationsById()));
+        }
+        return result;
+    }
+
+    /** Stores the extent of <code>way</code> in <code>extent</code> as min x, min y, max x, max y. */
+    private static boolean computeExtent(WayGeometry way, double[] extent) {
+        if (way.getNodes().isEmpty()) {
+            return false;
+        }
+
+        extent[0] = extent[1] = Double.POSITIVE_INFINITY;
+        extent[2] = extent[3] = Double.NEGATIVE_INFINITY;
+        for (NodeGeometry node : way.getNodes()) {
+            Coordinate<?> position = node.getPosition();
+            extent[0] = Math.min(extent[0], position.getX());
+            extent[1] = Math.min(extent[1], position.getY());
+            extent[2] = Math.max(extent[2], position.getX());
+            extent[3] = Math.max(extent[3], position.getY());
+        }
+        return true;
+    }
+
+    /**
+     * Adds a geometry to every page its extent touches. Since pages form a regular grid, the range of pages is computed
+     * directly instead of testing every page.
+     */
+    private <G extends Geometry> void addToPages(long id, G geometry, double[] extent, List<Map<Long, G>> pageMaps) {
+        double stepX = pageWidth - overlap;
+        double stepY = pageHeight - overlap;
+        double minX = extent[0] - STROKE_MARGIN - mapBounds.getMinX();
+        double minY = extent[1] - STROKE_MARGIN - mapBounds.getMinY();
+        double maxX = extent[2] + STROKE_MARGIN - mapBounds.getMinX();
+        double maxY = extent[3] + STROKE_MARGIN - mapBounds.getMinY();
+
+        // Page i spans [i * step, i * step + size], so these are the first and last pages the extent reaches.
+        int firstColumn = Math.max(0, (int) Math.ceil((minX - pageWidth) / stepX));
+        int lastColumn = Math.min(columns - 1, (int) Math.floor(maxX / stepX));
+        int firstRow = Math.max(0, (int) Math.ceil((minY - pageHeight) / stepY));
+        int lastRow = Math.min(rows - 1, (int) Math.floor(maxY / stepY));
+
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                pageMaps.get(row * columns + column).put(id, geometry);
+            }
+        }
+    }
+
+    /**
+     * Renders every page as an SVG document, using up to <code>threads</code> threads. <code>pageOutput</code> is
+     * called (possibly from several threads) to open the stream each page is written to; the stream is closed once the
+     * page is written. <code>geometries</code> must have been built with the style's projection and scaler.
+     */
+    public void render(GeometryCollection geometries, MapStyle style, Projection projection, Scaler scaler,
+                       boolean attribution, int threads, PageOutput pageOutput) throws UserInputException,
+            IOException {
+        render(geometries, style, projection, scaler, attribution, threads, false, pageOutput);
+    }
+
+    /**
+     * Renders every page as an SVG document like <a href="#{@link}>{@link #render(GeometryCollection, MapStyle,
+     * Projection, Scaler, boolean, int, PageOutput)}</a>, gzip-compressing each page (as an .svgz file) if
+     * <code>compress</code> is true.
+     */
+    public void render(GeometryCollection geometries, MapStyle style, Projection projection, Scaler scaler,
+                       boolean attribution, int threads, boolean compress, PageOutput pageOutput) throws
+            UserInputException, IOException {
+        MapStyle compiledStyle = style.freeze();
+        List<GeometryCollection> pageGeometries = partition(geometries);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pages.size())));
+        try {
+            List<Future<Void>> results = new ArrayList<>(pages.size());
+            for (int i = 0; i < pages.size(); ++i) {
+                Page page = pages.get(i);
+                GeometryCollection pageGeometry = pageGeometries.get(i);
+                results.add(executor.submit(() -> {
+                    try (OutputStream out = pageOutput.open(page)) {
+                        new MapRenderer(pageGeometry, compiledStyle, page.bounds(), projection, scaler,
+                                        attribution).renderToStream(out, compress);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> result : results) {
+                waitForPage(result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Renders every page into one PDF document written to <code>out</code>, using up to <code>threads</code> threads.
+     * Pages are drawn concurrently and added to the document in order as soon as all pages before them are done, so
+     * only the pages that finished early are held in memory. <code>out</code> is not closed.
+     */
+    public void renderToPDF(GeometryCollection geometries, MapStyle style, Projection projection, Scaler scaler,
+                            boolean attribution, int threads, OutputStream out) throws UserInputException,
+            IOException {
+        MapStyle compiledStyle = style.freeze();
+        List<GeometryCollection> pageGeometries = partition(geometries);
+        PDFDocument pdf = new PDFDocument(out);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pages.size())));
+        try {
+            List<Future<PDFPage>> results = new ArrayList<>(pages.size());
+            for (int i = 0; i < pages.size(); ++i) {
+                Page page = pages.get(i);
+                GeometryCollection pageGeometry = pageGeometries.get(i);
+                results.add(executor.submit(
+                        () -> new MapRenderer(pageGeometry, compiledStyle, page.bounds(), projection, scaler,
+                                              attribution).renderToPDFPage(pdf)));
+            }
+
+            for (Future<PDFPage> result : results) {
+                pdf.endPage(waitForPage(result));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        pdf.finish();
+    }
+
+    private static <T> T waitForPage(Future<T> result) throws UserInputException, IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering atlas pages.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UserInputException userInputException) {
+                throw userInputException;
+            } else if (cause instanceof IOException ioException) {
+                throw ioException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public BoundingBox<ScaledCoordinate> getMapBounds() {
+        return mapBounds;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /** Returns the pages row by row, from the top left to the bottom right. */
+    public List<Page> getPages() {
+        return pages;
+    }
+
+    /** A page of the atlas. Rows and columns are counted from zero, starting at the top left. */
+    public record Page(int row, int column, BoundingBox<ScaledCoordinate> bounds) {}
+
+    /** Opens the stream a page is written to. */
+    @FunctionalInterface
+    public interface PageOutput {
+        OutputStream open(Page page) throws IOException;
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Keeps track of the space taken by labels and symbols that have already been placed on a map, so that later ones can
+ * avoid overlapping them.
+ * <p>
+ * Boxes are in scaled coordinates (millimeters) and are stored in a uniform grid of square cells. A box is only
+ * compared against the boxes sharing a cell with it, so placing tens of thousands of labels does not take quadratic
+ * time as long as the cells are about as large as a typical label. A collision index belongs to a single render and is
+ * not thread-safe.
+ */
+public class CollisionIndex {
+    public static final double DEFAULT_CELL_SIZE = 10.0;
+
+    private final double cellSize;
+    private final Map<Long, List<Rectangle2D>> cells = new HashMap<>();
+    private int size = 0;
+
+    public CollisionIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public CollisionIndex(double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive.");
+        }
+        this.cellSize = cellSize;
+    }
+
+    /** Returns true if <code>box</code> overlaps any box in this index. */
+    public boolean intersects(Rectangle2D box) {
+        int minColumn = cell(box.getMinX());
+        int maxColumn = cell(box.getMaxX());
+        int minRow = cell(box.getMinY());
+        int maxRow = cell(box.getMaxY());
+
+        for (int row = minRow; row <= maxRow; ++row) {
+            for (int column = minColumn; column <= maxColumn; ++column) {
+                List<Rectangle2D> cell = cells.get(key(column, row));
+                if (cell == null) {
+                    continue;
+                }
+                for (Rectangle2D other : cell) {
+                    if (other.intersects(box)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Adds <code>box</code> to this index, whether or not it overlaps boxes already in it. */
+    public void insert(Rectangle2D box) {
+        int minColumn = cell(box.getMinX());
+        int maxColumn = cell(box.getMaxX());
+        int minRow = cell(box.getMinY());
+        int maxRow = cell(box.getMaxY());
+
+        for (int row = minRow; row <= maxRow; ++row) {
+            for (int column = minColumn; column <= maxColumn; ++column) {
+                cells.computeIfAbsent(key(column, row), k -> new ArrayList<>(4)).add(box);
+            }
+        }
+        ++size;
+    }
+
+    /**
+     * Adds all of <code>boxes</code> if none of them overlaps a box already in this index, and returns true. Otherwise,
+     * nothing is added and false is returned. The boxes of a single label (such as the characters of a label along a
+     * line) may overlap each other.
+     */
+    public boolean insertIfFree(List<? extends Rectangle2D> boxes) {
+        for (Rectangle2D box : boxes) {
+            if (intersects(box)) {
+                return false;
+            }
+        }
+        for (Rectangle2D box : boxes) {
+            insert(box);
+        }
+        return true;
+    }
+
+    /** Returns the number of boxes in this index. */
+    public int size() {
+        return size;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+}
@@ -1,8 +1,13 @@
 package io.github.mrmaxguns.freepapermaps.rendering;
 
 import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.geometry.BoundingBox;
+import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
 import io.github.mrmaxguns.freepapermaps.osm.OSM;
 import io.github.mrmaxguns.freepapermaps.projections.Projection;
+import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
+import io.github.mrmaxguns.freepapermaps.rendering.pdf.PDFDocument;
+import io.github.mrmaxguns.freepapermaps.rendering.pdf.PDFPage;
 import io.github.mrmaxguns.freepapermaps.styling.MapStyle;
 import org.apache.batik.dom.GenericDOMImplementation;
 import org.apache.batik.svggen.SVGGeneratorContext;
@@ -14,16 +19,25 @@ import org.w3c.dom.Element;
 
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 
-/** The MapRenderer renders a map using Apache Batik. */
+/** The MapRenderer renders a map as SVG using Apache Batik, or as PDF. */
 public class MapRenderer {
     /** The OSM data to render the map with. */
     private final OSM mapData;
+    /** Geometry already built from the OSM data, or <code>null</code> if it should be built on every render. */
+    private final GeometryCollection geometries;
+    /** The bounds of the rendered map. Only used when <code>geometries</code> is given. */
+    private final BoundingBox<WGS84Coordinate> bounds;
+    /** The bounds of the rendered page in scaled coordinates, or <code>null</code> if <code>bounds</code> is used. */
+    private final BoundingBox<ScaledCoordinate> pageBounds;
     /** Style information for the map. */
     private final MapStyle style;
     /** The map projection to use. */
@@ -35,7 +49,51 @@ public class MapRenderer {
 
     /** Constructs a MapRenderer object. */
     public MapRenderer(OSM mapData, MapStyle style, Projection projection, Scaler scaler, boolean attribution) {
+        this(mapData, null, style, projection, scaler, attribution);
+    }
+
+    /**
+     * Constructs a MapRenderer object that renders geometry that was already built from <code>mapData</code>. The
+     * geometry must have been built with the same projection and scaler.
+     */
+    public MapRenderer(OSM mapData, GeometryCollection geometries, MapStyle style, Projection projection,
+                       Scaler scaler, boolean attribution) {
         this.mapData = mapData;
+        this.geometries = geometries;
+        this.bounds = MapStyle.getMapBounds(mapData);
+        this.pageBounds = null;
+        this.style = style;
+        this.projection = projection;
+        this.scaler = scaler;
+        this.attribution = attribution;
+    }
+
+    /**
+     * Constructs a MapRenderer object that renders the part of already built geometry inside <code>bounds</code>. The
+     * geometry must have been built with the same projection and scaler.
+     */
+    public MapRenderer(GeometryCollection geometries, BoundingBox<WGS84Coordinate> bounds, MapStyle style,
+                       Projection projection, Scaler scaler, boolean attribution) {
+        this.mapData = null;
+        this.geometries = Objects.requireNonNull(geometries);
+        this.bounds = Objects.requireNonNull(bounds);
+        this.pageBounds = null;
+        this.style = style;
+        this.projection = projection;
+        this.scaler = scaler;
+        this.attribution = attribution;
+    }
+
+    /**
+     * Constructs a MapRenderer object that renders one page of a larger map. <code>pageBounds</code> is given in the
+     * scaled coordinates of the already built geometry.
+     */
+    public MapRenderer(GeometryCollection geometries, MapStyle style, BoundingBox<ScaledCoordinate> pageBounds,
+                       Projection projection, Scaler scaler, boolean attribution) {
+        this.mapData = null;
+        this.geometries = Objects.requireNonNull(geometries);
+        this.bounds = null;
+        this.pageBounds = Objects.requireNonNull(pageBounds);
         this.style = style;
         this.projection = projection;
         this.scaler = scaler;
@@ -44,6 +102,15 @@ public class MapRenderer {
 
     /** Renders an SVG map to outputFile. */
     public void renderToStream(OutputStream outputFile) throws SVGGraphics2DIOException, UserInputException {
+        renderToStream(outputFile, false);
+    }
+
+    /**
+     * Renders an SVG map to outputFile, gzip-compressed (as an .svgz file) if <code>compress</code> is true. The SVG is
+     * compressed and written on a separate thread while it is being serialized. outputFile is not closed.
+     */
+    public void renderToStream(OutputStream outputFile, boolean compress) throws SVGGraphics2DIOException,
+            UserInputException {
         // Set up the SVG and canvas on which to draw the map
         DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
         String svgNS = "http://www.w3.org/2000/svg";
@@ -69,15 +136,68 @@ public class MapRenderer {
         svgRoot.setAttribute("height", height + "mm");
         svgRoot.setAttribute("viewBox", "0 0 " + width + " " + height);
 
+        // Round and merge paths, and share repeated styles, before the document is written
+        double precision = style.getSettings().outputPrecision;
+        if (precision > 0) {
+            new SVGOptimizer(precision).optimize(svgRoot);
+        }
+
         // Stream the SVG to a file
         boolean useCSS = true;
         boolean escaped = true;
-        Writer out = new OutputStreamWriter(outputFile, StandardCharsets.UTF_8);
-        svgGenerator.stream(svgRoot, out, useCSS, escaped);
+        AsyncOutputStream output = new AsyncOutputStream(outputFile, compress);
+        try (output) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8),
+                                            AsyncOutputStream.DEFAULT_CHUNK_SIZE);
+            svgGenerator.stream(svgRoot, out, useCSS, escaped);
+            out.flush();
+        } catch (SVGGraphics2DIOException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new SVGGraphics2DIOException(e);
+        }
+    }
+
+    /**
+     * Renders a PDF map to outputFile. The PDF is written while the map is drawn, so its size does not depend on how
+     * much memory is available. outputFile is not closed.
+     */
+    public void renderToPDF(OutputStream outputFile) throws IOException, UserInputException {
+        BoundingBox<ScaledCoordinate> page = getPageBounds();
+
+        PDFDocument pdf = new PDFDocument(outputFile);
+        PDFPage pdfPage = pdf.beginPage(page.getWidth(), page.getHeight());
+        renderToGraphics2D(pdfPage.getGraphics());
+        pdf.endPage(pdfPage);
+        pdf.finish();
+    }
+
+    /**
+     * Renders the map onto a page of <code>pdf</code> that is kept in memory until it is ended. Unlike
+     * <a href="#{@link}>{@link #renderToPDF(OutputStream)}</a>, several pages of the same document can be rendered at
+     * once.
+     */
+    public PDFPage renderToPDFPage(PDFDocument pdf) throws UserInputException {
+        BoundingBox<ScaledCoordinate> page = getPageBounds();
+
+        PDFPage pdfPage = pdf.createPage(page.getWidth(), page.getHeight());
+        renderToGraphics2D(pdfPage.getGraphics());
+        return pdfPage;
+    }
+
+    /** Returns the bounds of the rendered map in scaled coordinates, which is the size of its page. */
+    private BoundingBox<ScaledCoordinate> getPageBounds() {
+        return pageBounds != null ? pageBounds : scaler.scale(projection.project(bounds));
     }
 
     /** Renders a map to the g2d object, returning the dimensions of the map as a <code>Rectangle2D</code>. */
     public Rectangle2D renderToGraphics2D(Graphics2D g2d) throws UserInputException {
+        if (pageBounds != null) {
+            return style.renderPage(g2d, pageBounds, geometries, attribution);
+        }
+        if (geometries != null) {
+            return style.render(g2d, bounds, geometries, attribution);
+        }
         return style.render(g2d, mapData, attribution);
     }
 }
@@ -0,0 +1,527 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import org.w3c.dom.*;
+
+import java.util.*;
+
+
+/**
+ * Makes an SVG document generated by <code>SVGGraphics2D</code> smaller before it is written out.
+ * <p>
+ * Three things are done to the document:
+ * <ul>
+ *     <li>Path data is rewritten with relative commands, with every coordinate rounded to a fixed precision (in
+ *     millimeters on paper). Rounding happens on the absolute coordinates, so errors do not add up along a path.</li>
+ *     <li>Runs of neighboring paths that are only stroked and look exactly the same are merged into one
+ *     <code>&lt;path&gt;</code>. Filled or translucent paths are never merged, since overlapping parts of a single
+ *     path are painted differently than overlapping paths.</li>
+ *     <li>Sets of presentation attributes that appear on more than one element are moved to a CSS class in a
+ *     <code>&lt;style&gt;</code> element.</li>
+ * </ul>
+ * Path data that cannot be parsed (such as paths with arcs, which <code>SVGGraphics2D</code> never writes) is left
+ * untouched.
+ */
+public class SVGOptimizer {
+    public static final double DEFAULT_PRECISION = 0.01;
+    /** The finest precision that coordinates can be rounded to. */
+    public static final double MIN_PRECISION = 1e-9;
+
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+
+    /** Attributes that can be written as CSS properties instead. */
+    private static final Set<String> PRESENTATION_ATTRIBUTES = Set.of(
+            "fill", "fill-opacity", "fill-rule", "stroke", "stroke-width", "stroke-linecap", "stroke-linejoin",
+            "stroke-miterlimit", "stroke-dasharray", "stroke-dashoffset", "stroke-opacity", "opacity", "font-family",
+            "font-size", "font-weight", "font-style", "text-rendering", "shape-rendering", "color-rendering",
+            "image-rendering", "color-interpolation");
+
+    /** Attributes whose inherited values keep neighboring paths from being merged unless they are fully opaque. */
+    private static final List<String> OPACITY_ATTRIBUTES = List.of("opacity", "stroke-opacity");
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L };
+
+    private final double precision;
+    /** The number of decimal places needed to write a multiple of the precision exactly. */
+    private final int decimals;
+    /** The precision as a whole number of units of the last decimal place. */
+    private final long precisionInDecimals;
+
+    public SVGOptimizer() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public SVGOptimizer(double precision) {
+        if (!(precision >= MIN_PRECISION) || Double.isInfinite(precision)) {
+            throw new IllegalArgumentException("Precision must be a finite value of at least 0.000000001.");
+        }
+        this.precision = precision;
+
+        int places = 0;
+        double scaled = precision;
+        while (places < 9 && Math.abs(scaled - Math.rint(scaled)) > 1e-9 * Math.max(1, scaled)) {
+            scaled *= 10;
+            ++places;
+        }
+        this.decimals = places;
+        this.precisionInDecimals = Math.round(precision * POWERS_OF_TEN[places]);
+    }
+
+    public double getPrecision() {
+        return precision;
+    }
+
+    /** Optimizes the document under <code>svgRoot</code> in place. */
+    public void optimize(Element svgRoot) {
+        optimizePaths(svgRoot);
+        extractStyles(svgRoot);
+    }
+
+    /**
+     * Rewrites the path data of every path under <code>element</code>, merging runs of neighboring paths (ignoring
+     * whitespace between them) that can be merged.
+     */
+    private void optimizePaths(Element element) {
+        List<Element> run = new ArrayList<>();
+        List<double[]> runCommands = new ArrayList<>();
+        boolean runIsMergeable = false;
+
+        for (Element child : getChildElements(element)) {
+            if (!isPath(child)) {
+                finishRun(run, runCommands);
+                optimizePaths(child);
+                continue;
+            }
+
+            List<double[]> commands = parsePath(child.getAttribute("d"));
+            if (commands == null) {
+                finishRun(run, runCommands);
+                continue;
+            }
+
+            boolean mergeable = isMergeable(child);
+            if (run.isEmpty() || !(mergeable && runIsMergeable && haveSameAttributes(run.get(0), child))) {
+                finishRun(run, runCommands);
+                runIsMergeable = mergeable;
+            }
+            run.add(child);
+            runCommands.addAll(commands);
+        }
+        finishRun(run, runCommands);
+    }
+
+    /** Writes the merged path data of a run to its first path and removes the others. */
+    private void finishRun(List<Element> run, List<double[]> runCommands) {
+        if (run.isEmpty()) {
+            return;
+        }
+        run.get(0).setAttribute("d", formatPath(runCommands));
+        for (int i = 1; i < run.size(); ++i) {
+            removeWithWhitespace(run.get(i));
+        }
+        run.clear();
+        runCommands.clear();
+    }
+
+    /** Returns true if a path is drawn the same way when it is merged with another path that looks the same. */
+    private static boolean isMergeable(Element path) {
+        if (path.hasAttribute("id") || !"none".equals(getInherited(path, "fill"))) {
+            return false;
+        }
+        for (String attribute : OPACITY_ATTRIBUTES) {
+            String value = getInherited(path, attribute);
+            if (value != null && !isOpaque(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOpaque(String value) {
+        try {
+            return Double.parseDouble(value.strip()) >= 1;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /** Returns the value of an attribute on an element or its closest ancestor that has it, or <code>null</code>. */
+    private static String getInherited(Element element, String attribute) {
+        for (Node node = element; node instanceof Element e; node = node.getParentNode()) {
+            if (e.hasAttribute(attribute)) {
+                return e.getAttribute(attribute);
+            }
+        }
+        return null;
+    }
+
+    private static boolean haveSameAttributes(Element a, Element b) {
+        NamedNodeMap attributesA = a.getAttributes();
+        NamedNodeMap attributesB = b.getAttributes();
+        if (attributesA.getLength() != attributesB.getLength()) {
+            return false;
+        }
+        for (int i = 0; i < attributesA.getLength(); ++i) {
+            Node attribute = attributesA.item(i);
+            if (attribute.getNodeName().equals("d")) {
+                continue;
+            }
+            Node other = attributesB.getNamedItem(attribute.getNodeName());
+            if (other == null || !other.getNodeValue().equals(attribute.getNodeValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void removeWithWhitespace(Element element) {
+        Node previous = element.getPreviousSibling();
+        if (previous != null && previous.getNodeType() == Node.TEXT_NODE && previous.getNodeValue().isBlank()) {
+            previous.getParentNode().removeChild(previous);
+        }
+        element.getParentNode().removeChild(element);
+    }
+
+    /** Replaces repeated sets of presentation attributes with CSS classes. */
+    private void extractStyles(Element svgRoot) {
+        Map<String, List<Element>> elementsByStyle = new LinkedHashMap<>();
+        collectStyles(svgRoot, elementsByStyle);
+
+        StringBuilder css = new StringBuilder();
+        int classCount = 0;
+        for (Map.Entry<String, List<Element>> entry : elementsByStyle.entrySet()) {
+            if (entry.getValue().size() < 2) {
+                continue;
+            }
+
+            String className = "s" + Integer.toString(++classCount, Character.MAX_RADIX);
+            css.append('.').append(className).append('{').append(entry.getKey()).append('}');
+            for (Element element : entry.getValue()) {
+                for (String attribute : getPresentationAttributes(element).keySet()) {
+                    element.removeAttribute(attribute);
+                }
+                String existing = element.getAttribute("class");
+                element.setAttribute("class", existing.isEmpty() ? className : existing + " " + className);
+            }
+        }
+
+        if (css.isEmpty()) {
+            return;
+        }
+
+        Document doc = svgRoot.getOwnerDocument();
+        Element defs = null;
+        for (Element child : getChildElements(svgRoot)) {
+            if (getLocalName(child).equals("defs")) {
+                defs = child;
+                break;
+            }
+        }
+        if (defs == null) {
+            defs = doc.createElementNS(SVG_NAMESPACE, "defs");
+            svgRoot.insertBefore(defs, svgRoot.getFirstChild());
+        }
+
+        Element style = doc.createElementNS(SVG_NAMESPACE, "style");
+        style.setAttribute("type", "text/css");
+        style.appendChild(doc.createTextNode(css.toString()));
+        defs.appendChild(style);
+    }
+
+    private static void collectStyles(Element element, Map<String, List<Element>> elementsByStyle) {
+        for (Element child : getChildElements(element)) {
+            SortedMap<String, String> attributes = getPresentationAttributes(child);
+            if (!attributes.isEmpty()) {
+                StringBuilder declarations = new StringBuilder();
+                for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                    if (!declarations.isEmpty()) {
+                        declarations.append(';');
+                    }
+                    declarations.append(attribute.getKey()).append(':').append(attribute.getValue());
+                }
+                elementsByStyle.computeIfAbsent(declarations.toString(), k -> new ArrayList<>()).add(child);
+            }
+            collectStyles(child, elementsByStyle);
+        }
+    }
+
+    private static SortedMap<String, String> getPresentationAttributes(Element element) {
+        SortedMap<String, String> result = new TreeMap<>();
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); ++i) {
+            Node attribute = attributes.item(i);
+            if (PRESENTATION_ATTRIBUTES.contains(attribute.getNodeName())) {
+                result.put(attribute.getNodeName(), attribute.getNodeValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses path data into absolute commands. Each command is an array whose first element is the command letter
+     * ('M', 'L', 'Q', 'C' or 'Z') followed by its coordinates. Returns <code>null</code> if the data uses commands
+     * that are not supported.
+     */
+    static List<double[]> parsePath(String data) {
+        List<double[]> commands = new ArrayList<>();
+        PathTokenizer tokens = new PathTokenizer(data);
+        char command = 0;
+        double x = 0;
+        double y = 0;
+        double startX = 0;
+        double startY = 0;
+
+        while (tokens.skipSeparators()) {
+            if (tokens.atCommand()) {
+                command = tokens.nextCommand();
+            } else if (command == 0 || command == 'Z' || command == 'z') {
+                return null;
+            } else if (command == 'M') {
+                command = 'L';
+            } else if (command == 'm') {
+                command = 'l';
+            }
+
+            boolean relative = Character.isLowerCase(command);
+            double baseX = relative ? x : 0;
+            double baseY = relative ? y : 0;
+            try {
+                switch (Character.toUpperCase(command)) {
+                    case 'M' -> {
+                        x = baseX + tokens.nextNumber();
+                        y = baseY + tokens.nextNumber();
+                        startX = x;
+                        startY = y;
+                        commands.add(new double[] { 'M', x, y });
+                    }
+                    case 'L' -> {
+                        x = baseX + tokens.nextNumber();
+                        y = baseY + tokens.nextNumber();
+                        commands.add(new double[] { 'L', x, y });
+                    }
+                    case 'H' -> {
+                        x = baseX + tokens.nextNumber();
+                        commands.add(new double[] { 'L', x, y });
+                    }
+                    case 'V' -> {
+                        y = baseY + tokens.nextNumber();
+                        commands.add(new double[] { 'L', x, y });
+                    }
+                    case 'Q' -> {
+                        double x1 = baseX + tokens.nextNumber();
+                        double y1 = baseY + tokens.nextNumber();
+                        x = baseX + tokens.nextNumber();
+                        y = baseY + tokens.nextNumber();
+                        commands.add(new double[] { 'Q', x1, y1, x, y });
+                    }
+                    case 'C' -> {
+                        double x1 = baseX + tokens.nextNumber();
+                        double y1 = baseY + tokens.nextNumber();
+                        double x2 = baseX + tokens.nextNumber();
+                        double y2 = baseY + tokens.nextNumber();
+                        x = baseX + tokens.nextNumber();
+                        y = baseY + tokens.nextNumber();
+                        commands.add(new double[] { 'C', x1, y1, x2, y2, x, y });
+                    }
+                    case 'Z' -> {
+                        x = startX;
+                        y = startY;
+                        commands.add(new double[] { 'Z' });
+                    }
+                    default -> {
+                        return null;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return commands.isEmpty() || commands.get(0)[0] != 'M' ? null : commands;
+    }
+
+    /** Writes absolute commands as compact, relative path data rounded to the precision. */
+    String formatPath(List<double[]> commands) {
+        StringBuilder result = new StringBuilder();
+        // Positions are kept in whole multiples of the precision, so rounding errors cannot accumulate.
+        long x = 0;
+        long y = 0;
+        long startX = 0;
+        long startY = 0;
+        char previous = 0;
+        boolean subpathHasSegments = false;
+
+        for (double[] command : commands) {
+            char type = (char) command[0];
+            switch (type) {
+                case 'M' -> {
+                    long newX = toUnits(command[1]);
+                    long newY = toUnits(command[2]);
+                    // The first moveto of a path is absolute even when it is written in lowercase.
+                    previous = appendCommand(result, 'm', previous);
+                    appendNumber(result, newX - x);
+                    appendNumber(result, newY - y);
+                    x = startX = newX;
+                    y = startY = newY;
+                    // Pairs after a moveto are implicit linetos.
+                    previous = 'l';
+                    subpathHasSegments = false;
+                }
+                case 'L' -> {
+                    long dx = toUnits(command[1]) - x;
+                    long dy = toUnits(command[2]) - y;
+                    // Segments shorter than the precision are dropped, unless they are all there is (a dot).
+                    if (dx == 0 && dy == 0 && subpathHasSegments) {
+                        continue;
+                    }
+                    subpathHasSegments = true;
+                    if (dy == 0) {
+                        previous = appendCommand(result, 'h', previous);
+                        appendNumber(result, dx);
+                    } else if (dx == 0) {
+                        previous = appendCommand(result, 'v', previous);
+                        appendNumber(result, dy);
+                    } else {
+                        previous = appendCommand(result, 'l', previous);
+                        appendNumber(result, dx);
+                        appendNumber(result, dy);
+                    }
+                    x += dx;
+                    y += dy;
+                }
+                case 'Q', 'C' -> {
+                    previous = appendCommand(result, type == 'Q' ? 'q' : 'c', previous);
+                    for (int i = 1; i < command.length; i += 2) {
+                        appendNumber(result, toUnits(command[i]) - x);
+                        appendNumber(result, toUnits(command[i + 1]) - y);
+                    }
+                    x = toUnits(command[command.length - 2]);
+                    y = toUnits(command[command.length - 1]);
+                    subpathHasSegments = true;
+                }
+                case 'Z' -> {
+                    previous = appendCommand(result, 'z', previous);
+                    x = startX;
+                    y = startY;
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    private long toUnits(double value) {
+        return Math.round(value / precision);
+    }
+
+    /** Appends a command letter unless it would repeat the previous command, and returns the command. */
+    private static char appendCommand(StringBuilder result, char command, char previous) {
+        if (command != previous || command == 'z' || command == 'm') {
+            result.append(command);
+        }
+        return command;
+    }
+
+    /** Appends a number of precision units, separated from the previous number only where it has to be. */
+    private void appendNumber(StringBuilder result, long units) {
+        String number = formatUnits(units);
+        if (!result.isEmpty() && !Character.isLetter(result.charAt(result.length() - 1)) && number.charAt(0) != '-') {
+            result.append(' ');
+        }
+        result.append(number);
+    }
+
+    /** Formats a number of precision units in millimeters, without a leading zero or trailing zeros. */
+    String formatUnits(long units) {
+        long value = Math.abs(units * precisionInDecimals);
+        long integer = value / POWERS_OF_TEN[decimals];
+        long fraction = value % POWERS_OF_TEN[decimals];
+
+        StringBuilder result = new StringBuilder();
+        if (units < 0) {
+            result.append('-');
+        }
+        if (integer != 0 || fraction == 0) {
+            result.append(integer);
+        }
+        if (fraction != 0) {
+            int places = decimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                --places;
+            }
+            String digits = Long.toString(fraction);
+            result.append('.').append("0".repeat(places - digits.length())).append(digits);
+        }
+        return result.toString();
+    }
+
+    private static boolean isPath(Element element) {
+        return getLocalName(element).equals("path") && element.hasAttribute("d");
+    }
+
+    private static String getLocalName(Element element) {
+        return element.getLocalName() != null ? element.getLocalName() : element.getTagName();
+    }
+
+    /** Returns a snapshot of the child elements, so that the children may be modified while iterating. */
+    private static List<Element> getChildElements(Element element) {
+        List<Element> result = new ArrayList<>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                result.add((Element) child);
+            }
+        }
+        return result;
+    }
+
+    /** Splits path data into command letters and numbers. */
+    private static class PathTokenizer {
+        private final String data;
+        private int position = 0;
+
+        public PathTokenizer(String data) {
+            this.data = data;
+        }
+
+        /** Skips whitespace and commas, and returns true if there is anything left. */
+        public boolean skipSeparators() {
+            while (position < data.length() &&
+                   (Character.isWhitespace(data.charAt(position)) || data.charAt(position) == ',')) {
+                ++position;
+            }
+            return position < data.length();
+        }
+
+        public boolean atCommand() {
+            char c = data.charAt(position);
+            return Character.isLetter(c) && c != 'e' && c != 'E';
+        }
+
+        public char nextCommand() {
+            return data.charAt(position++);
+        }
+
+        public double nextNumber() {
+            skipSeparators();
+            int start = position;
+            if (position < data.length() && (data.charAt(position) == '-' || data.charAt(position) == '+')) {
+                ++position;
+            }
+            boolean seenPoint = false;
+            while (position < data.length()) {
+                char c = data.charAt(position);
+                if (Character.isDigit(c)) {
+                    ++position;
+                } else if (c == '.' && !seenPoint) {
+                    seenPoint = true;
+                    ++position;
+                } else if ((c == 'e' || c == 'E') && position + 1 < data.length()) {
+                    position += data.charAt(position + 1) == '-' || data.charAt(position + 1) == '+' ? 2 : 1;
+                } else {
+                    break;
+                }
+            }
+            return Double.parseDouble(data.substring(start, position));
+        }
+    }
+}
@@ -14,9 +14,28 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * An SVG image that can be drawn at any size onto a <code>Graphics2D</code>.
+ * <p>
+ * Parsing an SVG file and building its graphics tree takes far longer than drawing it, so icons read from files
+ * should be obtained with <a href="#{@link}>{@link #load(String, String)}</a>, which builds every combination of file
+ * and color override only once per process. An icon is never modified once built, and may be drawn from several
+ * threads.
+ */
+public class SVGVectorIcon {
+    /** The elements that are recolored by a color override, besides those with a <code>fill</code> attribute. */
+    private static final Set<String> SHAPE_ELEMENTS = Set.of("path", "rect", "circle", "polygon", "line");
 
+    private static final Map<CacheKey, SVGVectorIcon> cache = new ConcurrentHashMap<>();
 
-public class SVGVectorIcon {
     private final GraphicsNode graphicsNode;
     private final Rectangle2D bounds;
 
@@ -63,36 +82,82 @@ public class SVGVectorIcon {
         }
     }
 
-    public void renderCentered(Graphics2D g2d, ScaledCoordinate center, double width, double height) {
-        double scaleX = width / bounds.getWidth();
-        double scaleY = height / bounds.getHeight();
-        double scale = Math.min(scaleX, scaleY);
+    /**
+     * Returns the icon read from a file and recolored with <code>overrideColorHex</code> (if it is not
+     * <code>null</code>). The icon is only built the first time a file and color are requested; later calls return
+     * the same icon.
+     */
+    public static SVGVectorIcon load(String filename, String overrideColorHex) throws UserInputException {
+        Path path;
+        try {
+            path = Path.of(filename).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            throw new UserInputException("Invalid SVG icon file name '" + filename + "'.");
+        }
+
+        CacheKey key = new CacheKey(path, overrideColorHex);
+        SVGVectorIcon icon = cache.get(key);
+        if (icon != null) {
+            return icon;
+        }
+
+        try (InputStream in = Files.newInputStream(path)) {
+            icon = new SVGVectorIcon(in, overrideColorHex, filename);
+        } catch (IOException e) {
+            throw new UserInputException("Could not read SVG icon '" + filename + "'.");
+        }
 
+        // Another thread may have built the same icon in the meantime, in which case its copy is kept.
+        SVGVectorIcon previous = cache.putIfAbsent(key, icon);
+        return previous != null ? previous : icon;
+    }
+
+    /** Returns the bounds of the icon when it is scaled to fit within a box centered on <code>center</code>. */
+    public Rectangle2D getBoundsCentered(ScaledCoordinate center, double width, double height) {
+        double scale = getScale(width, height);
         double scaledWidth = bounds.getWidth() * scale;
         double scaledHeight = bounds.getHeight() * scale;
+        return new Rectangle2D.Double(center.getX() - (scaledWidth / 2.0), center.getY() - (scaledHeight / 2.0),
+                                      scaledWidth, scaledHeight);
+    }
+
+    public void renderCentered(Graphics2D g2d, ScaledCoordinate center, double width, double height) {
+        double scale = getScale(width, height);
+        Rectangle2D target = getBoundsCentered(center, width, height);
 
         AffineTransform old = g2d.getTransform();
 
         // Center around (centerX, centerY)
-        g2d.translate(center.getX() - (scaledWidth / 2.0), center.getY() - (scaledHeight / 2.0));
+        g2d.translate(target.getX(), target.getY());
         g2d.scale(scale, scale);
         // Account for the fact that the (x, y) of the icon itself might not be (0, 0)
         g2d.translate(-bounds.getX(), -bounds.getY());
 
-        graphicsNode.paint(g2d);
+        // Batik's graphics nodes keep caches while they paint, so a shared icon is only painted by one thread at once.
+        synchronized (graphicsNode) {
+            graphicsNode.paint(g2d);
+        }
         g2d.setTransform(old);
     }
 
+    private double getScale(double width, double height) {
+        double scaleX = width / bounds.getWidth();
+        double scaleY = height / bounds.getHeight();
+        return Math.min(scaleX, scaleY);
+    }
+
     private void applyColorOverride(SVGDocument doc, String hexColor) {
         NodeList elements = doc.getElementsByTagName("*");
         for (int i = 0; i < elements.getLength(); i++) {
             Element el = (Element) elements.item(i);
 
             // Apply only to shape elements
-            if (el.hasAttribute("fill") || el.getTagName().matches("path|rect|circle|polygon|line")) {
+            if (el.hasAttribute("fill") || SHAPE_ELEMENTS.contains(el.getTagName())) {
                 el.setAttribute("fill", hexColor);
                 el.removeAttribute("stroke"); // Optional: remove strokes if needed
             }
         }
     }
+
+    private record CacheKey(Path path, String overrideColorHex) {}
 }
@@ -0,0 +1,107 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The measurements of a piece of text set in a font, in the font's units (millimeters for map labels).
+ * <p>
+ * Measuring text lays out its glyphs, which is slow compared to everything else needed to place a label, and maps
+ * repeat the same text many times (street names, house numbers, place types). Metrics are therefore obtained with
+ * <a href="#{@link}>{@link #of(Font, String)}</a>, which measures every unique pair of font and text once and caches
+ * the result. Metrics are measured with a fixed, device-independent <code>FontRenderContext</code>, so they do not
+ * depend on the output format, and the cache may be used from any number of threads.
+ */
+public class TextMetrics {
+    /** The number of entries after which the cache is cleared, so that it cannot grow without bound. */
+    public static final int MAX_CACHE_SIZE = 1 << 16;
+
+    /** Anti-aliased with fractional metrics, so that advances are not rounded to whole units. */
+    public static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, true);
+
+    private static final Map<Key, TextMetrics> cache = new ConcurrentHashMap<>();
+
+    private final String[] characters;
+    private final double[] advances;
+    private final double width;
+    private final double ascent;
+    private final double descent;
+
+    private TextMetrics(Font font, String text) {
+        int count = text.codePointCount(0, text.length());
+        characters = new String[count];
+        advances = new double[count];
+
+        int index = 0;
+        for (int i = 0; i < text.length(); i = text.offsetByCodePoints(i, 1)) {
+            String character = text.substring(i, text.offsetByCodePoints(i, 1));
+            characters[index] = character;
+            advances[index] = font.getStringBounds(character, FONT_RENDER_CONTEXT).getWidth();
+            ++index;
+        }
+
+        Rectangle2D bounds = font.getStringBounds(text, FONT_RENDER_CONTEXT);
+        width = bounds.getWidth();
+        ascent = -bounds.getMinY();
+        descent = bounds.getMaxY();
+    }
+
+    /** Returns the metrics of <code>text</code> set in <code>font</code>, measuring it only if it is not cached. */
+    public static TextMetrics of(Font font, String text) {
+        Key key = new Key(font, text);
+        TextMetrics metrics = cache.get(key);
+        if (metrics == null) {
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+            metrics = cache.computeIfAbsent(key, k -> new TextMetrics(k.font(), k.text()));
+        }
+        return metrics;
+    }
+
+    /** Returns the number of cached metrics. */
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
+    /** Returns the characters (code points) of the text, in order. */
+    public String getCharacter(int i) {
+        return characters[i];
+    }
+
+    /** Returns how far the pen advances for a single character when it is drawn on its own. */
+    public double getAdvance(int i) {
+        return advances[i];
+    }
+
+    /** Returns the number of characters (code points) in the text. */
+    public int getCharacterCount() {
+        return characters.length;
+    }
+
+    /** Returns the advance of the whole text, which takes kerning into account. */
+    public double getWidth() {
+        return width;
+    }
+
+    /** Returns the distance from the baseline to the top of the line. */
+    public double getAscent() {
+        return ascent;
+    }
+
+    /** Returns the distance from the baseline to the bottom of the line. */
+    public double getDescent() {
+        return descent;
+    }
+
+    /** Returns the height of a line of text. */
+    public double getHeight() {
+        return ascent + descent;
+    }
+
+    private record Key(Font font, String text) {}
+}
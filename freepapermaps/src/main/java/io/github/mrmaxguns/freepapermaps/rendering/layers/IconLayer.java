@@ -0,0 +1,135 @@
+package io.github.mrmaxguns.freepapermaps.rendering.layers;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
+import io.github.mrmaxguns.freepapermaps.geometry.Coordinate;
+import io.github.mrmaxguns.freepapermaps.geometry.Geometry;
+import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
+import io.github.mrmaxguns.freepapermaps.rendering.CollisionIndex;
+import io.github.mrmaxguns.freepapermaps.rendering.SVGVectorIcon;
+import io.github.mrmaxguns.freepapermaps.rendering.ScaledCoordinate;
+import io.github.mrmaxguns.freepapermaps.styling.ScaleRange;
+import io.github.mrmaxguns.freepapermaps.styling.Selector;
+import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
+import org.w3c.dom.Element;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Draws an SVG icon for every geometry matched by its selector, usually points of interest.
+ * <p>
+ * Icons are drawn at a node's position, or at the same point a <a href="#{@link}>{@link LabelLayer}</a> would label a
+ * polygon or way. Like labels, icons are placed in order of decreasing priority and are dropped if they would overlap
+ * a label or icon that was already placed. Icon files are named relative to the working directory, and each file is
+ * only parsed once per color, however many times it appears on the map.
+ */
+public class IconLayer extends Layer {
+    public static final double DEFAULT_ICON_SIZE = 5.0;
+    public static final double DEFAULT_PRIORITY = 0.0;
+    public static final double DEFAULT_PADDING = 0.5;
+
+    public static final String ICON_FIELD = "icon";
+    public static final String ICON_COLOR_FIELD = "icon-color";
+    public static final String ICON_SIZE_FIELD = "icon-size";
+    public static final String PRIORITY_FIELD = "priority";
+    public static final String PADDING_FIELD = "padding";
+
+    public static final LayerSchema SCHEMA = new LayerSchema.Builder()
+            .name("IconLayer")
+            .requiredField(ICON_FIELD, Interpreter.Primitive.Type.String)
+            .optionalField(ICON_COLOR_FIELD, Interpreter.Primitive.Type.Color)
+            .optionalField(ICON_SIZE_FIELD, Interpreter.Primitive.Type.Distance)
+            .optionalField(PRIORITY_FIELD, Interpreter.Primitive.Type.Unitless)
+            .optionalField(PADDING_FIELD, Interpreter.Primitive.Type.Distance)
+            .build();
+
+    public IconLayer(String ref, Map<String, String> rawFields) throws UserInputException {
+        super(SCHEMA, ref, rawFields);
+    }
+
+    public IconLayer(String ref, ScaleRange scaleRange, String minArea, Map<String, String> rawFields) throws
+            UserInputException {
+        super(SCHEMA, ref, scaleRange, minArea, rawFields);
+    }
+
+    public static IconLayer fromXML(Element rawLayer, XMLTools xmlTools) throws UserInputException {
+        return new IconLayer(getRefFromXML(rawLayer, xmlTools), ScaleRange.fromXML(rawLayer, xmlTools),
+                             getMinAreaFromXML(rawLayer, xmlTools), getRawFieldsFromXML(SCHEMA, rawLayer, xmlTools));
+    }
+
+    @Override
+    public void render(Graphics2D g2d, GeometryCollection geometries, Selector selector, Interpreter.Context context,
+                       CollisionIndex collisions) throws UserInputException {
+        List<Candidate> candidates = new ArrayList<>();
+        double minArea = getMinArea(context);
+        for (Geometry geometry : getCandidates(geometries, selector)) {
+            if (!selector.matches(geometry) || isTooSmall(geometry, minArea)) {
+                continue;
+            }
+
+            Coordinate<?> position = LabelLayer.getPointPosition(geometry);
+            if (position == null) {
+                continue;
+            }
+
+            ComputedFieldMap fields = computeFields(geometry, context);
+            String file = fields.getString(ICON_FIELD).strip();
+            if (!file.isEmpty()) {
+                candidates.add(new Candidate(new ScaledCoordinate(position.getX(), position.getY()), fields, file,
+                                             fields.getNumber(PRIORITY_FIELD, DEFAULT_PRIORITY)));
+            }
+        }
+
+        // The sort is stable, so icons of equal priority keep the order of the data.
+        candidates.sort(Comparator.comparingDouble(Candidate::priority).reversed());
+
+        for (Candidate candidate : candidates) {
+            ComputedFieldMap fields = candidate.fields();
+            SVGVectorIcon icon = getIcon(candidate.file(), fields);
+            double size = fields.getNumber(ICON_SIZE_FIELD, DEFAULT_ICON_SIZE);
+            double padding = fields.getNumber(PADDING_FIELD, DEFAULT_PADDING);
+
+            Rectangle2D bounds = icon.getBoundsCentered(candidate.position(), size, size);
+            Rectangle2D box = new Rectangle2D.Double(bounds.getX() - padding, bounds.getY() - padding,
+                                                     bounds.getWidth() + 2 * padding,
+                                                     bounds.getHeight() + 2 * padding);
+            if (collisions.insertIfFree(List.of(box))) {
+                icon.renderCentered(g2d, candidate.position(), size, size);
+            }
+        }
+    }
+
+    /** Draws the icon of a single geometry, without regard for other icons and labels. */
+    @Override
+    public void render(Graphics2D g2d, Geometry geometry, Interpreter.Context context) throws UserInputException {
+        Coordinate<?> position = LabelLayer.getPointPosition(geometry);
+        if (position == null) {
+            return;
+        }
+
+        ComputedFieldMap fields = computeFields(geometry, context);
+        String file = fields.getString(ICON_FIELD).strip();
+        if (!file.isEmpty()) {
+            double size = fields.getNumber(ICON_SIZE_FIELD, DEFAULT_ICON_SIZE);
+            getIcon(file, fields).renderCentered(g2d, new ScaledCoordinate(position.getX(), position.getY()), size,
+                                                 size);
+        }
+    }
+
+    private static SVGVectorIcon getIcon(String file, ComputedFieldMap fields) throws UserInputException {
+        String colorHex = null;
+        if (fields.containsKey(ICON_COLOR_FIELD)) {
+            Color color = fields.getColor(ICON_COLOR_FIELD);
+            colorHex = String.format("#%02x%02x%02x", color.getRed(), color.getGreen(), color.getBlue());
+        }
+        return SVGVectorIcon.load(file, colorHex);
+    }
+
+    private record Candidate(ScaledCoordinate position, ComputedFieldMap fields, String file, double priority) {}
+}
@@ -0,0 +1,377 @@
+package io.github.mrmaxguns.freepapermaps.rendering.layers;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
+import io.github.mrmaxguns.freepapermaps.geometry.*;
+import io.github.mrmaxguns.freepapermaps.rendering.CollisionIndex;
+import io.github.mrmaxguns.freepapermaps.rendering.ScaledCoordinate;
+import io.github.mrmaxguns.freepapermaps.rendering.TextMetrics;
+import io.github.mrmaxguns.freepapermaps.styling.ScaleRange;
+import io.github.mrmaxguns.freepapermaps.styling.Selector;
+import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
+import org.w3c.dom.Element;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Draws text labels for the geometries matched by its selector, without letting labels overlap.
+ * <p>
+ * Nodes are labeled at their position and polygons at their centroid. Ways are labeled along the middle of the line,
+ * with every character turned to follow it. All labels of a layer are placed in order of decreasing priority, and a
+ * label is dropped if it would overlap a label or symbol that was already placed on the map, by this or an earlier
+ * layer.
+ */
+public class LabelLayer extends Layer {
+    public static final String DEFAULT_FONT = Font.SANS_SERIF;
+    public static final double DEFAULT_FONT_SIZE = 3.0;
+    public static final String DEFAULT_FONT_STYLE = "plain";
+    public static final Color DEFAULT_COLOR = Color.BLACK;
+    public static final double DEFAULT_HALO_WIDTH = 0.5;
+    public static final double DEFAULT_PRIORITY = 0.0;
+    public static final double DEFAULT_PADDING = 0.5;
+
+    /** The largest angle in radians between two neighboring characters of a label along a line. */
+    public static final double MAX_CHARACTER_ANGLE = Math.PI / 4;
+
+    public static final String TEXT_FIELD = "text";
+    public static final String FONT_FIELD = "font";
+    public static final String FONT_SIZE_FIELD = "font-size";
+    public static final String FONT_STYLE_FIELD = "font-style";
+    public static final String COLOR_FIELD = "color";
+    public static final String HALO_COLOR_FIELD = "halo-color";
+    public static final String HALO_WIDTH_FIELD = "halo-width";
+    public static final String PRIORITY_FIELD = "priority";
+    public static final String PADDING_FIELD = "padding";
+    public static final String PLACEMENT_FIELD = "placement";
+
+    public static final LayerSchema SCHEMA = new LayerSchema.Builder()
+            .name("LabelLayer")
+            .requiredField(TEXT_FIELD, Interpreter.Primitive.Type.String)
+            .optionalField(FONT_FIELD, Interpreter.Primitive.Type.String)
+            .optionalField(FONT_SIZE_FIELD, Interpreter.Primitive.Type.Distance)
+            .optionalField(FONT_STYLE_FIELD, Interpreter.Primitive.Type.String)
+            .optionalField(COLOR_FIELD, Interpreter.Primitive.Type.Color)
+            .optionalField(HALO_COLOR_FIELD, Interpreter.Primitive.Type.Color)
+            .optionalField(HALO_WIDTH_FIELD, Interpreter.Primitive.Type.Distance)
+            .optionalField(PRIORITY_FIELD, Interpreter.Primitive.Type.Unitless)
+            .optionalField(PADDING_FIELD, Interpreter.Primitive.Type.Distance)
+            .optionalField(PLACEMENT_FIELD, Interpreter.Primitive.Type.String)
+            .build();
+
+    public LabelLayer(String ref, Map<String, String> rawFields) throws UserInputException {
+        super(SCHEMA, ref, rawFields);
+    }
+
+    public LabelLayer(String ref, ScaleRange scaleRange, String minArea, Map<String, String> rawFields) throws
+            UserInputException {
+        super(SCHEMA, ref, scaleRange, minArea, rawFields);
+    }
+
+    public static LabelLayer fromXML(Element rawLayer, XMLTools xmlTools) throws UserInputException {
+        return new LabelLayer(getRefFromXML(rawLayer, xmlTools), ScaleRange.fromXML(rawLayer, xmlTools),
+                              getMinAreaFromXML(rawLayer, xmlTools), getRawFieldsFromXML(SCHEMA, rawLayer, xmlTools));
+    }
+
+    @Override
+    public void render(Graphics2D g2d, GeometryCollection geometries, Selector selector, Interpreter.Context context,
+                       CollisionIndex collisions) throws UserInputException {
+        for (Label label : placeLabels(geometries, selector, context, collisions)) {
+            drawLabel(g2d, label);
+        }
+    }
+
+    /** Draws the label of a single geometry, without regard for other labels. */
+    @Override
+    public void render(Graphics2D g2d, Geometry geometry, Interpreter.Context context) throws UserInputException {
+        ComputedFieldMap fields = computeFields(geometry, context);
+        String text = fields.getString(TEXT_FIELD).strip();
+        Label label = text.isEmpty() ? null : layOut(new Candidate(geometry, fields, text, DEFAULT_PRIORITY));
+        if (label != null) {
+            drawLabel(g2d, label);
+        }
+    }
+
+    /**
+     * Places the labels of every geometry matched by <code>selector</code> in order of decreasing priority, and returns
+     * the ones that did not collide in the order they were placed. Their boxes are added to <code>collisions</code>.
+     */
+    List<Label> placeLabels(GeometryCollection geometries, Selector selector, Interpreter.Context context,
+                            CollisionIndex collisions) throws UserInputException {
+        List<Candidate> candidates = new ArrayList<>();
+        double minArea = getMinArea(context);
+        for (Geometry geometry : getCandidates(geometries, selector)) {
+            if (!selector.matches(geometry) || isTooSmall(geometry, minArea)) {
+                continue;
+            }
+
+            ComputedFieldMap fields = computeFields(geometry, context);
+            String text = fields.getString(TEXT_FIELD).strip();
+            if (!text.isEmpty()) {
+                candidates.add(new Candidate(geometry, fields, text, fields.getNumber(PRIORITY_FIELD,
+                                                                                      DEFAULT_PRIORITY)));
+            }
+        }
+
+        // The sort is stable, so labels of equal priority keep the order of the data.
+        candidates.sort(Comparator.comparingDouble(Candidate::priority).reversed());
+
+        List<Label> placed = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            Label label = layOut(candidate);
+            if (label != null && collisions.insertIfFree(label.boxes())) {
+                placed.add(label);
+            }
+        }
+        return placed;
+    }
+
+    private static Label layOut(Candidate candidate) throws UserInputException {
+        ComputedFieldMap fields = candidate.fields();
+        Font font = getFont(fields);
+        TextMetrics metrics = TextMetrics.of(font, candidate.text());
+        double padding = fields.getNumber(PADDING_FIELD, DEFAULT_PADDING);
+
+        Geometry geometry = candidate.geometry();
+        String placement = fields.getString(PLACEMENT_FIELD, geometry instanceof WayGeometry ? "line" : "point");
+        switch (placement.toLowerCase()) {
+            case "point" -> {
+                Coordinate<?> position = getPointPosition(geometry);
+                return position == null ? null : layOutAtPoint(candidate, font, metrics, padding, position);
+            }
+            case "line" -> {
+                WayGeometry line = geometry instanceof PolygonGeometry polygon ? polygon.getExteriorRing() :
+                                   geometry instanceof WayGeometry way ? way : null;
+                if (line == null) {
+                    Coordinate<?> position = getPointPosition(geometry);
+                    return position == null ? null : layOutAtPoint(candidate, font, metrics, padding, position);
+                }
+                return layOutAlongLine(candidate, font, metrics, padding, line);
+            }
+            default -> throw new UserInputException(
+                    "Invalid placement specification '" + placement + "'. Must be one of 'point', 'line'.");
+        }
+    }
+
+    private static Font getFont(ComputedFieldMap fields) throws UserInputException {
+        int style;
+        String rawStyle = fields.getString(FONT_STYLE_FIELD, DEFAULT_FONT_STYLE);
+        switch (rawStyle.toLowerCase()) {
+            case "plain" -> style = Font.PLAIN;
+            case "bold" -> style = Font.BOLD;
+            case "italic" -> style = Font.ITALIC;
+            case "bold-italic" -> style = Font.BOLD | Font.ITALIC;
+            default -> throw new UserInputException("Invalid font style specification '" + rawStyle +
+                                                    "'. Must be one of 'plain', 'bold', 'italic', 'bold-italic'.");
+        }
+
+        return new Font(fields.getString(FONT_FIELD, DEFAULT_FONT), style, 1)
+                .deriveFont((float) fields.getNumber(FONT_SIZE_FIELD, DEFAULT_FONT_SIZE));
+    }
+
+    /**
+     * Returns where a point label (or icon) goes, or <code>null</code> if the geometry has no sensible point: a node's
+     * position, a polygon's centroid if it lies inside the polygon, or the middle of a way.
+     */
+    static Coordinate<?> getPointPosition(Geometry geometry) {
+        if (geometry instanceof NodeGeometry node) {
+            return node.getPosition();
+        } else if (geometry instanceof PolygonGeometry polygon) {
+            return getLabelPoint(polygon);
+        } else if (geometry instanceof WayGeometry way) {
+            return getPointAlong(way.getNodes(), getLength(way.getNodes()) / 2);
+        }
+        return null;
+    }
+
+    /** Returns the centroid of a polygon's exterior ring, or <code>null</code> if it lies outside the polygon. */
+    private static Coordinate<?> getLabelPoint(PolygonGeometry polygon) {
+        List<NodeGeometry> ring = polygon.getExteriorRing().getNodes();
+        double area = 0;
+        double x = 0;
+        double y = 0;
+        for (int i = 0; i < ring.size() - 1; ++i) {
+            Coordinate<?> a = ring.get(i).getPosition();
+            Coordinate<?> b = ring.get(i + 1).getPosition();
+            double cross = a.getX() * b.getY() - b.getX() * a.getY();
+            area += cross;
+            x += (a.getX() + b.getX()) * cross;
+            y += (a.getY() + b.getY()) * cross;
+        }
+        if (area == 0) {
+            return null;
+        }
+
+        NodeGeometry centroid = new NodeGeometry(new ScaledCoordinate(x / (3 * area), y / (3 * area)));
+        if (!polygon.getExteriorRing().contains(centroid)) {
+            return null;
+        }
+        for (WayGeometry interiorRing : polygon.getInteriorRings()) {
+            if (interiorRing.contains(centroid)) {
+                return null;
+            }
+        }
+        return centroid.getPosition();
+    }
+
+    private static Label layOutAtPoint(Candidate candidate, Font font, TextMetrics metrics, double padding,
+                                       Coordinate<?> position) {
+        double left = position.getX() - metrics.getWidth() / 2;
+        double top = position.getY() - metrics.getHeight() / 2;
+        Rectangle2D box = new Rectangle2D.Double(left - padding, top - padding, metrics.getWidth() + 2 * padding,
+                                                 metrics.getHeight() + 2 * padding);
+
+        Glyph glyph = new Glyph(candidate.text(), left, top + metrics.getAscent(), 0);
+        return new Label(candidate.fields(), font, List.of(glyph), List.of(box));
+    }
+
+    /**
+     * Lays out a label along the middle of a line, or returns <code>null</code> if the line is too short or bends too
+     * sharply under the label. The line is followed backwards if that keeps the text from reading upside down.
+     */
+    private static Label layOutAlongLine(Candidate candidate, Font font, TextMetrics metrics, double padding,
+                                         WayGeometry line) {
+        List<NodeGeometry> nodes = line.getNodes();
+        double length = getLength(nodes);
+        double width = metrics.getWidth();
+        if (width + 2 * padding > length) {
+            return null;
+        }
+
+        double start = (length - width) / 2;
+        Coordinate<?> first = getPointAlong(nodes, start);
+        Coordinate<?> last = getPointAlong(nodes, start + width);
+        if (last.getX() < first.getX()) {
+            nodes = new ArrayList<>(nodes);
+            Collections.reverse(nodes);
+        }
+
+        // Characters are centered vertically on the line.
+        double baseline = (metrics.getAscent() - metrics.getDescent()) / 2;
+        double halfHeight = metrics.getHeight() / 2 + padding;
+
+        List<Glyph> glyphs = new ArrayList<>(metrics.getCharacterCount());
+        List<Rectangle2D> boxes = new ArrayList<>(metrics.getCharacterCount());
+        double offset = start;
+        double previousAngle = Double.NaN;
+        for (int i = 0; i < metrics.getCharacterCount(); ++i) {
+            double advance = metrics.getAdvance(i);
+            double center = offset + advance / 2;
+            offset += advance;
+
+            Coordinate<?> position = getPointAlong(nodes, center);
+            double angle = getAngleAt(nodes, center);
+            if (!Double.isNaN(previousAngle)) {
+                double difference = Math.abs(angle - previousAngle);
+                if (Math.min(difference, 2 * Math.PI - difference) > MAX_CHARACTER_ANGLE) {
+                    return null;
+                }
+            }
+            previousAngle = angle;
+
+            // Glyphs are drawn from their baseline, so move back half an advance and down to the baseline.
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            double dx = -advance / 2;
+            glyphs.add(new Glyph(metrics.getCharacter(i), position.getX() + dx * cos - baseline * sin,
+                                 position.getY() + dx * sin + baseline * cos, angle));
+
+            // The axis-aligned bounds of the turned character box, grown by the padding.
+            double halfWidth = advance / 2 + padding;
+            double extentX = Math.abs(cos) * halfWidth + Math.abs(sin) * halfHeight;
+            double extentY = Math.abs(sin) * halfWidth + Math.abs(cos) * halfHeight;
+            boxes.add(new Rectangle2D.Double(position.getX() - extentX, position.getY() - extentY, 2 * extentX,
+                                             2 * extentY));
+        }
+        return new Label(candidate.fields(), font, glyphs, boxes);
+    }
+
+    private static double getLength(List<NodeGeometry> nodes) {
+        double length = 0;
+        for (int i = 1; i < nodes.size(); ++i) {
+            length += distance(nodes.get(i - 1).getPosition(), nodes.get(i).getPosition());
+        }
+        return length;
+    }
+
+    /** Returns the point at a distance along a line, clamped to its ends. */
+    private static Coordinate<?> getPointAlong(List<NodeGeometry> nodes, double distance) {
+        for (int i = 1; i < nodes.size(); ++i) {
+            Coordinate<?> a = nodes.get(i - 1).getPosition();
+            Coordinate<?> b = nodes.get(i).getPosition();
+            double segment = distance(a, b);
+            if (distance <= segment && segment > 0) {
+                double t = Math.max(0, distance / segment);
+                return new ScaledCoordinate(a.getX() + (b.getX() - a.getX()) * t,
+                                            a.getY() + (b.getY() - a.getY()) * t);
+            }
+            distance -= segment;
+        }
+        return nodes.get(nodes.size() - 1).getPosition();
+    }
+
+    /** Returns the direction of the segment at a distance along a line, in radians. */
+    private static double getAngleAt(List<NodeGeometry> nodes, double distance) {
+        Coordinate<?> a = null;
+        Coordinate<?> b = null;
+        for (int i = 1; i < nodes.size(); ++i) {
+            a = nodes.get(i - 1).getPosition();
+            b = nodes.get(i).getPosition();
+            double segment = distance(a, b);
+            if (distance <= segment && segment > 0) {
+                break;
+            }
+            distance -= segment;
+        }
+        return Math.atan2(b.getY() - a.getY(), b.getX() - a.getX());
+    }
+
+    private static double distance(Coordinate<?> a, Coordinate<?> b) {
+        return Math.hypot(b.getX() - a.getX(), b.getY() - a.getY());
+    }
+
+    private static void drawLabel(Graphics2D g2d, Label label) {
+        ComputedFieldMap fields = label.fields();
+        Color color = fields.getColor(COLOR_FIELD, DEFAULT_COLOR);
+        Color haloColor = fields.getColor(HALO_COLOR_FIELD, null);
+        float haloWidth = (float) fields.getNumber(HALO_WIDTH_FIELD, DEFAULT_HALO_WIDTH);
+
+        AffineTransform saved = g2d.getTransform();
+        g2d.setFont(label.font());
+
+        // Draw every halo first, so that the halo of a character does not cover its neighbor.
+        if (haloColor != null && haloWidth > 0) {
+            g2d.setColor(haloColor);
+            g2d.setStroke(new BasicStroke(2 * haloWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            for (Glyph glyph : label.glyphs()) {
+                g2d.translate(glyph.x(), glyph.y());
+                g2d.rotate(glyph.angle());
+                g2d.draw(label.font().createGlyphVector(TextMetrics.FONT_RENDER_CONTEXT, glyph.text()).getOutline());
+                g2d.setTransform(saved);
+            }
+        }
+
+        g2d.setColor(color);
+        for (Glyph glyph : label.glyphs()) {
+            g2d.translate(glyph.x(), glyph.y());
+            g2d.rotate(glyph.angle());
+            g2d.drawString(glyph.text(), 0, 0);
+            g2d.setTransform(saved);
+        }
+    }
+
+    private record Candidate(Geometry geometry, ComputedFieldMap fields, String text, double priority) {}
+
+    /** A run of text drawn with its baseline starting at (x, y) and turned by an angle in radians. */
+    record Glyph(String text, double x, double y, double angle) {}
+
+    /** A label that has been placed, with the boxes it takes up on the map. */
+    record Label(ComputedFieldMap fields, Font font, List<Glyph> glyphs, List<Rectangle2D> boxes) {}
+}
@@ -3,65 +3,97 @@ package io.github.mrmaxguns.freepapermaps.rendering.layers;
 import io.github.mrmaxguns.freepapermaps.UserInputException;
 import io.github.mrmaxguns.freepapermaps.XMLTools;
 import io.github.mrmaxguns.freepapermaps.geometry.*;
+import io.github.mrmaxguns.freepapermaps.rendering.CollisionIndex;
+import io.github.mrmaxguns.freepapermaps.styling.ScaleRange;
+import io.github.mrmaxguns.freepapermaps.styling.Selector;
 import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
 import org.w3c.dom.Element;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 public abstract class Layer {
-    public final static Map<String, Interpreter.Primitive.Type> requiredFieldDefinitions = new HashMap<>();
-    public final static Map<String, Interpreter.Primitive.Type> optionalFieldDefinitions = new HashMap<>();
-    public static String name = "Layer";
+    public static final String MIN_AREA_ATTRIBUTE = "min-area";
+    /** A number with an optional area unit, which is a distance unit followed by <code>2</code>. */
+    private static final Pattern AREA_PATTERN = Pattern.compile("([0-9]*\\.?[0-9]+)\\s*([A-Za-z]*2)?");
 
+    private final LayerSchema schema;
     private final String ref;
-    private final Map<String, Interpreter> fields = new HashMap<>();
-    private final Map<String, Interpreter.Primitive.Type> allFieldDefinitions = new HashMap<>();
+    private final ScaleRange scaleRange;
+    private final double minAreaValue;
+    private final String minAreaUnit;
+    private final Map<String, Interpreter> fields;
+
+    /**
+     * Constructs a layer whose fields are validated against <code>schema</code>. Once constructed, a layer is never
+     * modified, so one layer can render many maps at once.
+     */
+    public Layer(LayerSchema schema, String ref, Map<String, String> rawFields) throws UserInputException {
+        this(schema, ref, ScaleRange.ALL, rawFields);
+    }
+
+    /** Constructs a layer that is only rendered on maps whose scale is within <code>scaleRange</code>. */
+    public Layer(LayerSchema schema, String ref, ScaleRange scaleRange, Map<String, String> rawFields) throws
+            UserInputException {
+        this(schema, ref, scaleRange, null, rawFields);
+    }
 
-    public Layer(String ref, Map<String, String> rawFields) throws UserInputException {
+    /**
+     * Constructs a layer that is only rendered on maps whose scale is within <code>scaleRange</code>, and that skips
+     * polygons and closed ways covering less than <code>minArea</code>, such as <code>0.5mm2</code> on paper. A
+     * <code>minArea</code> of <code>null</code> renders geometries of any size.
+     */
+    public Layer(LayerSchema schema, String ref, ScaleRange scaleRange, String minArea, Map<String, String> rawFields)
+            throws UserInputException {
+        this.schema = Objects.requireNonNull(schema);
         this.ref = Objects.requireNonNull(ref);
+        this.scaleRange = Objects.requireNonNull(scaleRange);
+
+        if (minArea == null) {
+            minAreaValue = 0;
+            minAreaUnit = "";
+        } else {
+            Matcher matcher = AREA_PATTERN.matcher(minArea.strip());
+            if (!matcher.matches()) {
+                throw new UserInputException("Layer " + schema.getName() + " received invalid '" + MIN_AREA_ATTRIBUTE +
+                                             "' value '" + minArea + "'. Expected an area such as '0.5mm2'.");
+            }
+            minAreaValue = Double.parseDouble(matcher.group(1));
+            minAreaUnit = matcher.group(2) == null ? "mm2" : matcher.group(2);
+        }
 
-        java.util.List<String> requiredFields = new ArrayList<>(requiredFieldDefinitions.keySet());
+        Map<String, Interpreter> parsedFields = new HashMap<>();
+        java.util.List<String> requiredFields = new ArrayList<>(schema.getRequiredFields().keySet());
         for (Map.Entry<String, String> entry : rawFields.entrySet()) {
-            if (requiredFieldDefinitions.containsKey(entry.getKey()) ||
-                optionalFieldDefinitions.containsKey(entry.getKey())) {
-                fields.put(entry.getKey(), Interpreter.of(entry.getValue()));
+            if (schema.hasField(entry.getKey())) {
+                parsedFields.put(entry.getKey(), Interpreter.of(entry.getValue()));
             } else {
-                throw new UserInputException("Layer " + name + " received invalid field '" + entry.getKey() + "'.");
+                throw new UserInputException(
+                        "Layer " + schema.getName() + " received invalid field '" + entry.getKey() + "'.");
             }
 
             requiredFields.remove(entry.getKey());
         }
 
         if (!requiredFields.isEmpty()) {
-            throw new UserInputException("Layer " + name + " is missing one or more required fields.");
+            throw new UserInputException("Layer " + schema.getName() + " is missing one or more required fields.");
         }
 
-        allFieldDefinitions.putAll(requiredFieldDefinitions);
-        allFieldDefinitions.putAll(optionalFieldDefinitions);
-    }
-
-    public static void defineRequiredField(String name, Interpreter.Primitive.Type type) {
-        requiredFieldDefinitions.put(name, type);
+        fields = Collections.unmodifiableMap(parsedFields);
     }
 
-    public static void defineOptionalField(String name, Interpreter.Primitive.Type type) {
-        optionalFieldDefinitions.put(name, type);
-    }
-
-    public static Map<String, String> getRawFieldsFromXML(Element rawLayer, XMLTools xmlTools) throws
-            UserInputException {
+    public static Map<String, String> getRawFieldsFromXML(LayerSchema schema, Element rawLayer, XMLTools xmlTools)
+            throws UserInputException {
         Map<String, String> rawFields = new HashMap<>();
 
-        for (String field : requiredFieldDefinitions.keySet()) {
+        for (String field : schema.getRequiredFields().keySet()) {
             rawFields.put(field, xmlTools.getAttributeValue(rawLayer, field, true));
         }
 
-        for (String field : optionalFieldDefinitions.keySet()) {
+        for (String field : schema.getOptionalFields().keySet()) {
             String value = xmlTools.getAttributeValue(rawLayer, field, false);
 
             if (value != null) {
@@ -76,24 +108,75 @@ public abstract class Layer {
         return xmlTools.getAttributeValue(rawLayer, "ref", true);
     }
 
-    public void render(Graphics2D g2d, GeometryCollection geometries, Interpreter.Context context) {
+    public static String getMinAreaFromXML(Element rawLayer, XMLTools xmlTools) throws UserInputException {
+        return xmlTools.getAttributeValue(rawLayer, MIN_AREA_ATTRIBUTE, false);
+    }
+
+    /**
+     * Renders every geometry of the selector's type that the selector matches. Layers that place labels or symbols
+     * reserve the space they draw on in <code>collisions</code>, which is shared by all layers of one render.
+     */
+    public void render(Graphics2D g2d, GeometryCollection geometries, Selector selector, Interpreter.Context context,
+                       CollisionIndex collisions) throws UserInputException {
+        double minArea = getMinArea(context);
+        for (Geometry geometry : getCandidates(geometries, selector)) {
+            if (selector.matches(geometry) && !isTooSmall(geometry, minArea)) {
+                render(g2d, geometry, context);
+            }
+        }
+    }
 
+    /** Returns the geometries of the selector's type, which still have to be matched against the selector. */
+    protected static Collection<? extends Geometry> getCandidates(GeometryCollection geometries, Selector selector) {
+        return switch (selector.type) {
+            case Node -> geometries.getNodesById().values();
+            case Way -> geometries.getWaysById().values();
+            case Polygon -> geometries.getPolygonsById().values();
+        };
     }
 
-    public void render(Graphics2D g2d, Geometry geometry, Interpreter.Context context) throws UserInputException {
-        Interpreter.Context newContext = context.extendWithValueVariables(geometry.getTags());
+    /** Returns the smallest area (in mm<sup>2</sup> on paper) of a polygon or closed way this layer renders. */
+    protected double getMinArea(Interpreter.Context context) throws UserInputException {
+        if (minAreaValue == 0) {
+            return 0;
+        }
 
-        ComputedFieldMap computedFields = new ComputedFieldMap();
-        for (Map.Entry<String, Interpreter> field : fields.entrySet()) {
-            Interpreter.Primitive result = field.getValue().interpret(newContext);
+        try {
+            return context.unitManager().parseAreaWithUnit(minAreaValue, minAreaUnit);
+        } catch (IllegalArgumentException e) {
+            throw new UserInputException(e.getMessage());
+        }
+    }
 
-            if (result.type != allFieldDefinitions.get(field.getKey())) {
-                throw new UserInputException(
-                        "Field '" + field.getKey() + "' is expected to be of type " + result.type.name());
+    /**
+     * Returns true if <code>geometry</code> is a polygon or closed way covering less than <code>minArea</code>, and so
+     * would be too small to be seen. The area of its bounding box is checked first, so that most small geometries are
+     * skipped without computing their exact area. Fields are never evaluated.
+     */
+    protected static boolean isTooSmall(Geometry geometry, double minArea) {
+        if (minArea <= 0) {
+            return false;
+        }
+
+        if (geometry instanceof PolygonGeometry polygon) {
+            WayGeometry exteriorRing = polygon.getExteriorRing();
+            if (exteriorRing.getEnvelopeArea() < minArea) {
+                return true;
             }
 
-            computedFields.put(field.getKey(), result);
+            double area = exteriorRing.getArea();
+            for (WayGeometry interiorRing : polygon.getInteriorRings()) {
+                area -= interiorRing.getArea();
+            }
+            return area < minArea;
+        } else if (geometry instanceof WayGeometry way && way.isClosed()) {
+            return way.getEnvelopeArea() < minArea || way.getArea() < minArea;
         }
+        return false;
+    }
+
+    public void render(Graphics2D g2d, Geometry geometry, Interpreter.Context context) throws UserInputException {
+        ComputedFieldMap computedFields = computeFields(geometry, context);
 
         if (geometry instanceof NodeGeometry) {
             renderNode(g2d, (NodeGeometry) geometry, computedFields);
@@ -108,18 +191,62 @@ public abstract class Layer {
         }
     }
 
+    /** Evaluates this layer's fields with the tags of <code>geometry</code>. */
+    protected ComputedFieldMap computeFields(Geometry geometry, Interpreter.Context context) throws
+            UserInputException {
+        Interpreter.Context newContext = context.extendWithValueVariables(geometry.getTags());
+
+        ComputedFieldMap computedFields = new ComputedFieldMap();
+        for (Map.Entry<String, Interpreter> field : fields.entrySet()) {
+            Interpreter.Primitive result = field.getValue().interpret(newContext);
+
+            if (result.type != schema.getFieldType(field.getKey())) {
+                throw new UserInputException(
+                        "Field '" + field.getKey() + "' is expected to be of type " + result.type.name());
+            }
+
+            computedFields.put(field.getKey(), result);
+        }
+        return computedFields;
+    }
+
     public void renderNode(Graphics2D g2d, NodeGeometry node, ComputedFieldMap fields)                        {}
 
     public void renderWay(Graphics2D g2d, WayGeometry way, ComputedFieldMap fields) throws UserInputException {}
 
-    public void renderPolygon(Graphics2D g2d, PolygonGeometry polygon, ComputedFieldMap fields)               {}
+    public void renderPolygon(Graphics2D g2d, PolygonGeometry polygon, ComputedFieldMap fields) throws
+            UserInputException {}
 
     public void renderRelation(Graphics2D g2d, RelationGeometry relation, ComputedFieldMap fields)            {}
 
+    public LayerSchema getSchema() {
+        return schema;
+    }
+
     public String getRef() {
         return ref;
     }
 
+    public ScaleRange getScaleRange() {
+        return scaleRange;
+    }
+
+    /**
+     * Returns the keys of all tags this layer's fields read, or <code>null</code> if they cannot be known before
+     * rendering.
+     */
+    public Set<String> getReferencedTagKeys() {
+        Set<String> keys = new HashSet<>();
+        for (Interpreter field : fields.values()) {
+            Set<String> fieldKeys = field.getReferencedValueVariables();
+            if (fieldKeys == null) {
+                return null;
+            }
+            keys.addAll(fieldKeys);
+        }
+        return keys;
+    }
+
     public static class ComputedFieldMap extends HashMap<String, Interpreter.Primitive> {
         public double getNumber(String key) {
             return ((Interpreter.NumericPrimitive) getOrError(key)).value;
@@ -0,0 +1,84 @@
+package io.github.mrmaxguns.freepapermaps.rendering.layers;
+
+import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * Describes the fields a type of <code>Layer</code> accepts: their names, their types, and whether they are required.
+ * <p>
+ * Each layer type defines its schema once as a constant. Schemas are immutable, so they can be shared by every layer of
+ * that type and read by any number of threads.
+ */
+public class LayerSchema {
+    private final String name;
+    private final Map<String, Interpreter.Primitive.Type> requiredFields;
+    private final Map<String, Interpreter.Primitive.Type> optionalFields;
+
+    public LayerSchema(Builder builder) {
+        this.name = Objects.requireNonNull(builder.name);
+
+        for (String field : builder.requiredFields.keySet()) {
+            if (builder.optionalFields.containsKey(field)) {
+                throw new IllegalStateException("Field '" + field + "' cannot be both required and optional.");
+            }
+        }
+
+        this.requiredFields = Map.copyOf(builder.requiredFields);
+        this.optionalFields = Map.copyOf(builder.optionalFields);
+    }
+
+    /** Returns the name of the layer type, as used in style files. */
+    public String getName() {
+        return name;
+    }
+
+    /** Returns an unmodifiable map of required field names to their types. */
+    public Map<String, Interpreter.Primitive.Type> getRequiredFields() {
+        return requiredFields;
+    }
+
+    /** Returns an unmodifiable map of optional field names to their types. */
+    public Map<String, Interpreter.Primitive.Type> getOptionalFields() {
+        return optionalFields;
+    }
+
+    /** Returns the type of a field, or <code>null</code> if this schema does not define it. */
+    public Interpreter.Primitive.Type getFieldType(String field) {
+        Interpreter.Primitive.Type type = requiredFields.get(field);
+        return type != null ? type : optionalFields.get(field);
+    }
+
+    /** Returns true if this schema defines a (required or optional) field with the given name. */
+    public boolean hasField(String field) {
+        return requiredFields.containsKey(field) || optionalFields.containsKey(field);
+    }
+
+    public static class Builder {
+        private final Map<String, Interpreter.Primitive.Type> requiredFields = new HashMap<>();
+        private final Map<String, Interpreter.Primitive.Type> optionalFields = new HashMap<>();
+        private String name;
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder requiredField(String name, Interpreter.Primitive.Type type) {
+            requiredFields.put(Objects.requireNonNull(name), Objects.requireNonNull(type));
+            return this;
+        }
+
+        public Builder optionalField(String name, Interpreter.Primitive.Type type) {
+            optionalFields.put(Objects.requireNonNull(name), Objects.requireNonNull(type));
+            return this;
+        }
+
+        public LayerSchema build() {
+            return new LayerSchema(this);
+        }
+    }
+}
@@ -2,14 +2,23 @@ package io.github.mrmaxguns.freepapermaps.rendering.layers;
 
 import io.github.mrmaxguns.freepapermaps.UserInputException;
 import io.github.mrmaxguns.freepapermaps.XMLTools;
+import io.github.mrmaxguns.freepapermaps.geometry.Clipper;
 import io.github.mrmaxguns.freepapermaps.geometry.Coordinate;
+import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
+import io.github.mrmaxguns.freepapermaps.geometry.PolygonGeometry;
 import io.github.mrmaxguns.freepapermaps.geometry.WayGeometry;
+import io.github.mrmaxguns.freepapermaps.geometry.WayMerger;
+import io.github.mrmaxguns.freepapermaps.rendering.CollisionIndex;
+import io.github.mrmaxguns.freepapermaps.styling.ScaleRange;
+import io.github.mrmaxguns.freepapermaps.styling.Selector;
 import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
 import org.w3c.dom.Element;
 
 import java.awt.*;
 import java.awt.geom.GeneralPath;
-import java.util.Map;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.List;
 
 
 public class PaintLayer extends Layer {
@@ -24,40 +33,127 @@ public class PaintLayer extends Layer {
     public static final String LINE_CAP_FIELD = "line-cap";
     public static final String LINE_JOIN_FIELD = "line-join";
 
-    static {
-        name = "PaintLayer";
+    public static final LayerSchema SCHEMA = new LayerSchema.Builder()
+            .name("PaintLayer")
+            .optionalField(LINE_COLOR_FIELD, Interpreter.Primitive.Type.Color)
+            .optionalField(FILL_COLOR_FIELD, Interpreter.Primitive.Type.Color)
+            .optionalField(LINE_WIDTH_FIELD, Interpreter.Primitive.Type.Distance)
+            .optionalField(LINE_CAP_FIELD, Interpreter.Primitive.Type.String)
+            .optionalField(LINE_JOIN_FIELD, Interpreter.Primitive.Type.String)
+            .build();
 
-        defineOptionalField(LINE_COLOR_FIELD, Interpreter.Primitive.Type.Color);
-        defineOptionalField(FILL_COLOR_FIELD, Interpreter.Primitive.Type.Color);
-        defineOptionalField(LINE_WIDTH_FIELD, Interpreter.Primitive.Type.Distance);
-        defineOptionalField(LINE_CAP_FIELD, Interpreter.Primitive.Type.String);
-        defineOptionalField(LINE_JOIN_FIELD, Interpreter.Primitive.Type.String);
+    public PaintLayer(String ref, Map<String, String> rawFields) throws UserInputException {
+        super(SCHEMA, ref, rawFields);
     }
 
-    public PaintLayer(String ref, Map<String, String> rawFields) throws UserInputException {
-        super(ref, rawFields);
+    public PaintLayer(String ref, ScaleRange scaleRange, String minArea, Map<String, String> rawFields) throws
+            UserInputException {
+        super(SCHEMA, ref, scaleRange, minArea, rawFields);
     }
 
     public static PaintLayer fromXML(Element rawLayer, XMLTools xmlTools) throws UserInputException {
-        return new PaintLayer(getRefFromXML(rawLayer, xmlTools), getRawFieldsFromXML(rawLayer, xmlTools));
+        return new PaintLayer(getRefFromXML(rawLayer, xmlTools), ScaleRange.fromXML(rawLayer, xmlTools),
+                              getMinAreaFromXML(rawLayer, xmlTools), getRawFieldsFromXML(SCHEMA, rawLayer, xmlTools));
+    }
+
+    /**
+     * Renders the matched geometries. Consecutive ways that are only stroked and share their computed style are
+     * collected into runs, and the connected ways in each run are merged into longer lines, so that they are drawn as
+     * continuous lines without caps at every joint. Runs end wherever the style changes, so ways are still drawn in
+     * their original order.
+     */
+    @Override
+    public void render(Graphics2D g2d, GeometryCollection geometries, Selector selector, Interpreter.Context context,
+                       CollisionIndex collisions) throws UserInputException {
+        if (selector.type != Selector.Type.Way) {
+            super.render(g2d, geometries, selector, context, collisions);
+            return;
+        }
+
+        List<WayGeometry> run = new ArrayList<>();
+        Object runKey = null;
+        ComputedFieldMap runFields = null;
+        double minArea = getMinArea(context);
+        for (WayGeometry way : geometries.getWaysById().values()) {
+            if (!selector.matches(way) || isTooSmall(way, minArea)) {
+                continue;
+            }
+
+            ComputedFieldMap fields = computeFields(way, context);
+            // Filled ways are closed individually, so they are never merged
+            Object key = fields.containsKey(FILL_COLOR_FIELD) ? new Object() : Arrays.asList(
+                    fields.getColor(LINE_COLOR_FIELD, null), fields.getNumber(LINE_WIDTH_FIELD, DEFAULT_LINE_WIDTH),
+                    fields.getString(LINE_CAP_FIELD, DEFAULT_LINE_CAP).toLowerCase(),
+                    fields.getString(LINE_JOIN_FIELD, DEFAULT_LINE_JOIN).toLowerCase());
+            if (!key.equals(runKey)) {
+                renderRun(g2d, run, runFields);
+                run.clear();
+                runKey = key;
+                runFields = fields;
+            }
+            run.add(way);
+        }
+        renderRun(g2d, run, runFields);
     }
 
+    private void renderRun(Graphics2D g2d, List<WayGeometry> run, ComputedFieldMap fields) throws UserInputException {
+        if (run.isEmpty()) {
+            return;
+        }
+        for (WayGeometry way : WayMerger.merge(run)) {
+            renderWay(g2d, way, fields);
+        }
+    }
+
+    /**
+     * Renders a way. The way is first clipped to the clipping area of <code>g2d</code>, widened by a margin for the
+     * stroke, so that only the part near the sheet is written to the output. Filled ways are clipped as rings.
+     */
     @Override
     public void renderWay(Graphics2D g2d, WayGeometry way, ComputedFieldMap fields) throws UserInputException {
+        BasicStroke stroke = createStroke(fields);
+        g2d.setStroke(stroke);
+
         // Create a new GeneralPath, which will be the path traced out by the polyline
-        GeneralPath polyline = new GeneralPath(GeneralPath.WIND_EVEN_ODD, way.getNodes().size());
+        GeneralPath polyline = createPath(g2d, way, stroke, fields.containsKey(FILL_COLOR_FIELD));
+        if (polyline == null) {
+            return;
+        }
 
-        // Go from one point to the next
-        for (int i = 0; i < way.getNodes().size(); ++i) {
-            Coordinate coordinate = way.getNodes().get(i).getPosition();
+        if (fields.containsKey(FILL_COLOR_FIELD)) {
+            polyline.closePath();
+        }
+        paint(g2d, polyline, fields);
+    }
 
-            if (i == 0) {
-                polyline.moveTo(coordinate.getX(), coordinate.getY());
-            } else {
-                polyline.lineTo(coordinate.getX(), coordinate.getY());
+    /**
+     * Renders a polygon. Each of its rings is clipped like a filled way, and all of them are traced into one path, so
+     * that the interior rings are cut out of the fill.
+     */
+    @Override
+    public void renderPolygon(Graphics2D g2d, PolygonGeometry polygon, ComputedFieldMap fields) throws
+            UserInputException {
+        BasicStroke stroke = createStroke(fields);
+        g2d.setStroke(stroke);
+
+        GeneralPath path = createPath(g2d, polygon.getExteriorRing(), stroke, true);
+        if (path == null) {
+            return;
+        }
+        path.closePath();
+
+        for (WayGeometry interiorRing : polygon.getInteriorRings()) {
+            GeneralPath hole = createPath(g2d, interiorRing, stroke, true);
+            if (hole != null) {
+                hole.closePath();
+                path.append(hole, false);
             }
         }
 
+        paint(g2d, path, fields);
+    }
+
+    private static BasicStroke createStroke(ComputedFieldMap fields) throws UserInputException {
         // Set stroke properties
         float width = (float) fields.getNumber(LINE_WIDTH_FIELD, DEFAULT_LINE_WIDTH);
 
@@ -81,25 +177,73 @@ public class PaintLayer extends Layer {
                     "Invalid join specification '" + rawJoin + "'. Must be one of 'miter', 'round', 'bevel'.");
         }
 
-        g2d.setStroke(new BasicStroke(width, cap, join));
+        return new BasicStroke(width, cap, join);
+    }
 
+    /** Fills and strokes a path that was already traced, with the stroke already set on <code>g2d</code>. */
+    private static void paint(Graphics2D g2d, GeneralPath path, ComputedFieldMap fields) {
         // If there is a fill, do that first
         if (fields.containsKey(FILL_COLOR_FIELD)) {
-            polyline.closePath();
             g2d.setColor(fields.getColor(FILL_COLOR_FIELD));
-            g2d.fill(polyline);
+            g2d.fill(path);
         }
 
         // If there is a stroke, do that
         if (fields.containsKey(LINE_COLOR_FIELD)) {
             g2d.setColor(fields.getColor(LINE_COLOR_FIELD));
-            g2d.draw(polyline);
+            g2d.draw(path);
         }
 
         // If there is neither a fill, nor stroke, do a default stroke
         if (!fields.containsKey(FILL_COLOR_FIELD) && !fields.containsKey(LINE_COLOR_FIELD)) {
             g2d.setColor(DEFAULT_LINE_COLOR);
-            g2d.draw(polyline);
+            g2d.draw(path);
+        }
+    }
+
+    /**
+     * Traces the part of a way that can be seen through the clip of <code>g2d</code>. Returns null if no part of it
+     * can be seen.
+     */
+    private static GeneralPath createPath(Graphics2D g2d, WayGeometry way, BasicStroke stroke, boolean isRing) {
+        double[] points = new double[way.getNodes().size() * 2];
+        for (int i = 0; i < way.getNodes().size(); ++i) {
+            Coordinate<?> coordinate = way.getNodes().get(i).getPosition();
+            points[2 * i] = coordinate.getX();
+            points[2 * i + 1] = coordinate.getY();
+        }
+
+        List<double[]> pieces;
+        Shape clip = g2d.getClip();
+        if (clip == null) {
+            pieces = List.of(points);
+        } else {
+            // Anything the stroke can reach from outside the margin is hidden, including the sharpest miters
+            double margin = stroke.getLineWidth() * (stroke.getLineJoin() == BasicStroke.JOIN_MITER ?
+                                                     stroke.getMiterLimit() / 2 : 1);
+            Rectangle2D bounds = clip.getBounds2D();
+            Clipper clipper = new Clipper(bounds.getMinX() - margin, bounds.getMinY() - margin,
+                                          bounds.getMaxX() + margin, bounds.getMaxY() + margin);
+            if (isRing && points.length >= 6) {
+                double[] ring = clipper.clipRing(points);
+                pieces = ring.length == 0 ? List.of() : List.of(ring);
+            } else {
+                pieces = clipper.clipLine(points);
+            }
+        }
+
+        if (pieces.isEmpty()) {
+            return null;
+        }
+
+        GeneralPath polyline = new GeneralPath(GeneralPath.WIND_EVEN_ODD, points.length / 2);
+        for (double[] piece : pieces) {
+            // Go from one point to the next
+            polyline.moveTo(piece[0], piece[1]);
+            for (int i = 2; i < piece.length; i += 2) {
+                polyline.lineTo(piece[i], piece[i + 1]);
+            }
         }
+        return polyline;
     }
 }
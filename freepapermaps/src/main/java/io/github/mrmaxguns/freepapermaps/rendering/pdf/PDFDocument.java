@@ -0,0 +1,327 @@
+package io.github.mrmaxguns.freepapermaps.rendering.pdf;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+
+/**
+ * A PDF document that is written to a stream as it is drawn.
+ * <p>
+ * Pages are drawn with the <code>Graphics2D</code> returned by <a href="#{@link}>{@link PDFPage#getGraphics()}</a>,
+ * in millimeters with the origin at the top left, just like an SVG map. There are two kinds of pages:
+ * <ul>
+ *     <li>Pages opened with <a href="#{@link}>{@link #beginPage(double, double)}</a> write their compressed content
+ *     straight into the document, so a page of any size is drawn in constant memory. Nothing else may be written to
+ *     the document until the page is ended.</li>
+ *     <li>Pages created with <a href="#{@link}>{@link #createPage(double, double)}</a> keep their compressed content
+ *     in memory until they are ended. Any number of them may be drawn at once, from different threads, and they are
+ *     added to the document in the order they are ended.</li>
+ * </ul>
+ * Resources (fonts, transparency states and images) are shared by all pages and written once, when the document is
+ * finished. Apart from creating pages, a document must only be used by one thread at a time.
+ */
+public class PDFDocument {
+    public static final double POINTS_PER_MILLIMETER = 72 / 25.4;
+
+    private static final int CATALOG_OBJECT = 1;
+    private static final int PAGES_OBJECT = 2;
+    private static final int RESOURCES_OBJECT = 3;
+
+    private final CountingOutputStream out;
+    /** The byte offset of every object, indexed by object number minus one. */
+    private final List<Long> objectOffsets = new ArrayList<>();
+    private final List<Integer> pageObjects = new ArrayList<>();
+
+    /** Transparency states by opacity in thousandths, mapped to their resource names. */
+    private final Map<Integer, String> alphaStates = new LinkedHashMap<>();
+    /** Standard fonts by base font name, mapped to their resource names. */
+    private final Map<String, String> fonts = new LinkedHashMap<>();
+    /** Image object numbers by resource name. */
+    private final Map<String, Integer> images = new LinkedHashMap<>();
+    private int imageCount = 0;
+
+    private PDFPage streamingPage = null;
+    private boolean finished = false;
+
+    /** Constructs a document and writes its header to <code>out</code>. */
+    public PDFDocument(OutputStream out) throws IOException {
+        this.out = new CountingOutputStream(new BufferedOutputStream(out, 1 << 16));
+
+        // The binary comment tells transfer programs that the file is not plain text.
+        writeAscii("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+
+        for (int object = CATALOG_OBJECT; object <= RESOURCES_OBJECT; ++object) {
+            reserveObject();
+        }
+    }
+
+    /**
+     * Begins a page that is written to the document as it is drawn. The page must be ended with
+     * <a href="#{@link}>{@link #endPage(PDFPage)}</a> before anything else is written to the document.
+     */
+    public PDFPage beginPage(double width, double height) throws IOException {
+        checkWritable();
+
+        int contentObject = reserveObject();
+        int lengthObject = reserveObject();
+        beginObject(contentObject);
+        writeAscii("<< /Length " + lengthObject + " 0 R /Filter /FlateDecode >>\nstream\n");
+
+        streamingPage = new PDFPage(this, width, height, contentObject, lengthObject, out.getCount(), out);
+        return streamingPage;
+    }
+
+    /**
+     * Creates a page whose content is kept in memory until it is ended. This may be called from several threads at
+     * once, and the pages may be drawn concurrently.
+     */
+    public PDFPage createPage(double width, double height) {
+        return new PDFPage(this, width, height, 0, 0, 0, new ByteArrayOutputStream());
+    }
+
+    /** Ends a page and adds it to the document after the pages that were ended before it. */
+    public void endPage(PDFPage page) throws IOException {
+        if (page.getDocument() != this) {
+            throw new IllegalArgumentException("The page belongs to another document.");
+        }
+        if (streamingPage != null && page != streamingPage) {
+            throw new IllegalStateException("Another page is being written to the document.");
+        }
+        if (finished) {
+            throw new IllegalStateException("The document is already finished.");
+        }
+
+        page.finishContent();
+
+        int contentObject;
+        if (page == streamingPage) {
+            streamingPage = null;
+            contentObject = page.getContentObject();
+            long length = out.getCount() - page.getContentStart();
+            writeAscii("\nendstream\nendobj\n");
+
+            beginObject(page.getLengthObject());
+            writeAscii(Long.toString(length));
+            endObject();
+        } else {
+            byte[] content = page.getBufferedContent();
+            contentObject = reserveObject();
+            beginObject(contentObject);
+            writeAscii("<< /Length " + content.length + " /Filter /FlateDecode >>\nstream\n");
+            out.write(content);
+            writeAscii("\nendstream\nendobj\n");
+        }
+
+        for (PDFPage.PendingImage image : page.getPendingImages()) {
+            writeImage(image);
+        }
+
+        int pageObject = reserveObject();
+        beginObject(pageObject);
+        writeAscii("<< /Type /Page /Parent " + PAGES_OBJECT + " 0 R /MediaBox [0 0 " +
+                   formatNumber(page.getWidth() * POINTS_PER_MILLIMETER) + " " +
+                   formatNumber(page.getHeight() * POINTS_PER_MILLIMETER) + "] /Resources " + RESOURCES_OBJECT +
+                   " 0 R /Contents " + contentObject + " 0 R >>");
+        endObject();
+        pageObjects.add(pageObject);
+    }
+
+    /**
+     * Writes the shared resources, the page tree and the cross-reference table, and flushes the document. The
+     * underlying stream is not closed.
+     */
+    public void finish() throws IOException {
+        checkWritable();
+        finished = true;
+
+        beginObject(RESOURCES_OBJECT);
+        StringBuilder resources = new StringBuilder("<< /ProcSet [/PDF /Text /ImageB /ImageC]");
+        synchronized (this) {
+            if (!alphaStates.isEmpty()) {
+                resources.append("\n/ExtGState <<");
+                for (Map.Entry<Integer, String> state : alphaStates.entrySet()) {
+                    String alpha = formatNumber(state.getKey() / 1000.0);
+                    resources.append("\n/").append(state.getValue()).append(" << /Type /ExtGState /CA ").append(alpha)
+                            .append(" /ca ").append(alpha).append(" >>");
+                }
+                resources.append(" >>");
+            }
+            if (!fonts.isEmpty()) {
+                resources.append("\n/Font <<");
+                for (Map.Entry<String, String> font : fonts.entrySet()) {
+                    resources.append("\n/").append(font.getValue())
+                            .append(" << /Type /Font /Subtype /Type1 /BaseFont /").append(font.getKey())
+                            .append(" /Encoding /WinAnsiEncoding >>");
+                }
+                resources.append(" >>");
+            }
+            if (!images.isEmpty()) {
+                resources.append("\n/XObject <<");
+                for (Map.Entry<String, Integer> image : images.entrySet()) {
+                    resources.append(" /").append(image.getKey()).append(' ').append(image.getValue()).append(" 0 R");
+                }
+                resources.append(" >>");
+            }
+        }
+        resources.append(" >>");
+        writeAscii(resources.toString());
+        endObject();
+
+        beginObject(PAGES_OBJECT);
+        StringBuilder pages = new StringBuilder("<< /Type /Pages /Kids [");
+        for (int i = 0; i < pageObjects.size(); ++i) {
+            pages.append(i == 0 ? "" : " ").append(pageObjects.get(i)).append(" 0 R");
+        }
+        pages.append("] /Count ").append(pageObjects.size()).append(" >>");
+        writeAscii(pages.toString());
+        endObject();
+
+        beginObject(CATALOG_OBJECT);
+        writeAscii("<< /Type /Catalog /Pages " + PAGES_OBJECT + " 0 R >>");
+        endObject();
+
+        long xrefOffset = out.getCount();
+        StringBuilder xref = new StringBuilder("xref\n0 ").append(objectOffsets.size() + 1)
+                .append("\n0000000000 65535 f \n");
+        for (long offset : objectOffsets) {
+            String digits = Long.toString(offset);
+            xref.append("0".repeat(10 - digits.length())).append(digits).append(" 00000 n \n");
+        }
+        xref.append("trailer\n<< /Size ").append(objectOffsets.size() + 1).append(" /Root ").append(CATALOG_OBJECT)
+                .append(" 0 R >>\nstartxref\n").append(xrefOffset).append("\n%%EOF\n");
+        writeAscii(xref.toString());
+        out.flush();
+    }
+
+    public int getPageCount() {
+        return pageObjects.size();
+    }
+
+    /** Returns the resource name of a transparency state with the given opacity in thousandths. */
+    synchronized String registerAlpha(int alpha) {
+        return alphaStates.computeIfAbsent(alpha, a -> "GS" + (alphaStates.size() + 1));
+    }
+
+    /** Returns the resource name of one of the standard 14 fonts. */
+    synchronized String registerFont(String baseFont) {
+        return fonts.computeIfAbsent(baseFont, f -> "F" + (fonts.size() + 1));
+    }
+
+    /** Returns a new, unique resource name for an image. */
+    synchronized String registerImage() {
+        return "Im" + (++imageCount);
+    }
+
+    private void writeImage(PDFPage.PendingImage image) throws IOException {
+        int maskObject = 0;
+        if (image.alpha() != null) {
+            maskObject = reserveObject();
+            beginObject(maskObject);
+            writeAscii("<< /Type /XObject /Subtype /Image /Width " + image.width() + " /Height " + image.height() +
+                       " /ColorSpace /DeviceGray /BitsPerComponent 8 /Filter /FlateDecode /Length " +
+                       image.alpha().length + " >>\nstream\n");
+            out.write(image.alpha());
+            writeAscii("\nendstream\nendobj\n");
+        }
+
+        int imageObject = reserveObject();
+        beginObject(imageObject);
+        writeAscii("<< /Type /XObject /Subtype /Image /Width " + image.width() + " /Height " + image.height() +
+                   " /ColorSpace /DeviceRGB /BitsPerComponent 8 /Filter /FlateDecode /Length " + image.rgb().length +
+                   (maskObject != 0 ? " /SMask " + maskObject + " 0 R" : "") + " >>\nstream\n");
+        out.write(image.rgb());
+        writeAscii("\nendstream\nendobj\n");
+
+        synchronized (this) {
+            images.put(image.name(), imageObject);
+        }
+    }
+
+    private void checkWritable() {
+        if (finished) {
+            throw new IllegalStateException("The document is already finished.");
+        }
+        if (streamingPage != null) {
+            throw new IllegalStateException("Another page is being written to the document.");
+        }
+    }
+
+    private int reserveObject() {
+        objectOffsets.add(-1L);
+        return objectOffsets.size();
+    }
+
+    private void beginObject(int object) throws IOException {
+        objectOffsets.set(object - 1, out.getCount());
+        writeAscii(object + " 0 obj\n");
+    }
+
+    private void endObject() throws IOException {
+        writeAscii("\nendobj\n");
+    }
+
+    private void writeAscii(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /** Formats a number with at most three decimal places, the way it appears in PDF operators. */
+    static String formatNumber(double value) {
+        StringBuilder result = new StringBuilder();
+        appendNumber(result, value);
+        return result.toString();
+    }
+
+    /**
+     * Appends a number with at most three decimal places and no trailing zeros. Coordinates are in millimeters, so
+     * this is precise to a micrometer.
+     */
+    static void appendNumber(StringBuilder builder, double value) {
+        long thousandths = Math.round(value * 1000);
+        if (thousandths < 0) {
+            builder.append('-');
+            thousandths = -thousandths;
+        }
+
+        builder.append(thousandths / 1000);
+        int fraction = (int) (thousandths % 1000);
+        if (fraction != 0) {
+            builder.append('.');
+            if (fraction < 100) builder.append('0');
+            if (fraction < 10) builder.append('0');
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+            }
+            builder.append(fraction);
+        }
+    }
+
+    /** Keeps track of how many bytes have been written, so that object offsets are known. */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
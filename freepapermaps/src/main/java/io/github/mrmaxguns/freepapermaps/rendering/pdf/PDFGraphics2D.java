@@ -0,0 +1,705 @@
+package io.github.mrmaxguns.freepapermaps.rendering.pdf;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+
+
+/**
+ * A <code>Graphics2D</code> that draws onto a <code>PDFPage</code> as vector graphics.
+ * <p>
+ * Shapes are written as PDF paths in page coordinates, so the current transform never has to be written. Strokes
+ * are written as native PDF strokes as long as the transform does not distort them; otherwise their outline is filled.
+ * Text in one of the logical or standard font families (serif, sans serif and monospaced) that only uses Latin-1
+ * characters is written with the matching standard PDF font, and all other text is filled as glyph outlines.
+ * <p>
+ * Only solid colors are supported. Gradients are drawn in their first color, and XOR mode and
+ * <code>copyArea</code> are ignored since they cannot be represented in PDF.
+ */
+public class PDFGraphics2D extends Graphics2D {
+    private final PDFPage page;
+    private AffineTransform transform;
+    private Paint paint;
+    private Color background;
+    private Stroke stroke;
+    private Font font;
+    private Composite composite;
+    /** The clip in page coordinates, or <code>null</code> if nothing is clipped. */
+    private Shape clip;
+    private final RenderingHints hints;
+    private Graphics2D metricsGraphics;
+
+    PDFGraphics2D(PDFPage page) {
+        this.page = page;
+        transform = new AffineTransform();
+        paint = Color.BLACK;
+        background = Color.WHITE;
+        stroke = new BasicStroke();
+        font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+        composite = AlphaComposite.SrcOver;
+        clip = null;
+        hints = new RenderingHints(null);
+    }
+
+    private PDFGraphics2D(PDFGraphics2D other) {
+        page = other.page;
+        transform = new AffineTransform(other.transform);
+        paint = other.paint;
+        background = other.background;
+        stroke = other.stroke;
+        font = other.font;
+        composite = other.composite;
+        clip = other.clip;
+        hints = (RenderingHints) other.hints.clone();
+    }
+
+    @Override
+    public Graphics create() {
+        return new PDFGraphics2D(this);
+    }
+
+    @Override
+    public void dispose() {}
+
+    // Drawing shapes
+
+    @Override
+    public void draw(Shape s) {
+        if (!(stroke instanceof BasicStroke basicStroke) || !isConformal(transform)) {
+            // The stroke would be distorted by the transform (or cannot be expressed in PDF), so fill its outline.
+            fill(stroke.createStrokedShape(s));
+            return;
+        }
+
+        Color color = getEffectiveColor();
+        if (color.getAlpha() == 0) {
+            return;
+        }
+
+        page.setClip(clip);
+        page.setStrokeStyle(color, basicStroke, Math.sqrt(Math.abs(transform.getDeterminant())));
+        if (page.appendPath(s, transform)) {
+            page.paintPath("S");
+        }
+    }
+
+    @Override
+    public void fill(Shape s) {
+        Color color = getEffectiveColor();
+        if (color.getAlpha() == 0) {
+            return;
+        }
+
+        page.setClip(clip);
+        page.setFillStyle(color);
+        if (page.appendPath(s, transform)) {
+            page.paintPath(s.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD ? "f*" : "f");
+        }
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        if (onStroke) {
+            s = stroke.createStrokedShape(s);
+        }
+        return transform.createTransformedShape(s).intersects(rect);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        Paint oldPaint = paint;
+        Composite oldComposite = composite;
+        paint = background;
+        composite = AlphaComposite.SrcOver;
+        fillRect(x, y, width, height);
+        paint = oldPaint;
+        composite = oldComposite;
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        draw(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        fill(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        if (nPoints < 1) {
+            return;
+        }
+
+        Path2D.Double polyline = new Path2D.Double(Path2D.WIND_EVEN_ODD, nPoints);
+        polyline.moveTo(xPoints[0], yPoints[0]);
+        for (int i = 1; i < nPoints; ++i) {
+            polyline.lineTo(xPoints[i], yPoints[i]);
+        }
+        draw(polyline);
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        fill(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    /** Ignored, since a PDF cannot copy what has already been drawn. */
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {}
+
+    // Drawing text
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        if (str.isEmpty()) {
+            return;
+        }
+
+        String baseFont = getStandardFont(font);
+        if (baseFont == null || font.isTransformed() || !isEncodable(str)) {
+            fill(font.createGlyphVector(getFontRenderContext(), str).getOutline(x, y));
+            return;
+        }
+
+        Color color = getEffectiveColor();
+        if (color.getAlpha() == 0) {
+            return;
+        }
+
+        page.setClip(clip);
+        page.setFillStyle(color);
+
+        // Text space points up, while our coordinates point down.
+        AffineTransform textMatrix = new AffineTransform(transform);
+        textMatrix.translate(x, y);
+        textMatrix.scale(1, -1);
+        page.showText(baseFont, font.getSize2D(), textMatrix, str);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        StringBuilder text = new StringBuilder();
+        for (char c = iterator.first(); c != AttributedCharacterIterator.DONE; c = iterator.next()) {
+            text.append(c);
+        }
+        drawString(text.toString(), x, y);
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        fill(g.getOutline(x, y));
+    }
+
+    /**
+     * Returns the name of the standard PDF font that matches <code>font</code>, or <code>null</code> if there is
+     * none.
+     */
+    private static String getStandardFont(Font font) {
+        String family = switch (font.getFamily().toLowerCase()) {
+            case "serif", "times", "times new roman", "times-roman" -> "Times";
+            case "sansserif", "sans-serif", "dialog", "helvetica", "arial" -> "Helvetica";
+            case "monospaced", "dialoginput", "courier", "courier new" -> "Courier";
+            default -> null;
+        };
+        if (family == null) {
+            return null;
+        }
+
+        boolean italic = font.isItalic();
+        String slant = family.equals("Times") ? "Italic" : "Oblique";
+        if (font.isBold()) {
+            return family + (italic ? "-Bold" + slant : "-Bold");
+        }
+        if (italic) {
+            return family + "-" + slant;
+        }
+        return family.equals("Times") ? "Times-Roman" : family;
+    }
+
+    /** Returns true if every character of <code>str</code> has the same code in WinAnsiEncoding as in Latin-1. */
+    private static boolean isEncodable(String str) {
+        for (int i = 0; i < str.length(); ++i) {
+            char c = str.charAt(i);
+            if (c < 0x20 || (c > 0x7e && c < 0xa0) || c > 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Drawing images
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        BufferedImage image = toBufferedImage(img);
+        if (image == null) {
+            return false;
+        }
+        drawRenderedImage(image, xform);
+        return true;
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        BufferedImage filtered = op != null ? op.filter(img, null) : img;
+        drawRenderedImage(filtered, AffineTransform.getTranslateInstance(x, y));
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+        BufferedImage image;
+        if (img instanceof BufferedImage bufferedImage) {
+            image = bufferedImage;
+        } else {
+            image = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            g.drawRenderedImage(img, new AffineTransform());
+            g.dispose();
+        }
+        if (image.getWidth() == 0 || image.getHeight() == 0) {
+            return;
+        }
+
+        AffineTransform imageTransform = new AffineTransform(transform);
+        if (xform != null) {
+            imageTransform.concatenate(xform);
+        }
+
+        page.setClip(clip);
+        page.drawImage(image, imageTransform, getCompositeAlpha(255));
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+        drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return drawImage(img, AffineTransform.getTranslateInstance(x, y), observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        int imageWidth = img.getWidth(observer);
+        int imageHeight = img.getHeight(observer);
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            return false;
+        }
+
+        AffineTransform xform = AffineTransform.getTranslateInstance(x, y);
+        xform.scale((double) width / imageWidth, (double) height / imageHeight);
+        return drawImage(img, xform, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        return drawImage(img, x, y, img.getWidth(observer), img.getHeight(observer), bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        fillBackground(bgcolor, new Rectangle(x, y, width, height));
+        return drawImage(img, x, y, width, height, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                             ImageObserver observer) {
+        BufferedImage image = toBufferedImage(img);
+        if (image == null || sx1 == sx2 || sy1 == sy2) {
+            return false;
+        }
+
+        int minX = Math.max(0, Math.min(sx1, sx2));
+        int minY = Math.max(0, Math.min(sy1, sy2));
+        int maxX = Math.min(image.getWidth(), Math.max(sx1, sx2));
+        int maxY = Math.min(image.getHeight(), Math.max(sy1, sy2));
+        if (minX >= maxX || minY >= maxY) {
+            return true;
+        }
+
+        // Source pixels map linearly onto the destination, which flips the image if the corners are swapped.
+        AffineTransform xform = AffineTransform.getTranslateInstance(dx1, dy1);
+        xform.scale((double) (dx2 - dx1) / (sx2 - sx1), (double) (dy2 - dy1) / (sy2 - sy1));
+        xform.translate(minX - sx1, minY - sy1);
+        drawRenderedImage(image.getSubimage(minX, minY, maxX - minX, maxY - minY), xform);
+        return true;
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                             Color bgcolor, ImageObserver observer) {
+        fillBackground(bgcolor, new Rectangle(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1),
+                                              Math.abs(dy2 - dy1)));
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+
+    private void fillBackground(Color bgcolor, Rectangle rect) {
+        if (bgcolor == null) {
+            return;
+        }
+
+        Paint oldPaint = paint;
+        paint = bgcolor;
+        fill(rect);
+        paint = oldPaint;
+    }
+
+    private static BufferedImage toBufferedImage(Image img) {
+        if (img instanceof BufferedImage bufferedImage) {
+            return bufferedImage;
+        }
+
+        int width = img.getWidth(null);
+        int height = img.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(img, 0, 0, null);
+        g.dispose();
+        return image;
+    }
+
+    // Transform
+
+    @Override
+    public void translate(int x, int y) {
+        transform.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        transform.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        transform.concatenate(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        transform = new AffineTransform(tx);
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    /** Returns true if <code>t</code> only translates, rotates, mirrors and scales uniformly. */
+    private static boolean isConformal(AffineTransform t) {
+        double a = t.getScaleX();
+        double b = t.getShearY();
+        double c = t.getShearX();
+        double d = t.getScaleY();
+        double epsilon = 1e-9 * Math.max(1, Math.abs(a * d - b * c));
+        return Math.abs(a * a + b * b - c * c - d * d) <= epsilon && Math.abs(a * c + b * d) <= epsilon;
+    }
+
+    // Clip
+
+    @Override
+    public void clip(Shape s) {
+        if (s == null) {
+            return;
+        }
+
+        Shape newClip = toPageCoordinates(s);
+        if (clip == null) {
+            clip = newClip;
+        } else if (clip instanceof Rectangle2D clipRect && newClip instanceof Rectangle2D newRect) {
+            clip = clipRect.createIntersection(newRect);
+        } else {
+            Area area = new Area(clip);
+            area.intersect(new Area(newClip));
+            clip = area;
+        }
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        clip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        setClip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void setClip(Shape s) {
+        clip = s != null ? toPageCoordinates(s) : null;
+    }
+
+    @Override
+    public Shape getClip() {
+        if (clip == null) {
+            return null;
+        }
+
+        try {
+            AffineTransform inverse = transform.createInverse();
+            if (clip instanceof Rectangle2D rect && isAxisAligned(inverse)) {
+                return inverse.createTransformedShape(rect).getBounds2D();
+            }
+            return inverse.createTransformedShape(clip);
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        Shape userClip = getClip();
+        return userClip != null ? userClip.getBounds() : null;
+    }
+
+    /** Transforms a shape to page coordinates, keeping rectangles as rectangles when possible. */
+    private Shape toPageCoordinates(Shape s) {
+        if (s instanceof Rectangle2D rect && isAxisAligned(transform)) {
+            return transform.createTransformedShape(rect).getBounds2D();
+        }
+        return transform.createTransformedShape(s);
+    }
+
+    private static boolean isAxisAligned(AffineTransform t) {
+        return t.getShearX() == 0 && t.getShearY() == 0;
+    }
+
+    // State
+
+    @Override
+    public Color getColor() {
+        return paint instanceof Color color ? color : getPaintColor();
+    }
+
+    @Override
+    public void setColor(Color c) {
+        if (c != null) {
+            paint = c;
+        }
+    }
+
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        if (paint != null) {
+            this.paint = paint;
+        }
+    }
+
+    @Override
+    public void setPaintMode() {
+        composite = AlphaComposite.SrcOver;
+    }
+
+    /** Ignored, since PDF has no XOR mode. */
+    @Override
+    public void setXORMode(Color c1) {}
+
+    @Override
+    public Composite getComposite() {
+        return composite;
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        if (comp != null) {
+            composite = comp;
+        }
+    }
+
+    @Override
+    public Color getBackground() {
+        return background;
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        background = color;
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        if (s != null) {
+            stroke = s;
+        }
+    }
+
+    @Override
+    public Font getFont() {
+        return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        if (font != null) {
+            this.font = font;
+        }
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        return getMetricsGraphics().getFontMetrics(f);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return new FontRenderContext(new AffineTransform(), true, true);
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return getMetricsGraphics().getDeviceConfiguration();
+    }
+
+    /** Returns an in-memory graphics that answers questions about fonts and devices. It is never drawn on. */
+    private Graphics2D getMetricsGraphics() {
+        if (metricsGraphics == null) {
+            metricsGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+            metricsGraphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                                             RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        }
+        return metricsGraphics;
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        hints.put(hintKey, hintValue);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return hints.get(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        this.hints.clear();
+        this.hints.putAll(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        this.hints.putAll(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return (RenderingHints) hints.clone();
+    }
+
+    /** Returns the color that is painted, with the composite's opacity applied to its alpha. */
+    private Color getEffectiveColor() {
+        Color color = getPaintColor();
+        int alpha = getCompositeAlpha(color.getAlpha());
+        return alpha == color.getAlpha() ? color : new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha);
+    }
+
+    private Color getPaintColor() {
+        if (paint instanceof Color color) {
+            return color;
+        } else if (paint instanceof GradientPaint gradient) {
+            return gradient.getColor1();
+        } else if (paint instanceof MultipleGradientPaint gradient) {
+            return gradient.getColors()[0];
+        }
+        return Color.BLACK;
+    }
+
+    private int getCompositeAlpha(int alpha) {
+        if (composite instanceof AlphaComposite alphaComposite) {
+            return Math.round(alpha * alphaComposite.getAlpha());
+        }
+        return alpha;
+    }
+}
@@ -0,0 +1,427 @@
+package io.github.mrmaxguns.freepapermaps.rendering.pdf;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+
+/**
+ * A page of a <code>PDFDocument</code>. The page writes the content stream that its <code>PDFGraphics2D</code> draws,
+ * compressing it as it goes.
+ * <p>
+ * The page remembers the graphics state it last wrote (colors, stroke, transparency and clip), and only writes the
+ * parts of the state that change between two drawing operations. A map draws many features with the same style in a
+ * row, so most paths are written without any state changes at all.
+ */
+public class PDFPage {
+    /** How many characters of operators are collected before they are compressed. */
+    private static final int FLUSH_THRESHOLD = 1 << 14;
+
+    private final PDFDocument document;
+    private final double width;
+    private final double height;
+    private final int contentObject;
+    private final int lengthObject;
+    private final long contentStart;
+    private final ByteArrayOutputStream buffer;
+    private final Deflater deflater;
+    private final DeflaterOutputStream content;
+    private final StringBuilder operators = new StringBuilder();
+    private final List<PendingImage> pendingImages = new ArrayList<>();
+    private final PDFGraphics2D graphics;
+    private boolean ended = false;
+
+    // The graphics state that was last written
+    private Color strokeColor;
+    private Color fillColor;
+    private double lineWidth;
+    private int lineCap;
+    private int lineJoin;
+    private double miterLimit;
+    private float[] dash;
+    private double dashPhase;
+    private int alpha;
+    private Shape clip;
+
+    PDFPage(PDFDocument document, double width, double height, int contentObject, int lengthObject,
+            long contentStart, OutputStream target) {
+        if (!(width > 0) || !(height > 0)) {
+            throw new IllegalArgumentException("Page dimensions must be positive, non-zero values.");
+        }
+
+        this.document = document;
+        this.width = width;
+        this.height = height;
+        this.contentObject = contentObject;
+        this.lengthObject = lengthObject;
+        this.contentStart = contentStart;
+        this.buffer = target instanceof ByteArrayOutputStream bufferTarget ? bufferTarget : null;
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.content = new DeflaterOutputStream(target, deflater, 1 << 16);
+
+        // PDF measures in points from the bottom left. The outer state maps millimeters from the top left onto that,
+        // and the inner state holds the clip, so that the clip can be replaced by restoring the outer state.
+        double scale = PDFDocument.POINTS_PER_MILLIMETER;
+        operators.append("q\n").append(scale).append(" 0 0 ").append(-scale).append(" 0 ")
+                .append(height * scale).append(" cm\nq\n");
+        resetState();
+        clip = null;
+
+        graphics = new PDFGraphics2D(this);
+    }
+
+    /**
+     * Returns the graphics the page is drawn with. Units are millimeters, with the origin at the top left of the
+     * page.
+     */
+    public PDFGraphics2D getGraphics() {
+        return graphics;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    PDFDocument getDocument() {
+        return document;
+    }
+
+    int getContentObject() {
+        return contentObject;
+    }
+
+    int getLengthObject() {
+        return lengthObject;
+    }
+
+    long getContentStart() {
+        return contentStart;
+    }
+
+    byte[] getBufferedContent() {
+        return buffer.toByteArray();
+    }
+
+    List<PendingImage> getPendingImages() {
+        return pendingImages;
+    }
+
+    void finishContent() throws IOException {
+        if (ended) {
+            throw new IllegalStateException("The page has already been ended.");
+        }
+        ended = true;
+
+        operators.append("Q\nQ\n");
+        flush();
+        content.finish();
+        deflater.end();
+    }
+
+    /** Sets the state to what it is after the clip's state is restored. */
+    private void resetState() {
+        strokeColor = Color.BLACK;
+        fillColor = Color.BLACK;
+        lineWidth = 1;
+        lineCap = BasicStroke.CAP_BUTT;
+        lineJoin = BasicStroke.JOIN_MITER;
+        miterLimit = 10;
+        dash = null;
+        dashPhase = 0;
+        alpha = 1000;
+    }
+
+    /** Sets the clip, in page coordinates. A clip of <code>null</code> means that the whole page is visible. */
+    void setClip(Shape newClip) {
+        if (Objects.equals(clip, newClip)) {
+            return;
+        }
+
+        // A clip can only be made smaller, so the state is restored to before the old clip and then saved again.
+        operators.append("Q\nq\n");
+        resetState();
+        clip = newClip;
+
+        if (newClip != null && appendPath(newClip, null)) {
+            boolean evenOdd = newClip.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD;
+            operators.append(evenOdd ? "W* n\n" : "W n\n");
+        }
+    }
+
+    void setStrokeStyle(Color color, BasicStroke stroke, double scale) {
+        setAlpha(color.getAlpha());
+        if (!sameRGB(color, strokeColor)) {
+            appendColor(color);
+            operators.append("RG\n");
+            strokeColor = color;
+        }
+
+        double newWidth = stroke.getLineWidth() * scale;
+        if (newWidth != lineWidth) {
+            appendNumber(newWidth);
+            operators.append(" w\n");
+            lineWidth = newWidth;
+        }
+        if (stroke.getEndCap() != lineCap) {
+            operators.append(stroke.getEndCap()).append(" J\n");
+            lineCap = stroke.getEndCap();
+        }
+        if (stroke.getLineJoin() != lineJoin) {
+            operators.append(stroke.getLineJoin()).append(" j\n");
+            lineJoin = stroke.getLineJoin();
+        }
+        if (stroke.getLineJoin() == BasicStroke.JOIN_MITER && stroke.getMiterLimit() != miterLimit) {
+            appendNumber(stroke.getMiterLimit());
+            operators.append(" M\n");
+            miterLimit = stroke.getMiterLimit();
+        }
+
+        float[] newDash = stroke.getDashArray();
+        if (newDash != null && scale != 1) {
+            newDash = newDash.clone();
+            for (int i = 0; i < newDash.length; ++i) {
+                newDash[i] *= (float) scale;
+            }
+        }
+        double newDashPhase = newDash != null ? stroke.getDashPhase() * scale : 0;
+        if (!Arrays.equals(newDash, dash) || newDashPhase != dashPhase) {
+            operators.append('[');
+            if (newDash != null) {
+                for (int i = 0; i < newDash.length; ++i) {
+                    if (i > 0) operators.append(' ');
+                    appendNumber(newDash[i]);
+                }
+            }
+            operators.append("] ");
+            appendNumber(newDashPhase);
+            operators.append(" d\n");
+            dash = newDash;
+            dashPhase = newDashPhase;
+        }
+    }
+
+    void setFillStyle(Color color) {
+        setAlpha(color.getAlpha());
+        if (!sameRGB(color, fillColor)) {
+            appendColor(color);
+            operators.append("rg\n");
+            fillColor = color;
+        }
+    }
+
+    /** Sets the opacity, given from 0 to 255. */
+    void setAlpha(int alpha255) {
+        int newAlpha = (int) Math.round(alpha255 * 1000 / 255.0);
+        if (newAlpha != alpha) {
+            operators.append('/').append(document.registerAlpha(newAlpha)).append(" gs\n");
+            alpha = newAlpha;
+        }
+    }
+
+    /**
+     * Appends the outline of <code>shape</code>, transformed to page coordinates. Returns false if the shape is empty,
+     * in which case nothing is appended.
+     */
+    boolean appendPath(Shape shape, AffineTransform transform) {
+        PathIterator path = shape.getPathIterator(transform);
+        double[] coords = new double[6];
+        double lastX = 0;
+        double lastY = 0;
+        boolean empty = true;
+
+        for (; !path.isDone(); path.next()) {
+            switch (path.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO -> {
+                    appendPoint(coords[0], coords[1]);
+                    operators.append("m\n");
+                    lastX = coords[0];
+                    lastY = coords[1];
+                }
+                case PathIterator.SEG_LINETO -> {
+                    appendPoint(coords[0], coords[1]);
+                    operators.append("l\n");
+                    lastX = coords[0];
+                    lastY = coords[1];
+                }
+                case PathIterator.SEG_QUADTO -> {
+                    // PDF only has cubic curves, which can represent any quadratic one exactly.
+                    appendPoint(lastX + 2.0 / 3 * (coords[0] - lastX), lastY + 2.0 / 3 * (coords[1] - lastY));
+                    appendPoint(coords[2] + 2.0 / 3 * (coords[0] - coords[2]),
+                                coords[3] + 2.0 / 3 * (coords[1] - coords[3]));
+                    appendPoint(coords[2], coords[3]);
+                    operators.append("c\n");
+                    lastX = coords[2];
+                    lastY = coords[3];
+                }
+                case PathIterator.SEG_CUBICTO -> {
+                    appendPoint(coords[0], coords[1]);
+                    appendPoint(coords[2], coords[3]);
+                    appendPoint(coords[4], coords[5]);
+                    operators.append("c\n");
+                    lastX = coords[4];
+                    lastY = coords[5];
+                }
+                case PathIterator.SEG_CLOSE -> operators.append("h\n");
+            }
+            empty = false;
+        }
+
+        return !empty;
+    }
+
+    /** Appends a painting operator (such as <code>S</code> or <code>f</code>) for the path that was just appended. */
+    void paintPath(String operator) {
+        operators.append(operator).append('\n');
+        flushIfFull();
+    }
+
+    /**
+     * Shows text in one of the standard fonts. <code>textMatrix</code> maps text space (with y pointing up) to page
+     * coordinates. The text must only contain characters that <code>PDFGraphics2D.isEncodable</code> accepts.
+     */
+    void showText(String baseFont, double size, AffineTransform textMatrix, String text) {
+        operators.append("BT\n/").append(document.registerFont(baseFont)).append(' ');
+        appendNumber(size);
+        operators.append(" Tf\n");
+        appendMatrix(textMatrix);
+        operators.append("Tm\n(");
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                operators.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                operators.append('\\').append((char) ('0' + ((c >> 6) & 7))).append((char) ('0' + ((c >> 3) & 7)))
+                        .append((char) ('0' + (c & 7)));
+            } else {
+                operators.append(c);
+            }
+        }
+        operators.append(") Tj\nET\n");
+        flushIfFull();
+    }
+
+    /**
+     * Draws an image. <code>transform</code> maps image pixels (with y pointing down) to page coordinates. The image
+     * data is compressed right away and written to the document after the page's content.
+     */
+    void drawImage(BufferedImage image, AffineTransform transform, int alpha255) {
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        byte[] rgb = new byte[imageWidth * imageHeight * 3];
+        byte[] mask = new byte[imageWidth * imageHeight];
+        boolean opaque = true;
+
+        int[] row = new int[imageWidth];
+        for (int y = 0; y < imageHeight; ++y) {
+            image.getRGB(0, y, imageWidth, 1, row, 0, imageWidth);
+            for (int x = 0; x < imageWidth; ++x) {
+                int pixel = y * imageWidth + x;
+                rgb[pixel * 3] = (byte) (row[x] >> 16);
+                rgb[pixel * 3 + 1] = (byte) (row[x] >> 8);
+                rgb[pixel * 3 + 2] = (byte) row[x];
+                mask[pixel] = (byte) (row[x] >>> 24);
+                opaque &= (row[x] >>> 24) == 0xff;
+            }
+        }
+
+        String name = document.registerImage();
+        byte[] compressedMask = opaque ? null : compress(mask);
+        pendingImages.add(new PendingImage(name, imageWidth, imageHeight, compress(rgb), compressedMask));
+
+        // Images are drawn into the unit square with y pointing up, so it is stretched and flipped onto the pixels.
+        AffineTransform imageMatrix = new AffineTransform(transform);
+        imageMatrix.concatenate(new AffineTransform(imageWidth, 0, 0, -imageHeight, 0, imageHeight));
+
+        setAlpha(alpha255);
+        operators.append("q\n");
+        appendMatrix(imageMatrix);
+        operators.append("cm\n/").append(name).append(" Do\nQ\n");
+        flushIfFull();
+    }
+
+    private static byte[] compress(byte[] data) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        Deflater imageDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(result, imageDeflater)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            imageDeflater.end();
+        }
+        return result.toByteArray();
+    }
+
+    private static boolean sameRGB(Color a, Color b) {
+        return (a.getRGB() & 0xffffff) == (b.getRGB() & 0xffffff);
+    }
+
+    private void appendColor(Color color) {
+        appendNumber(color.getRed() / 255.0);
+        operators.append(' ');
+        appendNumber(color.getGreen() / 255.0);
+        operators.append(' ');
+        appendNumber(color.getBlue() / 255.0);
+        operators.append(' ');
+    }
+
+    private void appendMatrix(AffineTransform matrix) {
+        appendNumber(matrix.getScaleX());
+        operators.append(' ');
+        appendNumber(matrix.getShearY());
+        operators.append(' ');
+        appendNumber(matrix.getShearX());
+        operators.append(' ');
+        appendNumber(matrix.getScaleY());
+        operators.append(' ');
+        appendNumber(matrix.getTranslateX());
+        operators.append(' ');
+        appendNumber(matrix.getTranslateY());
+        operators.append(' ');
+    }
+
+    private void appendPoint(double x, double y) {
+        appendNumber(x);
+        operators.append(' ');
+        appendNumber(y);
+        operators.append(' ');
+    }
+
+    private void appendNumber(double value) {
+        PDFDocument.appendNumber(operators, value);
+    }
+
+    private void flushIfFull() {
+        if (operators.length() >= FLUSH_THRESHOLD) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        content.write(operators.toString().getBytes(StandardCharsets.ISO_8859_1));
+        operators.setLength(0);
+    }
+
+    /** An image whose compressed data is written to the document once the page is ended. */
+    record PendingImage(String name, int width, int height, byte[] rgb, byte[] alpha) {}
+}
@@ -0,0 +1,441 @@
+package io.github.mrmaxguns.freepapermaps.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
+import io.github.mrmaxguns.freepapermaps.geometry.BoundingBox;
+import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
+import io.github.mrmaxguns.freepapermaps.osm.OSM;
+import io.github.mrmaxguns.freepapermaps.projections.Projection;
+import io.github.mrmaxguns.freepapermaps.projections.PseudoMercatorProjection;
+import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
+import io.github.mrmaxguns.freepapermaps.rendering.MapRenderer;
+import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
+import io.github.mrmaxguns.freepapermaps.styling.MapStyle;
+import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
+import io.github.mrmaxguns.freepapermaps.styling.language.UnitManager;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * A local HTTP server that renders maps from OSM datasets that are loaded only once.
+ * <p>
+ * The server only listens on the loopback interface. It understands two requests:
+ * <ul>
+ *     <li><code>GET /datasets</code> lists the names of the loaded datasets and styles.</li>
+ *     <li><code>GET /render?dataset=NAME&amp;style=NAME&amp;scale=SCALE&amp;bbox=MINLON,MINLAT,MAXLON,MAXLAT</code>
+ *     renders an SVG map. <code>dataset</code> and <code>style</code> may be omitted if only one is loaded,
+ *     <code>bbox</code> defaults to the dataset's bounds, and <code>attribution=false</code> hides the attribution.
+ *     The scale is rounded to a whole number from <code>MIN_SCALE</code> to <code>MAX_SCALE</code>.</li>
+ * </ul>
+ * Renders run concurrently on a bounded pool of workers. When the pool and its queue are full, requests are answered
+ * with <code>503 Service Unavailable</code> rather than queued without limit. Connections are likewise handled by a
+ * bounded pool, and connections beyond it are answered with <code>503</code> as well.
+ * <p>
+ * Datasets are frozen (see <a href="#{@link}>{@link OSM#freeze()}</a>), so they can be read by all workers without
+ * locking. The projected geometry of a dataset is built once per scale and then shared by all requests at that scale,
+ * and it keeps its simplified copy (see <a href="#{@link}>{@link GeometryCollection#simplify(double)}</a>) so that is
+ * only made once as well.
+ * Styles are likewise compiled once per dataset and scale into a frozen <code>MapStyle</code> (see
+ * <a href="#{@link}>{@link MapStyle#freeze()}</a>) that all workers share. A style is only compiled again when its
+ * file is modified, so edits to it still take effect on the next request.
+ */
+public class RenderServer {
+    /** The number of GeometryCollections (one per dataset and scale) that are kept in memory. */
+    public static final int GEOMETRY_CACHE_SIZE = 8;
+    /** The number of compiled styles (one per style, dataset and scale) that are kept in memory. */
+    public static final int STYLE_CACHE_SIZE = 32;
+
+    /** The smallest and largest map scales that can be requested. Other scales are clamped to this range. */
+    public static final double MIN_SCALE = 100;
+    public static final double MAX_SCALE = 100_000_000;
+    /** The number of rejected connections that may wait to be told that the server is busy. */
+    public static final int REJECTION_QUEUE_CAPACITY = 64;
+
+    private static final String BUSY_MESSAGE = "The server is busy. Try again later.";
+
+    /** Set while a connection rejected by the request pool is answered. */
+    private static final ThreadLocal<Boolean> rejected = ThreadLocal.withInitial(() -> false);
+
+    private final Map<String, Dataset> datasets;
+    private final Map<String, String> styleFiles;
+    private final int workers;
+    private final ThreadPoolExecutor renderPool;
+    private final ThreadPoolExecutor requestPool;
+    private final ThreadPoolExecutor rejectionPool;
+    private final Map<GeometryKey, GeometryCollection> geometryCache;
+    private final Map<StyleKey, CompiledStyle> styleCache;
+    private HttpServer server;
+
+    /**
+     * Constructs a <code>RenderServer</code>.
+     *
+     * @param datasets       loaded OSM data by name
+     * @param styleFiles     paths to style files by name
+     * @param workers        the maximum number of maps rendered at the same time
+     * @param queueCapacity  the maximum number of requests waiting for a worker
+     */
+    public RenderServer(Map<String, OSM> datasets, Map<String, String> styleFiles, int workers, int queueCapacity) {
+        if (datasets.isEmpty()) {
+            throw new IllegalArgumentException("At least one dataset is required.");
+        }
+        if (workers < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid worker pool size.");
+        }
+
+        Map<String, Dataset> loadedDatasets = new LinkedHashMap<>();
+        for (Map.Entry<String, OSM> entry : datasets.entrySet()) {
+            loadedDatasets.put(entry.getKey(), new Dataset(entry.getValue()));
+        }
+        this.datasets = Collections.unmodifiableMap(loadedDatasets);
+        this.styleFiles = Map.copyOf(styleFiles);
+        this.workers = workers;
+
+        this.renderPool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                                                 new ArrayBlockingQueue<>(Math.max(1, queueCapacity)));
+        // A single thread answers rejected connections, so that the server's own thread never waits on a client. If
+        // it falls behind, further connections are rejected again and simply closed by the server.
+        this.rejectionPool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                                                    new ArrayBlockingQueue<>(REJECTION_QUEUE_CAPACITY));
+        // Requests only wait for their render here, so there is one thread for every render that can be in progress,
+        // and as many connections may wait for one of them as renders may wait for a worker.
+        this.requestPool = new ThreadPoolExecutor(workers + queueCapacity, workers + queueCapacity, 0L,
+                                                  TimeUnit.MILLISECONDS,
+                                                  new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                                                  (exchange, executor) -> rejectionPool.execute(
+                                                          () -> rejectRequest(exchange)));
+        this.geometryCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GeometryKey, GeometryCollection> eldest) {
+                return size() > GEOMETRY_CACHE_SIZE;
+            }
+        };
+        this.styleCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StyleKey, CompiledStyle> eldest) {
+                return size() > STYLE_CACHE_SIZE;
+            }
+        };
+    }
+
+    /** Starts listening on <code>port</code> of the loopback interface. A port of 0 picks a free port. */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/datasets", rejectWhenBusy(this::handleDatasets));
+        server.createContext("/render", rejectWhenBusy(this::handleRender));
+        server.setExecutor(requestPool);
+        server.start();
+    }
+
+    /** Returns the port the server is listening on. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** Stops the server, waiting at most <code>delaySeconds</code> for requests in progress to finish. */
+    public void stop(int delaySeconds) {
+        if (server != null) {
+            server.stop(delaySeconds);
+        }
+        renderPool.shutdown();
+        requestPool.shutdown();
+        rejectionPool.shutdown();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Handles a connection that the request pool has no room for. The server only hands over the connection as a
+     * whole, so it is handled as usual, except that its handler only sends a short 503 response.
+     */
+    private static void rejectRequest(Runnable exchange) {
+        rejected.set(true);
+        try {
+            exchange.run();
+        } finally {
+            rejected.set(false);
+        }
+    }
+
+    private static HttpHandler rejectWhenBusy(HttpHandler handler) {
+        return exchange -> {
+            if (rejected.get()) {
+                sendText(exchange, 503, BUSY_MESSAGE);
+            } else {
+                handler.handle(exchange);
+            }
+        };
+    }
+
+    private void handleDatasets(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            sendText(exchange, 405, "Only GET requests are supported.");
+            return;
+        }
+
+        StringBuilder response = new StringBuilder();
+        for (String name : datasets.keySet()) {
+            response.append("dataset ").append(name).append('\n');
+        }
+        for (String name : new TreeSet<>(styleFiles.keySet())) {
+            response.append("style ").append(name).append('\n');
+        }
+        sendText(exchange, 200, response.toString());
+    }
+
+    private void handleRender(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            sendText(exchange, 405, "Only GET requests are supported.");
+            return;
+        }
+
+        Future<byte[]> result;
+        try {
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            RenderRequest request = RenderRequest.fromParameters(parameters, datasets.keySet(), styleFiles.keySet());
+            result = renderPool.submit(() -> render(request));
+        } catch (UserInputException e) {
+            sendText(exchange, 400, e.getMessage());
+            return;
+        } catch (RejectedExecutionException e) {
+            sendText(exchange, 503, BUSY_MESSAGE);
+            return;
+        }
+
+        try {
+            byte[] svg = result.get();
+            exchange.getResponseHeaders().set("Content-Type", "image/svg+xml");
+            exchange.sendResponseHeaders(200, svg.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(svg);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UserInputException) {
+                sendText(exchange, 400, e.getCause().getMessage());
+            } else {
+                // The cause may describe the server's files and internals, so it is only logged here
+                System.err.println("Could not render map:");
+                e.getCause().printStackTrace();
+                sendText(exchange, 500, "Could not render map.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendText(exchange, 503, "The server is shutting down.");
+        }
+    }
+
+    private byte[] render(RenderRequest request) throws Exception {
+        Dataset dataset = datasets.get(request.dataset());
+        Scaler scaler = new Scaler(request.scale());
+        GeometryCollection geometries = getGeometries(request.dataset(), dataset, request.scale());
+        MapStyle style = getStyle(request.style(), request.dataset(), dataset, request.scale());
+
+        BoundingBox<WGS84Coordinate> bounds = request.bounds() != null ? request.bounds() :
+                                              MapStyle.getMapBounds(dataset.osm());
+
+        ByteArrayOutputStream svg = new ByteArrayOutputStream();
+        new MapRenderer(geometries, bounds, style, dataset.projection(), scaler, request.attribution())
+                .renderToStream(svg);
+        return svg.toByteArray();
+    }
+
+    private GeometryCollection getGeometries(String name, Dataset dataset, double scale) throws UserInputException {
+        GeometryKey key = new GeometryKey(name, scale);
+        synchronized (geometryCache) {
+            GeometryCollection cached = geometryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // Built outside the lock so that other scales are not held up. Two requests for a new scale may both build it,
+        // which is harmless since the results are identical.
+        GeometryCollection geometries = GeometryCollection.fromOSM(dataset.osm(), dataset.projection(),
+                                                                   new Scaler(scale));
+        synchronized (geometryCache) {
+            geometryCache.putIfAbsent(key, geometries);
+            return geometryCache.get(key);
+        }
+    }
+
+    /**
+     * Returns the frozen style for a dataset and scale, compiling it if it is not cached or its file has changed since
+     * it was compiled. Styles depend on the scale (through scaled units) and on the dataset's projection, so they
+     * cannot be shared between scales or datasets.
+     */
+    private MapStyle getStyle(String name, String datasetName, Dataset dataset, double scale) throws
+            ParserConfigurationException, UserInputException {
+        String styleFileName = styleFiles.get(name);
+        long lastModified = new File(styleFileName).lastModified();
+        StyleKey key = new StyleKey(name, datasetName, scale);
+
+        synchronized (styleCache) {
+            CompiledStyle cached = styleCache.get(key);
+            if (cached != null && cached.lastModified() == lastModified) {
+                return cached.style();
+            }
+        }
+
+        // Compiled outside the lock like geometry, so a slow style does not hold up requests for other styles.
+        Scaler scaler = new Scaler(scale);
+        MapStyle style = MapStyle.fromXML(openXMLFile(styleFileName), new XMLTools(styleFileName),
+                                          new Interpreter.Context(new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                                                                  new HashMap<>(), new UnitManager(scaler)),
+                                          dataset.projection(), scaler).freeze();
+        synchronized (styleCache) {
+            styleCache.put(key, new CompiledStyle(lastModified, style));
+        }
+        return style;
+    }
+
+    private static Document openXMLFile(String fileName) throws ParserConfigurationException, UserInputException {
+        Document doc;
+        try {
+            doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(fileName));
+        } catch (SAXException e) {
+            throw new UserInputException("Malformed XML detected in style file:\n" + e.getMessage());
+        } catch (IOException e) {
+            throw new UserInputException("File '" + fileName + "' could not be opened. Does it exist?");
+        }
+
+        doc.getDocumentElement().normalize();
+        return doc;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator >= 0 ? pair.substring(0, separator) : pair;
+            String value = separator >= 0 ? pair.substring(separator + 1) : "";
+            parameters.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                           URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message.endsWith("\n") ? message : message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /** A loaded dataset along with the projection all of its geometry is built with. */
+    private record Dataset(OSM osm, Projection projection) {
+        Dataset(OSM osm) {
+            // Like the command-line program, the origin is the top-left-most point of the data.
+            this(osm.freeze(), new PseudoMercatorProjection(osm.getNodeBoundingBox().getTopLeftCorner()));
+        }
+    }
+
+    private record GeometryKey(String dataset, double scale) {}
+
+    private record StyleKey(String style, String dataset, double scale) {}
+
+    private record CompiledStyle(long lastModified, MapStyle style) {}
+
+    /** The validated parameters of a render request. */
+    record RenderRequest(String dataset, String style, double scale, BoundingBox<WGS84Coordinate> bounds,
+                         boolean attribution) {
+        static RenderRequest fromParameters(Map<String, String> parameters, Set<String> datasets,
+                                            Set<String> styles) throws UserInputException {
+            String dataset = chooseName(parameters.get("dataset"), datasets, "dataset");
+            String style = chooseName(parameters.get("style"), styles, "style");
+
+            String rawScale = parameters.get("scale");
+            if (rawScale == null) {
+                throw new UserInputException("Missing required parameter 'scale'.");
+            }
+            double scale;
+            try {
+                scale = Double.parseDouble(rawScale);
+            } catch (NumberFormatException e) {
+                throw new UserInputException("Map scale must be a number.");
+            }
+            if (!(scale > 0) || Double.isInfinite(scale)) {
+                throw new UserInputException("Map scale must be a positive, non-zero value.");
+            }
+            // Geometry is built and cached for every scale, so scales are whole numbers within a fixed range
+            scale = Math.rint(Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale)));
+
+            BoundingBox<WGS84Coordinate> bounds = null;
+            String rawBounds = parameters.get("bbox");
+            if (rawBounds != null) {
+                bounds = parseBounds(rawBounds);
+            }
+
+            boolean attribution = !"false".equals(parameters.get("attribution"));
+            return new RenderRequest(dataset, style, scale, bounds, attribution);
+        }
+
+        private static String chooseName(String requested, Set<String> available, String kind) throws
+                UserInputException {
+            if (requested == null) {
+                if (available.size() == 1) {
+                    return available.iterator().next();
+                }
+                throw new UserInputException("Missing required parameter '" + kind + "'.");
+            }
+            if (!available.contains(requested)) {
+                throw new UserInputException("Unknown " + kind + " '" + requested + "'.");
+            }
+            return requested;
+        }
+
+        private static BoundingBox<WGS84Coordinate> parseBounds(String rawBounds) throws UserInputException {
+            String[] parts = rawBounds.split(",");
+            if (parts.length != 4) {
+                throw new UserInputException("Parameter 'bbox' must be given as 'minlon,minlat,maxlon,maxlat'.");
+            }
+
+            double[] values = new double[4];
+            try {
+                for (int i = 0; i < 4; ++i) {
+                    values[i] = Double.parseDouble(parts[i].trim());
+                }
+            } catch (NumberFormatException e) {
+                throw new UserInputException("Parameter 'bbox' must only contain numbers.");
+            }
+
+            for (int i = 0; i < 4; ++i) {
+                double limit = i % 2 == 0 ? 180 : 90;
+                if (!(values[i] >= -limit && values[i] <= limit)) {
+                    throw new UserInputException(
+                            "Parameter 'bbox' must have longitudes from -180 to 180 and latitudes from -90 to 90.");
+                }
+            }
+
+            if (values[0] >= values[2] || values[1] >= values[3]) {
+                throw new UserInputException("Parameter 'bbox' must have a positive width and height.");
+            }
+
+            return new BoundingBox<>(new WGS84Coordinate(values[0], values[3]),
+                                     new WGS84Coordinate(values[2], values[1]));
+        }
+    }
+}
@@ -3,12 +3,19 @@ package io.github.mrmaxguns.freepapermaps.styling;
 import io.github.mrmaxguns.freepapermaps.UserInputException;
 import io.github.mrmaxguns.freepapermaps.XMLTools;
 import io.github.mrmaxguns.freepapermaps.geometry.BoundingBox;
+import io.github.mrmaxguns.freepapermaps.geometry.CoastlineAssembler;
 import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
+import io.github.mrmaxguns.freepapermaps.geometry.Simplifier;
 import io.github.mrmaxguns.freepapermaps.osm.OSM;
+import io.github.mrmaxguns.freepapermaps.osm.OSMFilter;
 import io.github.mrmaxguns.freepapermaps.projections.Projection;
 import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
+import io.github.mrmaxguns.freepapermaps.rendering.CollisionIndex;
+import io.github.mrmaxguns.freepapermaps.rendering.SVGOptimizer;
 import io.github.mrmaxguns.freepapermaps.rendering.ScaledCoordinate;
 import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
+import io.github.mrmaxguns.freepapermaps.rendering.layers.IconLayer;
+import io.github.mrmaxguns.freepapermaps.rendering.layers.LabelLayer;
 import io.github.mrmaxguns.freepapermaps.rendering.layers.Layer;
 import io.github.mrmaxguns.freepapermaps.rendering.layers.PaintLayer;
 import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
@@ -20,19 +27,28 @@ import java.awt.*;
 import java.awt.font.FontRenderContext;
 import java.awt.font.LineMetrics;
 import java.awt.geom.Rectangle2D;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 
 
+/**
+ * A style that renders map data. A style is built up by adding selectors and layers, and can then be frozen with
+ * <code><a href="#{@link}">{@link #freeze()}</a></code> into a compiled style that is never modified again. A frozen
+ * style can render any number of maps at once from different threads.
+ */
 public class MapStyle {
+    /**
+     * How far (in mm) beyond the sheet coastlines are closed into land and water areas, so that the closing edges are
+     * not seen when the areas are outlined.
+     */
+    public static final double COASTLINE_MARGIN = 5.0;
+
     private final Interpreter.Context globalContext;
     private final Map<String, Selector> selectors;
     private final java.util.List<Layer> layers;
     private final GlobalSettings settings;
     private final Projection projection;
     private final Scaler scaler;
+    private final boolean frozen;
 
     /** Constructs a new <code>MapStyle</code>. */
     public MapStyle(Interpreter.Context globalContext, Projection projection, Scaler scaler) {
@@ -42,6 +58,18 @@ public class MapStyle {
         settings = new GlobalSettings();
         this.projection = projection;
         this.scaler = scaler;
+        frozen = false;
+    }
+
+    /** Constructs a frozen copy of <code>source</code>. */
+    private MapStyle(MapStyle source) {
+        globalContext = source.globalContext.toUnmodifiable();
+        selectors = Map.copyOf(source.selectors);
+        layers = java.util.List.copyOf(source.layers);
+        settings = new GlobalSettings(source.settings);
+        projection = source.projection;
+        scaler = source.scaler;
+        frozen = true;
     }
 
     /** Constructs a new MapStyle from an XML "styling" document specific to FreePaperMaps. */
@@ -84,11 +112,101 @@ public class MapStyle {
                 }
                 case "attribution-text" ->
                         mapSettings.attributionText = Interpreter.of(val).interpretExpectingString(context);
+                case "simplification-tolerance" -> {
+                    double tolerance = Interpreter.of(val).interpretExpectingDistance(context);
+                    if (tolerance < 0) {
+                        throw new UserInputException("Setting 'simplification-tolerance' cannot be negative.");
+                    }
+                    mapSettings.simplificationTolerance = tolerance;
+                }
+                case "output-precision" -> {
+                    double precision = Interpreter.of(val).interpretExpectingDistance(context);
+                    if (precision != 0 && !(precision >= SVGOptimizer.MIN_PRECISION && Double.isFinite(precision))) {
+                        throw new UserInputException(
+                                "Setting 'output-precision' must be 0, which turns off SVG optimization, or a finite " +
+                                "distance of at least 0.000000001mm.");
+                    }
+                    mapSettings.outputPrecision = precision;
+                }
             default -> throw new UserInputException("Unknown setting '" + key + "'.");
             }
         }
 
         // Parse selectors
+        for (Selector selector : selectorsFromXML(doc, xmlTools)) {
+            style.addSelector(selector);
+        }
+
+        // Parse layers
+        for (Layer layer : layersFromXML(doc, xmlTools)) {
+            style.addLayer(layer);
+        }
+
+        return style;
+    }
+
+    /**
+     * Creates an <code>OSMFilter</code> builder from an XML "styling" document. The filter only accepts elements that
+     * a selector used by one of the style's layers could match, and only retains tags that are read by those selectors
+     * or layers. Coastlines are accepted as well if a layer draws the land or water areas built from them. Settings are
+     * not interpreted and scale ranges are ignored, so this can be used before the map's scale is known. A builder is
+     * returned so that the caller can add spatial bounds.
+     */
+    public static OSMFilter.Builder createLoadFilter(Document doc, XMLTools xmlTools) throws UserInputException {
+        Map<String, Selector> selectorsById = new HashMap<>();
+        for (Selector selector : selectorsFromXML(doc, xmlTools)) {
+            selectorsById.put(selector.getId(), selector);
+        }
+
+        java.util.List<TagQuery> nodeQueries = new ArrayList<>();
+        java.util.List<TagQuery> wayQueries = new ArrayList<>();
+        Set<String> retainedTagKeys = new HashSet<>();
+        boolean retainAllTags = false;
+        boolean coastlines = false;
+
+        for (Layer layer : layersFromXML(doc, xmlTools)) {
+            Selector selector = selectorsById.get(layer.getRef());
+            if (selector == null) {
+                throw new UserInputException("Could not find selector with id '" + layer.getRef() + "'.");
+            }
+
+            switch (selector.type) {
+                case Node -> nodeQueries.add(selector.getQuery());
+                case Way, Polygon -> wayQueries.add(selector.getQuery());
+            }
+            retainedTagKeys.addAll(selector.getReferencedKeys());
+            coastlines |= targetsCoastlineAreas(selector);
+
+            Set<String> layerKeys = layer.getReferencedTagKeys();
+            if (layerKeys == null) {
+                retainAllTags = true;
+            } else {
+                retainedTagKeys.addAll(layerKeys);
+            }
+        }
+
+        if (coastlines) {
+            retainedTagKeys.add(CoastlineAssembler.COASTLINE_KEY);
+        }
+
+        boolean acceptCoastlines = coastlines;
+        return new OSMFilter.Builder()
+                .nodePredicate(tags -> nodeQueries.stream().anyMatch(q -> q.matches(tags)))
+                .wayPredicate(tags -> (acceptCoastlines && CoastlineAssembler.COASTLINE_VALUE.equals(
+                        tags.get(CoastlineAssembler.COASTLINE_KEY))) || wayQueries.stream().anyMatch(
+                        q -> q.matches(tags)))
+                .retainTagKeys(retainAllTags ? null : retainedTagKeys);
+    }
+
+    /** Returns true if <code>selector</code> matches the land or water areas built from coastlines. */
+    private static boolean targetsCoastlineAreas(Selector selector) {
+        return selector.type == Selector.Type.Polygon && (selector.getQuery().matches(CoastlineAssembler.LAND_TAGS) ||
+                                                          selector.getQuery().matches(CoastlineAssembler.WATER_TAGS));
+    }
+
+    private static java.util.List<Selector> selectorsFromXML(Document doc, XMLTools xmlTools) throws
+            UserInputException {
+        java.util.List<Selector> result = new ArrayList<>();
         NodeList selectors = xmlTools.getSingleChildElementByTagName(doc, "selectors").getChildNodes();
         for (int i = 0; i < selectors.getLength(); ++i) {
             if (selectors.item(i).getNodeType() != org.w3c.dom.Node.ELEMENT_NODE) {
@@ -96,10 +214,13 @@ public class MapStyle {
             }
 
             Element selector = (Element) selectors.item(i);
-            style.addSelector(Selector.fromXML(selector, xmlTools));
+            result.add(Selector.fromXML(selector, xmlTools));
         }
+        return result;
+    }
 
-        // Parse layers
+    private static java.util.List<Layer> layersFromXML(Document doc, XMLTools xmlTools) throws UserInputException {
+        java.util.List<Layer> result = new ArrayList<>();
         NodeList layers = xmlTools.getSingleChildElementByTagName(doc, "layers").getChildNodes();
         for (int i = 0; i < layers.getLength(); ++i) {
             if (layers.item(i).getNodeType() != org.w3c.dom.Node.ELEMENT_NODE) {
@@ -107,17 +228,42 @@ public class MapStyle {
             }
             Element layer = (Element) layers.item(i);
             switch (layer.getTagName()) {
-                case "PaintLayer" -> style.addLayer(PaintLayer.fromXML(layer, xmlTools));
+                case "PaintLayer" -> result.add(PaintLayer.fromXML(layer, xmlTools));
+                case "LabelLayer" -> result.add(LabelLayer.fromXML(layer, xmlTools));
+                case "IconLayer" -> result.add(IconLayer.fromXML(layer, xmlTools));
                 default -> throw new UserInputException("Undefined layer type '" + layer.getTagName() + "'.");
             }
         }
+        return result;
+    }
 
-        return style;
+    /**
+     * Returns a compiled copy of this style that cannot be modified. Selectors, layers and projections are immutable,
+     * and the settings and interpreter context are copied, so the returned style can be shared by concurrent renders.
+     * Freezing an already frozen style returns the style itself.
+     */
+    public MapStyle freeze() {
+        return frozen ? this : new MapStyle(this);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("This MapStyle is frozen.");
+        }
     }
 
     // settings
+
+    /**
+     * Returns this style's settings. The settings of a frozen style are returned as a copy, so modifying them has no
+     * effect on the style.
+     */
     public GlobalSettings getSettings() {
-        return settings;
+        return frozen ? new GlobalSettings(settings) : settings;
     }
 
     public java.util.List<Selector> getSelectors() {
@@ -129,20 +275,28 @@ public class MapStyle {
     }
 
     public void addSelector(Selector newSelector) {
+        checkMutable();
         selectors.put(newSelector.getId(), Objects.requireNonNull(newSelector));
     }
 
     public void removeSelectorById(String id) {
+        checkMutable();
         selectors.remove(id);
     }
 
     public void clearSelectors() {
+        checkMutable();
         selectors.clear();
     }
 
     // layers
     public void addLayer(Layer layer) {
-        layers.add(layer);
+        checkMutable();
+        layers.add(Objects.requireNonNull(layer));
+    }
+
+    public java.util.List<Layer> getLayers() {
+        return java.util.List.copyOf(layers);
     }
 
     /** A set of mutable options that apply to the whole map. */
@@ -154,6 +308,8 @@ public class MapStyle {
         public static final Color DEFAULT_ATTRIBUTION_TEXT_COLOR = Color.BLACK;
         public static final AttributionPosition DEFAULT_ATTRIBUTION_POSITION = AttributionPosition.TopLeft;
         public static final String DEFAULT_ATTRIBUTION_TEXT = "Map data from OpenStreetMap";
+        public static final double DEFAULT_SIMPLIFICATION_TOLERANCE = Simplifier.DEFAULT_TOLERANCE;
+        public static final double DEFAULT_OUTPUT_PRECISION = SVGOptimizer.DEFAULT_PRECISION;
 
         public Color backgroundColor = DEFAULT_BACKGROUND_COLOR;
         public String attributionFont = DEFAULT_ATTRIBUTION_FONT;
@@ -162,13 +318,54 @@ public class MapStyle {
         public Color attributionTextColor = DEFAULT_ATTRIBUTION_TEXT_COLOR;
         public AttributionPosition attributionPosition = DEFAULT_ATTRIBUTION_POSITION;
         public String attributionText = DEFAULT_ATTRIBUTION_TEXT;
+        /** The largest distance on paper (in mm) that simplification may move a line. Zero disables simplification. */
+        public double simplificationTolerance = DEFAULT_SIMPLIFICATION_TOLERANCE;
+        /** The precision (in mm) that SVG path coordinates are rounded to. Zero disables SVG optimization. */
+        public double outputPrecision = DEFAULT_OUTPUT_PRECISION;
+
+        public GlobalSettings() {}
+
+        /** Constructs a copy of <code>other</code>. */
+        public GlobalSettings(GlobalSettings other) {
+            backgroundColor = other.backgroundColor;
+            attributionFont = other.attributionFont;
+            attributionFontSize = other.attributionFontSize;
+            attributionBackgroundColor = other.attributionBackgroundColor;
+            attributionTextColor = other.attributionTextColor;
+            attributionPosition = other.attributionPosition;
+            attributionText = other.attributionText;
+            simplificationTolerance = other.simplificationTolerance;
+            outputPrecision = other.outputPrecision;
+        }
 
 
         public enum AttributionPosition {TopLeft, TopRight, BottomLeft, BottomRight}
     }
 
     public void renderMapData(Graphics2D g2d, OSM mapData) throws UserInputException {
-        GeometryCollection geometries = GeometryCollection.fromOSM(mapData, projection, scaler);
+        renderMapData(g2d, GeometryCollection.fromOSM(mapData, projection, scaler));
+    }
+
+    /**
+     * Renders already built geometry. <code>geometries</code> must have been built with this style's projection and
+     * scaler.
+     */
+    public void renderMapData(Graphics2D g2d, GeometryCollection geometries) throws UserInputException {
+        // Drop vertices that are too close together to be seen on paper before any layer has to trace them. The
+        // collection keeps the result, so re-rendering the same geometry only simplifies it once.
+        geometries = geometries.simplify(settings.simplificationTolerance);
+
+        // Land and water areas depend on the sheet they are closed along, so they are only built once it is known.
+        Shape clip = g2d.getClip();
+        if (clip != null && targetsCoastlineAreas()) {
+            Rectangle2D sheet = clip.getBounds2D();
+            geometries = new CoastlineAssembler(sheet.getMinX() - COASTLINE_MARGIN, sheet.getMinY() - COASTLINE_MARGIN,
+                                                sheet.getMaxX() + COASTLINE_MARGIN,
+                                                sheet.getMaxY() + COASTLINE_MARGIN).assemble(geometries);
+        }
+
+        // Labels and symbols placed by any layer keep later ones from overlapping them.
+        CollisionIndex collisions = new CollisionIndex();
 
         for (Layer layer : layers) {
             Selector selector = selectors.get(layer.getRef());
@@ -177,19 +374,68 @@ public class MapStyle {
                 throw new UserInputException("Could not find selector with id '" + layer.getRef() + "'.");
             }
 
-            layer.render(g2d, geometries, globalContext);
+            // Layers meant for other scales are skipped before any geometry is matched.
+            if (!isActive(layer, selector)) {
+                continue;
+            }
+
+            layer.render(g2d, geometries, selector, globalContext, collisions);
+        }
+    }
+
+    /** Returns true if both <code>layer</code> and its selector are used at this style's map scale. */
+    private boolean isActive(Layer layer, Selector selector) {
+        return layer.getScaleRange().contains(scaler.getMapScale()) &&
+               selector.getScaleRange().contains(scaler.getMapScale());
+    }
+
+    /** Returns true if an active layer draws the land or water areas built from coastlines. */
+    private boolean targetsCoastlineAreas() {
+        for (Layer layer : layers) {
+            Selector selector = selectors.get(layer.getRef());
+            if (selector != null && isActive(layer, selector) && targetsCoastlineAreas(selector)) {
+                return true;
+            }
         }
+        return false;
     }
 
     /** Renders the complete map to g2d and returns a rectangle representing the dimensions of the map. */
     public Rectangle2D render(Graphics2D g2d, OSM mapData, boolean attribution) throws UserInputException {
+        return render(g2d, getMapBounds(mapData), GeometryCollection.fromOSM(mapData, projection, scaler),
+                      attribution);
+    }
+
+    /**
+     * Renders the complete map to g2d from geometry that was already built from <code>mapData</code> with this style's
+     * projection and scaler, and returns a rectangle representing the dimensions of the map. This allows the same
+     * geometry to be rendered again with a different style without rebuilding it.
+     */
+    public Rectangle2D render(Graphics2D g2d, OSM mapData, GeometryCollection geometries, boolean attribution) throws
+            UserInputException {
+        return render(g2d, getMapBounds(mapData), geometries, attribution);
+    }
 
+    /**
+     * Renders the part of the map inside <code>rawBounds</code> to g2d from already built geometry, and returns a
+     * rectangle representing the dimensions of the map. Rendering does not modify the geometry, so the same
+     * <code>GeometryCollection</code> can be rendered with several bounds or styles at once.
+     */
+    public Rectangle2D render(Graphics2D g2d, BoundingBox<WGS84Coordinate> rawBounds, GeometryCollection geometries,
+                              boolean attribution) throws UserInputException {
+        return renderPage(g2d, scaler.scale(projection.project(rawBounds)), geometries, attribution);
+    }
+
+    /**
+     * Renders the part of the map inside <code>finalBounds</code>, given in the scaled coordinates of the geometry, to
+     * g2d and returns a rectangle representing the dimensions of the page. This is used to render a map that is split
+     * across several pages, since page bounds are chosen on paper rather than in WGS84 coordinates.
+     */
+    public Rectangle2D renderPage(Graphics2D g2d, BoundingBox<ScaledCoordinate> finalBounds,
+                                  GeometryCollection geometries, boolean attribution) throws UserInputException {
         // Clip the bounds. Our OSM data likely extends beyond the bounding box the user wants to render, so that
         // geometry that extends beyond the boundaries is still rendered properly. Once we are done rendering, we should
         // hide any nodes outside the bounds that we used purely for maintaining correct geometry.
-        BoundingBox<WGS84Coordinate> rawBounds =
-                mapData.getBoundingBox() != null ? mapData.getBoundingBox() : mapData.getNodeBoundingBox();
-        BoundingBox<ScaledCoordinate> finalBounds = scaler.scale(projection.project(rawBounds));
         ScaledCoordinate finalOrigin = finalBounds.getTopLeftCorner();
         Rectangle2D clippingRect = new Rectangle2D.Double(finalOrigin.getX(), finalOrigin.getY(),
                                                           finalBounds.getWidth(), finalBounds.getHeight());
@@ -204,7 +450,7 @@ public class MapStyle {
                                         clippingRect.getHeight()));
 
         // Render each layer of geometry
-        renderMapData(g2d, mapData);
+        renderMapData(g2d, geometries);
 
         // We reset the origin so that (0, 0) corresponds to the cropped origin.
         g2d.translate(finalOrigin.getX(), finalOrigin.getY());
@@ -219,6 +465,11 @@ public class MapStyle {
         return screen;
     }
 
+    /** Returns the bounds of the map that is rendered from <code>mapData</code> when no other bounds are given. */
+    public static BoundingBox<WGS84Coordinate> getMapBounds(OSM mapData) {
+        return mapData.getBoundingBox() != null ? mapData.getBoundingBox() : mapData.getNodeBoundingBox();
+    }
+
     private void renderAttribution(Graphics2D g2d, Rectangle2D screen) {
         Font attributionFont = new Font(settings.attributionFont, Font.PLAIN, settings.attributionFontSize);
         g2d.setFont(attributionFont);
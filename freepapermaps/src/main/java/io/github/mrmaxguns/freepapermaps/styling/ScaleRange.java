@@ -0,0 +1,52 @@
+package io.github.mrmaxguns.freepapermaps.styling;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
+import org.w3c.dom.Element;
+
+import java.util.OptionalDouble;
+
+
+/**
+ * The map scales at which a selector or layer is used. Scales are given by their denominator, so a range from 1000
+ * to 50000 is active on maps from 1:1000 to 1:50000, inclusive, and not on a 1:250000 overview.
+ */
+public record ScaleRange(double minScale, double maxScale) {
+    /** A range that is active at every scale. */
+    public static final ScaleRange ALL = new ScaleRange(0, Double.POSITIVE_INFINITY);
+
+    public static final String MIN_SCALE_ATTRIBUTE = "min-scale";
+    public static final String MAX_SCALE_ATTRIBUTE = "max-scale";
+
+    public ScaleRange {
+        if (!(minScale >= 0) || !(maxScale >= minScale)) {
+            throw new IllegalArgumentException("A scale range must not be negative or empty.");
+        }
+    }
+
+    /**
+     * Reads the optional <code>min-scale</code> and <code>max-scale</code> attributes of a selector or layer. A missing
+     * attribute leaves that end of the range open.
+     */
+    public static ScaleRange fromXML(Element element, XMLTools xmlTools) throws UserInputException {
+        OptionalDouble minScale = xmlTools.getAttributeValueDouble(element, MIN_SCALE_ATTRIBUTE, false);
+        OptionalDouble maxScale = xmlTools.getAttributeValueDouble(element, MAX_SCALE_ATTRIBUTE, false);
+        if (minScale.isEmpty() && maxScale.isEmpty()) {
+            return ALL;
+        }
+
+        try {
+            return new ScaleRange(minScale.orElse(ALL.minScale), maxScale.orElse(ALL.maxScale));
+        } catch (IllegalArgumentException e) {
+            throw new UserInputException(
+                    "Invalid scale range on '" + element.getTagName() + "'. '" + MIN_SCALE_ATTRIBUTE + "' and '" +
+                    MAX_SCALE_ATTRIBUTE + "' must not be negative, and '" + MIN_SCALE_ATTRIBUTE +
+                    "' must not be greater than '" + MAX_SCALE_ATTRIBUTE + "'.");
+        }
+    }
+
+    /** Returns true if a map at 1:<code>mapScale</code> is within this range. */
+    public boolean contains(double mapScale) {
+        return mapScale >= minScale && mapScale <= maxScale;
+    }
+}
@@ -6,18 +6,26 @@ import io.github.mrmaxguns.freepapermaps.geometry.Geometry;
 import org.w3c.dom.Element;
 
 import java.util.Objects;
+import java.util.Set;
 
 
 public class Selector {
     private final TagQuery query;
+    private final ScaleRange scaleRange;
     private String id;
-    public Type type;
+    public final Type type;
 
 
     public Selector(String id, Type type, TagQuery query) {
+        this(id, type, query, ScaleRange.ALL);
+    }
+
+    /** Constructs a selector that only matches on maps whose scale is within <code>scaleRange</code>. */
+    public Selector(String id, Type type, TagQuery query, ScaleRange scaleRange) {
         this.id = Objects.requireNonNull(id);
         this.type = Objects.requireNonNull(type);
         this.query = query;
+        this.scaleRange = Objects.requireNonNull(scaleRange);
     }
 
 
@@ -34,7 +42,7 @@ public class Selector {
 
         String id = xmlTools.getAttributeValue(rawSelector, "id");
         TagQuery query = TagQuery.fromXML(rawSelector, xmlTools);
-        return new Selector(id, type, query);
+        return new Selector(id, type, query, ScaleRange.fromXML(rawSelector, xmlTools));
     }
 
     public boolean matches(Geometry val) {
@@ -54,4 +62,13 @@ public class Selector {
     public TagQuery getQuery() {
         return query;
     }
+
+    public ScaleRange getScaleRange() {
+        return scaleRange;
+    }
+
+    /** Returns the set of (lowercase) tag keys that this selector looks at. */
+    public Set<String> getReferencedKeys() {
+        return query.getReferencedKeys();
+    }
 }
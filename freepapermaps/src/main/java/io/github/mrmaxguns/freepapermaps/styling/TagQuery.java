@@ -7,9 +7,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Stack;
+import java.util.*;
 
 
 public class TagQuery {
@@ -107,12 +105,26 @@ public class TagQuery {
         return root.matches(tags);
     }
 
+    /** Returns the set of (lowercase) tag keys that this query looks at. */
+    public Set<String> getReferencedKeys() {
+        Set<String> keys = new HashSet<>();
+        root.collectReferencedKeys(keys);
+        return keys;
+    }
+
     public static abstract class QueryOperator {
         public final ArrayList<QueryOperator> children;
 
         protected QueryOperator(ArrayList<QueryOperator> children) { this.children = children; }
 
         public abstract boolean matches(TagList tags);
+
+        /** Adds the keys of all tags referenced by this operator and its children to <code>keys</code>. */
+        public void collectReferencedKeys(Set<String> keys) {
+            for (QueryOperator child : children) {
+                child.collectReferencedKeys(keys);
+            }
+        }
     }
 
 
@@ -163,5 +175,10 @@ public class TagQuery {
 
             return otherValue.toLowerCase().equals(tagValue);
         }
+
+        @Override
+        public void collectReferencedKeys(Set<String> keys) {
+            keys.add(tagKey);
+        }
     }
 }
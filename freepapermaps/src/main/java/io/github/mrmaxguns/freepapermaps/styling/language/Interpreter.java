@@ -3,9 +3,7 @@ package io.github.mrmaxguns.freepapermaps.styling.language;
 import io.github.mrmaxguns.freepapermaps.UserInputException;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -76,6 +74,39 @@ public class Interpreter {
         return visit(ast, context);
     }
 
+    /**
+     * Returns the names of all value variables this expression reads, or <code>null</code> if the names cannot be
+     * known before the expression is interpreted (for example, when a name is computed, or when a recipe or function
+     * has access to the context).
+     */
+    public Set<String> getReferencedValueVariables() {
+        Set<String> names = new HashSet<>();
+        return collectValueVariables(ast, names) ? names : null;
+    }
+
+    /** Adds all value variable names found in <code>ast</code> to <code>names</code>, returning false if unknowable. */
+    private static boolean collectValueVariables(Parser.AST ast, Set<String> names) {
+        if (ast instanceof Parser.ValueVariableNode) {
+            Parser.AST nameExpression = ((Parser.ValueVariableNode) ast).nameExpression;
+            if (!(nameExpression instanceof Parser.StringNode)) {
+                return false;
+            }
+            names.add(((Parser.StringNode) nameExpression).string);
+            return true;
+        }
+
+        if (ast instanceof Parser.BinaryOperatorNode) {
+            Parser.BinaryOperatorNode node = (Parser.BinaryOperatorNode) ast;
+            return collectValueVariables(node.left, names) && collectValueVariables(node.right, names);
+        }
+
+        if (ast instanceof Parser.UnaryOperatorNode) {
+            return collectValueVariables(((Parser.UnaryOperatorNode) ast).operand, names);
+        }
+
+        return !(ast instanceof Parser.RecipeNode) && !(ast instanceof Parser.FunctionCallNode);
+    }
+
     private Primitive visit(Parser.AST ast, Context context) throws UserInputException {
         if (ast instanceof Parser.RecipeNode) {
             return visitRecipeNode((Parser.RecipeNode) ast, context);
@@ -255,6 +286,14 @@ public class Interpreter {
             newValueVariables.putAll(valueVariables);
             return new Context(recipes, globals, newValueVariables, functions, unitManager);
         }
+
+        /** Returns a copy of this context whose maps cannot be modified, so that it can be shared between threads. */
+        public Context toUnmodifiable() {
+            return new Context(Collections.unmodifiableMap(new HashMap<>(recipes)),
+                               Collections.unmodifiableMap(new HashMap<>(globals)),
+                               Collections.unmodifiableMap(new HashMap<>(valueVariables)),
+                               Collections.unmodifiableMap(new HashMap<>(functions)), unitManager);
+        }
     }
 
 
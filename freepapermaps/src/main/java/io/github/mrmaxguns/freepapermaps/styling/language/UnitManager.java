@@ -50,6 +50,21 @@ public class UnitManager {
         }
     }
 
+    /**
+     * Parses an area whose unit is a distance unit followed by <code>2</code>, such as <code>mm2</code> for square
+     * millimeters on paper or <code>M2</code> for square meters on the ground. The result is in square millimeters on
+     * paper.
+     */
+    public double parseAreaWithUnit(double number, String unit) {
+        String strippedUnit = unit.strip();
+        if (!strippedUnit.endsWith("2")) {
+            throw new IllegalArgumentException("Invalid area unit '" + unit + "'.");
+        }
+
+        double side = parseDistanceWithUnit(1, strippedUnit.substring(0, strippedUnit.length() - 1));
+        return number * side * side;
+    }
+
     public boolean isDistanceUnit(String unit) {
         return unit.isBlank() || unit.toLowerCase().matches("in|ft|mi|mm|cm|m|km|px|pt");
     }
@@ -0,0 +1,51 @@
+package io.github.mrmaxguns.freepapermaps;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class DecimalParserTest {
+    @Test
+    public void testParseCoordinatesExactly() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; ++i) {
+            String text = String.format(Locale.ROOT, "%.7f", (random.nextDouble() - 0.5) * 360);
+            assertEquals(Double.parseDouble(text), DecimalParser.parse(text), "'" + text + "' should parse exactly");
+        }
+    }
+
+    @Test
+    public void testParsePlainForms() {
+        assertAll(() -> assertEquals(30.272712, DecimalParser.parse("30.2727120"), "a coordinate should parse"),
+                  () -> assertEquals(-97.70019, DecimalParser.parse("-97.7001900"), "a negative number should parse"),
+                  () -> assertEquals(12.0, DecimalParser.parse("+12"), "an integer with a sign should parse"),
+                  () -> assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(DecimalParser.parse("-0")),
+                                     "negative zero should keep its sign"),
+                  () -> assertEquals(7.5, DecimalParser.parse("x7.5y", 1, 4), "part of a string should parse"));
+    }
+
+    @Test
+    public void testParseUnusualForms() {
+        assertAll(() -> assertEquals(1.5e-3, DecimalParser.parse("1.5e-3"), "exponents should parse"),
+                  () -> assertEquals(0.5, DecimalParser.parse(".5"), "a missing integer part should parse"),
+                  () -> assertEquals(2.0, DecimalParser.parse(" 2. "), "whitespace should be ignored"),
+                  () -> assertEquals(Double.parseDouble("12345678901234567890.123"),
+                                     DecimalParser.parse("12345678901234567890.123"), "long numbers should parse"),
+                  () -> assertEquals(Double.parseDouble("0.00000000000000000000000001"),
+                                     DecimalParser.parse("0.00000000000000000000000001"), "tiny numbers should parse"));
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertAll(() -> assertThrows(NumberFormatException.class, () -> DecimalParser.parse(""),
+                                     "an empty string is not a number"),
+                  () -> assertThrows(NumberFormatException.class, () -> DecimalParser.parse("-"),
+                                     "a sign alone is not a number"),
+                  () -> assertThrows(NumberFormatException.class, () -> DecimalParser.parse("1.2.3"),
+                                     "two decimal points are not a number"));
+    }
+}
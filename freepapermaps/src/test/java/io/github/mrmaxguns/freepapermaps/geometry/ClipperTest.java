@@ -0,0 +1,79 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ClipperTest {
+    private final Clipper clipper = new Clipper(0, 0, 10, 10);
+
+    @Test
+    public void testClipLineInside() {
+        double[] line = { 1, 1, 5, 5, 9, 1 };
+        List<double[]> pieces = clipper.clipLine(line);
+
+        assertAll(() -> assertEquals(1, pieces.size(), "a line inside should stay whole"),
+                  () -> assertSame(line, pieces.get(0), "a line inside should not be copied"));
+    }
+
+    @Test
+    public void testClipLineOutside() {
+        assertAll(() -> assertTrue(clipper.clipLine(new double[]{ 20, 0, 30, 10 }).isEmpty(),
+                                   "a line beside the rectangle should disappear"),
+                  () -> assertTrue(clipper.clipLine(new double[]{ -5, 12, 12, 30 }).isEmpty(),
+                                   "a line passing a corner should disappear"));
+    }
+
+    @Test
+    public void testClipLineCrossing() {
+        List<double[]> pieces = clipper.clipLine(new double[]{ -5, 5, 5, 5, 15, 5 });
+
+        assertAll(() -> assertEquals(1, pieces.size(), "a line crossing once should give one piece"),
+                  () -> assertArrayEquals(new double[]{ 0, 5, 5, 5, 10, 5 }, pieces.get(0), 1e-9,
+                                          "the line should be cut at the edges"));
+    }
+
+    @Test
+    public void testClipLineLeavingAndReturning() {
+        List<double[]> pieces = clipper.clipLine(new double[]{ 5, 5, 5, 20, 8, 20, 8, 5 });
+
+        assertAll(() -> assertEquals(2, pieces.size(), "a line that leaves and returns should split in two"),
+                  () -> assertArrayEquals(new double[]{ 5, 5, 5, 10 }, pieces.get(0), 1e-9,
+                                          "the first piece should end where the line leaves"),
+                  () -> assertArrayEquals(new double[]{ 8, 10, 8, 5 }, pieces.get(1), 1e-9,
+                                          "the second piece should start where the line returns"));
+    }
+
+    @Test
+    public void testClipRingCorner() {
+        double[] ring = clipper.clipRing(new double[]{ 5, 5, 15, 5, 15, 15, 5, 15, 5, 5 });
+
+        assertArrayEquals(new double[]{ 5, 10, 5, 5, 10, 5, 10, 10 }, ring, 1e-9,
+                          "a ring over a corner should be cut along both edges");
+    }
+
+    @Test
+    public void testClipRingOneVertexOutside() {
+        double[] ring = clipper.clipRing(new double[]{ -1, 5, 5, 1, 9, 5, 5, 9 });
+
+        assertArrayEquals(new double[]{ 0, 5 + 2.0 / 3, 0, 5 - 2.0 / 3, 5, 1, 9, 5, 5, 9 }, ring, 1e-9,
+                          "a vertex outside an edge should be replaced by two points on the edge");
+    }
+
+    @Test
+    public void testClipRingContaining() {
+        double[] ring = clipper.clipRing(new double[]{ -10, -10, 20, -10, 20, 20, -10, 20 });
+
+        assertArrayEquals(new double[]{ 0, 10, 0, 0, 10, 0, 10, 10 }, ring, 1e-9,
+                          "a ring around the rectangle should become the rectangle");
+    }
+
+    @Test
+    public void testClipRingOutside() {
+        assertEquals(0, clipper.clipRing(new double[]{ 20, 20, 30, 20, 30, 30 }).length,
+                     "a ring outside should disappear");
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import io.github.mrmaxguns.freepapermaps.osm.TagList;
+import io.github.mrmaxguns.freepapermaps.rendering.ScaledCoordinate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class CoastlineAssemblerTest {
+    private final CoastlineAssembler assembler = new CoastlineAssembler(0, 0, 10, 10);
+
+    private static WayGeometry createCoastline(double... coordinates) {
+        List<NodeGeometry> nodes = new ArrayList<>();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            nodes.add(new NodeGeometry(new ScaledCoordinate(coordinates[i], coordinates[i + 1])));
+        }
+
+        WayGeometry way = new WayGeometry(nodes);
+        TagList tags = new TagList();
+        tags.put("natural", "coastline");
+        way.setTags(tags);
+        return way;
+    }
+
+    private static boolean covers(List<PolygonGeometry> polygons, double x, double y) {
+        for (PolygonGeometry polygon : polygons) {
+            if (new PreparedRing(polygon.getExteriorRing()).contains(x, y) &&
+                polygon.getInteriorRings().stream().noneMatch(ring -> new PreparedRing(ring).contains(x, y))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testOpenCoastline() {
+        // A coastline running west across the rectangle in two ways, given out of order. Land is to the south.
+        List<WayGeometry> coastlines = List.of(createCoastline(5, 5, -2, 4), createCoastline(12, 6, 5, 5));
+
+        List<PolygonGeometry> land = assembler.assembleLand(coastlines);
+        List<PolygonGeometry> water = assembler.assembleWater(coastlines);
+        assertAll(() -> assertEquals(1, land.size(), "the chained coastline should give one land area"),
+                  () -> assertEquals(1, water.size(), "the chained coastline should give one water area"),
+                  () -> assertTrue(covers(land, 5, 8), "land should be south of the coastline"),
+                  () -> assertFalse(covers(land, 5, 2), "land should not be north of the coastline"),
+                  () -> assertTrue(covers(water, 5, 2), "water should be north of the coastline"),
+                  () -> assertFalse(covers(water, 5, 8), "water should not be south of the coastline"),
+                  () -> assertEquals(CoastlineAssembler.LAND_TAGS, land.get(0).getTags(), "land should be tagged"),
+                  () -> assertEquals(CoastlineAssembler.WATER_TAGS, water.get(0).getTags(), "water should be tagged"));
+    }
+
+    @Test
+    public void testIsland() {
+        // Land lies inside rings that run counterclockwise on the map
+        List<WayGeometry> coastlines = List.of(createCoastline(4, 4, 4, 6, 6, 6, 6, 4, 4, 4));
+
+        List<PolygonGeometry> land = assembler.assembleLand(coastlines);
+        List<PolygonGeometry> water = assembler.assembleWater(coastlines);
+        assertAll(() -> assertEquals(1, land.size(), "the island should be land"),
+                  () -> assertTrue(covers(land, 5, 5), "the island should be covered by land"),
+                  () -> assertFalse(covers(land, 1, 1), "the sea around the island should not be land"),
+                  () -> assertEquals(1, water.size(), "the sea around the island should be one area"),
+                  () -> assertEquals(1, water.get(0).getInteriorRings().size(), "the island should be a hole"),
+                  () -> assertTrue(covers(water, 1, 1), "the sea around the island should be water"),
+                  () -> assertFalse(covers(water, 5, 5), "the island should not be water"));
+    }
+
+    @Test
+    public void testIslandCrossingTheEdge() {
+        // An island reaching beyond the east edge, with a lake-like bay cut by the coastline
+        List<WayGeometry> coastlines = List.of(createCoastline(5, 2, 5, 8, 15, 8, 15, 2, 5, 2),
+                                               createCoastline(1, 1, 2, 1, 2, 2, 1, 2, 1, 1));
+
+        List<PolygonGeometry> land = assembler.assembleLand(coastlines);
+        List<PolygonGeometry> water = assembler.assembleWater(coastlines);
+        assertAll(() -> assertTrue(covers(land, 8, 5), "the island should be land inside the rectangle"),
+                  () -> assertFalse(covers(land, 2, 5), "the sea west of the island should not be land"),
+                  () -> assertTrue(covers(water, 2, 5), "the sea west of the island should be water"),
+                  () -> assertTrue(covers(water, 1.5, 1.5), "a ring running clockwise should enclose water"),
+                  () -> assertFalse(covers(water, 8, 5), "the island should not be water"));
+    }
+
+    @Test
+    public void testDanglingCoastline() {
+        List<WayGeometry> coastlines = List.of(createCoastline(5, 5, -2, 5));
+
+        assertAll(() -> assertTrue(assembler.assembleLand(coastlines).isEmpty(),
+                                   "a coastline ending inside cannot be closed"),
+                  () -> assertTrue(assembler.assembleWater(coastlines).isEmpty(),
+                                   "a coastline ending inside cannot be closed"));
+    }
+
+    @Test
+    public void testAssembleCollection() {
+        Map<Long, WayGeometry> ways = new HashMap<>();
+        ways.put(1L, createCoastline(12, 5, -2, 5));
+        GeometryCollection geometries = new GeometryCollection(new HashMap<>(), ways, new HashMap<>(), new HashMap<>());
+        GeometryCollection empty = new GeometryCollection(new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                                                          new HashMap<>());
+
+        GeometryCollection result = assembler.assemble(geometries);
+        assertAll(() -> assertEquals(2, result.getPolygonsById().size(), "land and water should be added"),
+                  () -> assertTrue(result.getPolygonsById().containsKey(Long.MIN_VALUE),
+                                   "areas should be stored under ids no OSM element uses"),
+                  () -> assertSame(ways.get(1L), result.getWaysById().get(1L), "ways should be kept"),
+                  () -> assertSame(empty, assembler.assemble(empty), "nothing should change without coastlines"));
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import io.github.mrmaxguns.freepapermaps.projections.RawCoordinate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PreparedRingTest {
+    private static WayGeometry createRing(double... coordinates) {
+        List<NodeGeometry> nodes = new ArrayList<>();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            nodes.add(new NodeGeometry(new RawCoordinate(coordinates[i], coordinates[i + 1])));
+        }
+        nodes.add(nodes.get(0));
+        return new WayGeometry(nodes);
+    }
+
+    /** Returns a closed, star-shaped ring with many long edges around the origin. */
+    private static WayGeometry createStar(int points) {
+        Random random = new Random(7);
+        double[] coordinates = new double[points * 2];
+        for (int i = 0; i < points; ++i) {
+            double angle = 2 * Math.PI * i / points;
+            double radius = i % 2 == 0 ? 10 : 1 + random.nextDouble() * 5;
+            coordinates[2 * i] = Math.cos(angle) * radius;
+            coordinates[2 * i + 1] = Math.sin(angle) * radius;
+        }
+        return createRing(coordinates);
+    }
+
+    @Test
+    public void testContainsPointMatchesWayGeometry() {
+        Random random = new Random(42);
+        for (WayGeometry ring : List.of(createStar(7), createStar(500), createRing(0, 0, 4, 0, 4, 4, 0, 4),
+                                        createRing(0, 0, 4, 0, 4, 1, 1, 1, 1, 3, 4, 3, 4, 4, 0, 4))) {
+            PreparedRing prepared = new PreparedRing(ring);
+            for (int i = 0; i < 5000; ++i) {
+                NodeGeometry point = new NodeGeometry(
+                        new RawCoordinate((random.nextDouble() - 0.5) * 24, (random.nextDouble() - 0.5) * 24));
+                assertEquals(ring.contains(point), prepared.contains(point),
+                             "prepared ring should agree with the way geometry at " + point.getPosition());
+            }
+        }
+    }
+
+    @Test
+    public void testContainsPoint() {
+        PreparedRing square = new PreparedRing(createRing(0, 0, 4, 0, 4, 4, 0, 4));
+
+        assertAll(() -> assertTrue(square.contains(2, 2), "the center should be inside"),
+                  () -> assertTrue(square.contains(0.5, 3.5), "a point near a corner should be inside"),
+                  () -> assertFalse(square.contains(5, 2), "a point to the right should be outside"),
+                  () -> assertFalse(square.contains(2, -1), "a point above should be outside"),
+                  () -> assertFalse(square.contains(Double.NaN, 2), "an invalid point should be outside"));
+    }
+
+    @Test
+    public void testContainsRing() {
+        WayGeometry outer = createRing(0, 0, 4, 0, 4, 1, 1, 1, 1, 3, 4, 3, 4, 4, 0, 4);
+        WayGeometry inner = createRing(0.2, 0.2, 0.8, 0.2, 0.8, 3.8, 0.2, 3.8);
+        WayGeometry crossing = createRing(0.5, 0.5, 3.5, 0.5, 3.5, 3.5, 0.5, 3.5);
+        WayGeometry acrossTheNotch = createRing(2, 0.5, 3, 0.5, 3, 3.5, 2, 3.5);
+        PreparedRing prepared = new PreparedRing(outer);
+
+        assertAll(() -> assertTrue(prepared.contains(inner), "a ring inside should be contained"),
+                  () -> assertEquals(outer.contains(inner), prepared.contains(inner), "should agree for inner ring"),
+                  () -> assertFalse(prepared.contains(crossing), "a ring leaving the outer ring is not contained"),
+                  () -> assertFalse(prepared.contains(acrossTheNotch),
+                                    "a ring whose edges cross the outer ring is not contained"),
+                  () -> assertEquals(outer.contains(acrossTheNotch), prepared.contains(acrossTheNotch),
+                                     "should agree for a ring across the notch"),
+                  () -> assertTrue(prepared.intersects(acrossTheNotch), "the edges should intersect"),
+                  () -> assertThrows(IllegalArgumentException.class,
+                                     () -> new PreparedRing(new WayGeometry(inner.getNodes().subList(0, 3))),
+                                     "an unclosed way cannot be prepared"));
+    }
+
+    @Test
+    public void testIntersectsItselfMatchesWayGeometry() {
+        Random random = new Random(3);
+        for (int i = 0; i < 200; ++i) {
+            double[] coordinates = new double[2 * (3 + random.nextInt(20))];
+            for (int j = 0; j < coordinates.length; ++j) {
+                coordinates[j] = random.nextInt(10);
+            }
+            WayGeometry ring = createRing(coordinates);
+            assertEquals(ring.intersects(null), new PreparedRing(ring).intersectsItself(),
+                         "prepared ring should agree with the way geometry for " + ring.getNodes());
+        }
+
+        WayGeometry star = createStar(500);
+        assertEquals(star.intersects(null), new PreparedRing(star).intersectsItself(),
+                     "prepared ring should agree with the way geometry for a long ring");
+    }
+
+    @Test
+    public void testIntersectsItself() {
+        WayGeometry notched = createRing(0, 0, 4, 0, 4, 1, 1, 1, 1, 3, 4, 3, 4, 4, 0, 4);
+
+        assertAll(() -> assertFalse(new PreparedRing(notched).intersectsItself(),
+                                    "a notched ring should not intersect itself"),
+                  () -> assertFalse(new PreparedRing(createRing(0, 0, 4, 0, 4, 4, 0, 4)).intersectsItself(),
+                                    "a square should not intersect itself"),
+                  () -> assertTrue(new PreparedRing(createRing(0, 0, 4, 4, 4, 0, 0, 4)).intersectsItself(),
+                                   "a figure eight should intersect itself"));
+    }
+}
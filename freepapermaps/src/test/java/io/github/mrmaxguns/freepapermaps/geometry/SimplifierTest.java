@@ -0,0 +1,107 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import io.github.mrmaxguns.freepapermaps.projections.RawCoordinate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class SimplifierTest {
+    private static WayGeometry way(double... coords) {
+        List<NodeGeometry> nodes = new ArrayList<>();
+        for (int i = 0; i < coords.length; i += 2) {
+            nodes.add(new NodeGeometry(new RawCoordinate(coords[i], coords[i + 1])));
+        }
+        return new WayGeometry(nodes);
+    }
+
+    @Test
+    public void testConstructorInvalid() {
+        assertAll(() -> assertThrows(IllegalArgumentException.class, () -> new Simplifier(-1),
+                                     "negative tolerances should be rejected"),
+                  () -> assertThrows(IllegalArgumentException.class, () -> new Simplifier(Double.NaN),
+                                     "NaN tolerances should be rejected"));
+    }
+
+    @Test
+    public void testSimplifyWay() {
+        WayGeometry original = way(0, 0, 1, 0.01, 2, -0.01, 3, 5, 4, 6, 5, 7);
+        original.getTags().put("highway", "primary");
+        WayGeometry simplified = new Simplifier(0.1).simplify(original);
+
+        assertAll(() -> assertEquals(4, simplified.getNodes().size(),
+                                     "vertices within the tolerance should be removed"),
+                  () -> assertSame(original.getFirstNode(), simplified.getFirstNode(),
+                                   "the first vertex should always be kept"),
+                  () -> assertSame(original.getLastNode(), simplified.getLastNode(),
+                                   "the last vertex should always be kept"),
+                  () -> assertSame(original.getNodes().get(3), simplified.getNodes().get(2),
+                                   "vertices outside the tolerance should be kept"),
+                  () -> assertEquals("primary", simplified.getTags().get("highway"), "tags should be kept"));
+    }
+
+    @Test
+    public void testSimplifyWayUnchanged() {
+        WayGeometry original = way(0, 0, 1, 5, 3, 4, 1, -2);
+
+        assertAll(() -> assertSame(original, new Simplifier(0.1).simplify(original),
+                                   "ways that cannot be simplified should be returned as-is"),
+                  () -> assertSame(original, new Simplifier(0).simplify(original),
+                                   "a tolerance of zero should not simplify anything"));
+    }
+
+    @Test
+    public void testSimplifyRing() {
+        WayGeometry square = way(0, 0, 5, 0.01, 10, 0, 10, 10, 0, 10, 0, 0);
+        WayGeometry tiny = way(0, 0, 0.01, 0, 0.01, 0.01, 0, 0.01, 0, 0);
+        Simplifier simplifier = new Simplifier(0.1);
+        WayGeometry simplifiedSquare = simplifier.simplify(square);
+
+        assertAll(() -> assertEquals(5, simplifiedSquare.getNodes().size(),
+                                     "vertices within the tolerance should be removed from rings"),
+                  () -> assertTrue(simplifiedSquare.isValidRing(), "simplified rings should remain valid"),
+                  () -> assertSame(tiny, simplifier.simplify(tiny),
+                                   "rings that would collapse should be kept as-is"));
+    }
+
+    @Test
+    public void testSimplifyCollection() {
+        WayGeometry ring = way(0, 0, 5, 0.01, 10, 0, 10, 10, 0, 10, 0, 0);
+        PolygonGeometry polygon = PolygonGeometry.fromWayGeometry(ring);
+
+        Map<Long, WayGeometry> ways = new HashMap<>();
+        ways.put(1L, ring);
+        Map<Long, PolygonGeometry> polygons = new HashMap<>();
+        polygons.put(1L, polygon);
+
+        GeometryCollection simplified = new Simplifier(0.1).simplify(
+                new GeometryCollection(new HashMap<>(), ways, polygons, new HashMap<>()));
+
+        assertAll(() -> assertEquals(5, simplified.getWaysById().get(1L).getNodes().size(),
+                                     "ways in the collection should be simplified"),
+                  () -> assertSame(simplified.getWaysById().get(1L),
+                                   simplified.getPolygonsById().get(1L).getExteriorRing(),
+                                   "a closed way and its polygon should share the simplified ring"));
+    }
+
+    @Test
+    public void testSimplifyCollectionCached() {
+        Map<Long, WayGeometry> ways = new HashMap<>();
+        ways.put(1L, way(0, 0, 5, 0.01, 10, 0));
+        GeometryCollection geometries = new GeometryCollection(new HashMap<>(), ways, new HashMap<>(), new HashMap<>());
+        GeometryCollection simplified = geometries.simplify(0.1);
+
+        assertAll(() -> assertEquals(2, simplified.getWaysById().get(1L).getNodes().size(),
+                                     "the collection should be simplified"),
+                  () -> assertSame(simplified, geometries.simplify(0.1),
+                                   "simplifying again with the same tolerance should reuse the result"),
+                  () -> assertNotSame(simplified, geometries.simplify(0.2),
+                                      "a different tolerance should be simplified separately"),
+                  () -> assertSame(geometries, geometries.simplify(0), "a tolerance of zero should change nothing"));
+    }
+}
@@ -14,6 +14,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -152,6 +153,28 @@ public class WayGeometryTest {
                                    "projecting and scaling should be done if specified"));
     }
 
+    @Test
+    public void testFromOSMSharesVertices() throws UserInputException {
+        OSM osm = new OSM();
+        Way way = new Way(1, true);
+        Node n1 = new Node(10, new WGS84Coordinate(1, 1), true);
+        Node n2 = new Node(11, new WGS84Coordinate(2, 2), true);
+        n2.getTags().put("ford", "yes");
+        way.addNodeId(10);
+        way.addNodeId(11);
+        osm.addWay(way);
+        osm.addNode(n1);
+        osm.addNode(n2);
+
+        NodeGeometry v2 = NodeGeometry.fromOSM(n2);
+        WayGeometry g = WayGeometry.fromOSM(osm, way, Map.of(11L, v2), null, null);
+
+        assertAll(() -> assertSame(v2, g.getNodes().get(1), "existing vertices should be reused"),
+                  () -> assertTrue(new RawCoordinate(1, 1).equals(g.getFirstNode().getPosition()),
+                                   "missing vertices should be built from the OSM data"),
+                  () -> assertSame(v2.getTags(), g.getNodes().get(1).getTags(), "tags should not be copied"));
+    }
+
     @Test
     public void testIsClosed() {
         assertAll(() -> assertFalse(w1.isClosed(), "unclosed ways should be identified"),
@@ -0,0 +1,47 @@
+package io.github.mrmaxguns.freepapermaps.geometry;
+
+import io.github.mrmaxguns.freepapermaps.projections.RawCoordinate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class WayMergerTest {
+    private static WayGeometry way(double... coords) {
+        List<NodeGeometry> nodes = new ArrayList<>();
+        for (int i = 0; i < coords.length; i += 2) {
+            nodes.add(new NodeGeometry(new RawCoordinate(coords[i], coords[i + 1])));
+        }
+        return new WayGeometry(nodes);
+    }
+
+    @Test
+    public void testMergeChain() {
+        // Three pieces of one road, given out of order and with the middle piece reversed
+        WayGeometry middle = way(2, 0, 1, 0);
+        middle.getTags().put("highway", "primary");
+        List<WayGeometry> merged = WayMerger.merge(List.of(middle, way(2, 0, 3, 0, 4, 1), way(0, 0, 1, 0)));
+
+        assertAll(() -> assertEquals(1, merged.size(), "connected ways should become one line"),
+                  () -> assertEquals(5, merged.get(0).getNodes().size(), "shared nodes should not be repeated"),
+                  () -> assertEquals(way(4, 1, 3, 0, 2, 0, 1, 0, 0, 0), merged.get(0),
+                                     "the nodes should be in order along the line"),
+                  () -> assertEquals("primary", merged.get(0).getTags().get("highway"),
+                                     "the merged way should keep the tags of the first way"));
+    }
+
+    @Test
+    public void testMergeSeparate() {
+        WayGeometry ring = way(10, 10, 11, 10, 11, 11, 10, 10);
+        List<WayGeometry> merged = WayMerger.merge(List.of(way(0, 0, 1, 0), ring, way(5, 5, 6, 6),
+                                                           way(1, 0, 1, 1), way(1, 1, 0, 0)));
+
+        assertAll(() -> assertEquals(3, merged.size(), "unconnected ways should stay separate"),
+                  () -> assertTrue(merged.get(0).isClosed(), "ways that meet at both ends should form a loop"),
+                  () -> assertEquals(4, merged.get(0).getNodes().size(), "a loop should repeat only its first node"),
+                  () -> assertSame(ring, merged.get(1), "closed ways should not be merged"));
+    }
+}
@@ -1,6 +1,7 @@
 package io.github.mrmaxguns.freepapermaps.osm;
 
 import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
 import io.github.mrmaxguns.freepapermaps.geometry.BoundingBox;
 import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
 import org.junit.jupiter.api.Test;
@@ -204,6 +205,49 @@ public class OSMTest {
         assertThrows(UnsupportedOperationException.class, () -> validOSM.getNodes().add(null), "getNodes should return an unmodifiable list");
     }
 
+    @Test
+    public void testFreeze() {
+        OSM osm = new OSM();
+        osm.addNode(new Node(1, new WGS84Coordinate(1, 1), true));
+        OSM snapshot = osm.freeze();
+        osm.addNode(new Node(2, new WGS84Coordinate(2, 2), true));
+
+        assertAll(() -> assertTrue(snapshot.isFrozen(), "freeze should return a snapshot"),
+                  () -> assertFalse(osm.isFrozen(), "the original should remain mutable"),
+                  () -> assertEquals(1, snapshot.getNodes().size(), "later changes should not affect the snapshot"),
+                  () -> assertSame(snapshot.getNodes(), snapshot.getNodes(), "snapshots should not copy their lists"),
+                  () -> assertSame(snapshot, snapshot.freeze(), "snapshots should not be frozen again"),
+                  () -> assertThrows(UnsupportedOperationException.class,
+                                     () -> snapshot.addNode(new Node(3, new WGS84Coordinate(3, 3), true)),
+                                     "snapshots should be read-only"),
+                  () -> assertThrows(UnsupportedOperationException.class, () -> snapshot.removeWayById(1),
+                                     "snapshots should be read-only"));
+    }
+
+    @Test
+    public void testBuilder() {
+        Node first = new Node(1, new WGS84Coordinate(5, 5), true);
+        Node replacement = new Node(1, new WGS84Coordinate(2, 3), true);
+        OSM.Builder builder = new OSM.Builder(3, 1, 0);
+        builder.addNode(first).addNode(new Node(2, new WGS84Coordinate(-1, 4), true)).addNode(replacement)
+               .addWay(new Way(10, true));
+
+        OSM expected = new OSM();
+        expected.addNode(first);
+        expected.addNode(new Node(2, new WGS84Coordinate(-1, 4), true));
+        expected.addNode(replacement);
+        OSM osm = builder.build();
+
+        assertAll(() -> assertTrue(osm.isFrozen(), "the builder should build a snapshot"),
+                  () -> assertEquals(2, osm.getNodes().size(), "nodes with the same id should replace each other"),
+                  () -> assertSame(replacement, osm.getNodeById(1), "the last node with an id should be kept"),
+                  () -> assertEquals(1, osm.getWays().size(), "ways should be added"),
+                  () -> assertEquals(expected.getNodeBoundingBox(), osm.getNodeBoundingBox(),
+                                     "the node bounds should match those of adding nodes one by one"),
+                  () -> assertNull(new OSM.Builder().build().getNodeBoundingBox(),
+                                   "a builder without nodes should have no node bounds"));
+    }
+
     @Test
     public void testGetNodeByIdValid() {
         long id = 2933427979L;
@@ -356,4 +400,58 @@ public class OSMTest {
         assertThrows(UserInputException.class, () -> osm.getNodesInWay(validOSM.getWayById(wayId)),
                      "Attempting to get nodes in a way referencing a nonexistent node should throw an error");
     }
+
+    @Test
+    public void testGetNodePositionsInWay() throws UserInputException {
+        Way way = validOSM.getWayById(289801717);
+        double[] buffer = new double[2 * way.getNodeCount() + 2];
+        int count = validOSM.getNodePositionsInWay(way, buffer);
+        List<Node> nodes = validOSM.getNodesInWay(way);
+
+        assertAll(() -> assertEquals(8, count, "every node should be written"),
+                  () -> assertEquals(nodes.get(0).getPosition().getLon(), buffer[0],
+                                     "longitudes should be written first"),
+                  () -> assertEquals(nodes.get(7).getPosition().getLat(), buffer[15],
+                                     "latitudes should follow their longitudes"),
+                  () -> assertThrows(IllegalArgumentException.class,
+                                     () -> validOSM.getNodePositionsInWay(way, new double[15]),
+                                     "a buffer that is too small should be rejected"));
+    }
+
+    @Test
+    public void testFromXMLWithFilter() throws Exception {
+        OSMFilter filter = new OSMFilter.Builder()
+                .nodePredicate(tags -> false)
+                .wayPredicate(tags -> tags.containsKey("building"))
+                .retainTagKeys(List.of("building"))
+                .build();
+        OSM osm = OSM.fromXML(loadXMLDocumentFromString(VALID_XML), new XMLTools(), filter);
+        Way building = osm.getWayById(289804782L);
+
+        assertAll(() -> assertEquals(1, osm.getWays().size(), "ways the filter rejects should be skipped"),
+                  () -> assertEquals(10, osm.getNodes().size(), "only nodes referenced by kept ways should be kept"),
+                  () -> assertEquals(11, osm.getNodesInWay(building).size(),
+                                     "kept ways should still be able to resolve their nodes"),
+                  () -> assertEquals(1, building.getTags().size(), "tags the filter does not retain should be dropped"),
+                  () -> assertEquals("yes", building.getTags().get("building"), "retained tags should be kept"));
+    }
+
+    @Test
+    public void testFromXMLWithFilterBounds() throws Exception {
+        // A small box around the parking lot (way 289801718), which excludes the library (way 289804782).
+        BoundingBox<WGS84Coordinate> bounds = new BoundingBox<>(new WGS84Coordinate(-97.70015, 30.27275),
+                                                                new WGS84Coordinate(-97.69930, 30.27250));
+        OSMFilter filter = new OSMFilter.Builder()
+                .nodePredicate(tags -> !tags.isEmpty())
+                .wayPredicate(tags -> tags.containsKey("amenity"))
+                .bounds(bounds)
+                .margin(0)
+                .build();
+        OSM osm = OSM.fromXML(loadXMLDocumentFromString(VALID_XML), new XMLTools(), filter);
+
+        assertAll(() -> assertNotNull(osm.getWayById(289801718L), "ways intersecting the bounds should be kept"),
+                  () -> assertNull(osm.getWayById(289804782L), "ways outside the bounds should be skipped"),
+                  () -> assertNotNull(osm.getNodeById(3825417633L), "tagged nodes inside the bounds should be kept"),
+                  () -> assertNull(osm.getNodeById(11711578122L), "tagged nodes outside the bounds should be skipped"));
+    }
 }
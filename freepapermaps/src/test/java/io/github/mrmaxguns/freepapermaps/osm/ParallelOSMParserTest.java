@@ -0,0 +1,108 @@
+package io.github.mrmaxguns.freepapermaps.osm;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static io.github.mrmaxguns.freepapermaps.TestingUtility.loadXMLDocumentFromString;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ParallelOSMParserTest {
+    /** Returns an OSM XML file with many small elements, in which nodes 1 to 3 are defined twice. */
+    private static String createXML() {
+        StringBuilder xml = new StringBuilder("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <osm version="0.6">
+                 <bounds minlat="1.0" minlon="2.0" maxlat="3.0" maxlon="4.0"/>
+                """);
+        for (int i = 1; i <= 200; ++i) {
+            int id = i > 197 ? i - 197 : i;
+            xml.append(" <node id=\"").append(id).append("\" lat=\"").append(i / 100.0).append("\" lon=\"")
+               .append(-i / 100.0).append("\">\n  <tag k=\"name\" v=\"Node ").append(i).append("\"/>\n </node>\n");
+        }
+        for (int i = 1; i <= 50; ++i) {
+            xml.append(" <way id=\"").append(i).append("\">\n  <nd ref=\"").append(i).append("\"/>\n  <nd ref=\"")
+               .append(1000 + i).append("\" lat=\"5.0\" lon=\"6.0\"/>\n  <tag k=\"highway\" v=\"road\"/>\n </way>\n");
+        }
+        xml.append(" <relation id=\"1\">\n  <member type=\"way\" ref=\"1\" role=\"\"/>\n </relation>\n</osm>\n");
+        return xml.toString();
+    }
+
+    private static OSM parse(String xml, int chunkSize, OSMFilter filter) throws Exception {
+        Path file = Files.createTempFile("parallel-osm-parser-test", ".osm");
+        try {
+            Files.writeString(file, xml, StandardCharsets.UTF_8);
+            return new ParallelOSMParser(4, chunkSize).parse(file, new XMLTools(), filter);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertSameOSM(OSM expected, OSM actual) {
+        assertAll(() -> assertEquals(expected.getBoundingBox(), actual.getBoundingBox(), "bounds should match"),
+                  () -> assertEquals(expected.getNodeBoundingBox(), actual.getNodeBoundingBox(),
+                                     "node bounds should match"),
+                  () -> assertEquals(expected.getNodes().size(), actual.getNodes().size(), "node counts should match"),
+                  () -> assertEquals(expected.getWays().size(), actual.getWays().size(), "way counts should match"));
+        for (Node node : expected.getNodes()) {
+            Node other = actual.getNodeById(node.getId());
+            assertAll(() -> assertNotNull(other, "node " + node.getId() + " should exist"),
+                      () -> assertEquals(node.getPosition(), other.getPosition(),
+                                         "node " + node.getId() + " should have the same position"),
+                      () -> assertEquals(node.getTags(), other.getTags(),
+                                         "node " + node.getId() + " should have the same tags"));
+        }
+        for (Way way : expected.getWays()) {
+            Way other = actual.getWayById(way.getId());
+            assertAll(() -> assertNotNull(other, "way " + way.getId() + " should exist"),
+                      () -> assertEquals(way.getNodeIds(), other.getNodeIds(),
+                                         "way " + way.getId() + " should have the same nodes"),
+                      () -> assertEquals(way.getTags(), other.getTags(),
+                                         "way " + way.getId() + " should have the same tags"));
+        }
+    }
+
+    @Test
+    public void testParseMatchesFromXML() throws Exception {
+        String xml = createXML();
+        OSM expected = OSM.fromXML(loadXMLDocumentFromString(xml));
+
+        // Small chunks split the file in many places, including between the duplicate definitions
+        assertSameOSM(expected, parse(xml, 500, OSMFilter.ACCEPT_ALL));
+        assertSameOSM(expected, parse(xml, ParallelOSMParser.DEFAULT_CHUNK_SIZE, OSMFilter.ACCEPT_ALL));
+    }
+
+    @Test
+    public void testParseKeepsLastDuplicate() throws Exception {
+        OSM osm = parse(createXML(), 500, OSMFilter.ACCEPT_ALL);
+
+        assertAll(() -> assertEquals("Node 198", osm.getNodeById(1).getTags().get("name"),
+                                     "the last definition of a node should win"),
+                  () -> assertNull(osm.getNodeById(1001), "inline nodes should not be added to the node table"),
+                  () -> assertEquals(5.0, osm.getNodeInWay(osm.getWayById(1), 1).getPosition().getLat(),
+                                     "inline nodes should be resolved from their way"),
+                  () -> assertEquals(5.0, osm.getNodeBoundingBox().getMaxLat(),
+                                     "inline nodes should be part of the node bounds"));
+    }
+
+    @Test
+    public void testParseMalformedChunk() {
+        String xml = createXML().replace("<node id=\"150\"", "<node id=\"oops\"");
+
+        assertThrows(UserInputException.class, () -> parse(xml, 500, OSMFilter.ACCEPT_ALL),
+                     "errors in any chunk should be reported");
+    }
+
+    @Test
+    public void testParseWithoutElements() throws Exception {
+        OSM osm = parse("<?xml version=\"1.0\"?>\n<osm version=\"0.6\">\n</osm>\n", 500, OSMFilter.ACCEPT_ALL);
+
+        assertAll(() -> assertTrue(osm.getNodes().isEmpty(), "an empty file should have no nodes"),
+                  () -> assertNull(osm.getBoundingBox(), "an empty file should have no bounds"));
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.mrmaxguns.freepapermaps.osm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class StringPoolTest {
+    @Test
+    public void testIntern() {
+        String first = StringPool.intern(new String("residential"));
+        String second = StringPool.intern(new String("residential"));
+        String longValue = "x".repeat(StringPool.MAX_POOLED_LENGTH + 1);
+
+        assertAll(() -> assertSame(first, second, "equal short strings should share one instance"),
+                  () -> assertSame(longValue, StringPool.intern(longValue), "long strings should not be pooled"),
+                  () -> assertNull(StringPool.intern(null), "null should stay null"));
+    }
+
+    @Test
+    public void testInternReplacesSlots() {
+        // Far more distinct strings than the pool has slots: each must still be returned intact.
+        for (int i = 0; i < 4 * StringPool.CAPACITY; ++i) {
+            String value = Integer.toString(i);
+            assertEquals(value, StringPool.intern(new String(value)), "a pooled string should equal its original");
+        }
+    }
+}
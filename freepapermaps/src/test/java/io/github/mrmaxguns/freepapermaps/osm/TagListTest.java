@@ -4,6 +4,9 @@ import io.github.mrmaxguns.freepapermaps.UserInputException;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Element;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static io.github.mrmaxguns.freepapermaps.TestingUtility.loadXMLElementFromString;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -58,4 +61,66 @@ public class TagListTest {
                          "missing required attribute " + attr + " should cause an error");
         }
     }
+
+    @Test
+    public void testPutGetRemove() {
+        TagList tags = new TagList();
+        tags.put("name", "Main Street");
+        tags.put("highway", "residential");
+        tags.put(null, "unknown");
+        String previous = tags.put("highway", "primary");
+        tags.remove("name");
+
+        assertAll(() -> assertEquals("residential", previous, "put should return the replaced value"),
+                  () -> assertEquals(2, tags.size(), "replacing and removing tags should update the size"),
+                  () -> assertEquals("primary", tags.get("highway"), "put should replace existing values"),
+                  () -> assertEquals("unknown", tags.get(null), "null keys should be permitted"),
+                  () -> assertFalse(tags.containsKey("name"), "removed tags should no longer be present"),
+                  () -> assertEquals(new HashMap<>(tags), tags, "a TagList should be equal to an equivalent map"));
+    }
+
+    @Test
+    public void testToImmutable() {
+        TagList copy = new TagList(validTagList);
+        TagList immutable = copy.toImmutable();
+        copy.put("military", "barracks");
+
+        assertAll(() -> assertTrue(immutable.isImmutable(), "toImmutable should return an immutable TagList"),
+                  () -> assertEquals("airfield", immutable.get("military"),
+                                     "an immutable TagList should not change with its source"),
+                  () -> assertSame(immutable, immutable.toImmutable(), "immutable lists should not be copied again"),
+                  () -> assertSame(TagList.EMPTY, new TagList().toImmutable(),
+                                   "empty immutable lists should be the EMPTY singleton"),
+                  () -> assertThrows(UnsupportedOperationException.class, () -> immutable.put("a", "b"),
+                                     "immutable lists cannot be modified"),
+                  () -> assertThrows(UnsupportedOperationException.class,
+                                     () -> immutable.keySet().removeIf(k -> true),
+                                     "immutable lists cannot be modified through views"));
+    }
+
+    @Test
+    public void testEntrySetValue() {
+        TagList tags = new TagList();
+        tags.put("highway", "residential");
+        Map.Entry<String, String> entry = tags.entrySet().iterator().next();
+
+        assertAll(() -> assertEquals("residential", entry.setValue("primary"), "the old value should be returned"),
+                  () -> assertEquals("primary", entry.getValue(), "the entry should show the new value"),
+                  () -> assertEquals("primary", tags.get("highway"), "the list should hold the new value"),
+                  () -> assertEquals(Map.entry("highway", "primary"), entry, "equality should use the new value"),
+                  () -> assertEquals(Map.entry("highway", "primary").hashCode(), entry.hashCode(),
+                                     "the hash code should use the new value"));
+    }
+
+    @Test
+    public void testStringsAreInterned() {
+        String first = StringPool.intern(new String("residential"));
+        String second = StringPool.intern(new String("residential"));
+        String longValue = "x".repeat(StringPool.MAX_POOLED_LENGTH + 1);
+        TagList tags = new TagList();
+        tags.put("name", longValue);
+
+        assertAll(() -> assertSame(first, second, "equal short strings interned one after another should be shared"),
+                  () -> assertSame(longValue, tags.get("name"), "long values should be stored unchanged"));
+    }
 }
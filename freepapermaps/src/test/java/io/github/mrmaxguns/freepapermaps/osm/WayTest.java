@@ -63,6 +63,55 @@ public class WayTest {
                   () -> assertEquals(12467240751L, nodeIds.get(9), "nodeIds should be ordered based on the input"));
     }
 
+    @Test
+    public void testAddNodeIdGrows() {
+        Way w = new Way(1, true);
+        for (long id = 100; id < 150; ++id) {
+            w.addNodeId(id);
+        }
+
+        assertAll(() -> assertEquals(50, w.getNodeCount(), "all added ids should be kept"),
+                  () -> assertEquals(100L, w.getNodeId(0), "ids should keep their order"),
+                  () -> assertEquals(149L, w.getNodeId(49), "ids should keep their order"),
+                  () -> assertTrue(w.containsNodeId(120), "added ids should be found"),
+                  () -> assertFalse(w.containsNodeId(150), "other ids should not be found"),
+                  () -> assertThrows(IndexOutOfBoundsException.class, () -> w.getNodeId(50),
+                                     "ids past the end should not be readable"));
+    }
+
+    @Test
+    public void testFromXMLInlineGeometry() throws Exception {
+        Way w = Way.fromXML(loadXMLElementFromString("""
+                <way id="5">
+                    <nd ref="1" lat="10.5" lon="20.25"/>
+                    <nd ref="2" lat="11.5" lon="21.25"/>
+                    <nd ref="1" lat="10.5" lon="20.25"/>
+                </way>
+                """));
+
+        assertAll(() -> assertTrue(w.hasInlineGeometry(), "every node has an inline position"),
+                  () -> assertEquals(3, w.getNodeCount(), "repeated references should be kept"),
+                  () -> assertEquals(21.25, w.getInlineLon(1), "inline longitudes should be parsed"),
+                  () -> assertEquals(10.5, w.getInlineLat(2), "inline latitudes should be parsed"),
+                  () -> assertEquals(2, w.getInlineNodes().size(), "inline nodes should be listed once per id"),
+                  () -> assertFalse(validWay.hasInlineGeometry(), "plain ways have no inline geometry"),
+                  () -> assertTrue(Double.isNaN(validWay.getInlineLon(0)), "plain ways have no inline positions"));
+    }
+
+    @Test
+    public void testAddNodeIdMixedInlinePositions() {
+        Way w = new Way(1, true);
+        w.addNodeId(1);
+        for (long id = 2; id < 20; ++id) {
+            w.addNodeId(id, id, -id);
+        }
+
+        assertAll(() -> assertFalse(w.hasInlinePosition(0), "ids added without a position should have none"),
+                  () -> assertTrue(w.hasInlinePosition(18), "positions should survive the arrays growing"),
+                  () -> assertEquals(-19.0, w.getInlineLat(18), "positions should stay with their ids"),
+                  () -> assertFalse(w.hasInlineGeometry(), "a way with one missing position is not inline geometry"));
+    }
+
     @Test
     public void testFromXMLValidTags() {
         TagList tags = validWay.getTags();
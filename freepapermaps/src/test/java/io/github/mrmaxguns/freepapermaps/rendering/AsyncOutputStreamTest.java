@@ -0,0 +1,109 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class AsyncOutputStreamTest {
+    private static long countWriterThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(
+                t -> t.getName().equals("output-writer") && t.isAlive()).count();
+    }
+
+    private static byte[] createData() {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            data.append("<path d=\"m").append(i).append(" 0h5\"/>\n");
+        }
+        return data.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        byte[] data = createData();
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        try (AsyncOutputStream out = new AsyncOutputStream(plain, false, 1000, 2)) {
+            out.write(data, 0, 10);
+            out.write(data[10]);
+            out.write(data, 11, data.length - 11);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (AsyncOutputStream out = new AsyncOutputStream(compressed, true)) {
+            out.write(data);
+        }
+        byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())).readAllBytes();
+
+        assertAll(() -> assertArrayEquals(data, plain.toByteArray(), "everything should be written in order"),
+                  () -> assertArrayEquals(data, decompressed, "compressed output should decompress to the input"),
+                  () -> assertTrue(compressed.size() < data.length / 4, "repetitive output should compress well"));
+    }
+
+    @Test
+    public void testFailure() {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full.");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Disk full.");
+            }
+        };
+
+        byte[] data = createData();
+        assertThrows(IOException.class, () -> {
+            try (AsyncOutputStream out = new AsyncOutputStream(failing, false, 100, 1)) {
+                out.write(data);
+            }
+        }, "errors on the writer thread should be reported");
+    }
+
+    @Test
+    public void testCloseAfterFailure() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream slowlyFailing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Disk full.");
+            }
+        };
+
+        long writersBefore = countWriterThreads();
+        AsyncOutputStream out = new AsyncOutputStream(slowlyFailing, false, 100, 1);
+        out.write('x');
+        out.flush();
+
+        // Leave a byte unsent while the first chunk fails, so that closing finds both a failure and a pending chunk
+        writing.await();
+        out.write('y');
+        release.countDown();
+        Thread.sleep(100);
+
+        assertAll(() -> assertThrows(IOException.class, out::close, "closing should report the failure"),
+                  () -> assertEquals(writersBefore, countWriterThreads(), "the writer thread should have finished"));
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.geometry.*;
+import io.github.mrmaxguns.freepapermaps.osm.TagList;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class AtlasTest {
+    private static BoundingBox<ScaledCoordinate> bounds(double width, double height) {
+        return new BoundingBox<>(new ScaledCoordinate(0, 0), new ScaledCoordinate(width, height));
+    }
+
+    @Test
+    public void testPages() {
+        Atlas atlas = new Atlas(bounds(500, 250), 200, 150, 20);
+        Atlas single = new Atlas(bounds(100, 100), 200, 150, 20);
+        Atlas.Page last = atlas.getPages().get(atlas.getPages().size() - 1);
+
+        assertAll(() -> assertEquals(3, atlas.getColumns(), "the columns should cover the map's width"),
+                  () -> assertEquals(2, atlas.getRows(), "the rows should cover the map's height"),
+                  () -> assertEquals(6, atlas.getPages().size(), "there should be a page in every row and column"),
+                  () -> assertEquals(360, last.bounds().getMinX(), "pages should overlap horizontally"),
+                  () -> assertEquals(130, last.bounds().getMinY(), "pages should overlap vertically"),
+                  () -> assertEquals(200, last.bounds().getWidth(), "pages should have the paper's width"),
+                  () -> assertTrue(last.bounds().getMaxX() >= 500, "the pages should cover the whole map"),
+                  () -> assertEquals(1, single.getPages().size(), "a small map should fit on one page"));
+    }
+
+    @Test
+    public void testConstructorInvalid() {
+        assertAll(() -> assertThrows(IllegalArgumentException.class, () -> new Atlas(bounds(10, 10), 0, 10, 0),
+                                     "pages must have a size"),
+                  () -> assertThrows(IllegalArgumentException.class, () -> new Atlas(bounds(10, 10), 10, 10, 10),
+                                     "the overlap must be smaller than the page"));
+    }
+
+    @Test
+    public void testPartition() {
+        Atlas atlas = new Atlas(bounds(500, 250), 200, 150, 20);
+
+        Map<Long, NodeGeometry> nodes = new HashMap<>();
+        nodes.put(1L, new NodeGeometry(new ScaledCoordinate(10, 10)));
+        nodes.put(2L, new NodeGeometry(new ScaledCoordinate(190, 10)));
+        Map<Long, WayGeometry> ways = new HashMap<>();
+        ways.put(1L, new WayGeometry(List.of(new NodeGeometry(new ScaledCoordinate(10, 200)),
+                                             new NodeGeometry(new ScaledCoordinate(490, 200)))));
+
+        List<GeometryCollection> pages = atlas.partition(
+                new GeometryCollection(nodes, ways, new HashMap<>(), new HashMap<>()));
+
+        assertAll(() -> assertEquals(6, pages.size(), "there should be one collection per page"),
+                  () -> assertEquals(2, pages.get(0).getNodesById().size(),
+                                     "nodes should be placed on the pages they lie on"),
+                  () -> assertTrue(pages.get(1).getNodesById().containsKey(2L),
+                                   "nodes in the overlap should be on both pages"),
+                  () -> assertFalse(pages.get(2).getNodesById().containsKey(2L),
+                                    "nodes should not be on distant pages"),
+                  () -> assertTrue(pages.get(0).getWaysById().isEmpty(), "ways should not be on pages they miss"),
+                  () -> assertSame(ways.get(1L), pages.get(5).getWaysById().get(1L),
+                                   "ways should be on every page they cross, without being copied"),
+                  () -> assertEquals(1, pages.get(3).getWaysById().size(),
+                                     "ways should be on every page they cross"));
+    }
+
+    /** Returns the tags of the assembled areas on <code>page</code> that cover the given point. */
+    private static List<TagList> coveringAreas(GeometryCollection page, double x, double y) {
+        return page.getPolygonsById().values().stream()
+                   .filter(polygon -> polygon.getTags() == CoastlineAssembler.LAND_TAGS ||
+                                      polygon.getTags() == CoastlineAssembler.WATER_TAGS)
+                   .filter(polygon -> new PreparedRing(polygon.getExteriorRing()).contains(x, y))
+                   .map(PolygonGeometry::getTags).toList();
+    }
+
+    @Test
+    public void testPartitionCoastlines() {
+        Atlas atlas = new Atlas(bounds(500, 250), 200, 150, 20);
+
+        // A coastline running east across the top row of pages, with land to the north and the bottom row at sea
+        WayGeometry coastline = new WayGeometry(List.of(new NodeGeometry(new ScaledCoordinate(-10, 60)),
+                                                        new NodeGeometry(new ScaledCoordinate(600, 60))));
+        TagList tags = new TagList();
+        tags.put(CoastlineAssembler.COASTLINE_KEY, CoastlineAssembler.COASTLINE_VALUE);
+        coastline.setTags(tags);
+        Map<Long, WayGeometry> ways = new HashMap<>();
+        ways.put(1L, coastline);
+
+        List<GeometryCollection> pages = atlas.partition(
+                new GeometryCollection(new HashMap<>(), ways, new HashMap<>(), new HashMap<>()));
+        GeometryCollection seaPage = pages.get(4);
+        BoundingBox<ScaledCoordinate> seaBounds = atlas.getPages().get(4).bounds();
+
+        assertAll(() -> assertTrue(seaPage.getWaysById().isEmpty(), "the coastline should not cross the sea page"),
+                  () -> assertEquals(List.of(CoastlineAssembler.WATER_TAGS), coveringAreas(seaPage, 250, 200),
+                                     "a page without coastlines should still be covered by the sea around it"),
+                  () -> assertEquals(List.of(CoastlineAssembler.LAND_TAGS), coveringAreas(pages.get(1), 250, 30),
+                                     "land should be on the pages north of the coastline"),
+                  () -> assertEquals(List.of(CoastlineAssembler.WATER_TAGS), coveringAreas(pages.get(1), 250, 100),
+                                     "water should be on the pages south of the coastline"),
+                  () -> assertSame(seaPage,
+                                   new CoastlineAssembler(seaBounds.getMinX(), seaBounds.getMinY(),
+                                                          seaBounds.getMaxX(), seaBounds.getMaxY()).assemble(seaPage),
+                                   "pages should not be assembled again when rendered"));
+    }
+
+    @Test
+    public void testParsePaperSize() throws UserInputException {
+        assertAll(() -> assertArrayEquals(new double[] { 210, 297 }, Atlas.parsePaperSize("A4"),
+                                          "named sizes should be recognized"),
+                  () -> assertArrayEquals(new double[] { 297, 210 }, Atlas.parsePaperSize("a4-landscape"),
+                                          "named sizes may be turned sideways"),
+                  () -> assertArrayEquals(new double[] { 300, 200.5 }, Atlas.parsePaperSize("300x200.5"),
+                                          "custom sizes should be parsed"),
+                  () -> assertThrows(UserInputException.class, () -> Atlas.parsePaperSize("b7"),
+                                     "unknown sizes should be rejected"),
+                  () -> assertThrows(UserInputException.class, () -> Atlas.parsePaperSize("0x100"),
+                                     "sizes must be positive"));
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class CollisionIndexTest {
+    @Test
+    public void testIntersects() {
+        CollisionIndex index = new CollisionIndex(10);
+        index.insert(new Rectangle2D.Double(5, 5, 20, 4));
+
+        assertAll(() -> assertTrue(index.intersects(new Rectangle2D.Double(22, 6, 10, 10)),
+                                   "boxes overlapping in another cell should collide"),
+                  () -> assertFalse(index.intersects(new Rectangle2D.Double(5, 10, 20, 4)),
+                                    "boxes sharing a cell but not overlapping should not collide"),
+                  () -> assertFalse(index.intersects(new Rectangle2D.Double(-15, -15, 5, 5)),
+                                    "boxes at negative coordinates should not collide"),
+                  () -> assertEquals(1, index.size(), "the index should count its boxes"));
+    }
+
+    @Test
+    public void testInsertIfFree() {
+        CollisionIndex index = new CollisionIndex();
+        boolean first = index.insertIfFree(List.of(new Rectangle2D.Double(0, 0, 4, 4),
+                                                   new Rectangle2D.Double(3, 0, 4, 4)));
+        boolean second = index.insertIfFree(List.of(new Rectangle2D.Double(50, 50, 4, 4),
+                                                    new Rectangle2D.Double(6, 3, 4, 4)));
+
+        assertAll(() -> assertTrue(first, "the boxes of one label may overlap each other"),
+                  () -> assertFalse(second, "a label overlapping a placed box should be rejected"),
+                  () -> assertEquals(2, index.size(), "a rejected label should not add any boxes"),
+                  () -> assertFalse(index.intersects(new Rectangle2D.Double(50, 50, 4, 4)),
+                                    "a rejected label should not add any boxes"));
+    }
+}
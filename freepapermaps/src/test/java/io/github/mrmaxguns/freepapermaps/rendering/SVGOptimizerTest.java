@@ -0,0 +1,75 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class SVGOptimizerTest {
+    private static Element parse(String svg) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder()
+                .parse(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)));
+        return doc.getDocumentElement();
+    }
+
+    @Test
+    public void testFormatPath() {
+        SVGOptimizer optimizer = new SVGOptimizer(0.01);
+        List<double[]> commands = SVGOptimizer.parsePath("M10.004 20 L10.004 25.5 L15.25 25.5 L 12.126,30.1 Z");
+
+        assertAll(() -> assertEquals("m10 20v5.5h5.25l-3.12 4.6z", optimizer.formatPath(commands),
+                                     "paths should be relative and rounded to the precision"),
+                  () -> assertEquals(".05", optimizer.formatUnits(5), "leading zeros should be dropped"),
+                  () -> assertEquals("-1.2", optimizer.formatUnits(-120), "trailing zeros should be dropped"),
+                  () -> assertEquals("0", optimizer.formatUnits(0), "zero should be written"),
+                  () -> assertEquals("h.5", new SVGOptimizer(0.5).formatPath(SVGOptimizer.parsePath("M0 0H.4"))
+                                     .substring(4), "coarse precisions should be supported"),
+                  () -> assertNull(SVGOptimizer.parsePath("M0 0 A 1 1 0 0 1 2 2"),
+                                   "unsupported commands should leave the path untouched"));
+    }
+
+    @Test
+    public void testRoundingDoesNotAccumulate() {
+        SVGOptimizer optimizer = new SVGOptimizer(1);
+        String result = optimizer.formatPath(SVGOptimizer.parsePath("M0 0 L0.4 1 L0.8 2 L1.2 3"));
+
+        assertEquals("m0 0v1l1 1v1", result, "positions should be rounded, not the distances between them");
+    }
+
+    @Test
+    public void testOptimize() throws Exception {
+        Element root = parse("<svg xmlns=\"http://www.w3.org/2000/svg\"><defs/>" +
+                             "<g fill=\"none\" stroke=\"#000000\"><path d=\"M0 0 L1 1\"/>\n" +
+                             "<path d=\"M2 2 L3 3\"/><path d=\"M4 4 L5 5\" stroke-width=\"2\"/></g>" +
+                             "<g fill=\"#ff0000\"><path d=\"M0 0 L1 0 L1 1 Z\"/><path d=\"M2 0 L3 0 L3 1 Z\"/></g>" +
+                             "<g fill=\"none\" stroke=\"#000000\"><path d=\"M0 0 L1 1\"/></g></svg>");
+        new SVGOptimizer().optimize(root);
+
+        NodeList paths = root.getElementsByTagNameNS("*", "path");
+        NodeList groups = root.getElementsByTagNameNS("*", "g");
+        NodeList styles = root.getElementsByTagNameNS("*", "style");
+
+        assertAll(() -> assertEquals(5, paths.getLength(), "only matching, stroked neighbors should be merged"),
+                  () -> assertEquals("m0 0 1 1m1 1 1 1", ((Element) paths.item(0)).getAttribute("d"),
+                                     "merged paths should keep each subpath"),
+                  () -> assertEquals(1, styles.getLength(), "repeated styles should be moved to a style element"),
+                  () -> assertEquals(".s1{fill:none;stroke:#000000}", styles.item(0).getTextContent(),
+                                     "repeated styles should become classes"),
+                  () -> assertEquals("s1", ((Element) groups.item(0)).getAttribute("class"),
+                                     "elements should refer to their style's class"),
+                  () -> assertFalse(((Element) groups.item(0)).hasAttribute("stroke"),
+                                    "styles moved to a class should be removed from elements"),
+                  () -> assertEquals("#ff0000", ((Element) groups.item(1)).getAttribute("fill"),
+                                     "styles used once should be kept"));
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.mrmaxguns.freepapermaps.rendering;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class SVGVectorIconTest {
+    private static final String SQUARE = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"10\" height=\"20\">" +
+                                         "<rect x=\"0\" y=\"0\" width=\"10\" height=\"20\" fill=\"#000000\"/></svg>";
+
+    @Test
+    public void testLoadIsCached() throws IOException, UserInputException {
+        Path file = Files.createTempFile("icon", ".svg");
+        try {
+            Files.writeString(file, SQUARE);
+            SVGVectorIcon icon = SVGVectorIcon.load(file.toString(), null);
+            SVGVectorIcon red = SVGVectorIcon.load(file.toString(), "#ff0000");
+
+            assertAll(() -> assertSame(icon, SVGVectorIcon.load(file.toString(), null),
+                                       "an icon should only be built once"),
+                      () -> assertSame(red, SVGVectorIcon.load(file.toString(), "#ff0000"),
+                                       "a recolored icon should only be built once"),
+                      () -> assertNotSame(icon, red, "each color should have its own icon"),
+                      () -> assertEquals(10, icon.getBoundsCentered(new ScaledCoordinate(0, 0), 20, 20).getWidth(),
+                                         1e-9, "icons should keep their aspect ratio"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLoadMissing() {
+        assertThrows(UserInputException.class, () -> SVGVectorIcon.load("no-such-icon.svg", null),
+                     "missing icons should be reported");
+    }
+}
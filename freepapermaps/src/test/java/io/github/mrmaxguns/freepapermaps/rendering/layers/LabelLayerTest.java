@@ -0,0 +1,94 @@
+package io.github.mrmaxguns.freepapermaps.rendering.layers;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
+import io.github.mrmaxguns.freepapermaps.geometry.NodeGeometry;
+import io.github.mrmaxguns.freepapermaps.geometry.WayGeometry;
+import io.github.mrmaxguns.freepapermaps.osm.TagList;
+import io.github.mrmaxguns.freepapermaps.rendering.CollisionIndex;
+import io.github.mrmaxguns.freepapermaps.rendering.ScaledCoordinate;
+import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
+import io.github.mrmaxguns.freepapermaps.styling.Selector;
+import io.github.mrmaxguns.freepapermaps.styling.TagQuery;
+import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
+import io.github.mrmaxguns.freepapermaps.styling.language.UnitManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LabelLayerTest {
+    /** A recipe that reads a place's rank, so that labels can be given priorities from the data. */
+    private static final Interpreter.Context CONTEXT = new Interpreter.Context(
+            Map.of("rank", context -> new Interpreter.NumericPrimitive(
+                    Interpreter.Primitive.Type.Unitless, Double.parseDouble(context.valueVariables().get("rank")))),
+            new HashMap<>(), new HashMap<>(), new HashMap<>(), new UnitManager(new Scaler(10000)));
+
+    private static NodeGeometry node(double x, double y, String name, String rank) {
+        NodeGeometry node = new NodeGeometry(new ScaledCoordinate(x, y));
+        TagList tags = new TagList();
+        tags.put("name", name);
+        tags.put("rank", rank);
+        node.setTags(tags);
+        return node;
+    }
+
+    @Test
+    public void testPriority() throws UserInputException {
+        Map<Long, NodeGeometry> nodes = new HashMap<>();
+        nodes.put(1L, node(10, 10, "Smallville", "1"));
+        nodes.put(2L, node(11, 10, "Metropolis", "5"));
+        nodes.put(3L, node(100, 10, "Gotham", "1"));
+        GeometryCollection geometries = new GeometryCollection(nodes, new HashMap<>(), new HashMap<>(),
+                                                               new HashMap<>());
+
+        LabelLayer layer = new LabelLayer("places", Map.of(LabelLayer.TEXT_FIELD, "${'name'}",
+                                                           LabelLayer.PRIORITY_FIELD, "!'rank'"));
+        Selector selector = new Selector("places", Selector.Type.Node,
+                                         new TagQuery(new TagQuery.TagQueryOperator("name", "")));
+        CollisionIndex collisions = new CollisionIndex();
+        List<LabelLayer.Label> labels = layer.placeLabels(geometries, selector, CONTEXT, collisions);
+
+        assertAll(() -> assertEquals(2, labels.size(), "overlapping labels should be dropped"),
+                  () -> assertEquals("Metropolis", labels.get(0).glyphs().get(0).text(),
+                                     "labels should be placed by decreasing priority"),
+                  () -> assertEquals("Gotham", labels.get(1).glyphs().get(0).text(),
+                                     "labels that do not overlap should all be placed"),
+                  () -> assertEquals(2, collisions.size(), "placed labels should reserve their space"));
+    }
+
+    @Test
+    public void testAlongLine() throws UserInputException {
+        // The way is drawn from right to left, so the label must follow it backwards to be readable.
+        WayGeometry way = new WayGeometry(List.of(new NodeGeometry(new ScaledCoordinate(100, 50)),
+                                                  new NodeGeometry(new ScaledCoordinate(0, 50))));
+        TagList tags = new TagList();
+        tags.put("name", "Main Street");
+        way.setTags(tags);
+        WayGeometry tooShort = new WayGeometry(List.of(new NodeGeometry(new ScaledCoordinate(0, 80)),
+                                                       new NodeGeometry(new ScaledCoordinate(2, 80))));
+        tooShort.setTags(tags);
+
+        Map<Long, WayGeometry> ways = new HashMap<>();
+        ways.put(1L, way);
+        ways.put(2L, tooShort);
+        GeometryCollection geometries = new GeometryCollection(new HashMap<>(), ways, new HashMap<>(),
+                                                               new HashMap<>());
+
+        LabelLayer layer = new LabelLayer("roads", Map.of(LabelLayer.TEXT_FIELD, "${'name'}"));
+        Selector selector = new Selector("roads", Selector.Type.Way,
+                                         new TagQuery(new TagQuery.TagQueryOperator("name", "")));
+        List<LabelLayer.Label> labels = layer.placeLabels(geometries, selector, CONTEXT, new CollisionIndex());
+        List<LabelLayer.Glyph> glyphs = labels.get(0).glyphs();
+
+        assertAll(() -> assertEquals(1, labels.size(), "labels longer than their line should be dropped"),
+                  () -> assertEquals("Main Street".length(), glyphs.size(), "every character should be placed"),
+                  () -> assertTrue(glyphs.get(0).x() < glyphs.get(glyphs.size() - 1).x(),
+                                   "text should read from left to right"),
+                  () -> assertEquals(0, glyphs.get(0).angle(), 1e-9, "characters should follow the line"));
+    }
+}
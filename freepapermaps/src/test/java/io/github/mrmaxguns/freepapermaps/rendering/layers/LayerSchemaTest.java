@@ -0,0 +1,57 @@
+package io.github.mrmaxguns.freepapermaps.rendering.layers;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LayerSchemaTest {
+    private static final LayerSchema SCHEMA = new LayerSchema.Builder()
+            .name("TestLayer")
+            .requiredField("size", Interpreter.Primitive.Type.Distance)
+            .optionalField("color", Interpreter.Primitive.Type.Color)
+            .build();
+
+    private static class TestLayer extends Layer {
+        public TestLayer(Map<String, String> rawFields) throws UserInputException {
+            super(SCHEMA, "test", rawFields);
+        }
+    }
+
+    @Test
+    public void testSchema() {
+        assertAll(() -> assertEquals("TestLayer", SCHEMA.getName(), "the name should be kept"),
+                  () -> assertEquals(Interpreter.Primitive.Type.Distance, SCHEMA.getFieldType("size"),
+                                     "required fields should have a type"),
+                  () -> assertEquals(Interpreter.Primitive.Type.Color, SCHEMA.getFieldType("color"),
+                                     "optional fields should have a type"),
+                  () -> assertNull(SCHEMA.getFieldType("width"), "undefined fields should have no type"),
+                  () -> assertThrows(UnsupportedOperationException.class,
+                                     () -> SCHEMA.getRequiredFields().put("width",
+                                                                          Interpreter.Primitive.Type.Distance),
+                                     "schemas should not be modifiable"),
+                  () -> assertThrows(IllegalStateException.class,
+                                     () -> new LayerSchema.Builder().name("Bad")
+                                             .requiredField("a", Interpreter.Primitive.Type.String)
+                                             .optionalField("a", Interpreter.Primitive.Type.String).build(),
+                                     "a field cannot be both required and optional"));
+    }
+
+    @Test
+    public void testLayerFields() throws UserInputException {
+        TestLayer layer = new TestLayer(Map.of("size", "2mm"));
+
+        assertAll(() -> assertSame(SCHEMA, layer.getSchema(), "the layer should keep its schema"),
+                  () -> assertThrows(UserInputException.class, () -> new TestLayer(Map.of("color", "#000000")),
+                                     "required fields must be given"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> new TestLayer(Map.of("size", "2mm", "width", "1mm")),
+                                     "fields outside the schema should be rejected"),
+                  () -> assertTrue(PaintLayer.SCHEMA.getRequiredFields().isEmpty(),
+                                   "layer types should not share field definitions"));
+    }
+}
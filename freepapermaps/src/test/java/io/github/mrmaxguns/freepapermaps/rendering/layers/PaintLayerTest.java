@@ -0,0 +1,156 @@
+package io.github.mrmaxguns.freepapermaps.rendering.layers;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
+import io.github.mrmaxguns.freepapermaps.geometry.NodeGeometry;
+import io.github.mrmaxguns.freepapermaps.geometry.PolygonGeometry;
+import io.github.mrmaxguns.freepapermaps.geometry.WayGeometry;
+import io.github.mrmaxguns.freepapermaps.osm.TagList;
+import io.github.mrmaxguns.freepapermaps.rendering.CollisionIndex;
+import io.github.mrmaxguns.freepapermaps.rendering.ScaledCoordinate;
+import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
+import io.github.mrmaxguns.freepapermaps.styling.ScaleRange;
+import io.github.mrmaxguns.freepapermaps.styling.Selector;
+import io.github.mrmaxguns.freepapermaps.styling.TagQuery;
+import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
+import io.github.mrmaxguns.freepapermaps.styling.language.UnitManager;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PaintLayerTest {
+    private static final Interpreter.Context CONTEXT = new Interpreter.Context(
+            new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), new UnitManager(new Scaler(10000)));
+
+    /** Returns a closed square way with the given side length (in mm), tagged with its name. */
+    private static WayGeometry square(double x, double y, double side, String name) {
+        List<NodeGeometry> nodes = new ArrayList<>();
+        nodes.add(new NodeGeometry(new ScaledCoordinate(x, y)));
+        nodes.add(new NodeGeometry(new ScaledCoordinate(x + side, y)));
+        nodes.add(new NodeGeometry(new ScaledCoordinate(x + side, y + side)));
+        nodes.add(new NodeGeometry(new ScaledCoordinate(x, y + side)));
+        nodes.add(nodes.get(0));
+
+        WayGeometry way = new WayGeometry(nodes);
+        TagList tags = new TagList();
+        tags.put("building", "yes");
+        tags.put("name", name);
+        way.setTags(tags);
+        return way;
+    }
+
+    /** Renders all polygons and ways with a layer culled at <code>minArea</code>, and returns what was painted. */
+    private static List<String> render(String minArea, Selector.Type type) throws UserInputException {
+        Map<Long, WayGeometry> ways = new HashMap<>();
+        Map<Long, PolygonGeometry> polygons = new HashMap<>();
+        WayGeometry[] squares = { square(0, 0, 0.5, "shed"), square(10, 0, 2, "house"), square(20, 0, 3, "hall") };
+        for (int i = 0; i < squares.length; ++i) {
+            ways.put((long) i, squares[i]);
+            polygons.put((long) i, PolygonGeometry.fromWayGeometry(squares[i]));
+        }
+
+        // A 2 mm wide diagonal strip, whose bounding box is large but whose area is small
+        List<NodeGeometry> strip = List.of(new NodeGeometry(new ScaledCoordinate(30, 0)),
+                                           new NodeGeometry(new ScaledCoordinate(50, 20)),
+                                           new NodeGeometry(new ScaledCoordinate(50, 20.01)),
+                                           new NodeGeometry(new ScaledCoordinate(30, 0.01)));
+        WayGeometry sliver = new WayGeometry(new ArrayList<>(List.of(strip.get(0), strip.get(1), strip.get(2),
+                                                                     strip.get(3), strip.get(0))));
+        TagList sliverTags = new TagList(squares[0].getTags());
+        sliverTags.put("name", "sliver");
+        sliver.setTags(sliverTags);
+        ways.put(3L, sliver);
+        polygons.put(3L, PolygonGeometry.fromWayGeometry(sliver));
+
+        List<String> painted = new ArrayList<>();
+        PaintLayer layer = new PaintLayer("buildings", ScaleRange.ALL, minArea, Map.of()) {
+            @Override
+            public void renderWay(Graphics2D g2d, WayGeometry way, ComputedFieldMap fields) {
+                painted.add(way.getTags().get("name"));
+            }
+
+            @Override
+            public void renderPolygon(Graphics2D g2d, PolygonGeometry polygon, ComputedFieldMap fields) {
+                painted.add(polygon.getTags().get("name"));
+            }
+        };
+
+        Graphics2D g2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        layer.render(g2d, new GeometryCollection(new HashMap<>(), ways, polygons, new HashMap<>()),
+                     new Selector("buildings", type, new TagQuery(new TagQuery.TagQueryOperator("building", "yes"))),
+                     CONTEXT, new CollisionIndex());
+        g2d.dispose();
+
+        painted.sort(null);
+        return painted;
+    }
+
+    @Test
+    public void testMinArea() throws UserInputException {
+        assertAll(() -> assertEquals(List.of("hall", "house", "shed", "sliver"), render(null, Selector.Type.Polygon),
+                                     "without a minimum area, everything should be painted"),
+                  () -> assertEquals(List.of("hall", "house"), render("1mm2", Selector.Type.Polygon),
+                                     "polygons smaller than 1 mm2 on paper should be culled"),
+                  () -> assertEquals(List.of("hall", "house"), render("1mm2", Selector.Type.Way),
+                                     "closed ways smaller than 1 mm2 on paper should be culled"),
+                  () -> assertEquals(List.of("hall"), render("5", Selector.Type.Polygon),
+                                     "areas without a unit should be in square millimeters"),
+                  () -> assertEquals(List.of("hall"), render("0.05cm2", Selector.Type.Polygon),
+                                     "other distance units should be squared"));
+    }
+
+    @Test
+    public void testInvalidMinArea() {
+        assertAll(() -> assertThrows(UserInputException.class,
+                                     () -> new PaintLayer("buildings", ScaleRange.ALL, "large", Map.of()),
+                                     "an area must be a number"),
+                  () -> assertThrows(UserInputException.class, () -> render("1mm", Selector.Type.Polygon),
+                                     "an area must have an area unit"),
+                  () -> assertThrows(UserInputException.class, () -> render("1xx2", Selector.Type.Polygon),
+                                     "an area must have a valid unit"));
+    }
+
+    @Test
+    public void testWaysKeepTheirOrder() throws UserInputException {
+        // Three separate roads in a row, where the first and last share a style
+        Map<Long, WayGeometry> ways = new LinkedHashMap<>();
+        String[][] roads = { { "first", "round" }, { "second", "butt" }, { "third", "round" } };
+        for (int i = 0; i < roads.length; ++i) {
+            WayGeometry way = new WayGeometry(List.of(new NodeGeometry(new ScaledCoordinate(0, i)),
+                                                      new NodeGeometry(new ScaledCoordinate(10, i))));
+            TagList tags = new TagList();
+            tags.put("highway", "primary");
+            tags.put("name", roads[i][0]);
+            tags.put("cap", roads[i][1]);
+            way.setTags(tags);
+            ways.put((long) i, way);
+        }
+
+        List<String> painted = new ArrayList<>();
+        PaintLayer layer = new PaintLayer("roads", Map.of(PaintLayer.LINE_CAP_FIELD, "${'cap'}")) {
+            @Override
+            public void renderWay(Graphics2D g2d, WayGeometry way, ComputedFieldMap fields) {
+                painted.add(way.getTags().get("name"));
+            }
+        };
+
+        Selector selector = new Selector("roads", Selector.Type.Way,
+                                         new TagQuery(new TagQuery.TagQueryOperator("highway", "")));
+        Graphics2D g2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        layer.render(g2d, new GeometryCollection(new HashMap<>(), ways, new HashMap<>(), new HashMap<>()), selector,
+                     CONTEXT, new CollisionIndex());
+        g2d.dispose();
+
+        assertEquals(List.of("first", "second", "third"), painted,
+                     "ways with different styles should be painted in their original order");
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.mrmaxguns.freepapermaps.rendering.pdf;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PDFDocumentTest {
+    /** Returns the decompressed content stream of the first page. */
+    private static String getFirstContent(String pdf) throws DataFormatException {
+        int start = pdf.indexOf("stream\n") + "stream\n".length();
+        int end = pdf.indexOf("\nendstream", start);
+        byte[] compressed = pdf.substring(start, end).getBytes(StandardCharsets.ISO_8859_1);
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] buffer = new byte[1 << 16];
+        StringBuilder result = new StringBuilder();
+        while (!inflater.finished()) {
+            int count = inflater.inflate(buffer);
+            result.append(new String(buffer, 0, count, StandardCharsets.ISO_8859_1));
+        }
+        inflater.end();
+        return result.toString();
+    }
+
+    private static int count(String haystack, String needle) {
+        int count = 0;
+        for (int i = haystack.indexOf(needle); i >= 0; i = haystack.indexOf(needle, i + 1)) {
+            ++count;
+        }
+        return count;
+    }
+
+    @Test
+    public void testStreamingPage() throws IOException, DataFormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PDFDocument document = new PDFDocument(out);
+        PDFPage page = document.beginPage(100, 50);
+        Graphics2D g2d = page.getGraphics();
+
+        g2d.setColor(Color.RED);
+        for (int i = 0; i < 3; ++i) {
+            g2d.fill(new Rectangle2D.Double(i * 10, 0, 5, 5));
+        }
+        g2d.setColor(new Color(0, 0, 255, 128));
+        g2d.setStroke(new BasicStroke(2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2d.draw(new Line2D.Double(0, 0, 10, 10));
+        g2d.draw(new Line2D.Double(10, 10, 20, 0));
+        g2d.setFont(new Font(Font.SERIF, Font.PLAIN, 4));
+        g2d.drawString("Map (c)", 1, 40);
+
+        document.endPage(page);
+        document.finish();
+
+        String pdf = out.toString(StandardCharsets.ISO_8859_1);
+        String content = getFirstContent(pdf);
+
+        assertAll(() -> assertTrue(pdf.startsWith("%PDF-1.4"), "the header should be written"),
+                  () -> assertTrue(pdf.endsWith("%%EOF\n"), "the trailer should be written"),
+                  () -> assertEquals(1, count(content, "1 0 0 rg\n"), "an unchanged fill color should be written once"),
+                  () -> assertEquals(3, count(content, "\nf\n"), "every shape should be filled"),
+                  () -> assertEquals(1, count(content, " RG\n"), "an unchanged stroke color should be written once"),
+                  () -> assertEquals(1, count(content, " w\n"), "an unchanged line width should be written once"),
+                  () -> assertEquals(1, count(content, " gs\n"), "an unchanged opacity should be written once"),
+                  () -> assertEquals(2, count(content, "\nS\n"), "every line should be stroked"),
+                  () -> assertTrue(content.contains("(Map \\(c\\)) Tj"), "text should be shown and escaped"),
+                  () -> assertTrue(pdf.contains("/BaseFont /Times-Roman"), "serif text should use a standard font"),
+                  () -> assertTrue(pdf.contains("/CA 0.502"), "the opacity should be written as a resource"),
+                  () -> assertTrue(pdf.contains("/MediaBox [0 0 283.465 141.732]"),
+                                   "the page size should be converted to points"));
+    }
+
+    @Test
+    public void testCrossReferences() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PDFDocument document = new PDFDocument(out);
+        PDFPage first = document.createPage(10, 10);
+        PDFPage second = document.createPage(20, 20);
+        second.getGraphics().fill(new Rectangle(0, 0, 1, 1));
+        first.getGraphics().fill(new Rectangle(0, 0, 2, 2));
+        document.endPage(first);
+        document.endPage(second);
+        document.finish();
+
+        String pdf = out.toString(StandardCharsets.ISO_8859_1);
+        int xref = Integer.parseInt(pdf.substring(pdf.lastIndexOf("startxref\n") + 10, pdf.lastIndexOf("\n%%EOF")));
+        Matcher entries = Pattern.compile("(\\d{10}) 00000 n ").matcher(pdf.substring(xref));
+
+        int object = 0;
+        boolean offsetsValid = true;
+        while (entries.find()) {
+            ++object;
+            int offset = Integer.parseInt(entries.group(1));
+            offsetsValid &= pdf.startsWith(object + " 0 obj\n", offset);
+        }
+        int objects = object;
+        boolean allOffsetsValid = offsetsValid;
+
+        assertAll(() -> assertTrue(pdf.startsWith("xref", xref), "startxref should point at the table"),
+                  () -> assertTrue(objects > 3, "every object should be in the table"),
+                  () -> assertTrue(allOffsetsValid, "every offset should point at its object"),
+                  () -> assertTrue(pdf.contains("/Count 2"), "both pages should be in the document"),
+                  () -> assertEquals(2, document.getPageCount(), "both pages should be in the document"),
+                  () -> assertThrows(IllegalStateException.class, () -> document.beginPage(10, 10),
+                                     "a finished document cannot be written to"));
+    }
+
+    @Test
+    public void testAppendNumber() {
+        assertAll(() -> assertEquals("0", PDFDocument.formatNumber(0), "zero should be written without decimals"),
+                  () -> assertEquals("12.5", PDFDocument.formatNumber(12.5), "trailing zeros should be removed"),
+                  () -> assertEquals("-0.05", PDFDocument.formatNumber(-0.05), "leading zeros should be kept"),
+                  () -> assertEquals("1.235", PDFDocument.formatNumber(1.23456), "numbers should be rounded"),
+                  () -> assertEquals("3", PDFDocument.formatNumber(2.9999), "numbers should be rounded"));
+    }
+}
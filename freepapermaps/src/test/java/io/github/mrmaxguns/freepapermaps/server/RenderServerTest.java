@@ -0,0 +1,121 @@
+package io.github.mrmaxguns.freepapermaps.server;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.osm.Node;
+import io.github.mrmaxguns.freepapermaps.osm.OSM;
+import io.github.mrmaxguns.freepapermaps.projections.WGS84Coordinate;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class RenderServerTest {
+    private static OSM createDataset() {
+        OSM osm = new OSM();
+        osm.addNode(new Node(1, new WGS84Coordinate(-97.70, 30.27), true));
+        osm.addNode(new Node(2, new WGS84Coordinate(-97.69, 30.28), true));
+        return osm;
+    }
+
+    private static HttpResponse<String> get(RenderServer server, String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path)).build();
+        return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testRequests() throws Exception {
+        RenderServer server = new RenderServer(Map.of("austin", createDataset()), Map.of("default", "style.xml"), 1,
+                                               1);
+        server.start(0);
+
+        try {
+            HttpResponse<String> datasets = get(server, "/datasets");
+            HttpResponse<String> missingScale = get(server, "/render");
+            HttpResponse<String> unknownDataset = get(server, "/render?dataset=paris&scale=10000");
+
+            assertAll(() -> assertEquals(200, datasets.statusCode(), "datasets should be listed"),
+                      () -> assertEquals("dataset austin\nstyle default\n", datasets.body(),
+                                         "all datasets and styles should be listed"),
+                      () -> assertEquals(400, missingScale.statusCode(), "a scale is required"),
+                      () -> assertEquals(400, unknownDataset.statusCode(), "unknown datasets should be rejected"),
+                      () -> assertTrue(unknownDataset.body().contains("paris"),
+                                       "errors should explain what went wrong"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testRenderRequestFromParameters() throws UserInputException {
+        RenderServer.RenderRequest request = RenderServer.RenderRequest.fromParameters(
+                Map.of("scale", "25000", "bbox", "-97.7,30.27,-97.69,30.28", "attribution", "false"),
+                Set.of("austin"), Set.of("default"));
+
+        assertAll(() -> assertEquals("austin", request.dataset(), "the only dataset should be chosen by default"),
+                  () -> assertEquals("default", request.style(), "the only style should be chosen by default"),
+                  () -> assertEquals(25000, request.scale(), "the scale should be parsed"),
+                  () -> assertEquals(-97.7, request.bounds().getMinLon(), "the bounds should be parsed"),
+                  () -> assertEquals(30.28, request.bounds().getMaxLat(), "the bounds should be parsed"),
+                  () -> assertFalse(request.attribution(), "attribution should be optional"));
+    }
+
+    @Test
+    public void testRenderRequestFromParametersInvalid() {
+        Set<String> datasets = Set.of("austin", "paris");
+        Set<String> styles = Set.of("default");
+
+        assertAll(() -> assertThrows(UserInputException.class,
+                                     () -> RenderServer.RenderRequest.fromParameters(Map.of("scale", "1000"), datasets,
+                                                                                     styles),
+                                     "the dataset must be given when there is more than one"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> RenderServer.RenderRequest.fromParameters(
+                                             Map.of("dataset", "austin", "scale", "-5"), datasets, styles),
+                                     "the scale must be positive"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> RenderServer.RenderRequest.fromParameters(
+                                             Map.of("dataset", "austin", "scale", "1000", "bbox", "1,2,3"), datasets,
+                                             styles),
+                                     "the bounds must have four values"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> RenderServer.RenderRequest.fromParameters(
+                                             Map.of("dataset", "austin", "scale", "1000", "bbox", "3,2,1,4"), datasets,
+                                             styles),
+                                     "the bounds must not be inverted"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> RenderServer.RenderRequest.fromParameters(
+                                             Map.of("dataset", "austin", "scale", "1000", "bbox", "NaN,2,3,4"),
+                                             datasets, styles),
+                                     "the bounds must be numbers"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> RenderServer.RenderRequest.fromParameters(
+                                             Map.of("dataset", "austin", "scale", "1000", "bbox", "1,2,3,95"),
+                                             datasets, styles),
+                                     "latitudes must be within range"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> RenderServer.RenderRequest.fromParameters(
+                                             Map.of("dataset", "austin", "scale", "1000", "bbox", "-181,2,3,4"),
+                                             datasets, styles),
+                                     "longitudes must be within range"));
+    }
+
+    @Test
+    public void testRenderRequestScaleIsClamped() throws UserInputException {
+        Set<String> datasets = Set.of("austin");
+        Set<String> styles = Set.of("default");
+
+        assertAll(() -> assertEquals(RenderServer.MIN_SCALE, RenderServer.RenderRequest.fromParameters(
+                          Map.of("scale", "0.001"), datasets, styles).scale(), "tiny scales should be clamped"),
+                  () -> assertEquals(RenderServer.MAX_SCALE, RenderServer.RenderRequest.fromParameters(
+                          Map.of("scale", "1e15"), datasets, styles).scale(), "huge scales should be clamped"),
+                  () -> assertEquals(10000, RenderServer.RenderRequest.fromParameters(
+                          Map.of("scale", "10000.3"), datasets, styles).scale(), "scales should be whole numbers"));
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.mrmaxguns.freepapermaps.styling;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
+import io.github.mrmaxguns.freepapermaps.geometry.GeometryCollection;
+import io.github.mrmaxguns.freepapermaps.osm.OSMFilter;
+import io.github.mrmaxguns.freepapermaps.osm.TagList;
+import io.github.mrmaxguns.freepapermaps.rendering.CollisionIndex;
+import io.github.mrmaxguns.freepapermaps.rendering.Scaler;
+import io.github.mrmaxguns.freepapermaps.rendering.layers.PaintLayer;
+import io.github.mrmaxguns.freepapermaps.styling.language.Interpreter;
+import io.github.mrmaxguns.freepapermaps.styling.language.UnitManager;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.mrmaxguns.freepapermaps.TestingUtility.loadXMLDocumentFromString;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class MapStyleTest {
+    private static MapStyle createStyle() throws UserInputException {
+        Scaler scaler = new Scaler(10000);
+        MapStyle style = new MapStyle(new Interpreter.Context(new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                                                              new HashMap<>(), new UnitManager(scaler)), null, scaler);
+        style.addSelector(new Selector("roads", Selector.Type.Way,
+                                       new TagQuery(new TagQuery.TagQueryOperator("highway", ""))));
+        style.addLayer(new PaintLayer("roads", Map.of(PaintLayer.LINE_COLOR_FIELD, "#ff0000")));
+        return style;
+    }
+
+    @Test
+    public void testFreeze() throws UserInputException {
+        MapStyle style = createStyle();
+        style.getSettings().backgroundColor = Color.BLACK;
+        MapStyle frozen = style.freeze();
+        frozen.getSettings().backgroundColor = Color.RED;
+
+        assertAll(() -> assertFalse(style.isFrozen(), "the original style should not be frozen"),
+                  () -> assertTrue(frozen.isFrozen(), "the copy should be frozen"),
+                  () -> assertSame(frozen, frozen.freeze(), "freezing a frozen style should return it"),
+                  () -> assertSame(style.getSelectorById("roads"), frozen.getSelectorById("roads"),
+                                   "selectors should be shared"),
+                  () -> assertEquals(1, frozen.getLayers().size(), "layers should be kept"),
+                  () -> assertEquals(Color.BLACK, frozen.getSettings().backgroundColor,
+                                     "settings should be copied and not be modifiable"),
+                  () -> assertThrows(UnsupportedOperationException.class, frozen::clearSelectors,
+                                     "selectors should not be modifiable"),
+                  () -> assertThrows(UnsupportedOperationException.class, () -> frozen.removeSelectorById("roads"),
+                                     "selectors should not be modifiable"),
+                  () -> assertThrows(UnsupportedOperationException.class,
+                                     () -> frozen.addLayer(new PaintLayer("roads", Map.of())),
+                                     "layers should not be modifiable"));
+    }
+
+    @Test
+    public void testFreezeIsIndependent() throws UserInputException {
+        MapStyle style = createStyle();
+        MapStyle frozen = style.freeze();
+        style.clearSelectors();
+        style.addLayer(new PaintLayer("roads", Map.of()));
+
+        assertAll(() -> assertNotNull(frozen.getSelectorById("roads"),
+                                      "changes to the original should not affect the frozen copy"),
+                  () -> assertEquals(1, frozen.getLayers().size(),
+                                     "changes to the original should not affect the frozen copy"));
+    }
+
+    @Test
+    public void testLoadFilterAcceptsCoastlines() throws Exception {
+        String xml = """
+                <style>
+                  <selectors>
+                    <polygon id="land"><tag k="natural" v="land"/></polygon>
+                    <way id="roads"><tag k="highway" v="primary"/></way>
+                  </selectors>
+                  <layers>
+                    <PaintLayer ref="land" fill-color="#00ff00"/>
+                    <PaintLayer ref="roads" line-color="#ff0000"/>
+                  </layers>
+                </style>""";
+        OSMFilter filter = MapStyle.createLoadFilter(loadXMLDocumentFromString(xml), new XMLTools()).build();
+        OSMFilter withoutLand = MapStyle.createLoadFilter(
+                loadXMLDocumentFromString(xml.replace("ref=\"land\"", "ref=\"roads\"")), new XMLTools()).build();
+
+        TagList coastline = new TagList();
+        coastline.put("natural", "coastline");
+        assertAll(() -> assertTrue(filter.acceptsWayTags(coastline), "coastlines should be loaded to build land"),
+                  () -> assertTrue(filter.retainsTag("natural"), "the coastline tag should be kept"),
+                  () -> assertFalse(withoutLand.acceptsWayTags(coastline),
+                                    "coastlines should not be loaded if no layer draws land or water"));
+    }
+
+    @Test
+    public void testScaleRanges() throws UserInputException {
+        MapStyle style = createStyle();
+        style.addSelector(new Selector("overview", Selector.Type.Way, new TagQuery(new TagQuery.TagQueryOperator(
+                "highway", "")), new ScaleRange(50000, Double.POSITIVE_INFINITY)));
+
+        List<String> rendered = new ArrayList<>();
+        for (String name : List.of("detail", "overview", "wide", "narrow")) {
+            ScaleRange range = switch (name) {
+                case "detail" -> new ScaleRange(0, 25000);
+                case "narrow" -> new ScaleRange(20000, 25000);
+                default -> ScaleRange.ALL;
+            };
+            style.addLayer(new PaintLayer(name.equals("overview") ? "overview" : "roads", range, null, Map.of()) {
+                @Override
+                public void render(Graphics2D g2d, GeometryCollection geometries, Selector selector,
+                                   Interpreter.Context context, CollisionIndex collisions) {
+                    rendered.add(name);
+                }
+            });
+        }
+
+        Graphics2D g2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        style.renderMapData(g2d, new GeometryCollection(new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                                                        new HashMap<>()));
+        g2d.dispose();
+
+        assertEquals(List.of("detail", "wide"), rendered,
+                     "only layers whose own and whose selector's scale ranges contain 1:10000 should be rendered");
+    }
+
+    @Test
+    public void testOutputPrecision() throws UserInputException {
+        Scaler scaler = new Scaler(10000);
+        Interpreter.Context context = new Interpreter.Context(new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                                                              new HashMap<>(), new UnitManager(scaler));
+        String xml = "<style><setting k=\"output-precision\" v=\"%s\"/><selectors/><layers/>\n</style>";
+
+        assertAll(() -> assertEquals(0, MapStyle.fromXML(loadXMLDocumentFromString(xml.formatted("0mm")),
+                                                         new XMLTools(), context, null, scaler)
+                                             .getSettings().outputPrecision, "zero should turn optimization off"),
+                  () -> assertEquals(0.1, MapStyle.fromXML(loadXMLDocumentFromString(xml.formatted("0.1mm")),
+                                                           new XMLTools(), context, null, scaler)
+                                               .getSettings().outputPrecision, 1e-12, "a precision should be read"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> MapStyle.fromXML(loadXMLDocumentFromString(
+                                             xml.formatted("0.000000000001mm")), new XMLTools(), context, null, scaler),
+                                     "a precision too fine to write should be rejected"),
+                  () -> assertThrows(UserInputException.class,
+                                     () -> MapStyle.fromXML(loadXMLDocumentFromString(xml.formatted("-1mm")),
+                                                            new XMLTools(), context, null, scaler),
+                                     "a negative precision should be rejected"));
+    }
+}
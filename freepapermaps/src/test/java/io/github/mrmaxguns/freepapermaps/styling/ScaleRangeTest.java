@@ -0,0 +1,42 @@
+package io.github.mrmaxguns.freepapermaps.styling;
+
+import io.github.mrmaxguns.freepapermaps.UserInputException;
+import io.github.mrmaxguns.freepapermaps.XMLTools;
+import org.junit.jupiter.api.Test;
+
+import static io.github.mrmaxguns.freepapermaps.TestingUtility.loadXMLElementFromString;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ScaleRangeTest {
+    @Test
+    public void testContains() {
+        ScaleRange range = new ScaleRange(1000, 50000);
+
+        assertAll(() -> assertTrue(range.contains(1000), "the minimum scale should be included"),
+                  () -> assertTrue(range.contains(50000), "the maximum scale should be included"),
+                  () -> assertFalse(range.contains(250000), "a smaller scale map should be excluded"),
+                  () -> assertFalse(range.contains(500), "a larger scale map should be excluded"),
+                  () -> assertTrue(ScaleRange.ALL.contains(1e9), "the default range should contain every scale"));
+    }
+
+    @Test
+    public void testFromXML() throws Exception {
+        XMLTools xmlTools = new XMLTools();
+        ScaleRange none = ScaleRange.fromXML(loadXMLElementFromString("<way/>"), xmlTools);
+        ScaleRange maxOnly = ScaleRange.fromXML(loadXMLElementFromString("<way max-scale=\"50000\"/>"), xmlTools);
+        ScaleRange minOnly = ScaleRange.fromXML(loadXMLElementFromString("<way min-scale=\"50000\"/>"), xmlTools);
+        Selector selector = Selector.fromXML(loadXMLElementFromString(
+                "<way id=\"paths\" max-scale=\"25000\"><tag k=\"highway\" v=\"path\"/></way>"), xmlTools);
+
+        assertAll(() -> assertSame(ScaleRange.ALL, none, "no attributes should give every scale"),
+                  () -> assertEquals(new ScaleRange(0, 50000), maxOnly, "a missing minimum should be open"),
+                  () -> assertEquals(new ScaleRange(50000, Double.POSITIVE_INFINITY), minOnly,
+                                     "a missing maximum should be open"),
+                  () -> assertEquals(new ScaleRange(0, 25000), selector.getScaleRange(),
+                                     "selectors should read their scale range"),
+                  () -> assertThrows(UserInputException.class, () -> ScaleRange.fromXML(
+                          loadXMLElementFromString("<way min-scale=\"50000\" max-scale=\"1000\"/>"), xmlTools),
+                                     "an empty range should be rejected"));
+    }
+}